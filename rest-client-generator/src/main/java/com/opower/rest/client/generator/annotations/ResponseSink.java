@@ -0,0 +1,40 @@
+/**
+ *    Copyright 2014 Opower, Inc.
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ **/
+package com.opower.rest.client.generator.annotations;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks the OutputStream, WritableByteChannel or ByteBuffer parameter of a resource method that the response body is
+ * copied into. The method returns once the whole body has been copied and the connection has been released, so the
+ * caller never holds on to an open response. The method must return void, or a long to learn the number of bytes
+ * copied. The sink is not closed. A ByteBuffer is filled from its position and the call fails if the body doesn't fit
+ * in its remaining bytes; flip it afterwards to read the body.
+ *
+ * <pre>
+ * &#64;GET
+ * &#64;Path("/artifacts/{name}")
+ * long download(&#64;PathParam("name") String name, &#64;ResponseSink OutputStream out);
+ * </pre>
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.PARAMETER)
+public @interface ResponseSink {
+}
@@ -0,0 +1,327 @@
+/**
+ *    Copyright 2014 Opower, Inc.
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ **/
+package com.opower.rest.client.generator.async;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.opower.rest.client.generator.core.MethodInvoker;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * Sends the calls of a void resource method in the background, so that the caller returns as soon as the call has been
+ * queued. Calls are buffered in a bounded queue and sent by a fixed number of sender threads. When a batch method is
+ * configured, a sender takes as many queued calls as it can, up to the maximum batch size, and sends their arguments in
+ * one call of the batch method.
+ * <p/>
+ * When the queue is full the call is either dropped or the caller waits for space, depending on the
+ * {@link OverflowPolicy}. Failures can't be reported to the caller, they are logged and counted. Closing the writer
+ * sends the calls that are still queued.
+ */
+public final class AsyncWriter implements Closeable {
+
+    /**
+     * What happens to a call when the queue is full.
+     */
+    public enum OverflowPolicy {
+        /**
+         * The call is dropped and counted.
+         */
+        DROP,
+        /**
+         * The caller waits until there is space in the queue.
+         */
+        BLOCK
+    }
+
+    private static final Logger LOG = LoggerFactory.getLogger(AsyncWriter.class);
+    private static final long POLL_MILLIS = 100;
+
+    private final BlockingQueue<Object[]> queue;
+    private final OverflowPolicy overflowPolicy;
+    private final int senders;
+    private final int maxBatchSize;
+    private final long closeTimeoutMillis;
+    private final AtomicLong sent = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private ExecutorService executor;
+    private volatile boolean closed;
+
+    private AsyncWriter(Builder builder) {
+        this.queue = new ArrayBlockingQueue<>(builder.capacity);
+        this.overflowPolicy = builder.overflowPolicy;
+        this.senders = builder.senders;
+        this.maxBatchSize = builder.maxBatchSize;
+        this.closeTimeoutMillis = builder.closeTimeoutMillis;
+    }
+
+    /**
+     * Creates a Builder initialized with a queue of 1000 calls, one sender thread, the DROP policy, batches of up to 100
+     * calls and a close timeout of 5 seconds.
+     * @return the builder
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Check that a method can be written asynchronously, and optionally batched into the specified batch method.
+     * @param method the void method
+     * @param batchMethod the batch method, may be null
+     */
+    public static void validate(Method method, Method batchMethod) {
+        checkArgument(void.class.equals(method.getReturnType()), String.format("%s must return void", method));
+        if (batchMethod != null) {
+            checkArgument(method.getParameterTypes().length == 1,
+                          String.format("%s must take exactly one argument to be batched", method));
+            checkArgument(void.class.equals(batchMethod.getReturnType()), String.format("%s must return void", batchMethod));
+            checkArgument(batchMethod.getParameterTypes().length == 1
+                          && batchMethod.getParameterTypes()[0].isAssignableFrom(List.class),
+                          String.format("%s must take a single List or Collection", batchMethod));
+        }
+    }
+
+    /**
+     * Starts the sender threads and returns the MethodInvoker that queues the calls for them. A writer can only be used
+     * for a single method of a single client.
+     * @param invoker the MethodInvoker of the void method
+     * @param batchInvoker the MethodInvoker of the batch method, may be null
+     * @return the MethodInvoker that queues calls
+     */
+    public synchronized MethodInvoker start(final MethodInvoker invoker, final MethodInvoker batchInvoker) {
+        checkNotNull(invoker);
+        checkState(this.executor == null, "The AsyncWriter is already in use");
+        this.executor = Executors.newFixedThreadPool(this.senders, new ThreadFactoryBuilder().setDaemon(true)
+                .setNameFormat("async-writer-%d").build());
+        for (int i = 0; i < this.senders; i++) {
+            this.executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    send(invoker, batchInvoker);
+                }
+            });
+        }
+        return new MethodInvoker() {
+            @Override
+            public Object invoke(Object[] args) {
+                enqueue(args);
+                return null;
+            }
+        };
+    }
+
+    private void enqueue(Object[] args) {
+        checkState(!this.closed, "The AsyncWriter has been closed");
+        Object[] call = args == null ? new Object[0] : args;
+        if (this.overflowPolicy == OverflowPolicy.BLOCK) {
+            try {
+                this.queue.put(call);
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                this.dropped.incrementAndGet();
+            }
+        }
+        else if (!this.queue.offer(call)) {
+            this.dropped.incrementAndGet();
+        }
+    }
+
+    private void send(MethodInvoker invoker, MethodInvoker batchInvoker) {
+        List<Object[]> calls = new ArrayList<>();
+        while (!this.closed || !this.queue.isEmpty()) {
+            Object[] first;
+            try {
+                first = this.queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+            }
+            catch (InterruptedException e) {
+                return;
+            }
+            if (first == null) {
+                continue;
+            }
+            calls.clear();
+            calls.add(first);
+            if (batchInvoker != null) {
+                this.queue.drainTo(calls, this.maxBatchSize - 1);
+            }
+            try {
+                if (batchInvoker == null) {
+                    invoker.invoke(first);
+                }
+                else {
+                    batchInvoker.invoke(new Object[]{batchArgument(calls)});
+                }
+                this.sent.addAndGet(calls.size());
+            }
+            catch (RuntimeException e) {
+                this.failed.addAndGet(calls.size());
+                LOG.warn("Could not send {} queued call(s)", calls.size(), e);
+            }
+        }
+    }
+
+    private static List<Object> batchArgument(Collection<Object[]> calls) {
+        List<Object> batch = new ArrayList<>(calls.size());
+        for (Object[] call : calls) {
+            batch.add(call[0]);
+        }
+        return batch;
+    }
+
+    /**
+     * @return the number of calls that have been sent successfully
+     */
+    public long getSentCount() {
+        return this.sent.get();
+    }
+
+    /**
+     * @return the number of calls that were dropped because the queue was full
+     */
+    public long getDroppedCount() {
+        return this.dropped.get();
+    }
+
+    /**
+     * @return the number of calls that were sent but failed
+     */
+    public long getFailedCount() {
+        return this.failed.get();
+    }
+
+    /**
+     * @return the number of calls waiting to be sent
+     */
+    public int getQueueSize() {
+        return this.queue.size();
+    }
+
+    /**
+     * Stops accepting calls and waits for the calls that are still queued to be sent, up to the close timeout.
+     */
+    @Override
+    public synchronized void close() {
+        if (this.closed) {
+            return;
+        }
+        this.closed = true;
+        if (this.executor != null) {
+            this.executor.shutdown();
+            try {
+                if (!this.executor.awaitTermination(this.closeTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                    LOG.warn("Gave up on {} queued call(s) after {}ms", this.queue.size(), this.closeTimeoutMillis);
+                    this.executor.shutdownNow();
+                }
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                this.executor.shutdownNow();
+            }
+        }
+    }
+
+    /**
+     * Builder for AsyncWriter instances.
+     */
+    public static final class Builder {
+        private static final int DEFAULT_CAPACITY = 1000;
+        private static final int DEFAULT_MAX_BATCH_SIZE = 100;
+        private static final long DEFAULT_CLOSE_TIMEOUT_MILLIS = 5000;
+
+        private int capacity = DEFAULT_CAPACITY;
+        private OverflowPolicy overflowPolicy = OverflowPolicy.DROP;
+        private int senders = 1;
+        private int maxBatchSize = DEFAULT_MAX_BATCH_SIZE;
+        private long closeTimeoutMillis = DEFAULT_CLOSE_TIMEOUT_MILLIS;
+
+        private Builder() {
+        }
+
+        /**
+         * The number of calls that can be queued.
+         * @param capacity the capacity of the queue
+         * @return the builder
+         */
+        public Builder capacity(int capacity) {
+            checkArgument(capacity > 0, "capacity must be positive");
+            this.capacity = capacity;
+            return this;
+        }
+
+        /**
+         * What to do with a call when the queue is full. Defaults to {@link OverflowPolicy#DROP}.
+         * @param overflowPolicy the policy to use
+         * @return the builder
+         */
+        public Builder overflowPolicy(OverflowPolicy overflowPolicy) {
+            this.overflowPolicy = checkNotNull(overflowPolicy);
+            return this;
+        }
+
+        /**
+         * The number of threads that send the queued calls.
+         * @param senders the number of threads
+         * @return the builder
+         */
+        public Builder senders(int senders) {
+            checkArgument(senders > 0, "senders must be positive");
+            this.senders = senders;
+            return this;
+        }
+
+        /**
+         * The maximum number of calls sent in one call of the batch method, if there is one.
+         * @param maxBatchSize the maximum batch size
+         * @return the builder
+         */
+        public Builder maxBatchSize(int maxBatchSize) {
+            checkArgument(maxBatchSize > 0, "maxBatchSize must be positive");
+            this.maxBatchSize = maxBatchSize;
+            return this;
+        }
+
+        /**
+         * How long closing the writer waits for the queued calls to be sent.
+         * @param closeTimeoutMillis the timeout in milliseconds
+         * @return the builder
+         */
+        public Builder closeTimeout(long closeTimeoutMillis) {
+            checkArgument(closeTimeoutMillis >= 0, "closeTimeoutMillis must not be negative");
+            this.closeTimeoutMillis = closeTimeoutMillis;
+            return this;
+        }
+
+        public AsyncWriter build() {
+            return new AsyncWriter(this);
+        }
+    }
+}
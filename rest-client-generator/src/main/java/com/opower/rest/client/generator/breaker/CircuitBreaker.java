@@ -0,0 +1,276 @@
+/**
+ *    Copyright 2014 Opower, Inc.
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ **/
+package com.opower.rest.client.generator.breaker;
+
+import com.google.common.base.Ticker;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Circuit breaker for a single resource method. While closed, the outcome of every call is recorded in a sliding window
+ * and once the window holds enough calls the breaker opens if either the failure rate or the slow call rate reaches its
+ * threshold. An open breaker rejects all calls until the open duration has passed, then it lets a fixed number of probe
+ * calls through. If all of them succeed the breaker closes again with an empty window, otherwise it opens again.
+ * <p/>
+ * All operations are lock free so the breaker adds very little to the cost of a call.
+ */
+public class CircuitBreaker {
+
+    /**
+     * The states of a CircuitBreaker.
+     */
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private static final int PERCENT = 100;
+
+    private final Ticker ticker;
+    private final SlidingWindow window;
+    private final int failureRateThreshold;
+    private final int slowCallRateThreshold;
+    private final long slowCallNanos;
+    private final int minimumCalls;
+    private final long openNanos;
+    private final int probes;
+
+    private final AtomicReference<State> state = new AtomicReference<>(State.CLOSED);
+    private final AtomicInteger probePermits = new AtomicInteger();
+    private final AtomicInteger probeSuccesses = new AtomicInteger();
+    private volatile long openedAt;
+
+    private CircuitBreaker(Builder builder) {
+        this.ticker = builder.ticker;
+        this.window = new SlidingWindow(TimeUnit.MILLISECONDS.toNanos(builder.windowMillis), builder.buckets);
+        this.failureRateThreshold = builder.failureRateThreshold;
+        this.slowCallRateThreshold = builder.slowCallRateThreshold;
+        this.slowCallNanos = TimeUnit.MILLISECONDS.toNanos(builder.slowCallMillis);
+        this.minimumCalls = builder.minimumCalls;
+        this.openNanos = TimeUnit.MILLISECONDS.toNanos(builder.openMillis);
+        this.probes = builder.probes;
+    }
+
+    /**
+     * Creates a Builder initialized with a 10 second window of 10 buckets, a failure rate threshold of 50% over at least
+     * 20 calls, no slow call threshold, an open duration of 5 seconds and 5 probe calls.
+     * @return the builder
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Try to get a permit for a call. Every successful call must be followed by a call to {@link #onResult(long, boolean)}
+     * or, if the call ends up not being made, {@link #cancel()}.
+     * @return true if the call may proceed, false if the breaker is open
+     */
+    public boolean tryAcquire() {
+        switch (this.state.get()) {
+            case CLOSED:
+                return true;
+            case OPEN:
+                if (this.ticker.read() - this.openedAt < this.openNanos) {
+                    return false;
+                }
+                halfOpen();
+                return tryAcquireProbe();
+            default:
+                return tryAcquireProbe();
+        }
+    }
+
+    /**
+     * Give back a permit for a call that was never made.
+     */
+    public void cancel() {
+        if (this.state.get() == State.HALF_OPEN) {
+            this.probePermits.incrementAndGet();
+        }
+    }
+
+    /**
+     * Record the outcome of a call.
+     * @param durationNanos how long the call took
+     * @param failure true if the call failed
+     */
+    public void onResult(long durationNanos, boolean failure) {
+        boolean slow = durationNanos >= this.slowCallNanos;
+        switch (this.state.get()) {
+            case CLOSED:
+                long now = this.ticker.read();
+                this.window.record(now, failure, slow);
+                if (shouldOpen(this.window.totals(now))) {
+                    open(State.CLOSED, now);
+                }
+                break;
+            case HALF_OPEN:
+                if (failure || slow) {
+                    open(State.HALF_OPEN, this.ticker.read());
+                }
+                else if (this.probeSuccesses.incrementAndGet() >= this.probes
+                         && this.state.compareAndSet(State.HALF_OPEN, State.CLOSED)) {
+                    this.window.reset();
+                }
+                break;
+            default:
+                // the call was started before the breaker opened
+                break;
+        }
+    }
+
+    public State getState() {
+        return this.state.get();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("CircuitBreaker{state=%s}", getState());
+    }
+
+    private boolean shouldOpen(int[] totals) {
+        int calls = totals[0];
+        return calls >= this.minimumCalls
+               && (totals[1] * PERCENT >= this.failureRateThreshold * calls
+                   || totals[2] * PERCENT >= this.slowCallRateThreshold * calls);
+    }
+
+    private void open(State from, long now) {
+        this.probePermits.set(0);
+        this.openedAt = now;
+        this.state.compareAndSet(from, State.OPEN);
+    }
+
+    private void halfOpen() {
+        // only the thread that wins the transition hands out the probe permits
+        if (this.state.compareAndSet(State.OPEN, State.HALF_OPEN)) {
+            this.probeSuccesses.set(0);
+            this.probePermits.set(this.probes);
+        }
+    }
+
+    private boolean tryAcquireProbe() {
+        while (true) {
+            int permits = this.probePermits.get();
+            if (permits <= 0) {
+                return false;
+            }
+            if (this.probePermits.compareAndSet(permits, permits - 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Builder for CircuitBreaker instances. A Builder can be used to build any number of independent breakers.
+     */
+    public static final class Builder {
+        private static final int DEFAULT_FAILURE_RATE_THRESHOLD = 50;
+        private static final int DEFAULT_MINIMUM_CALLS = 20;
+        private static final long DEFAULT_WINDOW_MILLIS = 10000;
+        private static final int DEFAULT_BUCKETS = 10;
+        private static final long DEFAULT_OPEN_MILLIS = 5000;
+        private static final int DEFAULT_PROBES = 5;
+
+        private Ticker ticker = Ticker.systemTicker();
+        private int failureRateThreshold = DEFAULT_FAILURE_RATE_THRESHOLD;
+        // a threshold above 100% disables the slow call rate
+        private int slowCallRateThreshold = PERCENT + 1;
+        private long slowCallMillis = Long.MAX_VALUE / TimeUnit.MILLISECONDS.toNanos(1);
+        private int minimumCalls = DEFAULT_MINIMUM_CALLS;
+        private long windowMillis = DEFAULT_WINDOW_MILLIS;
+        private int buckets = DEFAULT_BUCKETS;
+        private long openMillis = DEFAULT_OPEN_MILLIS;
+        private int probes = DEFAULT_PROBES;
+
+        private Builder() {
+        }
+
+        /**
+         * The percentage of failed calls at which the breaker opens.
+         * @param failureRateThreshold a percentage between 1 and 100
+         * @return the builder
+         */
+        public Builder failureRateThreshold(int failureRateThreshold) {
+            checkArgument(failureRateThreshold > 0 && failureRateThreshold <= PERCENT,
+                          "failureRateThreshold must be between 1 and 100");
+            this.failureRateThreshold = failureRateThreshold;
+            return this;
+        }
+
+        /**
+         * Open the breaker when too many calls are slow, even if they succeed.
+         * @param slowCallRateThreshold the percentage of slow calls at which the breaker opens, between 1 and 100
+         * @param slowCallMillis calls that take at least this long are slow
+         * @return the builder
+         */
+        public Builder slowCallRateThreshold(int slowCallRateThreshold, long slowCallMillis) {
+            checkArgument(slowCallRateThreshold > 0 && slowCallRateThreshold <= PERCENT,
+                          "slowCallRateThreshold must be between 1 and 100");
+            checkArgument(slowCallMillis > 0, "slowCallMillis must be positive");
+            this.slowCallRateThreshold = slowCallRateThreshold;
+            this.slowCallMillis = slowCallMillis;
+            return this;
+        }
+
+        /**
+         * The sliding window the rates are computed over.
+         * @param windowMillis the length of the window
+         * @param buckets the number of buckets the window is divided into
+         * @param minimumCalls the number of calls the window must hold before the breaker can open
+         * @return the builder
+         */
+        public Builder window(long windowMillis, int buckets, int minimumCalls) {
+            checkArgument(buckets > 0 && windowMillis >= buckets, "the window must have at least one millisecond per bucket");
+            checkArgument(minimumCalls > 0, "minimumCalls must be positive");
+            this.windowMillis = windowMillis;
+            this.buckets = buckets;
+            this.minimumCalls = minimumCalls;
+            return this;
+        }
+
+        /**
+         * How the breaker recovers.
+         * @param openMillis how long the breaker stays open before it lets probe calls through
+         * @param probes the number of probe calls that must succeed before the breaker closes
+         * @return the builder
+         */
+        public Builder halfOpen(long openMillis, int probes) {
+            checkArgument(openMillis >= 0, "openMillis must not be negative");
+            checkArgument(probes > 0, "probes must be positive");
+            this.openMillis = openMillis;
+            this.probes = probes;
+            return this;
+        }
+
+        /**
+         * The time source, only useful for tests.
+         * @param ticker the Ticker to use
+         * @return the builder
+         */
+        public Builder ticker(Ticker ticker) {
+            this.ticker = checkNotNull(ticker);
+            return this;
+        }
+
+        public CircuitBreaker build() {
+            return new CircuitBreaker(this);
+        }
+    }
+}
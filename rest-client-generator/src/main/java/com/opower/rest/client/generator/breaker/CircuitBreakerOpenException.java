@@ -0,0 +1,27 @@
+/**
+ *    Copyright 2014 Opower, Inc.
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ **/
+package com.opower.rest.client.generator.breaker;
+
+/**
+ * Thrown when a request is rejected because the {@link CircuitBreaker} for its method is open.
+ */
+public class CircuitBreakerOpenException extends RuntimeException {
+
+    private static final long serialVersionUID = 5521383940766212419L;
+
+    public CircuitBreakerOpenException(String methodName) {
+        super(String.format("Circuit breaker is open for %s", methodName));
+    }
+}
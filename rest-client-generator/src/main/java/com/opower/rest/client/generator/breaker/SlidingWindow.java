@@ -0,0 +1,105 @@
+/**
+ *    Copyright 2014 Opower, Inc.
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ **/
+package com.opower.rest.client.generator.breaker;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Time based sliding window of call outcomes made up of a ring of buckets. A bucket that has fallen out of the window is
+ * replaced with a fresh one the first time it is written to again, so recording an outcome only takes a couple of atomic
+ * operations and never blocks. Outcomes recorded by a thread that raced with the replacement of their bucket are lost,
+ * which is acceptable for the rates the window is used for.
+ */
+final class SlidingWindow {
+
+    private final long bucketNanos;
+    private final AtomicReferenceArray<Bucket> buckets;
+
+    SlidingWindow(long windowNanos, int bucketCount) {
+        this.bucketNanos = windowNanos / bucketCount;
+        this.buckets = new AtomicReferenceArray<>(bucketCount);
+    }
+
+    void record(long nowNanos, boolean failure, boolean slow) {
+        Bucket bucket = currentBucket(nowNanos);
+        bucket.calls.incrementAndGet();
+        if (failure) {
+            bucket.failures.incrementAndGet();
+        }
+        if (slow) {
+            bucket.slowCalls.incrementAndGet();
+        }
+    }
+
+    /**
+     * Sums up the buckets that are still inside the window.
+     * @param nowNanos the current time
+     * @return the calls, failures and slow calls in that order
+     */
+    int[] totals(long nowNanos) {
+        long oldest = epoch(nowNanos) - this.buckets.length() + 1;
+        int[] totals = new int[3];
+        for (int i = 0; i < this.buckets.length(); i++) {
+            Bucket bucket = this.buckets.get(i);
+            if (bucket != null && bucket.epoch >= oldest) {
+                totals[0] += bucket.calls.get();
+                totals[1] += bucket.failures.get();
+                totals[2] += bucket.slowCalls.get();
+            }
+        }
+        return totals;
+    }
+
+    void reset() {
+        for (int i = 0; i < this.buckets.length(); i++) {
+            this.buckets.set(i, null);
+        }
+    }
+
+    private Bucket currentBucket(long nowNanos) {
+        long epoch = epoch(nowNanos);
+        int index = (int) ((epoch % this.buckets.length() + this.buckets.length()) % this.buckets.length());
+        while (true) {
+            Bucket bucket = this.buckets.get(index);
+            if (bucket != null && bucket.epoch >= epoch) {
+                // a bucket from the future means another thread read the clock a little later than this one
+                return bucket;
+            }
+            Bucket fresh = new Bucket(epoch);
+            if (this.buckets.compareAndSet(index, bucket, fresh)) {
+                return fresh;
+            }
+        }
+    }
+
+    private long epoch(long nowNanos) {
+        return nowNanos / this.bucketNanos;
+    }
+
+    /**
+     * The counts for one slice of the window.
+     */
+    private static final class Bucket {
+        private final long epoch;
+        private final AtomicInteger calls = new AtomicInteger();
+        private final AtomicInteger failures = new AtomicInteger();
+        private final AtomicInteger slowCalls = new AtomicInteger();
+
+        private Bucket(long epoch) {
+            this.epoch = epoch;
+        }
+    }
+}
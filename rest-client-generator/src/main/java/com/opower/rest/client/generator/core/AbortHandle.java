@@ -0,0 +1,74 @@
+/**
+ *    Copyright 2014 Opower, Inc.
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ **/
+package com.opower.rest.client.generator.core;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Lets another thread abort a request that is in flight, for instance when a timeout fires while the calling thread is
+ * still waiting for the response. The ClientExecutor registers how to abort the exchange it is executing, so that the
+ * connection is closed and released right away instead of when the server finally answers.
+ */
+public final class AbortHandle {
+
+    private Runnable abortAction;
+    private boolean aborted;
+
+    /**
+     * Registers the action that aborts the exchange currently in flight, replacing the previous one. If the handle has
+     * already been aborted the action is run right away.
+     * @param action the action that aborts the exchange
+     */
+    public void onAbort(Runnable action) {
+        checkNotNull(action);
+        synchronized (this) {
+            if (!this.aborted) {
+                this.abortAction = action;
+                return;
+            }
+        }
+        action.run();
+    }
+
+    /**
+     * Aborts the exchange in flight, if any, and every exchange registered afterwards. Only the first call has an effect.
+     */
+    public void abort() {
+        Runnable action;
+        synchronized (this) {
+            if (this.aborted) {
+                return;
+            }
+            this.aborted = true;
+            action = this.abortAction;
+            this.abortAction = null;
+        }
+        if (action != null) {
+            action.run();
+        }
+    }
+
+    /**
+     * Forgets the registered action once the exchange has completed, so that aborting afterwards has no effect on a
+     * response that is still being consumed.
+     */
+    public synchronized void clear() {
+        this.abortAction = null;
+    }
+
+    public synchronized boolean isAborted() {
+        return this.aborted;
+    }
+}
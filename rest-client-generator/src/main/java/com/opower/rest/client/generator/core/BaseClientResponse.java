@@ -30,6 +30,8 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.lang.annotation.Annotation;
 import java.lang.reflect.Type;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.MultivaluedMap;
 import javax.ws.rs.ext.MessageBodyReader;
@@ -58,6 +60,7 @@ public class BaseClientResponse extends ClientResponse {
     protected Exception exception;
     protected BaseClientResponseStreamFactory streamFactory;
     protected ClientExecutor executor;
+    private LeakDetector.Tracker leakTracker;
 
     private final Predicate<Integer> errorStatusCriteria;
 
@@ -68,9 +71,8 @@ public class BaseClientResponse extends ClientResponse {
      * @param errorStatusCriteria
      */
     public BaseClientResponse(BaseClientResponseStreamFactory streamFactory, ClientExecutor executor, Predicate<Integer> errorStatusCriteria) {
-        this.streamFactory = streamFactory;
+        this(streamFactory, errorStatusCriteria);
         this.executor = executor;
-        this.errorStatusCriteria = errorStatusCriteria;
     }
 
     /**
@@ -81,6 +83,9 @@ public class BaseClientResponse extends ClientResponse {
     public BaseClientResponse(BaseClientResponseStreamFactory streamFactory, Predicate<Integer> errorStatusCriteria) {
         this.streamFactory = streamFactory;
         this.errorStatusCriteria = errorStatusCriteria;
+        if (streamFactory != null) {
+            this.leakTracker = LeakDetector.shared().track(this, new ReleaseConnection(streamFactory), "ClientResponse");
+        }
     }
 
     /**
@@ -112,6 +117,8 @@ public class BaseClientResponse extends ClientResponse {
             public void performReleaseConnection() {
             }
         }, base.errorStatusCriteria);
+        // there is no connection behind the copy, so it can't leak one
+        tmp.leakTracker.close();
         tmp.executor = base.executor;
         tmp.status = base.status;
         tmp.providers = base.providers;
@@ -239,8 +246,9 @@ public class BaseClientResponse extends ClientResponse {
 
             this.unmarshaledEntity = readFrom(type, genericType, getMediaType(), anns);
             // only release connection if we actually unmarshalled something and if the object is *NOT* an InputStream
-            // If it is an input stream, the user may be doing their own stream processing.
-            if (this.unmarshaledEntity != null && !InputStream.class.isInstance(this.unmarshaledEntity)) {
+            // or a channel. If it is, the user may be doing their own stream processing.
+            if (this.unmarshaledEntity != null && !InputStream.class.isInstance(this.unmarshaledEntity)
+                && !ReadableByteChannel.class.isInstance(this.unmarshaledEntity)) {
                 releaseConnection();
             }
         }
@@ -290,6 +298,11 @@ public class BaseClientResponse extends ClientResponse {
             if (is == null) {
                 throw new ClientResponseFailure("Input stream was empty, there is no entity", this);
             }
+            if ((type == ByteBuffer.class || type == ReadableByteChannel.class)
+                && is instanceof SelfExpandingBufferredInputStream) {
+                // binary bodies go straight to their own buffer or to the caller, a heap copy would only be waste
+                ((SelfExpandingBufferredInputStream) is).stopExpanding();
+            }
 
             return reader1.readFrom(useType, useGeneric, this.annotations, media, getHeaders(), is);
 
@@ -299,6 +312,41 @@ public class BaseClientResponse extends ClientResponse {
         }
     }
 
+    /**
+     * Read the Response as a sequence of elements of the specified type. The elements are read while iterating, and the
+     * connection is released once the last element has been read or the iterator has been closed.
+     * @param type the class of the elements
+     * @param genericType the generic type of the elements if needed
+     * @param <T2> the type of the elements
+     * @return the iterator over the elements
+     */
+    public <T2> CloseableIterator<T2> getEntityIterator(Class<T2> type, Type genericType) {
+        Type useGeneric = genericType == null ? type : genericType;
+        MediaType media = getMediaType();
+        StreamingMessageBodyReader reader = this.providers instanceof ClientProviders
+                ? ((ClientProviders) this.providers).getStreamingReader(type, useGeneric, this.annotations, media)
+                : null;
+        if (reader == null) {
+            throw createResponseFailure(String.format(
+                    "Unable to find a StreamingMessageBodyReader of content-type %s and type %s",
+                    media, useGeneric));
+        }
+
+        try {
+            InputStream is = this.streamFactory.getInputStream();
+            if (is == null) {
+                throw new ClientResponseFailure("Input stream was empty, there is no entity", this);
+            }
+            if (is instanceof SelfExpandingBufferredInputStream) {
+                ((SelfExpandingBufferredInputStream) is).stopExpanding();
+            }
+            return new ReleasingIterator<>(reader.readElements(type, useGeneric, this.annotations, media, getHeaders(), is,
+                                                               this.providers));
+        } catch (Exception e) {
+            throw Throwables.propagate(e);
+        }
+    }
+
     @Override
     public <T2> T2 getEntity(GenericType<T2> genericType) {
         return getEntity(genericType.getType(), genericType.getGenericType());
@@ -357,14 +405,74 @@ public class BaseClientResponse extends ClientResponse {
 
     public final void releaseConnection() {
         if (!wasReleased) {
+            if (leakTracker != null) leakTracker.close();
             if (streamFactory != null) streamFactory.performReleaseConnection();
             wasReleased = true;
         }
     }
 
-    @Override
-    protected final void finalize() throws Throwable {
-        releaseConnection();
+    /**
+     * Releases the connection of a response that was never released, once the response has been garbage collected.
+     * It must not refer to the response itself, or the response would never become unreachable.
+     */
+    private static final class ReleaseConnection implements Runnable {
+        private final BaseClientResponseStreamFactory streamFactory;
+
+        private ReleaseConnection(BaseClientResponseStreamFactory streamFactory) {
+            this.streamFactory = streamFactory;
+        }
+
+        @Override
+        public void run() {
+            this.streamFactory.performReleaseConnection();
+        }
+    }
+
+    /**
+     * Releases the connection when the elements have all been read or the iterator is closed.
+     */
+    private final class ReleasingIterator<T2> implements CloseableIterator<T2> {
+        private final CloseableIterator<T2> elements;
+
+        private ReleasingIterator(CloseableIterator<T2> elements) {
+            this.elements = elements;
+        }
+
+        @Override
+        public boolean hasNext() {
+            boolean hasNext;
+            try {
+                hasNext = this.elements.hasNext();
+            } catch (RuntimeException e) {
+                close();
+                throw e;
+            }
+            if (!hasNext) {
+                close();
+            }
+            return hasNext;
+        }
+
+        @Override
+        public T2 next() {
+            return this.elements.next();
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void close() {
+            try {
+                this.elements.close();
+            } catch (IOException e) {
+                LOG.debug("couldn't close the streamed entity.", e);
+            } finally {
+                releaseConnection();
+            }
+        }
     }
 
     /**
@@ -15,18 +15,27 @@
 package com.opower.rest.client.generator.core;
 
 import com.google.common.base.Predicate;
+import com.google.common.collect.ImmutableMap;
+import com.opower.rest.client.generator.async.AsyncWriter;
+import com.opower.rest.client.generator.breaker.CircuitBreaker;
 import com.opower.rest.client.generator.extractors.ClientErrorHandler;
 import com.opower.rest.client.generator.extractors.DefaultClientErrorHandler;
 import com.opower.rest.client.generator.extractors.DefaultEntityExtractorFactory;
+import com.opower.rest.client.generator.extractors.EntityExtractorFactory;
+import com.opower.rest.client.generator.limiter.ConcurrencyLimiter;
+import com.opower.rest.client.generator.retry.RetryBudget;
+import com.opower.rest.client.generator.retry.RetryPolicy;
 import com.opower.rest.client.generator.util.IsHttpMethod;
 
 import java.lang.reflect.Method;
 import java.lang.reflect.Proxy;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import javax.ws.rs.GET;
 import javax.ws.rs.Path;
 import javax.ws.rs.ext.Providers;
 
@@ -52,6 +61,16 @@ public abstract class Client<T, B extends Client<T, B>> {
     protected static final int NETWORK_CONNECT_TIMEOUT = 599;
 
     private final ConcurrentMap<Method, Predicate<Integer>> errorStatusCriteria = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Method, RetryPolicy> retryPolicies = new ConcurrentHashMap<>();
+    private RetryBudget retryBudget = new RetryBudget();
+    private final ConcurrentMap<Method, ConcurrencyLimiter> concurrencyLimiters = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Method, CircuitBreaker> circuitBreakers = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Method, Integer> readTimeouts = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Method, Integer> compressionThresholds = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Method, RangedDownload> rangedDownloads = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Method, AsyncWriter> asyncWriters = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Method, Method> batchMethods = new ConcurrentHashMap<>();
+    private int warmUpConnections = -1;
 
     protected ClientExecutor executor;
     protected ClientProviders clientProviders = new ClientProviders();
@@ -102,6 +121,206 @@ public abstract class Client<T, B extends Client<T, B>> {
         return (B) this;
     }
 
+    /**
+     * Retry failed requests according to the specified {@link RetryPolicy} for all methods on the resource interface.
+     * Unless the policy says otherwise, only idempotent methods are retried.
+     * @param retryPolicy the RetryPolicy to use
+     * @return the builder
+     */
+    @SuppressWarnings("unchecked")
+    public B retryPolicy(RetryPolicy retryPolicy) {
+        checkNotNull(retryPolicy);
+        for (Method method : this.resourceInterface.getInterface().getMethods()) {
+            methodRetryPolicy(method, retryPolicy);
+        }
+        return (B) this;
+    }
+
+    /**
+     * Retry failed requests according to the specified {@link RetryPolicy} ONLY for the specified method. Unless the
+     * policy says otherwise, this has no effect if the method isn't idempotent.
+     * @param method the method on the resource interface
+     * @param retryPolicy the RetryPolicy to use
+     * @return the builder
+     */
+    @SuppressWarnings("unchecked")
+    public B methodRetryPolicy(Method method, RetryPolicy retryPolicy) {
+        checkArgument(method != null && method.getDeclaringClass().isAssignableFrom(this.resourceInterface.getInterface()));
+        this.retryPolicies.put(method, checkNotNull(retryPolicy));
+        return (B) this;
+    }
+
+    /**
+     * Specify the {@link RetryBudget} that limits the retries of all methods of the client. Defaults to a budget that
+     * allows retrying 10% of the requests.
+     * @param retryBudget the RetryBudget to use
+     * @return the builder
+     */
+    @SuppressWarnings("unchecked")
+    public B retryBudget(RetryBudget retryBudget) {
+        this.retryBudget = checkNotNull(retryBudget);
+        return (B) this;
+    }
+
+    /**
+     * Limit the number of concurrent requests for every method on the resource interface. Each method gets its own
+     * {@link ConcurrencyLimiter} created from the specified builder, so the limit of one method adapts independently of
+     * the others. Requests beyond the limit fail fast with a
+     * {@link com.opower.rest.client.generator.limiter.ConcurrencyLimitExceededException}.
+     * @param limiterBuilder the builder used to create the ConcurrencyLimiter for each method
+     * @return the builder
+     */
+    @SuppressWarnings("unchecked")
+    public B concurrencyLimit(ConcurrencyLimiter.Builder limiterBuilder) {
+        checkNotNull(limiterBuilder);
+        for (Method method : this.resourceInterface.getInterface().getMethods()) {
+            methodConcurrencyLimit(method, limiterBuilder.build());
+        }
+        return (B) this;
+    }
+
+    /**
+     * Limit the number of concurrent requests ONLY for the specified method. The ConcurrencyLimiter holds the state of
+     * the limit so it should not be shared with other methods.
+     * @param method the method on the resource interface
+     * @param limiter the ConcurrencyLimiter to use
+     * @return the builder
+     */
+    @SuppressWarnings("unchecked")
+    public B methodConcurrencyLimit(Method method, ConcurrencyLimiter limiter) {
+        checkArgument(method != null && method.getDeclaringClass().isAssignableFrom(this.resourceInterface.getInterface()));
+        this.concurrencyLimiters.put(method, checkNotNull(limiter));
+        return (B) this;
+    }
+
+    /**
+     * Protect every method on the resource interface with a {@link CircuitBreaker} created from the specified builder.
+     * Each method gets its own breaker. Responses that match the errorStatusCriteria of the method count as failures,
+     * as do requests that fail with an Exception. Requests made while the breaker is open fail fast with a
+     * {@link com.opower.rest.client.generator.breaker.CircuitBreakerOpenException}.
+     * @param breakerBuilder the builder used to create the CircuitBreaker for each method
+     * @return the builder
+     */
+    @SuppressWarnings("unchecked")
+    public B circuitBreaker(CircuitBreaker.Builder breakerBuilder) {
+        checkNotNull(breakerBuilder);
+        for (Method method : this.resourceInterface.getInterface().getMethods()) {
+            methodCircuitBreaker(method, breakerBuilder.build());
+        }
+        return (B) this;
+    }
+
+    /**
+     * Protect ONLY the specified method with the specified {@link CircuitBreaker}. The CircuitBreaker holds the state of
+     * the method so it should not be shared with other methods.
+     * @param method the method on the resource interface
+     * @param circuitBreaker the CircuitBreaker to use
+     * @return the builder
+     */
+    @SuppressWarnings("unchecked")
+    public B methodCircuitBreaker(Method method, CircuitBreaker circuitBreaker) {
+        checkArgument(method != null && method.getDeclaringClass().isAssignableFrom(this.resourceInterface.getInterface()));
+        this.circuitBreakers.put(method, checkNotNull(circuitBreaker));
+        return (B) this;
+    }
+
+    /**
+     * Override the read timeout of the ClientExecutor ONLY for the specified method.
+     * @param method the method on the resource interface
+     * @param readTimeoutMillis the read timeout in milliseconds
+     * @return the builder
+     */
+    @SuppressWarnings("unchecked")
+    public B methodReadTimeout(Method method, int readTimeoutMillis) {
+        checkArgument(method != null && method.getDeclaringClass().isAssignableFrom(this.resourceInterface.getInterface()));
+        checkArgument(readTimeoutMillis > 0, "readTimeoutMillis must be positive");
+        this.readTimeouts.put(method, readTimeoutMillis);
+        return (B) this;
+    }
+
+    /**
+     * Compress request bodies of at least the specified size with gzip for all methods on the resource interface.
+     * Responses are decompressed regardless of this setting.
+     * @param thresholdBytes the size in bytes from which bodies are compressed
+     * @return the builder
+     */
+    @SuppressWarnings("unchecked")
+    public B requestCompression(int thresholdBytes) {
+        for (Method method : this.resourceInterface.getInterface().getMethods()) {
+            methodRequestCompression(method, thresholdBytes);
+        }
+        return (B) this;
+    }
+
+    /**
+     * Compress request bodies of at least the specified size with gzip ONLY for the specified method. Streamed bodies,
+     * whose size isn't known, are always compressed.
+     * @param method the method on the resource interface
+     * @param thresholdBytes the size in bytes from which bodies are compressed
+     * @return the builder
+     */
+    @SuppressWarnings("unchecked")
+    public B methodRequestCompression(Method method, int thresholdBytes) {
+        checkArgument(method != null && method.getDeclaringClass().isAssignableFrom(this.resourceInterface.getInterface()));
+        checkArgument(thresholdBytes >= 0, "thresholdBytes must not be negative");
+        this.compressionThresholds.put(method, thresholdBytes);
+        return (B) this;
+    }
+
+    /**
+     * Download the response of the specified method in parallel byte ranges when the server supports them. The method
+     * must be a GET returning a File or a Path.
+     * @param method the method on the resource interface
+     * @param rangedDownload the RangedDownload to use
+     * @return the builder
+     */
+    @SuppressWarnings("unchecked")
+    public B methodRangedDownload(Method method, RangedDownload rangedDownload) {
+        checkArgument(method != null && method.getDeclaringClass().isAssignableFrom(this.resourceInterface.getInterface()));
+        checkArgument(method.isAnnotationPresent(GET.class), String.format("%s must be a GET", method));
+        RangedDownload.validate(method);
+        this.rangedDownloads.put(method, checkNotNull(rangedDownload));
+        return (B) this;
+    }
+
+    /**
+     * Send the calls of the specified void method in the background. The caller returns as soon as the call is queued
+     * in the {@link AsyncWriter}, and failures are logged instead of being thrown. The AsyncWriter can only be used for
+     * one method of one client, and it should be closed when the client is no longer needed so that the queued calls
+     * get sent.
+     * @param method the void method on the resource interface
+     * @param writer the AsyncWriter to use
+     * @return the builder
+     */
+    public B methodAsyncWrite(Method method, AsyncWriter writer) {
+        return methodAsyncWrite(method, null, writer);
+    }
+
+    /**
+     * Send the calls of the specified void method in the background, batching the arguments of queued calls into a
+     * single call of the batch method. The method must take a single argument, and the batch method must take a single
+     * List or Collection of such arguments.
+     * @param method the void method on the resource interface
+     * @param batchMethod the method that sends several arguments at once, may be null
+     * @param writer the AsyncWriter to use
+     * @return the builder
+     */
+    @SuppressWarnings("unchecked")
+    public B methodAsyncWrite(Method method, Method batchMethod, AsyncWriter writer) {
+        checkArgument(method != null && method.getDeclaringClass().isAssignableFrom(this.resourceInterface.getInterface()));
+        checkArgument(batchMethod == null
+                      || batchMethod.getDeclaringClass().isAssignableFrom(this.resourceInterface.getInterface()));
+        AsyncWriter.validate(method, batchMethod);
+        this.asyncWriters.put(method, checkNotNull(writer));
+        if (batchMethod == null) {
+            this.batchMethods.remove(method);
+        }
+        else {
+            this.batchMethods.put(method, batchMethod);
+        }
+        return (B) this;
+    }
+
     @SuppressWarnings("unchecked")
     public B clientErrorInterceptors(List<ClientErrorInterceptor> clientErrorInterceptors) {
         this.clientErrorInterceptors = checkNotNull(clientErrorInterceptors);
@@ -131,23 +350,145 @@ public abstract class Client<T, B extends Client<T, B>> {
         return this.clientProviders;
     }
 
+    /**
+     * Warm up the client before build() returns it, so that its first calls don't pay for provider lookups, class
+     * loading and connection setup. See {@link ClientWarmUp} for what is done. Connections are only opened when the
+     * ClientExecutor is a {@link ConnectionWarmer}, and warming up never makes build() fail.
+     * @param connectionsPerEndpoint the number of connections to open, 0 to only resolve the providers
+     * @return the builder
+     */
+    @SuppressWarnings("unchecked")
+    public B warmUp(int connectionsPerEndpoint) {
+        checkArgument(connectionsPerEndpoint >= 0, "connectionsPerEndpoint must not be negative");
+        this.warmUpConnections = connectionsPerEndpoint;
+        return (B) this;
+    }
+
     public T build() {
+        ProxyConfig config = createProxyConfig();
+        Map<Method, MethodInvoker> invokers = new HashMap<>(createMethodInvokers(config));
+        invokers.putAll(startAsyncWriters(invokers));
+        return withWarmUp(createProxy(invokers, config));
+    }
+
+    /**
+     * Warms up the finished client if the builder was configured to do so.
+     * @param client the finished client
+     * @return the same client
+     */
+    protected T withWarmUp(T client) {
+        if (this.warmUpConnections >= 0) {
+            new ClientWarmUp(this.resourceInterface.getInterface(), this.uriProvider, this.executor, this.clientProviders)
+                    .warm(client, this.warmUpConnections);
+        }
+        return client;
+    }
+
+    /**
+     * Starts the AsyncWriters and returns the MethodInvokers that queue the calls of the methods configured with one.
+     * The client dispatches those methods to the returned MethodInvokers, every other method keeps its own. The queued
+     * calls are sent through the specified MethodInvokers, so subclasses that wrap each call should pass the wrapped
+     * ones.
+     * @param senders the MethodInvokers that send the calls, for all methods of the resource interface
+     * @return the MethodInvokers that queue calls, only for the methods configured with an AsyncWriter
+     */
+    protected Map<Method, MethodInvoker> startAsyncWriters(Map<Method, MethodInvoker> senders) {
+        Map<Method, MethodInvoker> asyncInvokers = new HashMap<>();
+        for (Map.Entry<Method, AsyncWriter> entry : this.asyncWriters.entrySet()) {
+            Method batchMethod = this.batchMethods.get(entry.getKey());
+            MethodInvoker batchSender = batchMethod == null ? null : senders.get(batchMethod);
+            asyncInvokers.put(entry.getKey(), entry.getValue().start(senders.get(entry.getKey()), batchSender));
+        }
+        return asyncInvokers;
+    }
+
+    /**
+     * Validates the builder and creates the ProxyConfig shared by all the MethodInvokers of the client.
+     * @return the ProxyConfig
+     */
+    protected ProxyConfig createProxyConfig() {
         if (this.executor == null)
             throw new IllegalArgumentException("You must provide a ClientExecutor");
         if (this.clientProviders == null)
             throw new IllegalArgumentException("you must specify a MessageBodyWriter and a MessageBodyReader for serialization");
 
-        final ProxyConfig config = new ProxyConfig(this.loader, this.executor, this.clientProviders, new DefaultEntityExtractorFactory(),
-                                                   this.errorStatusCriteria, getClientErrorHandler());
-        return createProxy(this.resourceInterface.getInterface(), this.uriProvider, config);
+        return ProxyConfig.builder(this.loader, this.executor, this.clientProviders, getEntityExtractorFactory(),
+                                   this.errorStatusCriteria, getClientErrorHandler())
+                .retryPolicies(ImmutableMap.copyOf(this.retryPolicies))
+                .retryBudget(this.retryBudget)
+                .concurrencyLimiters(getInvokerConcurrencyLimiters())
+                .circuitBreakers(ImmutableMap.copyOf(this.circuitBreakers))
+                .readTimeouts(getReadTimeouts())
+                .compressionThresholds(ImmutableMap.copyOf(this.compressionThresholds))
+                .build();
+    }
+
+    /**
+     * Creates the MethodInvokers that perform the http calls for the methods of the resource interface. Subclasses that
+     * wrap each call can use them to make the calls directly instead of going through the proxy.
+     * @param config the ProxyConfig to use
+     * @return the MethodInvokers for all methods of the resource interface
+     */
+    protected Map<Method, MethodInvoker> createMethodInvokers(ProxyConfig config) {
+        Map<Method, MethodInvoker> invokers = createMethodInvokers(this.resourceInterface.getInterface(), this.uriProvider,
+                                                                   config);
+        for (Map.Entry<Method, RangedDownload> entry : this.rangedDownloads.entrySet()) {
+            ((ClientInvoker) invokers.get(entry.getKey())).setRangedDownload(entry.getValue());
+        }
+        return invokers;
+    }
+
+    /**
+     * Creates the client proxy that dispatches to the specified MethodInvokers.
+     * @param invokers the MethodInvokers for all methods of the resource interface
+     * @param config the ProxyConfig to use
+     * @return the client proxy
+     */
+    protected T createProxy(Map<Method, MethodInvoker> invokers, ProxyConfig config) {
+        return createProxy(this.resourceInterface.getInterface(), invokers, config);
+    }
+
+    /**
+     * @return the ConcurrencyLimiters configured for the methods of the resource interface
+     */
+    protected Map<Method, ConcurrencyLimiter> getConcurrencyLimiters() {
+        return ImmutableMap.copyOf(this.concurrencyLimiters);
+    }
+
+    /**
+     * The ConcurrencyLimiters that the generated proxy enforces right before calling the ClientExecutor. Subclasses that
+     * wrap the proxy and enforce the limits themselves should return an empty map.
+     * @return the ConcurrencyLimiters to be enforced by the proxy
+     */
+    protected Map<Method, ConcurrencyLimiter> getInvokerConcurrencyLimiters() {
+        return getConcurrencyLimiters();
+    }
+
+    /**
+     * @return the read timeouts in milliseconds configured for the methods of the resource interface
+     */
+    protected Map<Method, Integer> getReadTimeouts() {
+        return ImmutableMap.copyOf(this.readTimeouts);
     }
 
     protected ClientErrorHandler getClientErrorHandler() {
         return new DefaultClientErrorHandler(this.clientErrorInterceptors);
     }
 
-    @SuppressWarnings("unchecked")
+    /**
+     * The EntityExtractorFactory decides how the response is turned into the return value of each method. Subclasses
+     * that support additional return types can provide their own.
+     * @return the EntityExtractorFactory to use
+     */
+    protected EntityExtractorFactory getEntityExtractorFactory() {
+        return new DefaultEntityExtractorFactory();
+    }
+
     static <S> S createProxy(final Class<S> iface, UriProvider uriProvider, final ProxyConfig config) {
+        return createProxy(iface, createMethodInvokers(iface, uriProvider, config), config);
+    }
+
+    static Map<Method, MethodInvoker> createMethodInvokers(Class<?> iface, UriProvider uriProvider, ProxyConfig config) {
         HashMap<Method, MethodInvoker> methodMap = new HashMap<Method, MethodInvoker>();
         for (Method method : iface.getMethods()) {
             MethodInvoker invoker;
@@ -159,7 +500,11 @@ public abstract class Client<T, B extends Client<T, B>> {
             }
             methodMap.put(method, invoker);
         }
+        return methodMap;
+    }
 
+    @SuppressWarnings("unchecked")
+    static <S> S createProxy(final Class<S> iface, Map<Method, MethodInvoker> methodMap, final ProxyConfig config) {
         Class<?>[] intfs = { iface };
 
         ClientProxy clientProxy = new ClientProxy(methodMap, config);
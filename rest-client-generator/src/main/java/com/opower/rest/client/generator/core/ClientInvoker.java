@@ -14,20 +14,32 @@
  **/
 package com.opower.rest.client.generator.core;
 
+import com.google.common.base.Predicate;
+import com.opower.rest.client.generator.breaker.CircuitBreaker;
+import com.opower.rest.client.generator.breaker.CircuitBreakerOpenException;
 import com.opower.rest.client.generator.extractors.ClientRequestContext;
 import com.opower.rest.client.generator.extractors.EntityExtractor;
 import com.opower.rest.client.generator.extractors.EntityExtractorFactory;
+import com.opower.rest.client.generator.limiter.ConcurrencyLimitExceededException;
+import com.opower.rest.client.generator.limiter.ConcurrencyLimiter;
 import com.opower.rest.client.generator.marshallers.ClientMarshallerFactory;
 import com.opower.rest.client.generator.marshallers.Marshaller;
+import com.opower.rest.client.generator.retry.RetryBudget;
+import com.opower.rest.client.generator.retry.RetryPolicy;
 import com.opower.rest.client.generator.specimpl.UriBuilderImpl;
 import com.opower.rest.client.generator.util.MediaTypeHelper;
 
 import javax.ws.rs.Path;
 import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
+import java.io.IOException;
 import java.lang.reflect.Method;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
 
 import static com.google.common.base.Preconditions.checkNotNull;
+import static com.opower.rest.client.generator.util.HttpResponseCodes.SC_SERVICE_UNAVAILABLE;
+import static com.opower.rest.client.generator.util.HttpResponseCodes.SC_TOO_MANY_REQUESTS;
 
 /**
  * @author <a href="mailto:bill@burkecentral.com">Bill Burke</a>
@@ -45,6 +57,13 @@ public class ClientInvoker implements MethodInvoker {
     protected EntityExtractor extractor;
     protected EntityExtractorFactory extractorFactory;
     protected UriProvider baseUriProvider;
+    protected RetryPolicy retryPolicy;
+    protected ConcurrencyLimiter concurrencyLimiter;
+    protected CircuitBreaker circuitBreaker;
+    protected Predicate<Integer> errorStatusCriteria;
+    protected int readTimeout;
+    protected int compressionThreshold;
+    protected RangedDownload rangedDownload;
     private final ProxyConfig proxyConfig;
 
 
@@ -58,6 +77,13 @@ public class ClientInvoker implements MethodInvoker {
         this.baseUriProvider = checkNotNull(baseUriProvider);
         this.extractorFactory = config.getExtractorFactory();
         this.extractor = extractorFactory.createExtractor(method);
+        this.concurrencyLimiter = config.getConcurrencyLimiters().get(method);
+        this.circuitBreaker = config.getCircuitBreakers().get(method);
+        this.errorStatusCriteria = config.getErrorStatusCriteria().get(method);
+        Integer timeout = config.getReadTimeouts().get(method);
+        this.readTimeout = timeout == null ? 0 : timeout;
+        Integer threshold = config.getCompressionThresholds().get(method);
+        this.compressionThreshold = threshold == null ? -1 : threshold;
     }
 
     public Method getMethod() {
@@ -65,21 +91,135 @@ public class ClientInvoker implements MethodInvoker {
     }
 
     public Object invoke(Object[] args) {
+        return invoke(args, new AbortHandle());
+    }
 
-        ClientRequest request = createRequest(args);
-
-        BaseClientResponse clientResponse = null;
-        try {
-            clientResponse = (BaseClientResponse) request.execute(this.httpMethod);
-        } catch (Exception e) {
-            throw new RuntimeException(e);
+    /**
+     * Invokes the method with an AbortHandle that lets another thread abort the request while it is in flight. Once the
+     * handle has been aborted no more retries are attempted.
+     * @param args the arguments of the method
+     * @param abortHandle the AbortHandle to use
+     * @return the result of the method
+     */
+    public Object invoke(Object[] args, AbortHandle abortHandle) {
+        if (this.rangedDownload != null) {
+            return this.rangedDownload.download(this, args, abortHandle);
         }
+        ClientRequest request = createRequest(args).abortHandle(abortHandle);
+        return extract(request, executeRequest(request));
+    }
+
+    /**
+     * Executes the request with the retries, ConcurrencyLimiter and CircuitBreaker configured for the method.
+     */
+    BaseClientResponse executeRequest(ClientRequest request) {
+        return this.retryPolicy == null ? execute(request) : executeWithRetries(request);
+    }
+
+    /**
+     * Turns the response into the return value of the method.
+     */
+    Object extract(ClientRequest request, BaseClientResponse clientResponse) {
         clientResponse.setAttributeExceptionsTo(this.method.toString());
         clientResponse.setAnnotations(this.method.getAnnotations());
         ClientRequestContext clientRequestContext = new ClientRequestContext(request, clientResponse, this.proxyConfig.getClientErrorHandler());
         return this.extractor.extractEntity(clientRequestContext);
     }
 
+    /**
+     * Executes the request once. The CircuitBreaker and the ConcurrencyLimiter configured for the method, if any, must
+     * both let the request through, and they are told the outcome once the response headers have been received.
+     */
+    private BaseClientResponse execute(ClientRequest request) {
+        if (this.circuitBreaker != null && !this.circuitBreaker.tryAcquire()) {
+            throw new CircuitBreakerOpenException(this.method.toString());
+        }
+        if (this.concurrencyLimiter != null && !this.concurrencyLimiter.tryAcquire()) {
+            if (this.circuitBreaker != null) {
+                this.circuitBreaker.cancel();
+            }
+            throw new ConcurrencyLimitExceededException(this.method.toString(), this.concurrencyLimiter.getLimit());
+        }
+        long start = System.nanoTime();
+        BaseClientResponse response = null;
+        try {
+            response = (BaseClientResponse) request.execute(this.httpMethod);
+            return response;
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        } finally {
+            long duration = System.nanoTime() - start;
+            if (this.concurrencyLimiter != null) {
+                this.concurrencyLimiter.release(duration, response == null || isOverloaded(response.getStatus()));
+            }
+            if (this.circuitBreaker != null) {
+                this.circuitBreaker.onResult(duration, response == null || isError(response.getStatus()));
+            }
+        }
+    }
+
+    private static boolean isOverloaded(int status) {
+        return status == SC_SERVICE_UNAVAILABLE || status == SC_TOO_MANY_REQUESTS;
+    }
+
+    private boolean isError(int status) {
+        return this.errorStatusCriteria != null && this.errorStatusCriteria.apply(status);
+    }
+
+    /**
+     * Executes the request, retrying failures according to the RetryPolicy for as long as the RetryBudget allows.
+     * When no more retries are possible, the last failure is thrown or the last response is returned.
+     */
+    private BaseClientResponse executeWithRetries(ClientRequest request) {
+        RetryBudget budget = this.proxyConfig.getRetryBudget();
+        budget.deposit();
+        try {
+            request.bufferBody();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        for (int retry = 0; ; retry++) {
+            BaseClientResponse response;
+            try {
+                response = execute(request);
+            } catch (RuntimeException e) {
+                if (canRetry(request, retry) && this.retryPolicy.isRetryable(e) && budget.tryWithdraw()) {
+                    backoff(retry);
+                    continue;
+                }
+                throw e;
+            }
+            if (canRetry(request, retry) && this.retryPolicy.isRetryable(response.getStatus()) && budget.tryWithdraw()) {
+                response.releaseConnection();
+                backoff(retry);
+                continue;
+            }
+            return response;
+        }
+    }
+
+    /**
+     * Requests that have been aborted, for instance because the caller timed out, are never retried. Neither are requests
+     * with a streamed body, which is gone once it has been written.
+     */
+    private boolean canRetry(ClientRequest request, int retry) {
+        return retry < this.retryPolicy.getMaxRetries()
+               && !request.getAbortHandle().isAborted()
+               && !request.isBodyStreamed();
+    }
+
+    private void backoff(int retry) {
+        long delay = this.retryPolicy.backoffMillis(retry, ThreadLocalRandom.current());
+        if (delay > 0) {
+            try {
+                TimeUnit.MILLISECONDS.sleep(delay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
     protected ClientRequest createRequest(Object[] args) {
         UriBuilderImpl uri = new UriBuilderImpl();
         uri.uri(this.baseUriProvider.getUri());
@@ -90,6 +230,8 @@ public class ClientInvoker implements MethodInvoker {
 
         boolean isClientResponseResult = ClientResponse.class.isAssignableFrom(this.method.getReturnType());
         request.followRedirects(!isClientResponseResult || this.followRedirects);
+        request.readTimeout(this.readTimeout);
+        request.compressionThreshold(this.compressionThreshold);
 
         for (int i = 0; i < this.marshallers.length; i++) {
             this.marshallers[i].build(request, args[i]);
@@ -97,8 +239,21 @@ public class ClientInvoker implements MethodInvoker {
         return request;
     }
 
+    /**
+     * Download the response of the method in parallel byte ranges. The method must return a File or a Path.
+     * @param rangedDownload the RangedDownload to use, or null to download in a single request
+     */
+    public void setRangedDownload(RangedDownload rangedDownload) {
+        if (rangedDownload != null) {
+            RangedDownload.validate(this.method);
+        }
+        this.rangedDownload = rangedDownload;
+    }
+
     public void setHttpMethod(String httpMethod) {
         this.httpMethod = httpMethod;
+        RetryPolicy policy = this.proxyConfig.getRetryPolicies().get(this.method);
+        this.retryPolicy = policy != null && policy.appliesTo(httpMethod) ? policy : null;
     }
 
 }
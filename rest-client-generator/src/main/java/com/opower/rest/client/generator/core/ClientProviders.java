@@ -19,6 +19,7 @@ import com.opower.rest.client.generator.util.Types;
 import java.lang.annotation.Annotation;
 import java.lang.reflect.Type;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 import javax.ws.rs.Consumes;
 import javax.ws.rs.Produces;
 import javax.ws.rs.core.MediaType;
@@ -36,6 +37,8 @@ public class ClientProviders implements Providers {
 
     protected MediaTypeMap<SortedKey<MessageBodyReader>> messageBodyReaders = new MediaTypeMap<>();
     protected MediaTypeMap<SortedKey<MessageBodyWriter>> messageBodyWriters = new MediaTypeMap<>();
+    protected List<StreamingMessageBodyReader> streamingReaders = new CopyOnWriteArrayList<>();
+    protected List<StreamingMessageBodyWriter> streamingWriters = new CopyOnWriteArrayList<>();
 
     public ClientProviders() {
         // register the builtins
@@ -75,6 +78,44 @@ public class ClientProviders implements Providers {
         return null;
     }
 
+    /**
+     * Find the StreamingMessageBodyReader for elements of the given type. Readers registered by the user are preferred
+     * over the builtin ones.
+     * @param type the class of the elements
+     * @param genericType the generic type of the elements
+     * @param annotations the annotations of the resource method
+     * @param mediaType the media type of the body
+     * @return the reader or null if none can read the elements
+     */
+    public StreamingMessageBodyReader getStreamingReader(Class<?> type, Type genericType, Annotation[] annotations,
+                                                         MediaType mediaType) {
+        for (StreamingMessageBodyReader reader : this.streamingReaders) {
+            if (reader.isReadable(type, genericType, annotations, mediaType)) {
+                return reader;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Find the StreamingMessageBodyWriter for elements of the given type. Writers registered by the user are preferred
+     * over the builtin ones.
+     * @param type the class of the elements
+     * @param genericType the generic type of the elements
+     * @param annotations the annotations of the parameter
+     * @param mediaType the media type of the body
+     * @return the writer or null if none can write the elements
+     */
+    public StreamingMessageBodyWriter getStreamingWriter(Class<?> type, Type genericType, Annotation[] annotations,
+                                                         MediaType mediaType) {
+        for (StreamingMessageBodyWriter writer : this.streamingWriters) {
+            if (writer.isWriteable(type, genericType, annotations, mediaType)) {
+                return writer;
+            }
+        }
+        return null;
+    }
+
     @Override
     public <T extends Throwable> ExceptionMapper<T> getExceptionMapper(Class<T> type) {
         return null;
@@ -144,7 +185,7 @@ public class ClientProviders implements Providers {
     }
 
     /**
-     * Register a @Provider class.  Can be a MessageBodyReader/Writer or ExceptionMapper.
+     * Register a @Provider class.  Can be a MessageBodyReader/Writer, StreamingMessageBodyReader/Writer or ExceptionMapper.
      *
      * @param provider
      */
@@ -167,6 +208,22 @@ public class ClientProviders implements Providers {
                 throw new RuntimeException("Unable to instantiate MessageBodyWriter", e);
             }
         }
+        if (provider instanceof StreamingMessageBodyReader) {
+            if (builtin) {
+                this.streamingReaders.add((StreamingMessageBodyReader) provider);
+            }
+            else {
+                this.streamingReaders.add(0, (StreamingMessageBodyReader) provider);
+            }
+        }
+        if (provider instanceof StreamingMessageBodyWriter) {
+            if (builtin) {
+                this.streamingWriters.add((StreamingMessageBodyWriter) provider);
+            }
+            else {
+                this.streamingWriters.add(0, (StreamingMessageBodyWriter) provider);
+            }
+        }
     }
 
     /**
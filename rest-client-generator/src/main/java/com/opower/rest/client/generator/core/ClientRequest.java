@@ -21,6 +21,7 @@ import com.opower.rest.client.generator.util.Encode;
 import com.opower.rest.client.generator.util.HttpHeaderNames;
 import com.opower.rest.client.generator.util.StringConverter;
 import com.opower.rest.client.generator.util.StringConverters;
+import com.opower.rest.client.generator.util.Types;
 
 import javax.ws.rs.core.Cookie;
 import javax.ws.rs.core.HttpHeaders;
@@ -28,14 +29,23 @@ import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.MultivaluedMap;
 import javax.ws.rs.ext.MessageBodyWriter;
 import javax.ws.rs.ext.Providers;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.lang.annotation.Annotation;
 import java.lang.reflect.Method;
+import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Path;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 
+import static com.google.common.base.Preconditions.checkNotNull;
+
 /**
  * Create a hand coded request to send to the server.  You call methods like accept(), body(), pathParameter()
  * etc. to create the state of the request.  Then you call a get(), post(), etc. method to execute the request.
@@ -68,6 +78,12 @@ public class ClientRequest implements Cloneable {
     protected String httpMethod;
     protected String finalUri;
     protected List<String> pathParameterList;
+    protected byte[] bufferedBody;
+    protected boolean filtersProcessed;
+    protected int readTimeoutMillis;
+    protected int compressionThreshold = -1;
+    protected AbortHandle abortHandle = new AbortHandle();
+    protected Object responseSink;
 
     public ClientRequest(String uriTemplate, ClientExecutor executor, ProxyConfig proxyConfig, Method method) {
         this((UriBuilderImpl) new UriBuilderImpl().uriTemplate(uriTemplate), executor, proxyConfig, method);
@@ -89,6 +105,91 @@ public class ClientRequest implements Cloneable {
         return this;
     }
 
+    /**
+     * @return the read timeout in milliseconds for this request, or 0 if the executor's default should be used
+     */
+    public int getReadTimeout() {
+        return readTimeoutMillis;
+    }
+
+    /**
+     * Override the read (socket) timeout of the executor for this request only.
+     *
+     * @param readTimeoutMillis the timeout in milliseconds, 0 to use the executor's default
+     * @return the request
+     */
+    public ClientRequest readTimeout(int readTimeoutMillis) {
+        this.readTimeoutMillis = readTimeoutMillis;
+        return this;
+    }
+
+    /**
+     * @return the OutputStream or WritableByteChannel the response body is copied into, or null if there is none
+     */
+    public Object getResponseSink() {
+        return responseSink;
+    }
+
+    /**
+     * Copy the response body into the given OutputStream or WritableByteChannel instead of returning it.
+     *
+     * @param responseSink the sink, which is not closed after the body has been copied
+     * @return the request
+     */
+    public ClientRequest responseSink(Object responseSink) {
+        this.responseSink = responseSink;
+        return this;
+    }
+
+    /**
+     * @return the size in bytes from which the body is compressed with gzip, or -1 if it is never compressed
+     */
+    public int getCompressionThreshold() {
+        return compressionThreshold;
+    }
+
+    /**
+     * Compress bodies of at least the given size with gzip.
+     *
+     * @param compressionThreshold the size in bytes, -1 to never compress
+     * @return the request
+     */
+    public ClientRequest compressionThreshold(int compressionThreshold) {
+        this.compressionThreshold = compressionThreshold;
+        return this;
+    }
+
+    /**
+     * Check whether the executor should compress a body of the given length. Bodies that already have a
+     * Content-Encoding header are left alone.
+     *
+     * @param length the length of the serialized body, or -1 if it is streamed and the length is unknown
+     * @return true if the body should be sent gzip compressed
+     */
+    public boolean shouldCompressBody(long length) {
+        return compressionThreshold >= 0
+                && (length < 0 || length >= compressionThreshold)
+                && (headers == null || headers.getFirst(HttpHeaderNames.CONTENT_ENCODING) == null);
+    }
+
+    /**
+     * @return the AbortHandle the executor registers the in flight exchange with
+     */
+    public AbortHandle getAbortHandle() {
+        return abortHandle;
+    }
+
+    /**
+     * Use the specified AbortHandle so that the caller can abort the request while it is in flight.
+     *
+     * @param abortHandle the AbortHandle to use
+     * @return the request
+     */
+    public ClientRequest abortHandle(AbortHandle abortHandle) {
+        this.abortHandle = checkNotNull(abortHandle);
+        return this;
+    }
+
     public ClientRequest accept(MediaType accepts) {
         return header(HttpHeaderNames.ACCEPT, accepts.toString());
     }
@@ -240,18 +341,95 @@ public class ClientRequest implements Cloneable {
         return this.proxyConfig.getErrorStatusCriteria().get(this.method);
     }
 
+    /**
+     * Send the request. The ClientRequestFilters are only applied the first time a request is executed so that
+     * executing it again, for instance to retry it, doesn't apply them twice.
+     *
+     * @param httpMethod the http method to use
+     * @return the response
+     * @throws Exception if the request couldn't be sent
+     */
     public ClientResponse execute(String httpMethod) throws Exception {
         this.httpMethod = httpMethod;
-        this.executor.processFilters(this);
+        if (!this.filtersProcessed) {
+            this.executor.processFilters(this);
+            this.filtersProcessed = true;
+        }
         BaseClientResponse response = (BaseClientResponse) executor.execute(this);
         return response;
     }
 
+    /**
+     * Serialize the body into memory so that it can be written more than once. Bodies like InputStreams can only be
+     * read once, so this is required before a request is executed again. Calling this more than once, or on a request
+     * without a body, has no effect. Iterator bodies are never buffered since they are meant to be too large for memory,
+     * so they can't be sent again. File and ByteBuffer bodies aren't buffered either since they can simply be read
+     * again.
+     *
+     * @throws IOException if the body couldn't be serialized
+     */
+    public void bufferBody() throws IOException {
+        if (body == null || bufferedBody != null || isBodyStreamed() || getBodyFile() != null
+            || body instanceof ByteBuffer) {
+            return;
+        }
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        writeRequestBody(getHeadersAsObjects(), buffer);
+        bufferedBody = buffer.toByteArray();
+    }
+
+    public boolean isBodyBuffered() {
+        return bufferedBody != null;
+    }
+
+    /**
+     * @return the file to send if the body is a File or a Path of the default file system, otherwise null. Executors
+     * can send it straight from the file with a known Content-Length instead of serializing it in memory.
+     */
+    public File getBodyFile() {
+        if (body instanceof File) {
+            return (File) body;
+        }
+        if (body instanceof Path) {
+            try {
+                return ((Path) body).toFile();
+            } catch (UnsupportedOperationException e) {
+                return null;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return a duplicate of the body if it is a ByteBuffer, otherwise null. Executors can send its remaining bytes
+     * with a known Content-Length without copying them into a byte array first.
+     */
+    public ByteBuffer getBodyBuffer() {
+        return body instanceof ByteBuffer ? ((ByteBuffer) body).duplicate() : null;
+    }
+
+    /**
+     * @return true if the body is an Iterator whose elements are written as they are taken from it, or a
+     * ReadableByteChannel copied as it is read, in which case its length isn't known up front and it can only be
+     * written once
+     */
+    public boolean isBodyStreamed() {
+        return body instanceof Iterator || body instanceof ReadableByteChannel;
+    }
+
     public void writeRequestBody(MultivaluedMap<String, Object> headers,
                                  OutputStream outputStream) throws IOException {
         if (body == null) {
             return;
         }
+        if (bufferedBody != null) {
+            outputStream.write(bufferedBody);
+            return;
+        }
+        if (body instanceof Iterator) {
+            writeStreamedBody(headers, outputStream);
+            return;
+        }
 
         MessageBodyWriter writer = this.proxyConfig.getProviders().getMessageBodyWriter(bodyType,
                 bodyGenericType, bodyAnnotations, bodyContentType);
@@ -264,6 +442,24 @@ public class ClientRequest implements Cloneable {
                 headers, outputStream);
     }
 
+    private void writeStreamedBody(MultivaluedMap<String, Object> headers, OutputStream outputStream) throws IOException {
+        Type elementType = bodyGenericType instanceof ParameterizedType
+                ? ((ParameterizedType) bodyGenericType).getActualTypeArguments()[0]
+                : Object.class;
+        Class<?> elementClass = Types.getRawType(elementType);
+        Providers providers = this.proxyConfig.getProviders();
+        StreamingMessageBodyWriter writer = providers instanceof ClientProviders
+                ? ((ClientProviders) providers).getStreamingWriter(elementClass, elementType, bodyAnnotations,
+                                                                   bodyContentType)
+                : null;
+        if (writer == null) {
+            throw new RuntimeException("could not find streaming writer for content-type "
+                    + bodyContentType + " type: " + elementType);
+        }
+        writer.writeElements((Iterator<?>) body, elementClass, elementType, bodyAnnotations, bodyContentType, headers,
+                             outputStream, providers);
+    }
+
     /**
      * This method populates all path, matrix, and query parameters and saves it
      * internally. Once its called once it returns the cached value.
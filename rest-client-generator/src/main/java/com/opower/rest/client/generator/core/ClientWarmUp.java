@@ -0,0 +1,150 @@
+/**
+ *    Copyright 2014 Opower, Inc.
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ **/
+package com.opower.rest.client.generator.core;
+
+import com.opower.rest.client.generator.marshallers.ClientMarshallerFactory;
+import com.opower.rest.client.generator.marshallers.Marshaller;
+import com.opower.rest.client.generator.marshallers.MessageBodyParameterMarshaller;
+import com.opower.rest.client.generator.util.IsHttpMethod;
+import com.opower.rest.client.generator.util.MediaTypeHelper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.Method;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Does the work the first calls of a new client would otherwise do on the critical path: looking up the
+ * MessageBodyReaders and MessageBodyWriters for the types of every resource method, loading the classes along the
+ * proxy dispatch path and, when the ClientExecutor is a {@link ConnectionWarmer}, opening pooled connections.
+ * <p/>
+ * Warming up is best effort. Failures are logged rather than thrown because a client that could not be warmed up still
+ * works, only its first calls are slower.
+ */
+public final class ClientWarmUp {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ClientWarmUp.class);
+
+    private final Class<?> resourceInterface;
+    private final UriProvider uriProvider;
+    private final ClientExecutor executor;
+    private final ClientProviders providers;
+
+    /**
+     * Creates a ClientWarmUp.
+     * @param resourceInterface the resource interface of the client
+     * @param uriProvider the UriProvider of the client, asked for an endpoint once per connection to open
+     * @param executor the ClientExecutor of the client
+     * @param providers the providers registered with the client
+     */
+    public ClientWarmUp(Class<?> resourceInterface, UriProvider uriProvider, ClientExecutor executor,
+                        ClientProviders providers) {
+        this.resourceInterface = checkNotNull(resourceInterface);
+        this.uriProvider = checkNotNull(uriProvider);
+        this.executor = checkNotNull(executor);
+        this.providers = checkNotNull(providers);
+    }
+
+    /**
+     * Warms up the specified client. The UriProvider is asked for an endpoint once for every connection, so providers
+     * that rotate between several servers spread the connections over them.
+     * @param client the client built for the resource interface
+     * @param connectionsPerEndpoint the number of connections to open, 0 to only resolve the providers
+     * @return the number of connections that were opened
+     */
+    public int warm(Object client, int connectionsPerEndpoint) {
+        checkNotNull(client);
+        checkArgument(connectionsPerEndpoint >= 0, "connectionsPerEndpoint must not be negative");
+        long start = System.nanoTime();
+        int resolved = resolveProviders();
+        // hashCode and toString are answered by the proxy itself, so they load the dispatch path without a request
+        client.hashCode();
+        client.toString();
+        int opened = connectionsPerEndpoint > 0 ? openConnections(connectionsPerEndpoint) : 0;
+        LOG.info("Warmed up client for {} in {}ms: resolved {} providers and opened {} connections",
+                 this.resourceInterface.getName(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start),
+                 resolved, opened);
+        return opened;
+    }
+
+    /**
+     * Looks up the MessageBodyReader for the return type and the MessageBodyWriter for the body of every resource
+     * method, which populates the lookup cache of the providers.
+     * @return the number of providers found
+     */
+    int resolveProviders() {
+        int resolved = 0;
+        for (Method method : this.resourceInterface.getMethods()) {
+            if (!IsHttpMethod.isHttpMethod(method)) {
+                continue;
+            }
+            try {
+                resolved += resolveReader(method) + resolveWriters(method);
+            } catch (RuntimeException e) {
+                LOG.warn("Could not resolve the providers for {}", method, e);
+            }
+        }
+        return resolved;
+    }
+
+    private int resolveReader(Method method) {
+        Class<?> type = method.getReturnType();
+        if (type == void.class || Response.class.isAssignableFrom(type) || type == Response.Status.class) {
+            return 0;
+        }
+        MediaType produces = MediaTypeHelper.getProduces(this.resourceInterface, method);
+        return this.providers.getMessageBodyReader(type, method.getGenericReturnType(), method.getAnnotations(),
+                                                   produces) != null ? 1 : 0;
+    }
+
+    private int resolveWriters(Method method) {
+        int resolved = 0;
+        for (Marshaller marshaller : ClientMarshallerFactory.createMarshallers(this.resourceInterface, method)) {
+            if (marshaller instanceof MessageBodyParameterMarshaller) {
+                MessageBodyParameterMarshaller body = (MessageBodyParameterMarshaller) marshaller;
+                if (this.providers.getMessageBodyWriter(body.getType(), body.getGenericType(), body.getAnnotations(),
+                                                        body.getMediaType()) != null) {
+                    resolved++;
+                }
+            }
+        }
+        return resolved;
+    }
+
+    private int openConnections(int connectionsPerEndpoint) {
+        if (!(this.executor instanceof ConnectionWarmer)) {
+            LOG.debug("{} does not support opening connections ahead of time", this.executor.getClass().getName());
+            return 0;
+        }
+        try {
+            List<URI> endpoints = new ArrayList<>(connectionsPerEndpoint);
+            for (int i = 0; i < connectionsPerEndpoint; i++) {
+                endpoints.add(this.uriProvider.getUri());
+            }
+            return ((ConnectionWarmer) this.executor).warmConnections(endpoints);
+        } catch (RuntimeException e) {
+            LOG.warn("Could not open connections for {}", this.resourceInterface.getName(), e);
+            return 0;
+        }
+    }
+}
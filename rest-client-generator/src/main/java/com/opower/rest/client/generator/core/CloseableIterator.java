@@ -0,0 +1,27 @@
+/**
+ *    Copyright 2014 Opower, Inc.
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ **/
+package com.opower.rest.client.generator.core;
+
+import java.io.Closeable;
+import java.util.Iterator;
+
+/**
+ * Iterator over the elements of a response that is read while iterating. The connection of the response is released
+ * when the last element has been read or when the iterator is closed, whichever happens first, so callers that stop
+ * early should close it.
+ * @param <T> the type of the elements
+ */
+public interface CloseableIterator<T> extends Iterator<T>, Closeable {
+}
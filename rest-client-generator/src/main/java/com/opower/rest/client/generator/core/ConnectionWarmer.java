@@ -0,0 +1,33 @@
+/**
+ *    Copyright 2014 Opower, Inc.
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ **/
+package com.opower.rest.client.generator.core;
+
+import java.net.URI;
+import java.util.List;
+
+/**
+ * Implemented by ClientExecutors that keep a pool of connections and can open them ahead of the first request, so that
+ * the TCP and TLS handshakes aren't paid for by the first calls a freshly started client makes.
+ */
+public interface ConnectionWarmer {
+
+    /**
+     * Opens a connection for every entry of the list and returns it to the pool. An endpoint that appears n times gets
+     * n connections.
+     * @param endpoints the endpoints to connect to, only their scheme, host and port matter
+     * @return the number of connections that were opened
+     */
+    int warmConnections(List<URI> endpoints);
+}
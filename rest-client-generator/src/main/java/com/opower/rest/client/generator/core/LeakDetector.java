@@ -0,0 +1,168 @@
+/**
+ *    Copyright 2014 Opower, Inc.
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ **/
+package com.opower.rest.client.generator.core;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.ref.PhantomReference;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Releases the resources of objects that became unreachable without being closed, typically responses whose stream the
+ * caller never read to the end or closed. Each tracked object gets a phantom reference that a single daemon thread
+ * waits on, which unlike a finalizer costs nothing at allocation time and doesn't keep the object around for an extra
+ * garbage collection.
+ * <p/>
+ * Leaks are counted and logged. Recording where each object was allocated is expensive, so only one object in every
+ * sampling interval remembers its allocation site, which is then logged along with the leak.
+ */
+public final class LeakDetector {
+
+    public static final int DEFAULT_SAMPLING_INTERVAL = 128;
+
+    private static final Logger LOG = LoggerFactory.getLogger(LeakDetector.class);
+    private static final LeakDetector SHARED = new LeakDetector();
+
+    private final ReferenceQueue<Object> queue = new ReferenceQueue<>();
+    private final Set<Tracker> tracked = Collections.newSetFromMap(new ConcurrentHashMap<Tracker, Boolean>());
+    private final AtomicLong allocations = new AtomicLong();
+    private final AtomicLong leaks = new AtomicLong();
+    private volatile int samplingInterval = DEFAULT_SAMPLING_INTERVAL;
+    private Thread reaper;
+
+    /**
+     * @return the detector shared by all clients
+     */
+    public static LeakDetector shared() {
+        return SHARED;
+    }
+
+    /**
+     * Record the allocation site of one in every samplingInterval tracked objects.
+     * @param samplingInterval 1 to record every allocation site, 0 to record none
+     */
+    public void setSamplingInterval(int samplingInterval) {
+        checkArgument(samplingInterval >= 0, "samplingInterval must not be negative");
+        this.samplingInterval = samplingInterval;
+    }
+
+    /**
+     * Start tracking an object. The cleanup runs on the reaper thread if the object becomes unreachable before the
+     * returned Tracker is closed, so it must not refer to the object itself.
+     * @param referent the object to track
+     * @param cleanup releases the resources of the object
+     * @param description what the object is, for the log
+     * @return the Tracker to close once the resources have been released
+     */
+    public Tracker track(Object referent, Runnable cleanup, String description) {
+        int interval = this.samplingInterval;
+        Throwable allocationSite = interval > 0 && this.allocations.incrementAndGet() % interval == 0
+                ? new Throwable(String.format("%s allocated here", description))
+                : null;
+        Tracker tracker = new Tracker(referent, this, checkNotNull(cleanup), description, allocationSite);
+        this.tracked.add(tracker);
+        startReaper();
+        return tracker;
+    }
+
+    /**
+     * @return the number of tracked objects that were garbage collected without being closed
+     */
+    public long getLeakCount() {
+        return this.leaks.get();
+    }
+
+    /**
+     * @return the number of objects currently tracked
+     */
+    public int getTrackedCount() {
+        return this.tracked.size();
+    }
+
+    private synchronized void startReaper() {
+        if (this.reaper != null) {
+            return;
+        }
+        this.reaper = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                while (true) {
+                    try {
+                        reap(LeakDetector.this.queue.remove());
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+            }
+        }, "leak-detector-reaper");
+        this.reaper.setDaemon(true);
+        this.reaper.start();
+    }
+
+    private void reap(Reference<?> reference) {
+        Tracker tracker = (Tracker) reference;
+        if (!this.tracked.remove(tracker)) {
+            return;
+        }
+        this.leaks.incrementAndGet();
+        if (tracker.allocationSite != null) {
+            LOG.warn("{} was garbage collected without being released", tracker.description, tracker.allocationSite);
+        } else {
+            LOG.warn("{} was garbage collected without being released. Call LeakDetector.shared().setSamplingInterval(1) "
+                     + "to log where leaked objects are allocated", tracker.description);
+        }
+        try {
+            tracker.cleanup.run();
+        } catch (RuntimeException e) {
+            LOG.warn("Could not release {}", tracker.description, e);
+        }
+    }
+
+    /**
+     * Tracks a single object until it is closed.
+     */
+    public static final class Tracker extends PhantomReference<Object> {
+        private final LeakDetector detector;
+        private final Runnable cleanup;
+        private final String description;
+        private final Throwable allocationSite;
+
+        private Tracker(Object referent, LeakDetector detector, Runnable cleanup, String description,
+                        Throwable allocationSite) {
+            super(referent, detector.queue);
+            this.detector = detector;
+            this.cleanup = cleanup;
+            this.description = description;
+            this.allocationSite = allocationSite;
+        }
+
+        /**
+         * Stop tracking the object, its resources have been released.
+         */
+        public void close() {
+            this.detector.tracked.remove(this);
+            clear();
+        }
+    }
+}
@@ -15,11 +15,17 @@
 package com.opower.rest.client.generator.core;
 
 import com.google.common.base.Predicate;
+import com.google.common.collect.ImmutableMap;
+import com.opower.rest.client.generator.breaker.CircuitBreaker;
 import com.opower.rest.client.generator.extractors.ClientErrorHandler;
 import com.opower.rest.client.generator.extractors.EntityExtractorFactory;
+import com.opower.rest.client.generator.limiter.ConcurrencyLimiter;
+import com.opower.rest.client.generator.retry.RetryBudget;
+import com.opower.rest.client.generator.retry.RetryPolicy;
 
 import javax.ws.rs.ext.Providers;
 import java.lang.reflect.Method;
+import java.util.Map;
 import java.util.concurrent.ConcurrentMap;
 
 import static com.google.common.base.Preconditions.checkNotNull;
@@ -33,17 +39,51 @@ public class ProxyConfig {
     private final ConcurrentMap<Method, Predicate<Integer>> errorStatusCriteria;
 
     private final ClientErrorHandler clientErrorHandler;
+    private final Map<Method, RetryPolicy> retryPolicies;
+    private final RetryBudget retryBudget;
+    private final Map<Method, ConcurrencyLimiter> concurrencyLimiters;
+    private final Map<Method, CircuitBreaker> circuitBreakers;
+    private final Map<Method, Integer> readTimeouts;
+    private final Map<Method, Integer> compressionThresholds;
 
     public ProxyConfig(ClassLoader loader, ClientExecutor executor, Providers providers,
                        EntityExtractorFactory extractorFactory,
                        ConcurrentMap<Method, Predicate<Integer>> errorStatusCriteria,
                        ClientErrorHandler clientErrorHandler) {
-        this.loader = checkNotNull(loader);
-        this.executor = checkNotNull(executor);
-        this.providers = checkNotNull(providers);
-        this.extractorFactory = checkNotNull(extractorFactory);
-        this.errorStatusCriteria = checkNotNull(errorStatusCriteria);
-        this.clientErrorHandler = checkNotNull(clientErrorHandler);
+        this(builder(loader, executor, providers, extractorFactory, errorStatusCriteria, clientErrorHandler));
+    }
+
+    protected ProxyConfig(Builder builder) {
+        this.loader = builder.loader;
+        this.executor = builder.executor;
+        this.providers = builder.providers;
+        this.extractorFactory = builder.extractorFactory;
+        this.errorStatusCriteria = builder.errorStatusCriteria;
+        this.clientErrorHandler = builder.clientErrorHandler;
+        this.retryPolicies = builder.retryPolicies;
+        this.retryBudget = builder.retryBudget;
+        this.concurrencyLimiters = builder.concurrencyLimiters;
+        this.circuitBreakers = builder.circuitBreakers;
+        this.readTimeouts = builder.readTimeouts;
+        this.compressionThresholds = builder.compressionThresholds;
+    }
+
+    /**
+     * Creates a Builder with the settings every ProxyConfig needs. The per-method settings default to empty maps and
+     * the retry budget to a new default RetryBudget.
+     * @param loader the ClassLoader used to create the proxy
+     * @param executor the ClientExecutor that performs the requests
+     * @param providers the Providers used for serialization
+     * @param extractorFactory the EntityExtractorFactory used to read responses
+     * @param errorStatusCriteria the per-method criteria for error statuses
+     * @param clientErrorHandler the ClientErrorHandler to use
+     * @return the builder
+     */
+    public static Builder builder(ClassLoader loader, ClientExecutor executor, Providers providers,
+                                  EntityExtractorFactory extractorFactory,
+                                  ConcurrentMap<Method, Predicate<Integer>> errorStatusCriteria,
+                                  ClientErrorHandler clientErrorHandler) {
+        return new Builder(loader, executor, providers, extractorFactory, errorStatusCriteria, clientErrorHandler);
     }
 
     public ClassLoader getLoader() {
@@ -69,4 +109,122 @@ public class ProxyConfig {
     public ConcurrentMap<Method, Predicate<Integer>> getErrorStatusCriteria() {
         return errorStatusCriteria;
     }
+
+    public Map<Method, RetryPolicy> getRetryPolicies() {
+        return retryPolicies;
+    }
+
+    public RetryBudget getRetryBudget() {
+        return retryBudget;
+    }
+
+    public Map<Method, ConcurrencyLimiter> getConcurrencyLimiters() {
+        return concurrencyLimiters;
+    }
+
+    public Map<Method, CircuitBreaker> getCircuitBreakers() {
+        return circuitBreakers;
+    }
+
+    public Map<Method, Integer> getReadTimeouts() {
+        return readTimeouts;
+    }
+
+    public Map<Method, Integer> getCompressionThresholds() {
+        return compressionThresholds;
+    }
+
+    /**
+     * Builder for ProxyConfig instances.
+     */
+    public static class Builder {
+        private final ClassLoader loader;
+        private final ClientExecutor executor;
+        private final Providers providers;
+        private final EntityExtractorFactory extractorFactory;
+        private final ConcurrentMap<Method, Predicate<Integer>> errorStatusCriteria;
+        private final ClientErrorHandler clientErrorHandler;
+        private Map<Method, RetryPolicy> retryPolicies = ImmutableMap.of();
+        private RetryBudget retryBudget = new RetryBudget();
+        private Map<Method, ConcurrencyLimiter> concurrencyLimiters = ImmutableMap.of();
+        private Map<Method, CircuitBreaker> circuitBreakers = ImmutableMap.of();
+        private Map<Method, Integer> readTimeouts = ImmutableMap.of();
+        private Map<Method, Integer> compressionThresholds = ImmutableMap.of();
+
+        protected Builder(ClassLoader loader, ClientExecutor executor, Providers providers,
+                          EntityExtractorFactory extractorFactory,
+                          ConcurrentMap<Method, Predicate<Integer>> errorStatusCriteria,
+                          ClientErrorHandler clientErrorHandler) {
+            this.loader = checkNotNull(loader);
+            this.executor = checkNotNull(executor);
+            this.providers = checkNotNull(providers);
+            this.extractorFactory = checkNotNull(extractorFactory);
+            this.errorStatusCriteria = checkNotNull(errorStatusCriteria);
+            this.clientErrorHandler = checkNotNull(clientErrorHandler);
+        }
+
+        /**
+         * The RetryPolicy to use for each method that is retried.
+         * @param retryPolicies the policies by method
+         * @return the builder
+         */
+        public Builder retryPolicies(Map<Method, RetryPolicy> retryPolicies) {
+            this.retryPolicies = checkNotNull(retryPolicies);
+            return this;
+        }
+
+        /**
+         * The RetryBudget shared by all the retried methods.
+         * @param retryBudget the budget
+         * @return the builder
+         */
+        public Builder retryBudget(RetryBudget retryBudget) {
+            this.retryBudget = checkNotNull(retryBudget);
+            return this;
+        }
+
+        /**
+         * The ConcurrencyLimiter to use for each limited method.
+         * @param concurrencyLimiters the limiters by method
+         * @return the builder
+         */
+        public Builder concurrencyLimiters(Map<Method, ConcurrencyLimiter> concurrencyLimiters) {
+            this.concurrencyLimiters = checkNotNull(concurrencyLimiters);
+            return this;
+        }
+
+        /**
+         * The CircuitBreaker to use for each method that has one.
+         * @param circuitBreakers the breakers by method
+         * @return the builder
+         */
+        public Builder circuitBreakers(Map<Method, CircuitBreaker> circuitBreakers) {
+            this.circuitBreakers = checkNotNull(circuitBreakers);
+            return this;
+        }
+
+        /**
+         * The read timeout in milliseconds of each method that has one.
+         * @param readTimeouts the timeouts by method
+         * @return the builder
+         */
+        public Builder readTimeouts(Map<Method, Integer> readTimeouts) {
+            this.readTimeouts = checkNotNull(readTimeouts);
+            return this;
+        }
+
+        /**
+         * The size in bytes above which the request body of a method is compressed.
+         * @param compressionThresholds the thresholds by method
+         * @return the builder
+         */
+        public Builder compressionThresholds(Map<Method, Integer> compressionThresholds) {
+            this.compressionThresholds = checkNotNull(compressionThresholds);
+            return this;
+        }
+
+        public ProxyConfig build() {
+            return new ProxyConfig(this);
+        }
+    }
 }
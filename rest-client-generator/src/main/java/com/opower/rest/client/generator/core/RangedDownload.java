@@ -0,0 +1,356 @@
+/**
+ *    Copyright 2014 Opower, Inc.
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ **/
+package com.opower.rest.client.generator.core;
+
+import com.google.common.base.Throwables;
+import com.google.common.io.Closeables;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.opower.rest.client.generator.util.HttpHeaderNames;
+import com.opower.rest.client.generator.util.HttpResponseCodes;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Downloads large File or Path responses in parallel byte ranges. The first range doubles as the probe: when the server
+ * answers it with 206 Partial Content and the total length, a file of that length is preallocated and the remaining
+ * ranges are fetched concurrently, each over its own pooled connection, and written at their offset in the file. A range
+ * that fails is resumed from the last byte written, up to the configured number of times. A server that ignores the
+ * Range header answers with the whole body, which is then read like any other response.
+ * <p/>
+ * The probe's connection is released as soon as its range has been written, so the ClientExecutor must allow as many
+ * connections to the server as the configured parallelism, and no more. Ranges are requested without content encoding,
+ * since offsets into a compressed body mean nothing to the file.
+ * <p/>
+ * Instances can be shared between methods and clients, and should be closed when no longer needed.
+ */
+public final class RangedDownload implements Closeable {
+
+    private static final Pattern CONTENT_RANGE = Pattern.compile("bytes\\s+(\\d+)-(\\d+)/(\\d+)");
+    private static final long DEFAULT_RANGE_SIZE = 8 * 1024 * 1024;
+    private static final int DEFAULT_PARALLELISM = 4;
+    private static final int DEFAULT_MAX_RANGE_RETRIES = 3;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final long rangeSize;
+    private final int maxRangeRetries;
+    private final File directory;
+    private final ExecutorService executor;
+
+    private RangedDownload(Builder builder) {
+        this.rangeSize = builder.rangeSize;
+        this.maxRangeRetries = builder.maxRangeRetries;
+        this.directory = builder.directory;
+        this.executor = Executors.newFixedThreadPool(builder.parallelism, new ThreadFactoryBuilder().setDaemon(true)
+                .setNameFormat("ranged-download-%d").build());
+    }
+
+    /**
+     * Creates a Builder initialized with 8MB ranges, 4 concurrent ranges, 3 retries per range and files in the default
+     * temporary directory.
+     * @return the builder
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Check that a method can be downloaded in ranges.
+     * @param method the method on the resource interface
+     */
+    public static void validate(Method method) {
+        checkArgument(File.class.equals(method.getReturnType()) || Path.class.equals(method.getReturnType()),
+                      String.format("%s must return a File or a Path", method));
+    }
+
+    /**
+     * Parses a Content-Range header of the form {@code bytes 0-1023/4096}.
+     * @param contentRange the header value, may be null
+     * @return the first byte, the last byte and the total length, or null if the header is missing or the total length
+     * is unknown
+     */
+    static long[] parseContentRange(String contentRange) {
+        if (contentRange == null) {
+            return null;
+        }
+        Matcher matcher = CONTENT_RANGE.matcher(contentRange.trim());
+        if (!matcher.matches()) {
+            return null;
+        }
+        return new long[]{Long.parseLong(matcher.group(1)), Long.parseLong(matcher.group(2)),
+                          Long.parseLong(matcher.group(3))};
+    }
+
+    /**
+     * Splits the bytes from the specified offset up to the total length into ranges of at most rangeSize bytes.
+     * @param from the first byte of the first range
+     * @param total the total length
+     * @param rangeSize the maximum size of a range
+     * @return the first and last byte of each range
+     */
+    static List<long[]> split(long from, long total, long rangeSize) {
+        List<long[]> ranges = new ArrayList<>();
+        for (long start = from; start < total; start += rangeSize) {
+            ranges.add(new long[]{start, Math.min(start + rangeSize, total) - 1});
+        }
+        return ranges;
+    }
+
+    /**
+     * Performs the call of the invoker as a ranged download.
+     * @param invoker the ClientInvoker of a method returning a File or a Path
+     * @param args the arguments of the method
+     * @param abortHandle aborts the probe and every range in flight
+     * @return the downloaded File or Path
+     */
+    Object download(final ClientInvoker invoker, final Object[] args, AbortHandle abortHandle) {
+        ClientRequest probe = rangeRequest(invoker, args, 0, this.rangeSize - 1).abortHandle(abortHandle);
+        BaseClientResponse response = invoker.executeRequest(probe);
+        if (response.getStatus() == HttpResponseCodes.SC_REQUESTED_RANGE_NOT_SATISFIABLE) {
+            // an empty resource has no range at all
+            response.releaseConnection();
+            ClientRequest request = invoker.createRequest(args).abortHandle(abortHandle);
+            return invoker.extract(request, invoker.executeRequest(request));
+        }
+        long[] range = response.getStatus() == HttpResponseCodes.SC_PARTIAL_CONTENT
+                ? parseContentRange(response.getResponseHeader(HttpHeaderNames.CONTENT_RANGE))
+                : null;
+        if (range == null || range[0] != 0) {
+            return invoker.extract(probe, response);
+        }
+
+        File file = null;
+        RandomAccessFile raf = null;
+        boolean complete = false;
+        List<Future<?>> futures = new ArrayList<>();
+        final List<AbortHandle> rangeHandles = new ArrayList<>();
+        try {
+            file = File.createTempFile("ranged", "", this.directory);
+            raf = new RandomAccessFile(file, "rw");
+            raf.setLength(range[2]);
+            final FileChannel channel = raf.getChannel();
+            long[] written = {0};
+            write(response, channel, written, range[1]);
+            // the probe's connection isn't needed anymore, let a range use it
+            response.releaseConnection();
+            if (written[0] != range[1] + 1) {
+                throw new IOException(String.format("Expected %d bytes but only got %d", range[1] + 1, written[0]));
+            }
+
+            List<long[]> ranges = split(range[1] + 1, range[2], this.rangeSize);
+            for (int i = 0; i < ranges.size(); i++) {
+                rangeHandles.add(new AbortHandle());
+            }
+            // registered before any range starts, so that aborting the download can't miss one
+            abortHandle.onAbort(new Runnable() {
+                @Override
+                public void run() {
+                    for (AbortHandle handle : rangeHandles) {
+                        handle.abort();
+                    }
+                }
+            });
+            for (int i = 0; i < ranges.size(); i++) {
+                final long[] next = ranges.get(i);
+                final AbortHandle rangeHandle = rangeHandles.get(i);
+                futures.add(this.executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws IOException {
+                        fetch(invoker, args, next[0], next[1], channel, rangeHandle);
+                        return null;
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+            complete = true;
+        } catch (ExecutionException e) {
+            throw Throwables.propagate(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        } finally {
+            response.releaseConnection();
+            for (Future<?> future : futures) {
+                future.cancel(true);
+            }
+            if (!complete) {
+                // interrupting doesn't stop a blocking read, the other ranges' exchanges have to be aborted
+                for (AbortHandle handle : rangeHandles) {
+                    handle.abort();
+                }
+            }
+            try {
+                Closeables.close(raf, true);
+            } catch (IOException e) {
+                // swallowed
+            }
+            if (!complete && file != null && !file.delete()) {
+                file.deleteOnExit();
+            }
+        }
+        return Path.class.equals(invoker.getMethod().getReturnType()) ? file.toPath() : file;
+    }
+
+    /**
+     * Fetches a single range, resuming from the last byte written when the transfer fails.
+     */
+    private void fetch(ClientInvoker invoker, Object[] args, long first, long last, FileChannel channel,
+                       AbortHandle abortHandle) throws IOException {
+        long[] position = {first};
+        for (int attempt = 0; ; attempt++) {
+            try {
+                ClientRequest request = rangeRequest(invoker, args, position[0], last).abortHandle(abortHandle);
+                BaseClientResponse response = invoker.executeRequest(request);
+                try {
+                    long[] range = parseContentRange(response.getResponseHeader(HttpHeaderNames.CONTENT_RANGE));
+                    if (response.getStatus() != HttpResponseCodes.SC_PARTIAL_CONTENT || range == null
+                        || range[0] != position[0] || range[1] != last) {
+                        throw new IOException(String.format("Expected bytes %d-%d but got status %d and Content-Range %s",
+                                                            position[0], last, response.getStatus(),
+                                                            response.getResponseHeader(HttpHeaderNames.CONTENT_RANGE)));
+                    }
+                    write(response, channel, position, last);
+                } finally {
+                    response.releaseConnection();
+                }
+                if (position[0] > last) {
+                    return;
+                }
+                throw new IOException(String.format("Range %d-%d ended at byte %d", first, last, position[0]));
+            } catch (IOException | RuntimeException e) {
+                if (attempt >= this.maxRangeRetries || abortHandle.isAborted() || Thread.currentThread().isInterrupted()) {
+                    throw e;
+                }
+            }
+        }
+    }
+
+    private static ClientRequest rangeRequest(ClientInvoker invoker, Object[] args, long first, long last) {
+        return invoker.createRequest(args)
+                      .header(HttpHeaderNames.RANGE, String.format("bytes=%d-%d", first, last))
+                      .header(HttpHeaderNames.ACCEPT_ENCODING, "identity");
+    }
+
+    /**
+     * Writes the body of the response at the specified position, never past the last byte of the range. The position is
+     * moved past every byte written, so that after a failure it tells where to resume; those bytes stay in the file.
+     */
+    private static void write(BaseClientResponse response, FileChannel channel, long[] position, long last)
+            throws IOException {
+        InputStream in = response.getStreamFactory().getInputStream();
+        if (in instanceof SelfExpandingBufferredInputStream) {
+            ((SelfExpandingBufferredInputStream) in).stopExpanding();
+        }
+        byte[] bytes = new byte[BUFFER_SIZE];
+        int read;
+        while (position[0] <= last
+               && (read = in.read(bytes, 0, (int) Math.min(bytes.length, last - position[0] + 1))) != -1) {
+            ByteBuffer buffer = ByteBuffer.wrap(bytes, 0, read);
+            while (buffer.hasRemaining()) {
+                position[0] += channel.write(buffer, position[0]);
+            }
+        }
+    }
+
+    /**
+     * Stops the threads that fetch the ranges.
+     */
+    @Override
+    public void close() {
+        this.executor.shutdownNow();
+    }
+
+    /**
+     * Builder for RangedDownload instances.
+     */
+    public static final class Builder {
+        private long rangeSize = DEFAULT_RANGE_SIZE;
+        private int parallelism = DEFAULT_PARALLELISM;
+        private int maxRangeRetries = DEFAULT_MAX_RANGE_RETRIES;
+        private File directory;
+
+        private Builder() {
+        }
+
+        /**
+         * The size of each range. The first range is also used to find out whether the server supports ranges.
+         * @param rangeSize the size in bytes
+         * @return the builder
+         */
+        public Builder rangeSize(long rangeSize) {
+            checkArgument(rangeSize > 0, "rangeSize must be positive");
+            this.rangeSize = rangeSize;
+            return this;
+        }
+
+        /**
+         * The number of ranges fetched at the same time, shared by all the downloads using this instance.
+         * @param parallelism the number of threads
+         * @return the builder
+         */
+        public Builder parallelism(int parallelism) {
+            checkArgument(parallelism > 0, "parallelism must be positive");
+            this.parallelism = parallelism;
+            return this;
+        }
+
+        /**
+         * The number of times a failed range is resumed before the download fails.
+         * @param maxRangeRetries the number of retries per range
+         * @return the builder
+         */
+        public Builder maxRangeRetries(int maxRangeRetries) {
+            checkArgument(maxRangeRetries >= 0, "maxRangeRetries must not be negative");
+            this.maxRangeRetries = maxRangeRetries;
+            return this;
+        }
+
+        /**
+         * The directory the files are downloaded to, the default temporary directory if not specified.
+         * @param directory the directory
+         * @return the builder
+         */
+        public Builder directory(File directory) {
+            this.directory = directory;
+            return this;
+        }
+
+        public RangedDownload build() {
+            return new RangedDownload(this);
+        }
+    }
+}
@@ -28,6 +28,7 @@ import java.io.InputStream;
  */
 public class SelfExpandingBufferredInputStream extends BufferedInputStream {
     private static int defaultBufferSize = 8192;
+    private boolean expanding = true;
 
     public SelfExpandingBufferredInputStream(InputStream in) {
         super(in);
@@ -44,7 +45,7 @@ public class SelfExpandingBufferredInputStream extends BufferedInputStream {
 
     @Override
     public synchronized int read() throws IOException {
-        if (pos == marklimit) {
+        if (this.expanding && pos == marklimit) {
             expand();
         }
         return super.read();
@@ -52,7 +53,7 @@ public class SelfExpandingBufferredInputStream extends BufferedInputStream {
 
     @Override
     public synchronized int read(byte[] b, int off, int len) throws IOException {
-        while (pos + len > marklimit) {
+        while (this.expanding && pos + len > marklimit) {
             expand();
         }
         return super.read(b, off, len);
@@ -60,12 +61,21 @@ public class SelfExpandingBufferredInputStream extends BufferedInputStream {
 
     @Override
     public int read(byte[] b) throws IOException {
-        while (pos + b.length > marklimit) {
+        while (this.expanding && pos + b.length > marklimit) {
             expand();
         }
         return super.read(b);
     }
 
+    /**
+     * Stop keeping everything that has been read. From now on the buffer doesn't grow anymore and content that has been
+     * read is dropped once the buffer is full, so reset() is no longer guaranteed to work. This is used to stream
+     * response bodies that are too large to be kept in memory.
+     */
+    public synchronized void stopExpanding() {
+        this.expanding = false;
+    }
+
     /**
      * Double the current buffer size limit. Reset to zero, then double the
      * buffer size and restore last position in the buffer.
@@ -0,0 +1,59 @@
+/**
+ *    Copyright 2014 Opower, Inc.
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ **/
+package com.opower.rest.client.generator.core;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.ext.Providers;
+
+/**
+ * Contract for providers that read a response body as a sequence of elements instead of a single entity, so that large
+ * collections don't have to fit in memory. It is used for resource methods that return an Iterator or an Iterable.
+ * Instances are registered like any other provider, through {@link ClientProviders#registerProviderInstance(Object)}.
+ */
+public interface StreamingMessageBodyReader {
+
+    /**
+     * Check whether this reader can read elements of the given type from a body of the given media type.
+     * @param type the class of the elements
+     * @param genericType the generic type of the elements
+     * @param annotations the annotations of the resource method
+     * @param mediaType the media type of the body
+     * @return true if the elements can be read
+     */
+    boolean isReadable(Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType);
+
+    /**
+     * Start reading the elements of the body. The elements must be read lazily, as the returned iterator is consumed,
+     * and closing the iterator must close the entity stream.
+     * @param type the class of the elements
+     * @param genericType the generic type of the elements
+     * @param annotations the annotations of the resource method
+     * @param mediaType the media type of the body
+     * @param httpHeaders the headers of the response
+     * @param entityStream the body of the response
+     * @param providers the providers of the client, to read the individual elements with
+     * @param <T> the type of the elements
+     * @return the iterator over the elements
+     * @throws IOException if the body can't be read
+     */
+    <T> CloseableIterator<T> readElements(Class<T> type, Type genericType, Annotation[] annotations, MediaType mediaType,
+                                          MultivaluedMap<String, String> httpHeaders, InputStream entityStream,
+                                          Providers providers) throws IOException;
+}
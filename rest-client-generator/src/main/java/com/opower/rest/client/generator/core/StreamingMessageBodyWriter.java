@@ -0,0 +1,58 @@
+/**
+ *    Copyright 2014 Opower, Inc.
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ **/
+package com.opower.rest.client.generator.core;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+import java.util.Iterator;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.ext.Providers;
+
+/**
+ * Contract for providers that write a request body from an Iterator one element at a time, so that large uploads
+ * don't have to be built in memory first. It is used for body parameters that are Iterators. Instances are registered
+ * like any other provider, through {@link ClientProviders#registerProviderInstance(Object)}.
+ */
+public interface StreamingMessageBodyWriter {
+
+    /**
+     * Check whether this writer can write elements of the given type as a body of the given media type.
+     * @param type the class of the elements
+     * @param genericType the generic type of the elements
+     * @param annotations the annotations of the parameter
+     * @param mediaType the media type of the body
+     * @return true if the elements can be written
+     */
+    boolean isWriteable(Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType);
+
+    /**
+     * Write the elements to the entity stream as they are taken from the iterator.
+     * @param elements the elements to write
+     * @param type the class of the elements
+     * @param genericType the generic type of the elements
+     * @param annotations the annotations of the parameter
+     * @param mediaType the media type of the body
+     * @param httpHeaders the headers of the request
+     * @param entityStream the body of the request
+     * @param providers the providers of the client, to write the individual elements with
+     * @throws IOException if the body can't be written
+     */
+    void writeElements(Iterator<?> elements, Class<?> type, Type genericType, Annotation[] annotations,
+                       MediaType mediaType, MultivaluedMap<String, Object> httpHeaders, OutputStream entityStream,
+                       Providers providers) throws IOException;
+}
@@ -19,17 +19,32 @@ import com.opower.rest.client.generator.core.BaseClientResponse;
 import com.opower.rest.client.generator.core.ClientRequest;
 import com.opower.rest.client.generator.core.ClientRequestFilter;
 import com.opower.rest.client.generator.core.ClientResponse;
+import com.opower.rest.client.generator.core.ConnectionWarmer;
+import com.opower.rest.client.generator.core.LeakDetector;
 import com.opower.rest.client.generator.core.SelfExpandingBufferredInputStream;
+import com.opower.rest.client.generator.plugins.providers.ProviderHelper;
 import com.opower.rest.client.generator.util.CaseInsensitiveMap;
+import com.opower.rest.client.generator.util.ContentEncoding;
+import com.opower.rest.client.generator.util.HttpHeaderNames;
 
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
 import javax.ws.rs.core.MultivaluedMap;
 import org.apache.http.Header;
+import org.apache.http.HttpHost;
 import org.apache.http.HttpEntity;
 import org.apache.http.HttpResponse;
 import org.apache.http.NameValuePair;
@@ -38,15 +53,25 @@ import org.apache.http.client.entity.UrlEncodedFormEntity;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.client.params.ClientPNames;
 import org.apache.http.client.params.HttpClientParams;
 import org.apache.http.conn.ClientConnectionManager;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+import org.apache.http.conn.ManagedClientConnection;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.entity.AbstractHttpEntity;
 import org.apache.http.entity.ByteArrayEntity;
 import org.apache.http.impl.client.DefaultHttpClient;
 import org.apache.http.impl.conn.PoolingClientConnectionManager;
+import org.apache.http.impl.conn.SchemeRegistryFactory;
 import org.apache.http.message.BasicHeader;
 import org.apache.http.message.BasicNameValuePair;
+import org.apache.http.params.HttpConnectionParams;
+import org.apache.http.pool.PoolStats;
+import org.apache.http.protocol.BasicHttpContext;
 import org.apache.http.protocol.HttpContext;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 
 
@@ -55,21 +80,35 @@ import static com.google.common.base.Preconditions.checkNotNull;
  * @author <a href="mailto:bill@burkecentral.com">Bill Burke</a>
  *
  */
-public class ApacheHttpClient4Executor extends AbstractClientExecutor {
+public class ApacheHttpClient4Executor extends AbstractClientExecutor implements ConnectionWarmer {
+    private static final long WARM_UP_LEASE_TIMEOUT_MILLIS = 100;
+
     protected final HttpClient httpClient;
     protected boolean createdHttpClient;
     protected HttpContext httpContext;
     protected boolean closed;
+    private LeakDetector.Tracker leakTracker;
 
     /**
      * Create an instance using the DefaultHttpClient.
      */
     public ApacheHttpClient4Executor() {
-       this(new DefaultHttpClient(new PoolingClientConnectionManager()), ImmutableList.<ClientRequestFilter>of());
+       this(ImmutableList.<ClientRequestFilter>of());
     }
 
+    /**
+     * Create an instance using the DefaultHttpClient. The connection manager of the DefaultHttpClient is shut down when
+     * the executor is closed, or once it has been garbage collected if it never is.
+     * @param requestFilters the filters to apply to every request
+     */
     public ApacheHttpClient4Executor(List<ClientRequestFilter> requestFilters ) {
         this(new DefaultHttpClient(new PoolingClientConnectionManager()), requestFilters);
+        trackCreatedHttpClient();
+    }
+
+    private ApacheHttpClient4Executor(Builder builder) {
+        this(builder.createHttpClient(), builder.requestFilters);
+        trackCreatedHttpClient();
     }
 
     /**
@@ -85,6 +124,38 @@ public class ApacheHttpClient4Executor extends AbstractClientExecutor {
         this.httpClient = checkNotNull(httpClient);
     }
 
+    /**
+     * Creates a Builder for an executor with its own pool of connections. Unlike the library defaults of 2 connections
+     * per route and 20 in total, the pool allows 20 connections per route and 200 in total.
+     * @return the builder
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    private void trackCreatedHttpClient() {
+        this.createdHttpClient = true;
+        this.leakTracker = LeakDetector.shared().track(this, new ShutdownConnectionManager(this.httpClient),
+                                                       "ApacheHttpClient4Executor");
+    }
+
+    /**
+     * @return a snapshot of the connection pool, or null if the HttpClient doesn't use a pooling connection manager.
+     * Lease wait times are only measured by executors created with the {@link Builder}.
+     */
+    public ConnectionPoolMetrics getPoolMetrics() {
+        ClientConnectionManager manager = this.httpClient.getConnectionManager();
+        if (manager instanceof PooledConnectionManager) {
+            return ((PooledConnectionManager) manager).getMetrics();
+        }
+        if (manager instanceof PoolingClientConnectionManager) {
+            PoolStats stats = ((PoolingClientConnectionManager) manager).getTotalStats();
+            return new ConnectionPoolMetrics(stats.getLeased(), stats.getAvailable(), stats.getPending(), stats.getMax(),
+                                             0, 0, 0);
+        }
+        return null;
+    }
+
     /**
      * Extracts the headers from the given HttpResponse.
      * @param response the HttpResponse to get the headers from
@@ -107,6 +178,13 @@ public class ApacheHttpClient4Executor extends AbstractClientExecutor {
         String uri = request.getUri();
         final HttpRequestBase httpMethod = createHttpMethod(uri, request.getHttpMethod());
         loadHttpMethod(request, httpMethod);
+        // aborting closes the connection, whether we are still waiting for the response or reading its body
+        request.getAbortHandle().onAbort(new Runnable() {
+            @Override
+            public void run() {
+                httpMethod.abort();
+            }
+        });
 
         final HttpResponse res = this.httpClient.execute(httpMethod, this.httpContext);
 
@@ -141,6 +219,10 @@ public class ApacheHttpClient4Executor extends AbstractClientExecutor {
         } else {
             HttpClientParams.setRedirecting(httpMethod.getParams(), false);
         }
+        if (request.getReadTimeout() > 0) {
+            // request level params take precedence over the params of the HttpClient
+            HttpConnectionParams.setSoTimeout(httpMethod.getParams(), request.getReadTimeout());
+        }
 
         if (request.getBody() != null && !request.getFormParameters().isEmpty())
             throw new RuntimeException("You cannot send both form parameters and an entity body");
@@ -163,15 +245,56 @@ public class ApacheHttpClient4Executor extends AbstractClientExecutor {
         } else if (request.getBody() != null) {
             if (httpMethod instanceof HttpGet) throw new RuntimeException("A GET request cannot have a body.");
 
+            File file = request.getBodyFile();
+            if (file != null && !request.shouldCompressBody(file.length())) {
+                // sent with a known Content-Length straight from the file
+                FileChannelEntity entity = new FileChannelEntity(file);
+                entity.setContentType(request.getBodyContentType().toString());
+                HttpPost post = (HttpPost) httpMethod;
+                commitHeaders(request, httpMethod);
+                post.setEntity(entity);
+                return;
+            }
+
+            ByteBuffer buffer = request.getBodyBuffer();
+            if (buffer != null && !request.shouldCompressBody(buffer.remaining())) {
+                // sent with a known Content-Length straight from the buffer
+                ByteBufferEntity entity = new ByteBufferEntity(buffer);
+                entity.setContentType(request.getBodyContentType().toString());
+                HttpPost post = (HttpPost) httpMethod;
+                commitHeaders(request, httpMethod);
+                post.setEntity(entity);
+                return;
+            }
+
+            if (request.isBodyStreamed() || file != null) {
+                // written straight to the connection with chunked transfer-encoding as the Iterator or channel is read
+                StreamedEntity entity = new StreamedEntity(request, request.shouldCompressBody(-1));
+                entity.setChunked(true);
+                entity.setContentType(request.getBodyContentType().toString());
+                if (entity.compress) {
+                    entity.setContentEncoding(ContentEncoding.GZIP);
+                }
+                HttpPost post = (HttpPost) httpMethod;
+                commitHeaders(request, httpMethod);
+                post.setEntity(entity);
+                return;
+            }
+
             ByteArrayOutputStream baos = new ByteArrayOutputStream();
             try {
                 request.writeRequestBody(request.getHeadersAsObjects(), baos);
-                ByteArrayEntity entity = new ByteArrayEntity(baos.toByteArray()) {
+                byte[] body = baos.toByteArray();
+                boolean compress = request.shouldCompressBody(body.length);
+                ByteArrayEntity entity = new ByteArrayEntity(compress ? ContentEncoding.gzip(body) : body) {
                     @Override
                     public Header getContentType() {
                         return new BasicHeader("Content-Type", request.getBodyContentType().toString());
                     }
                 };
+                if (compress) {
+                    entity.setContentEncoding(ContentEncoding.GZIP);
+                }
                 HttpPost post = (HttpPost) httpMethod;
                 commitHeaders(request, httpMethod);
                 post.setEntity(entity);
@@ -193,6 +316,57 @@ public class ApacheHttpClient4Executor extends AbstractClientExecutor {
                 httpMethod.addHeader(header.getKey(), value);
             }
         }
+        if (!headers.containsKey(HttpHeaderNames.ACCEPT_ENCODING)) {
+            httpMethod.addHeader(HttpHeaderNames.ACCEPT_ENCODING, ContentEncoding.ACCEPTED);
+        }
+    }
+
+    /**
+     * Leases a connection from the pool for every endpoint before returning any of them, so that each lease gets a
+     * connection of its own, and opens the ones that aren't open yet. Routes that are already at their connection
+     * limit get fewer connections than requested.
+     * @param endpoints the endpoints to connect to, only their scheme, host and port matter
+     * @return the number of connections that were opened
+     */
+    @Override
+    public int warmConnections(List<URI> endpoints) {
+        ClientConnectionManager manager = this.httpClient.getConnectionManager();
+        HttpContext context = this.httpContext != null ? this.httpContext : new BasicHttpContext();
+        List<ManagedClientConnection> leased = new ArrayList<>();
+        int opened = 0;
+        try {
+            for (URI endpoint : endpoints) {
+                HttpRoute route = routeFor(endpoint);
+                ManagedClientConnection connection;
+                try {
+                    connection = manager.requestConnection(route, null)
+                            .getConnection(WARM_UP_LEASE_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+                } catch (ConnectionPoolTimeoutException e) {
+                    continue;
+                }
+                leased.add(connection);
+                if (!connection.isOpen()) {
+                    connection.open(route, context, this.httpClient.getParams());
+                    opened++;
+                }
+                connection.markReusable();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        } finally {
+            for (ManagedClientConnection connection : leased) {
+                manager.releaseConnection(connection, -1, TimeUnit.MILLISECONDS);
+            }
+        }
+        return opened;
+    }
+
+    static HttpRoute routeFor(URI endpoint) {
+        boolean secure = "https".equalsIgnoreCase(endpoint.getScheme());
+        int port = endpoint.getPort() != -1 ? endpoint.getPort() : secure ? 443 : 80;
+        return new HttpRoute(new HttpHost(endpoint.getHost(), port, endpoint.getScheme()), null, secure);
     }
 
     @Override
@@ -200,6 +374,9 @@ public class ApacheHttpClient4Executor extends AbstractClientExecutor {
         if (closed)
             return;
 
+        if (leakTracker != null) {
+            leakTracker.close();
+        }
         if (createdHttpClient && httpClient != null) {
             ClientConnectionManager manager = httpClient.getConnectionManager();
             if (manager != null) {
@@ -209,15 +386,300 @@ public class ApacheHttpClient4Executor extends AbstractClientExecutor {
         closed = true;
     }
 
-    //CHECKSTYLE:OFF
-    @Override
-    public void finalize() throws Throwable {
-        close();
-        super.finalize();
-    }//CHECKSTYLE:ON
+    /**
+     * Builder for executors with their own pool of connections.
+     */
+    public static final class Builder {
+        private static final int DEFAULT_MAX_TOTAL = 200;
+        private static final int DEFAULT_MAX_PER_ROUTE = 20;
+        private static final long DEFAULT_EVICTION_INTERVAL_MILLIS = 5000;
+
+        private int maxTotal = DEFAULT_MAX_TOTAL;
+        private int defaultMaxPerRoute = DEFAULT_MAX_PER_ROUTE;
+        private final Map<HttpRoute, Integer> maxPerRoute = new HashMap<>();
+        private long timeToLiveMillis;
+        private long idleTimeoutMillis;
+        private long evictionIntervalMillis = DEFAULT_EVICTION_INTERVAL_MILLIS;
+        private boolean staleCheck = true;
+        private long leaseTimeoutMillis;
+        private List<ClientRequestFilter> requestFilters = ImmutableList.of();
+
+        private Builder() {
+        }
 
+        /**
+         * The maximum number of connections, across all routes.
+         * @param maxTotal the number of connections
+         * @return the builder
+         */
+        public Builder maxTotal(int maxTotal) {
+            checkArgument(maxTotal > 0, "maxTotal must be positive");
+            this.maxTotal = maxTotal;
+            return this;
+        }
+
+        /**
+         * The maximum number of connections to a single host and port, unless specified otherwise for that route.
+         * @param maxPerRoute the number of connections
+         * @return the builder
+         */
+        public Builder maxPerRoute(int maxPerRoute) {
+            checkArgument(maxPerRoute > 0, "maxPerRoute must be positive");
+            this.defaultMaxPerRoute = maxPerRoute;
+            return this;
+        }
+
+        /**
+         * The maximum number of connections to the host and port of the specified endpoint.
+         * @param endpoint the uri of the endpoint, only its scheme, host and port matter
+         * @param maxPerRoute the number of connections
+         * @return the builder
+         */
+        public Builder maxPerRoute(URI endpoint, int maxPerRoute) {
+            checkArgument(maxPerRoute > 0, "maxPerRoute must be positive");
+            this.maxPerRoute.put(routeFor(endpoint), maxPerRoute);
+            return this;
+        }
+
+        /**
+         * The maximum lifetime of a connection, after which it is closed rather than reused. Helps spread the load
+         * over new servers behind a load balancer. No limit by default.
+         * @param timeToLive the lifetime
+         * @param unit the unit of timeToLive
+         * @return the builder
+         */
+        public Builder timeToLive(long timeToLive, TimeUnit unit) {
+            checkArgument(timeToLive > 0, "timeToLive must be positive");
+            this.timeToLiveMillis = unit.toMillis(timeToLive);
+            return this;
+        }
+
+        /**
+         * Close connections that have been idle for longer than the specified time. Eviction runs every 5 seconds on
+         * a background thread unless specified otherwise.
+         * @param idleTimeout the time a connection may stay idle
+         * @param unit the unit of idleTimeout
+         * @return the builder
+         */
+        public Builder idleTimeout(long idleTimeout, TimeUnit unit) {
+            checkArgument(idleTimeout > 0, "idleTimeout must be positive");
+            this.idleTimeoutMillis = unit.toMillis(idleTimeout);
+            return this;
+        }
 
-    private class SimpleBaseClientResponseStreamFactory implements BaseClientResponse.BaseClientResponseStreamFactory {
+        /**
+         * How often expired and idle connections are evicted.
+         * @param interval the time between evictions
+         * @param unit the unit of interval
+         * @return the builder
+         */
+        public Builder evictionInterval(long interval, TimeUnit unit) {
+            checkArgument(interval > 0, "interval must be positive");
+            this.evictionIntervalMillis = unit.toMillis(interval);
+            return this;
+        }
+
+        /**
+         * Whether a pooled connection is checked before it is reused. The check costs a read with a short timeout
+         * on every request, it can be turned off when idle connections are evicted in the background. On by default.
+         * @param staleCheck true to check connections
+         * @return the builder
+         */
+        public Builder staleCheck(boolean staleCheck) {
+            this.staleCheck = staleCheck;
+            return this;
+        }
+
+        /**
+         * How long a request waits for a connection when the pool is exhausted before failing. Forever by default.
+         * @param leaseTimeout the maximum wait
+         * @param unit the unit of leaseTimeout
+         * @return the builder
+         */
+        public Builder leaseTimeout(long leaseTimeout, TimeUnit unit) {
+            checkArgument(leaseTimeout > 0, "leaseTimeout must be positive");
+            this.leaseTimeoutMillis = unit.toMillis(leaseTimeout);
+            return this;
+        }
+
+        public Builder requestFilters(List<ClientRequestFilter> requestFilters) {
+            this.requestFilters = checkNotNull(requestFilters);
+            return this;
+        }
+
+        public ApacheHttpClient4Executor build() {
+            return new ApacheHttpClient4Executor(this);
+        }
+
+        private HttpClient createHttpClient() {
+            PooledConnectionManager manager = new PooledConnectionManager(SchemeRegistryFactory.createDefault(),
+                                                                          this.timeToLiveMillis, TimeUnit.MILLISECONDS);
+            manager.setMaxTotal(this.maxTotal);
+            manager.setDefaultMaxPerRoute(this.defaultMaxPerRoute);
+            for (Map.Entry<HttpRoute, Integer> route : this.maxPerRoute.entrySet()) {
+                manager.setMaxPerRoute(route.getKey(), route.getValue());
+            }
+            if (this.timeToLiveMillis > 0 || this.idleTimeoutMillis > 0) {
+                manager.startEviction(this.idleTimeoutMillis, this.evictionIntervalMillis);
+            }
+            DefaultHttpClient client = new DefaultHttpClient(manager);
+            HttpConnectionParams.setStaleCheckingEnabled(client.getParams(), this.staleCheck);
+            if (this.leaseTimeoutMillis > 0) {
+                client.getParams().setLongParameter(ClientPNames.CONN_MANAGER_TIMEOUT, this.leaseTimeoutMillis);
+            }
+            return client;
+        }
+    }
+
+    /**
+     * Shuts down the connection manager of an executor that was garbage collected without being closed.
+     */
+    private static final class ShutdownConnectionManager implements Runnable {
+        private final HttpClient httpClient;
+
+        private ShutdownConnectionManager(HttpClient httpClient) {
+            this.httpClient = httpClient;
+        }
+
+        @Override
+        public void run() {
+            ClientConnectionManager manager = this.httpClient.getConnectionManager();
+            if (manager != null) {
+                manager.shutdown();
+            }
+        }
+    }
+
+
+    /**
+     * Entity that copies a file to the connection from a FileChannel. Unlike FileEntity it doesn't go through a heap
+     * buffer of its own.
+     */
+    private static final class FileChannelEntity extends AbstractHttpEntity {
+        private final File file;
+
+        private FileChannelEntity(File file) {
+            this.file = file;
+        }
+
+        @Override
+        public boolean isRepeatable() {
+            return true;
+        }
+
+        @Override
+        public long getContentLength() {
+            return this.file.length();
+        }
+
+        @Override
+        public InputStream getContent() throws IOException {
+            return new FileInputStream(this.file);
+        }
+
+        @Override
+        public void writeTo(OutputStream outstream) throws IOException {
+            try (FileInputStream in = new FileInputStream(this.file)) {
+                ProviderHelper.writeTo(in.getChannel(), outstream);
+            }
+        }
+
+        @Override
+        public boolean isStreaming() {
+            return false;
+        }
+    }
+
+    /**
+     * Entity that writes the remaining bytes of a ByteBuffer to the connection, without copying a direct buffer into a
+     * byte array of its own.
+     */
+    private static final class ByteBufferEntity extends AbstractHttpEntity {
+        private final ByteBuffer buffer;
+
+        private ByteBufferEntity(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public boolean isRepeatable() {
+            return true;
+        }
+
+        @Override
+        public long getContentLength() {
+            return this.buffer.remaining();
+        }
+
+        @Override
+        public InputStream getContent() throws IOException {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(this.buffer.remaining());
+            ProviderHelper.writeTo(this.buffer, out);
+            return new ByteArrayInputStream(out.toByteArray());
+        }
+
+        @Override
+        public void writeTo(OutputStream outstream) throws IOException {
+            ProviderHelper.writeTo(this.buffer, outstream);
+        }
+
+        @Override
+        public boolean isStreaming() {
+            return false;
+        }
+    }
+
+    /**
+     * Entity that writes the body of the request when HttpClient sends it, instead of serializing it up front.
+     */
+    private static final class StreamedEntity extends AbstractHttpEntity {
+        private final ClientRequest request;
+        private final boolean compress;
+
+        private StreamedEntity(ClientRequest request, boolean compress) {
+            this.request = request;
+            this.compress = compress;
+        }
+
+        @Override
+        public boolean isRepeatable() {
+            return false;
+        }
+
+        @Override
+        public long getContentLength() {
+            return -1;
+        }
+
+        @Override
+        public InputStream getContent() {
+            throw new UnsupportedOperationException("A streamed body can only be written");
+        }
+
+        @Override
+        public void writeTo(OutputStream outstream) throws IOException {
+            if (this.compress) {
+                // finishes the gzip data, HttpClient closes the underlying chunked stream itself
+                GZIPOutputStream gzip = ContentEncoding.gzip(outstream);
+                this.request.writeRequestBody(this.request.getHeadersAsObjects(), gzip);
+                gzip.finish();
+            } else {
+                this.request.writeRequestBody(this.request.getHeadersAsObjects(), outstream);
+            }
+        }
+
+        @Override
+        public boolean isStreaming() {
+            return false;
+        }
+    }
+
+    /**
+     * Static so that the cleanup of a leaked response holds only the HttpResponse and never the executor, whose own
+     * cleanup shuts down the connection manager.
+     */
+    private static final class SimpleBaseClientResponseStreamFactory
+            implements BaseClientResponse.BaseClientResponseStreamFactory {
         private final HttpResponse res;
         private InputStream stream;
 
@@ -230,7 +692,9 @@ public class ApacheHttpClient4Executor extends AbstractClientExecutor {
             if (this.stream == null) {
                 HttpEntity entity = this.res.getEntity();
                 if (entity == null) { return null; }
-                this.stream = new SelfExpandingBufferredInputStream(entity.getContent());
+                Header contentEncoding = entity.getContentEncoding();
+                this.stream = new SelfExpandingBufferredInputStream(ContentEncoding.decode(
+                        entity.getContent(), contentEncoding == null ? null : contentEncoding.getValue()));
             }
             return this.stream;
         }
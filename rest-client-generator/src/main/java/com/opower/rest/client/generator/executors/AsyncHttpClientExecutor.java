@@ -14,12 +14,19 @@
  **/
 package com.opower.rest.client.generator.executors;
 
+import com.google.common.base.Charsets;
 import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableList;
 import com.google.common.io.Closeables;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.ning.http.client.AsyncHttpClient;
 import com.ning.http.client.AsyncHttpClientConfig;
+import com.ning.http.client.Body;
+import com.ning.http.client.BodyGenerator;
 import com.ning.http.client.FluentCaseInsensitiveStringsMap;
+import com.ning.http.client.ListenableFuture;
+import com.ning.http.client.PerRequestConfig;
 import com.ning.http.client.RequestBuilder;
 import com.ning.http.client.Response;
 import com.opower.rest.client.generator.core.BaseClientResponse;
@@ -28,17 +35,33 @@ import com.opower.rest.client.generator.core.ClientRequestFilter;
 import com.opower.rest.client.generator.core.ClientResponse;
 import com.opower.rest.client.generator.core.SelfExpandingBufferredInputStream;
 import com.opower.rest.client.generator.util.CaseInsensitiveMap;
+import com.opower.rest.client.generator.util.ContentEncoding;
+import com.opower.rest.client.generator.util.HttpHeaderNames;
 
 import javax.ws.rs.core.MultivaluedMap;
 import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.nio.ByteBuffer;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public class AsyncHttpClientExecutor extends AbstractClientExecutor {
 
+    private static final int STREAMED_BODY_BUFFER_SIZE = 64 * 1024;
+    private static final int CHUNK_FRAMING = 12;
+    private static final byte[] CRLF = {'\r', '\n'};
+    private static final byte[] LAST_CHUNK = {'0', '\r', '\n', '\r', '\n'};
+
     private final AsyncHttpClient httpClient;
+    private final ExecutorService bodyWriters = Executors.newCachedThreadPool(
+            new ThreadFactoryBuilder().setDaemon(true).setNameFormat("async-http-client-body-writer-%d").build());
 
     public AsyncHttpClientExecutor() {
         this(new AsyncHttpClientConfig.Builder().build(), ImmutableList.<ClientRequestFilter>of());
@@ -61,12 +84,18 @@ public class AsyncHttpClientExecutor extends AbstractClientExecutor {
     public ClientResponse execute(ClientRequest request) throws Exception {
         RequestBuilder requestBuilder = new RequestBuilder(request.getHttpMethod()).setUrl(request.getUri());
         requestBuilder.setFollowRedirects(request.followRedirects());
+        if (request.getReadTimeout() > 0) {
+            // AsyncHttpClient has no per request read timeout, the closest thing is the timeout for the whole request
+            requestBuilder.setPerRequestConfig(new PerRequestConfig(null, request.getReadTimeout()));
+        }
         if(request.getBody() != null && !request.getFormParameters().isEmpty()) {
             throw new RuntimeException("You cannot send both form parameters and an entity body");
         }
 
         commitHeaders(request, requestBuilder);
 
+        StreamedBody streamedBody = null;
+
         if (!request.getFormParameters().isEmpty()) {
             for (Map.Entry<String, List<String>> formParam : request.getFormParameters().entrySet()) {
                 List<String> values = formParam.getValue();
@@ -79,13 +108,56 @@ public class AsyncHttpClientExecutor extends AbstractClientExecutor {
                 throw new RuntimeException("A GET request cannot have a body.");
             }
 
-            ByteArrayOutputStream baos = new ByteArrayOutputStream();
-            request.writeRequestBody(request.getHeadersAsObjects(), baos);
-            requestBuilder.setBody(baos.toByteArray());
+            boolean compress;
+            File file = request.getBodyFile();
+            ByteBuffer buffer = request.getBodyBuffer();
+            if (file != null && !request.shouldCompressBody(file.length())) {
+                // Netty sends files with zero-copy transferTo unless the connection uses SSL
+                compress = false;
+                requestBuilder.setBody(file);
+            } else if (buffer != null && !request.shouldCompressBody(buffer.remaining())) {
+                compress = false;
+                requestBuilder.setBody(new ByteBufferBodyGenerator(buffer));
+            } else if (request.isBodyStreamed() || file != null) {
+                compress = request.shouldCompressBody(-1);
+                // AsyncHttpClient pulls the body from a pipe while a thread of this executor fills it
+                streamedBody = new StreamedBody(request);
+                requestBuilder.setBody(streamedBody);
+            } else {
+                ByteArrayOutputStream baos = new ByteArrayOutputStream();
+                request.writeRequestBody(request.getHeadersAsObjects(), baos);
+                byte[] body = baos.toByteArray();
+                compress = request.shouldCompressBody(body.length);
+                requestBuilder.setBody(compress ? ContentEncoding.gzip(body) : body);
+            }
+            if (compress) {
+                requestBuilder.setHeader(HttpHeaderNames.CONTENT_ENCODING, ContentEncoding.GZIP);
+            }
         }
 
-
-        Response rawResponse = this.httpClient.executeRequest(requestBuilder.build()).get();
+        if (streamedBody != null) {
+            // started first, since AsyncHttpClient reads the body on this thread when it reuses a pooled connection
+            this.bodyWriters.execute(streamedBody);
+        }
+        final ListenableFuture<Response> future;
+        try {
+            future = this.httpClient.executeRequest(requestBuilder.build());
+        } catch (IOException | RuntimeException e) {
+            if (streamedBody != null) {
+                streamedBody.close();
+            }
+            throw e;
+        }
+        request.getAbortHandle().onAbort(new Runnable() {
+            @Override
+            public void run() {
+                future.cancel(true);
+            }
+        });
+        if (streamedBody != null) {
+            streamedBody.closeWhenDone(future);
+        }
+        Response rawResponse = future.get();
 
         BaseClientResponse response = new BaseClientResponse(new SimpleBaseClientResponseStreamFactory(rawResponse), this,
                                                              request.getErrorStatusCriteria());
@@ -105,6 +177,10 @@ public class AsyncHttpClientExecutor extends AbstractClientExecutor {
                 requestBuilder.addHeader(header.getKey(), value);
             }
         }
+        // when compression is enabled in its config AsyncHttpClient negotiates and decodes it by itself
+        if (!this.httpClient.getConfig().isCompressionEnabled() && !headers.containsKey(HttpHeaderNames.ACCEPT_ENCODING)) {
+            requestBuilder.addHeader(HttpHeaderNames.ACCEPT_ENCODING, ContentEncoding.ACCEPTED);
+        }
     }
 
     /**
@@ -124,9 +200,152 @@ public class AsyncHttpClientExecutor extends AbstractClientExecutor {
         return headers;
     }
 
+    /**
+     * A body that is written into a pipe by a thread of the executor while AsyncHttpClient reads it. Unlike
+     * AsyncHttpClient's InputStreamBodyGenerator, which takes a failure to read for the end of the body, a body that
+     * can't be written fails the exchange and closes its connection, so the server never takes what was sent for the
+     * whole body.
+     */
+    private static final class StreamedBody implements BodyGenerator, Runnable {
+        private final ClientRequest request;
+        private final PipedInputStream in = new PipedInputStream(STREAMED_BODY_BUFFER_SIZE);
+        private final PipedOutputStream out;
+        private volatile Throwable failure;
+
+        private StreamedBody(ClientRequest request) throws IOException {
+            this.request = request;
+            // connected right away, since reading a pipe that isn't connected yet fails
+            this.out = new PipedOutputStream(this.in);
+        }
+
+        @Override
+        public void run() {
+            try {
+                OutputStream body = this.request.shouldCompressBody(-1) ? ContentEncoding.gzip(this.out) : this.out;
+                this.request.writeRequestBody(this.request.getHeadersAsObjects(), body);
+                body.close();
+            } catch (IOException | RuntimeException e) {
+                this.failure = e;
+                try {
+                    Closeables.close(this.out, true);
+                } catch (IOException impossible) {
+                    throw new AssertionError(impossible);
+                }
+            }
+        }
+
+        /**
+         * Closes the pipe once the request completes, so that the writer doesn't wait for a reader that is gone when
+         * the server answers before the whole body has been written.
+         */
+        private void closeWhenDone(ListenableFuture<Response> future) {
+            future.addListener(new Runnable() {
+                @Override
+                public void run() {
+                    close();
+                }
+            }, MoreExecutors.sameThreadExecutor());
+        }
+
+        private void close() {
+            try {
+                Closeables.close(this.in, true);
+            } catch (IOException impossible) {
+                throw new AssertionError(impossible);
+            }
+        }
+
+        /**
+         * AsyncHttpClient sets the Transfer-Encoding but leaves the chunks to the body, so each read of the pipe is
+         * written as one chunk and the end of the body as the last, empty chunk.
+         */
+        @Override
+        public Body createBody() {
+            return new Body() {
+                private byte[] chunk = new byte[0];
+                private boolean ended;
+
+                @Override
+                public long getContentLength() {
+                    return -1;
+                }
+
+                @Override
+                public long read(ByteBuffer target) throws IOException {
+                    if (this.ended) {
+                        return -1;
+                    }
+                    // room for the size of the chunk in hex and the two CRLFs around the data
+                    int length = target.remaining() - CHUNK_FRAMING;
+                    if (this.chunk.length < length) {
+                        this.chunk = new byte[length];
+                    }
+                    int start = target.position();
+                    int read = StreamedBody.this.in.read(this.chunk, 0, length);
+                    if (read < 0) {
+                        if (StreamedBody.this.failure != null) {
+                            throw new IOException("The request body could not be written", StreamedBody.this.failure);
+                        }
+                        this.ended = true;
+                        target.put(LAST_CHUNK);
+                    } else {
+                        target.put(Integer.toHexString(read).getBytes(Charsets.US_ASCII)).put(CRLF);
+                        target.put(this.chunk, 0, read).put(CRLF);
+                    }
+                    return target.position() - start;
+                }
+
+                @Override
+                public void close() {
+                }
+            };
+        }
+    }
+
+    /**
+     * Generates a body with a known Content-Length from the remaining bytes of a ByteBuffer. Each body reads from its
+     * own duplicate, so the request can be sent again, and the bytes are copied straight into the buffers Netty asks to
+     * have filled.
+     */
+    private static final class ByteBufferBodyGenerator implements BodyGenerator {
+        private final ByteBuffer buffer;
+
+        private ByteBufferBodyGenerator(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public Body createBody() {
+            final ByteBuffer source = this.buffer.duplicate();
+            return new Body() {
+                @Override
+                public long getContentLength() {
+                    return ByteBufferBodyGenerator.this.buffer.remaining();
+                }
+
+                @Override
+                public long read(ByteBuffer target) {
+                    if (!source.hasRemaining()) {
+                        return -1;
+                    }
+                    int count = Math.min(source.remaining(), target.remaining());
+                    ByteBuffer slice = source.duplicate();
+                    slice.limit(slice.position() + count);
+                    target.put(slice);
+                    source.position(source.position() + count);
+                    return count;
+                }
+
+                @Override
+                public void close() {
+                }
+            };
+        }
+    }
+
     @Override
     public void close() throws Exception {
-
+        this.bodyWriters.shutdownNow();
     }
 
     private class SimpleBaseClientResponseStreamFactory implements BaseClientResponse.BaseClientResponseStreamFactory {
@@ -143,6 +362,9 @@ public class AsyncHttpClientExecutor extends AbstractClientExecutor {
                 if(rawStream == null) {
                     return null;
                 }
+                if (!AsyncHttpClientExecutor.this.httpClient.getConfig().isCompressionEnabled()) {
+                    rawStream = ContentEncoding.decode(rawStream, this.res.getHeader(HttpHeaderNames.CONTENT_ENCODING));
+                }
                 this.stream =  new SelfExpandingBufferredInputStream(rawStream);
             }
             return this.stream;
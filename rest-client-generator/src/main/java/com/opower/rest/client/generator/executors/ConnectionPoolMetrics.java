@@ -0,0 +1,98 @@
+/**
+ *    Copyright 2014 Opower, Inc.
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ **/
+package com.opower.rest.client.generator.executors;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Snapshot of the state of a connection pool. Connection counts are taken at the moment of the snapshot, lease counts
+ * and wait times are accumulated since the pool was created.
+ */
+public final class ConnectionPoolMetrics {
+    private final int leased;
+    private final int available;
+    private final int pending;
+    private final int maxTotal;
+    private final long leaseCount;
+    private final long totalLeaseWaitNanos;
+    private final long maxLeaseWaitNanos;
+
+    ConnectionPoolMetrics(int leased, int available, int pending, int maxTotal, long leaseCount,
+                          long totalLeaseWaitNanos, long maxLeaseWaitNanos) {
+        this.leased = leased;
+        this.available = available;
+        this.pending = pending;
+        this.maxTotal = maxTotal;
+        this.leaseCount = leaseCount;
+        this.totalLeaseWaitNanos = totalLeaseWaitNanos;
+        this.maxLeaseWaitNanos = maxLeaseWaitNanos;
+    }
+
+    /**
+     * @return the number of connections currently in use by requests
+     */
+    public int getLeased() {
+        return this.leased;
+    }
+
+    /**
+     * @return the number of idle connections kept open for reuse
+     */
+    public int getAvailable() {
+        return this.available;
+    }
+
+    /**
+     * @return the number of requests waiting for a connection
+     */
+    public int getPending() {
+        return this.pending;
+    }
+
+    public int getMaxTotal() {
+        return this.maxTotal;
+    }
+
+    /**
+     * @return the number of connections leased so far
+     */
+    public long getLeaseCount() {
+        return this.leaseCount;
+    }
+
+    /**
+     * @param unit the unit of the result
+     * @return the average time requests waited for a connection
+     */
+    public long getMeanLeaseWait(TimeUnit unit) {
+        return this.leaseCount == 0 ? 0 : unit.convert(this.totalLeaseWaitNanos / this.leaseCount, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * @param unit the unit of the result
+     * @return the longest time a request waited for a connection
+     */
+    public long getMaxLeaseWait(TimeUnit unit) {
+        return unit.convert(this.maxLeaseWaitNanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("ConnectionPoolMetrics{leased=%d, available=%d, pending=%d, maxTotal=%d, leaseCount=%d, "
+                             + "meanLeaseWaitMicros=%d, maxLeaseWaitMicros=%d}", this.leased, this.available,
+                             this.pending, this.maxTotal, this.leaseCount, getMeanLeaseWait(TimeUnit.MICROSECONDS),
+                             getMaxLeaseWait(TimeUnit.MICROSECONDS));
+    }
+}
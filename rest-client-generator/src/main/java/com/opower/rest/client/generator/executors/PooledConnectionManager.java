@@ -0,0 +1,126 @@
+/**
+ *    Copyright 2014 Opower, Inc.
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ **/
+package com.opower.rest.client.generator.executors;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.apache.http.conn.ClientConnectionRequest;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+import org.apache.http.conn.ManagedClientConnection;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.conn.scheme.SchemeRegistry;
+import org.apache.http.impl.conn.PoolingClientConnectionManager;
+import org.apache.http.pool.PoolStats;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * PoolingClientConnectionManager that measures how long requests wait for a connection and can evict expired and idle
+ * connections on a background thread, so that connections the server has already closed aren't handed out.
+ */
+public class PooledConnectionManager extends PoolingClientConnectionManager {
+
+    private final AtomicLong leases = new AtomicLong();
+    private final AtomicLong totalLeaseWaitNanos = new AtomicLong();
+    private final AtomicLong maxLeaseWaitNanos = new AtomicLong();
+    private ScheduledExecutorService evictor;
+
+    /**
+     * Creates a PooledConnectionManager.
+     * @param schemeRegistry the schemes supported by the pool
+     * @param timeToLive the maximum lifetime of a connection, 0 or less for no limit
+     * @param unit the unit of timeToLive
+     */
+    public PooledConnectionManager(SchemeRegistry schemeRegistry, long timeToLive, TimeUnit unit) {
+        super(schemeRegistry, timeToLive, unit);
+    }
+
+    /**
+     * Close expired connections, and connections that have been idle for longer than the idle timeout, at a fixed
+     * interval on a daemon thread.
+     * @param idleTimeoutMillis how long a connection may stay idle, 0 or less to only close expired connections
+     * @param intervalMillis the time between evictions
+     */
+    public synchronized void startEviction(final long idleTimeoutMillis, long intervalMillis) {
+        checkArgument(intervalMillis > 0, "intervalMillis must be positive");
+        checkState(this.evictor == null, "Eviction has already been started");
+        this.evictor = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder().setDaemon(true)
+                .setNameFormat("connection-evictor-%d").build());
+        this.evictor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                closeExpiredConnections();
+                if (idleTimeoutMillis > 0) {
+                    closeIdleConnections(idleTimeoutMillis, TimeUnit.MILLISECONDS);
+                }
+            }
+        }, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public ClientConnectionRequest requestConnection(HttpRoute route, Object state) {
+        final ClientConnectionRequest request = super.requestConnection(route, state);
+        return new ClientConnectionRequest() {
+            @Override
+            public ManagedClientConnection getConnection(long timeout, TimeUnit unit)
+                    throws InterruptedException, ConnectionPoolTimeoutException {
+                long start = System.nanoTime();
+                try {
+                    return request.getConnection(timeout, unit);
+                } finally {
+                    recordLeaseWait(System.nanoTime() - start);
+                }
+            }
+
+            @Override
+            public void abortRequest() {
+                request.abortRequest();
+            }
+        };
+    }
+
+    private void recordLeaseWait(long nanos) {
+        this.leases.incrementAndGet();
+        this.totalLeaseWaitNanos.addAndGet(nanos);
+        long max = this.maxLeaseWaitNanos.get();
+        while (nanos > max && !this.maxLeaseWaitNanos.compareAndSet(max, nanos)) {
+            max = this.maxLeaseWaitNanos.get();
+        }
+    }
+
+    /**
+     * @return a snapshot of the state of the pool and of the time requests waited for a connection
+     */
+    public ConnectionPoolMetrics getMetrics() {
+        PoolStats stats = getTotalStats();
+        return new ConnectionPoolMetrics(stats.getLeased(), stats.getAvailable(), stats.getPending(), stats.getMax(),
+                                         this.leases.get(), this.totalLeaseWaitNanos.get(), this.maxLeaseWaitNanos.get());
+    }
+
+    @Override
+    public void shutdown() {
+        synchronized (this) {
+            if (this.evictor != null) {
+                this.evictor.shutdownNow();
+            }
+        }
+        super.shutdown();
+    }
+}
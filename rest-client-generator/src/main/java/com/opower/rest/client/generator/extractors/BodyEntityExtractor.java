@@ -19,6 +19,7 @@ import com.opower.rest.client.generator.core.BaseClientResponse;
 
 import java.io.InputStream;
 import java.lang.reflect.Method;
+import java.lang.reflect.Type;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 import static com.opower.rest.client.generator.extractors.DefaultEntityExtractorFactory.handleResponseErrors;
@@ -35,9 +36,24 @@ import static com.opower.rest.client.generator.extractors.DefaultEntityExtractor
 @SuppressWarnings("unchecked")
 public class BodyEntityExtractor implements EntityExtractor {
     private final Method method;
+    private final Class<?> type;
+    private final Type genericType;
 
     public BodyEntityExtractor(Method method) {
+        this(method, method.getReturnType(), method.getGenericReturnType());
+    }
+
+    /**
+     * Creates a BodyEntityExtractor that reads the body as the specified type instead of the return type of the method.
+     * This is useful for methods that return the entity wrapped in another type, like a Future.
+     * @param method the method of the resource interface
+     * @param type the type of the entity
+     * @param genericType the generic type of the entity
+     */
+    public BodyEntityExtractor(Method method, Class<?> type, Type genericType) {
         this.method = checkNotNull(method);
+        this.type = type;
+        this.genericType = genericType;
     }
 
     public Object extractEntity(ClientRequestContext context, Object... args) {
@@ -48,11 +64,11 @@ public class BodyEntityExtractor implements EntityExtractor {
         boolean releaseConnectionAfter = true;
         try {
             // void methods should be handled before this method gets called, but it's worth being defensive
-            if (this.method.getReturnType() == null) {
+            if (this.type == null) {
                 throw new RuntimeException(
                         "No type information to extract entity with.  You use other getEntity() methods");
             }
-            Object obj = response.getEntity(this.method.getReturnType(), this.method.getGenericReturnType());
+            Object obj = response.getEntity(this.type, this.genericType);
             if (obj instanceof InputStream)
                 releaseConnectionAfter = false;
             return obj;
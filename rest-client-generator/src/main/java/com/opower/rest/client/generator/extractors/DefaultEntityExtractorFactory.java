@@ -66,6 +66,9 @@ public class DefaultEntityExtractorFactory implements EntityExtractorFactory {
     public EntityExtractor createExtractor(final Method method) {
         checkNotNull(method);
         final Class returnType = method.getReturnType();
+        if (ResponseSinkExtractor.hasResponseSink(method)) {
+            return new ResponseSinkExtractor(method);
+        }
         if (isVoidReturnType(returnType)) {
             return createVoidExtractor(method, true);
         }
@@ -75,6 +78,9 @@ public class DefaultEntityExtractorFactory implements EntityExtractorFactory {
         if (Response.class.isAssignableFrom(returnType) || returnType.getCanonicalName().equals("javax.ws.rs.core.Response")) {
             return createResponseTypeEntityExtractor(method);
         }
+        if (StreamingEntityExtractor.isStreaming(method)) {
+            return new StreamingEntityExtractor(method);
+        }
 
         // We are not a ClientResponse type so we need to unmarshall and narrow it
         // to right type. If we are unable to unmarshall, or encounter any kind of
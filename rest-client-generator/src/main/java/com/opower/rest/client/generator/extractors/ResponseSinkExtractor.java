@@ -0,0 +1,158 @@
+/**
+ *    Copyright 2014 Opower, Inc.
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ **/
+package com.opower.rest.client.generator.extractors;
+
+import com.opower.rest.client.generator.annotations.ResponseSink;
+import com.opower.rest.client.generator.core.BaseClientResponse;
+import com.opower.rest.client.generator.core.SelfExpandingBufferredInputStream;
+import com.opower.rest.client.generator.util.FindAnnotation;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.opower.rest.client.generator.extractors.DefaultEntityExtractorFactory.handleResponseErrors;
+import static com.opower.rest.client.generator.extractors.DefaultEntityExtractorFactory.isVoidReturnType;
+
+/**
+ * ResponseSinkExtractor copies the body of methods with a {@link ResponseSink} parameter into that sink, through a
+ * buffer that each thread reuses, and releases the connection before the method returns. ByteBuffer sinks are read
+ * into directly and fail with an IOException when the body doesn't fit. Error responses are handled like for any
+ * other method and are not copied.
+ *
+ * @see EntityExtractorFactory
+ */
+public class ResponseSinkExtractor implements EntityExtractor {
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final ThreadLocal<byte[]> BUFFER = new ThreadLocal<byte[]>() {
+        @Override
+        protected byte[] initialValue() {
+            return new byte[BUFFER_SIZE];
+        }
+    };
+
+    private final Method method;
+    private final boolean returnsCount;
+
+    public ResponseSinkExtractor(Method method) {
+        checkArgument(hasResponseSink(method), String.format("%s must have a @ResponseSink parameter", method));
+        Class<?> returnType = method.getReturnType();
+        this.returnsCount = long.class.equals(returnType) || Long.class.equals(returnType);
+        checkArgument(this.returnsCount || isVoidReturnType(returnType),
+                      String.format("%s must return void or long", method));
+        int sinks = 0;
+        for (int i = 0; i < method.getParameterTypes().length; i++) {
+            if (FindAnnotation.findAnnotation(method.getParameterAnnotations()[i], ResponseSink.class) != null) {
+                Class<?> type = method.getParameterTypes()[i];
+                checkArgument(OutputStream.class.isAssignableFrom(type)
+                              || WritableByteChannel.class.isAssignableFrom(type)
+                              || ByteBuffer.class.isAssignableFrom(type),
+                              String.format("The @ResponseSink of %s must be an OutputStream, a WritableByteChannel or "
+                                            + "a ByteBuffer", method));
+                sinks++;
+            }
+        }
+        checkArgument(sinks == 1, String.format("%s must have a single @ResponseSink parameter", method));
+        this.method = method;
+    }
+
+    /**
+     * @param method the method of the resource interface
+     * @return true if one of the parameters of the method is annotated with {@link ResponseSink}
+     */
+    public static boolean hasResponseSink(Method method) {
+        checkNotNull(method);
+        for (int i = 0; i < method.getParameterTypes().length; i++) {
+            if (FindAnnotation.findAnnotation(method.getParameterAnnotations()[i], ResponseSink.class) != null) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public Object extractEntity(ClientRequestContext context, Object... args) {
+        handleResponseErrors(this.method, context);
+        BaseClientResponse response = context.getClientResponse();
+        long copied;
+        try {
+            copied = copy(response.getStreamFactory().getInputStream(), context.getRequest().getResponseSink());
+        } catch (IOException | RuntimeException e) {
+            response.releaseConnection();
+            context.getErrorHandler().clientErrorHandling(this.method, response, e instanceof RuntimeException
+                    ? (RuntimeException) e : new RuntimeException(e));
+            throw new RuntimeException("Should be unreachable");
+        }
+        response.releaseConnection();
+        return this.returnsCount ? copied : null;
+    }
+
+    /**
+     * Copies the body into the sink and returns the number of bytes copied.
+     */
+    private static long copy(InputStream in, Object sink) throws IOException {
+        if (in == null) {
+            return 0;
+        }
+        if (in instanceof SelfExpandingBufferredInputStream) {
+            // the body goes to the sink, keeping a copy of it as well would defeat the purpose
+            ((SelfExpandingBufferredInputStream) in).stopExpanding();
+        }
+        if (sink instanceof ByteBuffer) {
+            return copy(in, (ByteBuffer) sink);
+        }
+        byte[] buffer = BUFFER.get();
+        ByteBuffer wrapped = sink instanceof WritableByteChannel ? ByteBuffer.wrap(buffer) : null;
+        long copied = 0;
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            if (wrapped == null) {
+                ((OutputStream) sink).write(buffer, 0, read);
+            }
+            else {
+                wrapped.clear().limit(read);
+                while (wrapped.hasRemaining()) {
+                    ((WritableByteChannel) sink).write(wrapped);
+                }
+            }
+            copied += read;
+        }
+        return copied;
+    }
+
+    /**
+     * Reads the body into the remaining bytes of the buffer and returns the number of bytes read.
+     */
+    private static long copy(InputStream in, ByteBuffer sink) throws IOException {
+        int start = sink.position();
+        ReadableByteChannel channel = Channels.newChannel(in);
+        while (sink.hasRemaining()) {
+            if (channel.read(sink) == -1) {
+                return sink.position() - start;
+            }
+        }
+        if (in.read() != -1) {
+            throw new IOException(String.format("The body is larger than the %d bytes left in the @ResponseSink buffer",
+                                                sink.position() - start));
+        }
+        return sink.position() - start;
+    }
+}
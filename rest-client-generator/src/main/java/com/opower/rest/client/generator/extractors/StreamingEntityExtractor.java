@@ -0,0 +1,105 @@
+/**
+ *    Copyright 2014 Opower, Inc.
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ **/
+package com.opower.rest.client.generator.extractors;
+
+import com.opower.rest.client.generator.core.BaseClientResponse;
+import com.opower.rest.client.generator.core.CloseableIterator;
+import com.opower.rest.client.generator.util.Types;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+import static com.opower.rest.client.generator.extractors.DefaultEntityExtractorFactory.handleResponseErrors;
+
+/**
+ * StreamingEntityExtractor reads the body of methods that return an Iterator or an Iterable one element at a time,
+ * using the {@link com.opower.rest.client.generator.core.StreamingMessageBodyReader} that can read the element type.
+ * The connection stays open until the elements have all been read or the returned object is closed, both Iterator and
+ * Iterable results implement {@link Closeable} for that purpose.
+ * <p/>
+ * The Iterable can only be iterated once, since the body is not kept.
+ *
+ * @see EntityExtractorFactory
+ */
+@SuppressWarnings("unchecked")
+public class StreamingEntityExtractor implements EntityExtractor {
+    private final Method method;
+    private final Class<?> elementType;
+    private final Type genericElementType;
+    private final boolean iterable;
+
+    public StreamingEntityExtractor(Method method) {
+        checkArgument(isStreaming(method), String.format("%s must return an Iterator or an Iterable", method));
+        checkArgument(method.getGenericReturnType() instanceof ParameterizedType,
+                      String.format("%s must declare the type of its elements", method));
+        this.method = method;
+        this.genericElementType = ((ParameterizedType) method.getGenericReturnType()).getActualTypeArguments()[0];
+        this.elementType = Types.getRawType(this.genericElementType);
+        this.iterable = Iterable.class.equals(method.getReturnType());
+    }
+
+    /**
+     * @param method the method of the resource interface
+     * @return true if the method returns an Iterator or an Iterable
+     */
+    public static boolean isStreaming(Method method) {
+        checkNotNull(method);
+        return Iterator.class.equals(method.getReturnType()) || Iterable.class.equals(method.getReturnType());
+    }
+
+    public Object extractEntity(ClientRequestContext context, Object... args) {
+        handleResponseErrors(this.method, context);
+        final BaseClientResponse response = context.getClientResponse();
+        try {
+            CloseableIterator<?> elements = response.getEntityIterator(this.elementType, this.genericElementType);
+            return this.iterable ? new SingleUseIterable(elements) : elements;
+        } catch (RuntimeException e) {
+            response.releaseConnection();
+            context.getErrorHandler().clientErrorHandling(this.method, response, e);
+        }
+        throw new RuntimeException("Should be unreachable");
+    }
+
+    /**
+     * Iterable that hands out the streaming iterator once.
+     */
+    private static final class SingleUseIterable implements Iterable<Object>, Closeable {
+        private final CloseableIterator<?> elements;
+        private final AtomicBoolean used = new AtomicBoolean();
+
+        private SingleUseIterable(CloseableIterator<?> elements) {
+            this.elements = elements;
+        }
+
+        @Override
+        public Iterator<Object> iterator() {
+            checkState(this.used.compareAndSet(false, true), "The streamed response can only be iterated once");
+            return (Iterator<Object>) this.elements;
+        }
+
+        @Override
+        public void close() throws IOException {
+            this.elements.close();
+        }
+    }
+}
@@ -0,0 +1,187 @@
+/**
+ *    Copyright 2014 Opower, Inc.
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ **/
+package com.opower.rest.client.generator.limiter;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Limits the number of concurrent requests for a single resource method to a value that adapts to the latency of the
+ * downstream service. The limit follows an additive increase / multiplicative decrease scheme: it grows by one for every
+ * healthy sample taken while the limit is actually in use, and it shrinks by the backoff ratio whenever a request fails
+ * with an overload signal or takes longer than the baseline round trip time multiplied by the rtt tolerance. The
+ * baseline is a slowly moving average of the observed round trip times.
+ * <p/>
+ * Acquiring a permit is lock free, callers beyond the limit are rejected immediately rather than queued.
+ */
+public class ConcurrencyLimiter {
+
+    private static final double BASELINE_SMOOTHING = 0.05;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final double backoffRatio;
+    private final double rttTolerance;
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    private volatile int limit;
+    // guarded by this
+    private double exactLimit;
+    private double baselineRttNanos;
+
+    private ConcurrencyLimiter(Builder builder) {
+        this.minLimit = builder.minLimit;
+        this.maxLimit = builder.maxLimit;
+        this.backoffRatio = builder.backoffRatio;
+        this.rttTolerance = builder.rttTolerance;
+        this.exactLimit = builder.initialLimit;
+        this.limit = builder.initialLimit;
+    }
+
+    /**
+     * Creates a Builder initialized with an initial limit of 20, bounds of 1 and 200, a backoff ratio of 0.9 and an rtt
+     * tolerance of 2.
+     * @return the builder
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Try to get a permit for a request. Every successful call must be followed by a call to
+     * {@link #release(long, boolean)}.
+     * @return true if the request may proceed, false if the limit has been reached
+     */
+    public boolean tryAcquire() {
+        while (true) {
+            int current = this.inFlight.get();
+            if (current >= this.limit) {
+                return false;
+            }
+            if (this.inFlight.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Return a permit and feed the outcome of the request to the limit algorithm.
+     * @param rttNanos how long the request took
+     * @param overloaded true if the request failed in a way that indicates the downstream service is overloaded,
+     *                   for instance a timeout or a 503
+     */
+    public void release(long rttNanos, boolean overloaded) {
+        int current = this.inFlight.getAndDecrement();
+        synchronized (this) {
+            if (this.baselineRttNanos == 0) {
+                this.baselineRttNanos = rttNanos;
+            }
+            if (overloaded || rttNanos > this.baselineRttNanos * this.rttTolerance) {
+                this.exactLimit = Math.max(this.minLimit, this.exactLimit * this.backoffRatio);
+            }
+            else if (current * 2 >= this.limit) {
+                // only grow when the limit is actually being used, otherwise an idle client would drift to maxLimit
+                this.exactLimit = Math.min(this.maxLimit, this.exactLimit + 1);
+            }
+            if (!overloaded) {
+                this.baselineRttNanos += (rttNanos - this.baselineRttNanos) * BASELINE_SMOOTHING;
+            }
+            this.limit = (int) this.exactLimit;
+        }
+    }
+
+    public int getLimit() {
+        return this.limit;
+    }
+
+    public int getInFlight() {
+        return this.inFlight.get();
+    }
+
+    /**
+     * @return the current baseline round trip time in milliseconds
+     */
+    public synchronized double getBaselineRttMillis() {
+        return this.baselineRttNanos / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("ConcurrencyLimiter{limit=%d, inFlight=%d}", getLimit(), getInFlight());
+    }
+
+    /**
+     * Builder for ConcurrencyLimiter instances. A Builder can be used to build any number of independent limiters.
+     */
+    public static final class Builder {
+        private static final int DEFAULT_INITIAL_LIMIT = 20;
+        private static final int DEFAULT_MAX_LIMIT = 200;
+        private static final double DEFAULT_BACKOFF_RATIO = 0.9;
+        private static final double DEFAULT_RTT_TOLERANCE = 2.0;
+
+        private int initialLimit = DEFAULT_INITIAL_LIMIT;
+        private int minLimit = 1;
+        private int maxLimit = DEFAULT_MAX_LIMIT;
+        private double backoffRatio = DEFAULT_BACKOFF_RATIO;
+        private double rttTolerance = DEFAULT_RTT_TOLERANCE;
+
+        private Builder() {
+        }
+
+        /**
+         * The bounds of the limit.
+         * @param initialLimit the limit to start with
+         * @param minLimit the lowest the limit can go
+         * @param maxLimit the highest the limit can go
+         * @return the builder
+         */
+        public Builder limits(int initialLimit, int minLimit, int maxLimit) {
+            checkArgument(minLimit > 0 && minLimit <= initialLimit && initialLimit <= maxLimit,
+                          "limits must satisfy 0 < minLimit <= initialLimit <= maxLimit");
+            this.initialLimit = initialLimit;
+            this.minLimit = minLimit;
+            this.maxLimit = maxLimit;
+            return this;
+        }
+
+        /**
+         * The factor the limit is multiplied with when the downstream service shows signs of overload.
+         * @param backoffRatio a value between 0.5 and 1 (exclusive)
+         * @return the builder
+         */
+        public Builder backoffRatio(double backoffRatio) {
+            checkArgument(backoffRatio >= 0.5 && backoffRatio < 1, "backoffRatio must be in [0.5, 1)");
+            this.backoffRatio = backoffRatio;
+            return this;
+        }
+
+        /**
+         * How much slower than the baseline a request may be before it is treated as a sign of overload.
+         * @param rttTolerance a value of at least 1
+         * @return the builder
+         */
+        public Builder rttTolerance(double rttTolerance) {
+            checkArgument(rttTolerance >= 1, "rttTolerance must be at least 1");
+            this.rttTolerance = rttTolerance;
+            return this;
+        }
+
+        public ConcurrencyLimiter build() {
+            return new ConcurrencyLimiter(this);
+        }
+    }
+}
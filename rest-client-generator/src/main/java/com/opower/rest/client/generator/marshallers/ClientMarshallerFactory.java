@@ -14,6 +14,7 @@
  **/
 package com.opower.rest.client.generator.marshallers;
 
+import com.opower.rest.client.generator.annotations.ResponseSink;
 import com.opower.rest.client.generator.util.FindAnnotation;
 import com.opower.rest.client.generator.util.MediaTypeHelper;
 
@@ -79,6 +80,9 @@ public class ClientMarshallerFactory {
         } else if ((formParam = FindAnnotation.findAnnotation(annotations,
                 FormParam.class)) != null) {
             marshaller = new FormParamMarshaller(formParam.value());
+        } else if ((FindAnnotation.findAnnotation(annotations,
+                ResponseSink.class)) != null) {
+            marshaller = new ResponseSinkMarshaller();
         } else if ((FindAnnotation.findAnnotation(annotations,
                 Context.class)) != null) {
             marshaller = new NOOPMarshaller();
@@ -46,4 +46,16 @@ public class MessageBodyParameterMarshaller implements Marshaller {
         return type;
     }
 
+    public MediaType getMediaType() {
+        return mediaType;
+    }
+
+    public Type getGenericType() {
+        return genericType;
+    }
+
+    public Annotation[] getAnnotations() {
+        return annotations;
+    }
+
 }
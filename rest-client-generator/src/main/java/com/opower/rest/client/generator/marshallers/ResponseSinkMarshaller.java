@@ -0,0 +1,32 @@
+/**
+ *    Copyright 2014 Opower, Inc.
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ **/
+package com.opower.rest.client.generator.marshallers;
+
+
+import com.opower.rest.client.generator.core.ClientRequest;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Marshaller for the {@link com.opower.rest.client.generator.annotations.ResponseSink} parameter. It doesn't add
+ * anything to the request that is sent, it tells the request where the response body goes.
+ */
+public class ResponseSinkMarshaller implements Marshaller {
+
+    public void build(ClientRequest request, Object target) {
+        request.responseSink(checkNotNull(target, "The response sink must not be null"));
+    }
+
+}
@@ -53,13 +53,17 @@ public class Builtin
     private static ConcurrentMap<Class<?>, Object> init() {
         ConcurrentMap<Class<?>, Object> providerMap = new ConcurrentHashMap<>();
         providerMap.putIfAbsent(ByteArrayProvider.class, new ByteArrayProvider());
+        providerMap.putIfAbsent(ByteBufferProvider.class, new ByteBufferProvider());
+        providerMap.putIfAbsent(ByteChannelProvider.class, new ByteChannelProvider());
         providerMap.putIfAbsent(DataSourceProvider.class, new DataSourceProvider());
         providerMap.putIfAbsent(DefaultTextPlain.class, new DefaultTextPlain());
         providerMap.putIfAbsent(DocumentProvider.class, new DocumentProvider());
         providerMap.putIfAbsent(FileProvider.class, new FileProvider());
+        providerMap.putIfAbsent(PathProvider.class, new PathProvider());
         providerMap.putIfAbsent(FormUrlEncodedProvider.class, new FormUrlEncodedProvider());
         providerMap.putIfAbsent(IIOImageProvider.class, new IIOImageProvider());
         providerMap.putIfAbsent(InputStreamProvider.class, new InputStreamProvider());
+        providerMap.putIfAbsent(JsonStreamingProvider.class, new JsonStreamingProvider());
         providerMap.putIfAbsent(StreamingOutputProvider.class, new StreamingOutputProvider());
         providerMap.putIfAbsent(StringTextStar.class, new StringTextStar());
         return providerMap;
@@ -0,0 +1,187 @@
+/**
+ *    Copyright 2014 Opower, Inc.
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ **/
+package com.opower.rest.client.generator.plugins.providers;
+
+import com.opower.rest.client.generator.util.BufferPool;
+import com.opower.rest.client.generator.util.HttpHeaderNames;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayList;
+import java.util.List;
+import javax.ws.rs.Consumes;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.ext.MessageBodyReader;
+import javax.ws.rs.ext.MessageBodyWriter;
+import javax.ws.rs.ext.Provider;
+
+/**
+ * Reads and writes {@link ByteBuffer} bodies. Responses are read into a direct buffer and returned ready to be read.
+ * Bodies that fit in a buffer of the {@link BufferPool} are read into a pooled buffer, which the caller can hand back
+ * with {@link BufferPool#release(ByteBuffer)} once done with it; larger bodies get a buffer of exactly their size, and
+ * when their length isn't known up front they are gathered in pooled buffers first. A body that ends before its
+ * Content-Length fails with an {@link EOFException}. Request bodies are the remaining bytes of the buffer, whose
+ * position is left alone so the request can be sent again.
+ * <p/>
+ * To read into a buffer of your own, pass it as the {@link com.opower.rest.client.generator.annotations.ResponseSink}
+ * of the method instead.
+ */
+@Provider
+@Produces("*/*")
+@Consumes("*/*")
+public class ByteBufferProvider implements MessageBodyReader<ByteBuffer>, MessageBodyWriter<ByteBuffer> {
+
+    private final BufferPool pool;
+
+    /**
+     * Creates a ByteBufferProvider that uses the shared BufferPool.
+     */
+    public ByteBufferProvider() {
+        this(BufferPool.shared());
+    }
+
+    /**
+     * Creates a ByteBufferProvider.
+     * @param pool the pool of direct buffers used for responses
+     */
+    public ByteBufferProvider(BufferPool pool) {
+        this.pool = pool;
+    }
+
+    @Override
+    public boolean isReadable(Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType) {
+        return ByteBuffer.class == type;
+    }
+
+    @Override
+    public ByteBuffer readFrom(Class<ByteBuffer> type, Type genericType, Annotation[] annotations, MediaType mediaType,
+                               MultivaluedMap<String, String> httpHeaders, InputStream entityStream) throws IOException {
+        ReadableByteChannel in = Channels.newChannel(entityStream);
+        String length = httpHeaders == null ? null : httpHeaders.getFirst(HttpHeaderNames.CONTENT_LENGTH);
+        if (length != null && httpHeaders.getFirst(HttpHeaderNames.CONTENT_ENCODING) == null) {
+            int size = contentLength(length);
+            ByteBuffer body = size <= this.pool.getBufferSize() ? this.pool.acquire() : ByteBuffer.allocateDirect(size);
+            body.limit(size);
+            try {
+                if (fill(in, body)) {
+                    body.flip();
+                    return body;
+                }
+            } catch (IOException | RuntimeException e) {
+                this.pool.release(body);
+                throw e;
+            }
+            String message = String.format("The body ended after %d of its %d bytes", body.position(), size);
+            this.pool.release(body);
+            throw new EOFException(message);
+        }
+
+        ByteBuffer first = this.pool.acquire();
+        try {
+            if (!fill(in, first)) {
+                first.flip();
+                return first;
+            }
+        } catch (IOException | RuntimeException e) {
+            this.pool.release(first);
+            throw e;
+        }
+        // the body doesn't fit in a pooled buffer, gather it in more of them to learn its size
+        List<ByteBuffer> chunks = new ArrayList<>();
+        chunks.add(first);
+        try {
+            long size = first.position();
+            boolean more = true;
+            while (more) {
+                ByteBuffer chunk = this.pool.acquire();
+                chunks.add(chunk);
+                more = fill(in, chunk);
+                size += chunk.position();
+                if (size > Integer.MAX_VALUE) {
+                    throw new IOException("The body is larger than the 2GB a ByteBuffer can hold, read it through an "
+                                          + "InputStream, a ReadableByteChannel or a @ResponseSink instead");
+                }
+            }
+            ByteBuffer body = ByteBuffer.allocateDirect((int) size);
+            for (ByteBuffer filled : chunks) {
+                filled.flip();
+                body.put(filled);
+            }
+            body.flip();
+            return body;
+        }
+        finally {
+            for (ByteBuffer filled : chunks) {
+                this.pool.release(filled);
+            }
+        }
+    }
+
+    /**
+     * Reads into the buffer until it is full or the body ends.
+     * @return true if the buffer is full and the body may go on
+     */
+    private static boolean fill(ReadableByteChannel in, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (in.read(buffer) == -1) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int contentLength(String length) throws IOException {
+        long size;
+        try {
+            size = Long.parseLong(length.trim());
+        } catch (NumberFormatException e) {
+            throw new IOException(String.format("Invalid Content-Length %s", length), e);
+        }
+        if (size < 0) {
+            throw new IOException(String.format("Invalid Content-Length %s", length));
+        }
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException(String.format("The Content-Length %d is larger than the 2GB a ByteBuffer can hold, "
+                                                + "read the body through an InputStream, a ReadableByteChannel or a "
+                                                + "@ResponseSink instead", size));
+        }
+        return (int) size;
+    }
+
+    @Override
+    public boolean isWriteable(Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType) {
+        return ByteBuffer.class.isAssignableFrom(type);
+    }
+
+    @Override
+    public long getSize(ByteBuffer buffer, Class<?> type, Type genericType, Annotation[] annotations,
+                        MediaType mediaType) {
+        return buffer.remaining();
+    }
+
+    @Override
+    public void writeTo(ByteBuffer buffer, Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType,
+                        MultivaluedMap<String, Object> httpHeaders, OutputStream entityStream) throws IOException {
+        ProviderHelper.writeTo(buffer, entityStream);
+    }
+}
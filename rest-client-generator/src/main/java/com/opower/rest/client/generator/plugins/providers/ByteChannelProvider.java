@@ -0,0 +1,90 @@
+/**
+ *    Copyright 2014 Opower, Inc.
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ **/
+package com.opower.rest.client.generator.plugins.providers;
+
+import com.opower.rest.client.generator.util.BufferPool;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import javax.ws.rs.Consumes;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.ext.MessageBodyReader;
+import javax.ws.rs.ext.MessageBodyWriter;
+import javax.ws.rs.ext.Provider;
+
+/**
+ * The {@link ReadableByteChannel} counterpart of the {@link InputStreamProvider}. A response channel reads straight
+ * from the connection, which stays open until the channel is closed. A request channel is copied to the connection
+ * until it is exhausted, through a pooled direct buffer or with transferTo for a FileChannel.
+ */
+@Provider
+@Produces("*/*")
+@Consumes("*/*")
+public class ByteChannelProvider implements MessageBodyReader<ReadableByteChannel>,
+        MessageBodyWriter<ReadableByteChannel> {
+
+    private final BufferPool pool;
+
+    /**
+     * Creates a ByteChannelProvider that uses the shared BufferPool.
+     */
+    public ByteChannelProvider() {
+        this(BufferPool.shared());
+    }
+
+    /**
+     * Creates a ByteChannelProvider.
+     * @param pool the pool of direct buffers used to copy request channels
+     */
+    public ByteChannelProvider(BufferPool pool) {
+        this.pool = pool;
+    }
+
+    @Override
+    public boolean isReadable(Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType) {
+        return ReadableByteChannel.class == type;
+    }
+
+    @Override
+    public ReadableByteChannel readFrom(Class<ReadableByteChannel> type, Type genericType, Annotation[] annotations,
+                                        MediaType mediaType, MultivaluedMap<String, String> httpHeaders,
+                                        InputStream entityStream) throws IOException {
+        return Channels.newChannel(entityStream);
+    }
+
+    @Override
+    public boolean isWriteable(Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType) {
+        return ReadableByteChannel.class.isAssignableFrom(type);
+    }
+
+    @Override
+    public long getSize(ReadableByteChannel channel, Class<?> type, Type genericType, Annotation[] annotations,
+                        MediaType mediaType) {
+        return -1;
+    }
+
+    @Override
+    public void writeTo(ReadableByteChannel channel, Class<?> type, Type genericType, Annotation[] annotations,
+                        MediaType mediaType, MultivaluedMap<String, Object> httpHeaders, OutputStream entityStream)
+            throws IOException {
+        ProviderHelper.writeTo(channel, entityStream, this.pool);
+    }
+}
@@ -14,7 +14,6 @@
  **/
 package com.opower.rest.client.generator.plugins.providers;
 
-import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
@@ -116,11 +115,11 @@ public class FileProvider implements MessageBodyReader<File>,
                        MultivaluedMap<String, Object> httpHeaders,
                        OutputStream entityStream) throws IOException
    {
-      InputStream inputStream = new BufferedInputStream(new FileInputStream(uploadFile));
+      FileInputStream inputStream = new FileInputStream(uploadFile);
 
       try
       {
-         ProviderHelper.writeTo(inputStream, entityStream);
+         ProviderHelper.writeTo(inputStream.getChannel(), entityStream);
       }
       finally
       {
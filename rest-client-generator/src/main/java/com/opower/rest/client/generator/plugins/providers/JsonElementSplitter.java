@@ -0,0 +1,155 @@
+/**
+ *    Copyright 2014 Opower, Inc.
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ **/
+package com.opower.rest.client.generator.plugins.providers;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Splits a JSON body into the raw bytes of its elements without parsing them. The body is either a JSON array, whose
+ * items are the elements, or a sequence of JSON values separated by whitespace, like newline delimited JSON. Only one
+ * element is held in memory at a time.
+ */
+final class JsonElementSplitter {
+
+    private static final int NONE = -2;
+
+    private final InputStream in;
+    private boolean started;
+    private boolean array;
+    private boolean finished;
+    private int pending = NONE;
+
+    JsonElementSplitter(InputStream in) {
+        this.in = in instanceof BufferedInputStream ? in : new BufferedInputStream(in);
+    }
+
+    /**
+     * Read the next element.
+     * @return the bytes of the element, or null if there are no more elements
+     * @throws IOException if the body can't be read or isn't valid
+     */
+    byte[] next() throws IOException {
+        if (this.finished) {
+            return null;
+        }
+        int c = skipWhitespace();
+        if (!this.started) {
+            this.started = true;
+            if (c == '[') {
+                this.array = true;
+                c = skipWhitespace();
+                if (c == ']') {
+                    this.finished = true;
+                    return null;
+                }
+            }
+        }
+        if (c == -1) {
+            if (this.array) {
+                throw new IOException("Unexpected end of JSON array");
+            }
+            this.finished = true;
+            return null;
+        }
+        byte[] element = readElement(c);
+        if (this.array) {
+            int separator = skipWhitespace();
+            if (separator == ']') {
+                this.finished = true;
+            }
+            else if (separator != ',') {
+                throw new IOException(String.format("Expected ',' or ']' in JSON array but found '%c'", (char) separator));
+            }
+        }
+        return element;
+    }
+
+    private byte[] readElement(int first) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(first);
+        if (first == '{' || first == '[') {
+            int depth = 1;
+            while (depth > 0) {
+                int c = readRequired();
+                out.write(c);
+                if (c == '"') {
+                    copyString(out);
+                }
+                else if (c == '{' || c == '[') {
+                    depth++;
+                }
+                else if (c == '}' || c == ']') {
+                    depth--;
+                }
+            }
+        }
+        else if (first == '"') {
+            copyString(out);
+        }
+        else {
+            int c = read();
+            while (c != -1 && !isWhitespace(c) && c != ',' && c != ']') {
+                out.write(c);
+                c = read();
+            }
+            this.pending = c;
+        }
+        return out.toByteArray();
+    }
+
+    private void copyString(ByteArrayOutputStream out) throws IOException {
+        int c = readRequired();
+        while (c != '"') {
+            out.write(c);
+            if (c == '\\') {
+                out.write(readRequired());
+            }
+            c = readRequired();
+        }
+        out.write(c);
+    }
+
+    private int skipWhitespace() throws IOException {
+        int c = read();
+        while (isWhitespace(c)) {
+            c = read();
+        }
+        return c;
+    }
+
+    private int read() throws IOException {
+        if (this.pending != NONE) {
+            int c = this.pending;
+            this.pending = NONE;
+            return c;
+        }
+        return this.in.read();
+    }
+
+    private int readRequired() throws IOException {
+        int c = read();
+        if (c == -1) {
+            throw new IOException("Unexpected end of JSON element");
+        }
+        return c;
+    }
+
+    private static boolean isWhitespace(int c) {
+        return c == ' ' || c == '\n' || c == '\r' || c == '\t';
+    }
+}
@@ -0,0 +1,197 @@
+/**
+ *    Copyright 2014 Opower, Inc.
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ **/
+package com.opower.rest.client.generator.plugins.providers;
+
+import com.google.common.base.Throwables;
+import com.opower.rest.client.generator.core.CloseableIterator;
+import com.opower.rest.client.generator.core.StreamingMessageBodyReader;
+import com.opower.rest.client.generator.core.StreamingMessageBodyWriter;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.ext.MessageBodyReader;
+import javax.ws.rs.ext.MessageBodyWriter;
+import javax.ws.rs.ext.Providers;
+
+/**
+ * Reads and writes JSON arrays and newline delimited JSON one element at a time. Each element is read or written with
+ * the MessageBodyReader or MessageBodyWriter registered for the element type and application/json, so any JSON
+ * provider of the client works for streaming too. Bodies are written as newline delimited JSON when the media type is
+ * application/x-ndjson and as a JSON array otherwise.
+ */
+public class JsonStreamingProvider implements StreamingMessageBodyReader, StreamingMessageBodyWriter {
+
+    private static final String NDJSON = "x-ndjson";
+
+    @Override
+    public boolean isReadable(Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType) {
+        return mediaType.isWildcardType() || isJson(mediaType);
+    }
+
+    @Override
+    public boolean isWriteable(Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType) {
+        return isJson(mediaType);
+    }
+
+    private static boolean isJson(MediaType mediaType) {
+        return "json".equals(mediaType.getSubtype())
+               || NDJSON.equals(mediaType.getSubtype())
+               || mediaType.getSubtype().endsWith("+json");
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void writeElements(Iterator<?> elements, Class<?> type, Type genericType, Annotation[] annotations,
+                              MediaType mediaType, MultivaluedMap<String, Object> httpHeaders,
+                              OutputStream entityStream, Providers providers) throws IOException {
+        boolean ndjson = NDJSON.equals(mediaType.getSubtype());
+        MessageBodyWriter writer = Object.class.equals(type)
+                ? null
+                : elementWriter(type, genericType, annotations, providers);
+        if (!ndjson) {
+            entityStream.write('[');
+        }
+        boolean first = true;
+        while (elements.hasNext()) {
+            Object element = elements.next();
+            if (!ndjson && !first) {
+                entityStream.write(',');
+            }
+            first = false;
+            if (writer == null) {
+                elementWriter(element.getClass(), element.getClass(), annotations, providers)
+                        .writeTo(element, element.getClass(), element.getClass(), annotations,
+                                 MediaType.APPLICATION_JSON_TYPE, httpHeaders, entityStream);
+            }
+            else {
+                writer.writeTo(element, type, genericType, annotations, MediaType.APPLICATION_JSON_TYPE, httpHeaders,
+                               entityStream);
+            }
+            if (ndjson) {
+                entityStream.write('\n');
+            }
+        }
+        if (!ndjson) {
+            entityStream.write(']');
+        }
+        entityStream.flush();
+    }
+
+    private static MessageBodyWriter elementWriter(Class<?> type, Type genericType, Annotation[] annotations,
+                                                   Providers providers) {
+        MessageBodyWriter writer = providers.getMessageBodyWriter(type, genericType, annotations,
+                                                                  MediaType.APPLICATION_JSON_TYPE);
+        if (writer == null) {
+            throw new IllegalStateException(String.format(
+                    "Unable to find a MessageBodyWriter of content-type %s and type %s",
+                    MediaType.APPLICATION_JSON_TYPE, genericType));
+        }
+        return writer;
+    }
+
+    @Override
+    public <T> CloseableIterator<T> readElements(Class<T> type, Type genericType, Annotation[] annotations,
+                                                 MediaType mediaType, MultivaluedMap<String, String> httpHeaders,
+                                                 InputStream entityStream, Providers providers) throws IOException {
+        MessageBodyReader<T> reader = providers.getMessageBodyReader(type, genericType, annotations,
+                                                                     MediaType.APPLICATION_JSON_TYPE);
+        if (reader == null) {
+            throw new IllegalStateException(String.format(
+                    "Unable to find a MessageBodyReader of content-type %s and type %s",
+                    MediaType.APPLICATION_JSON_TYPE, genericType));
+        }
+        return new ElementIterator<>(reader, type, genericType, annotations, httpHeaders, entityStream);
+    }
+
+    /**
+     * Reads the next element when asked if there is one.
+     */
+    private static final class ElementIterator<T> implements CloseableIterator<T> {
+        private final MessageBodyReader<T> reader;
+        private final Class<T> type;
+        private final Type genericType;
+        private final Annotation[] annotations;
+        private final MultivaluedMap<String, String> httpHeaders;
+        private final InputStream entityStream;
+        private final JsonElementSplitter splitter;
+        private byte[] next;
+        private boolean closed;
+
+        private ElementIterator(MessageBodyReader<T> reader, Class<T> type, Type genericType, Annotation[] annotations,
+                                MultivaluedMap<String, String> httpHeaders, InputStream entityStream) {
+            this.reader = reader;
+            this.type = type;
+            this.genericType = genericType;
+            this.annotations = annotations;
+            this.httpHeaders = httpHeaders;
+            this.entityStream = entityStream;
+            this.splitter = new JsonElementSplitter(entityStream);
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (this.next == null && !this.closed) {
+                try {
+                    this.next = this.splitter.next();
+                    if (this.next == null) {
+                        close();
+                    }
+                }
+                catch (IOException e) {
+                    throw Throwables.propagate(e);
+                }
+            }
+            return this.next != null;
+        }
+
+        @Override
+        public T next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            byte[] element = this.next;
+            this.next = null;
+            try {
+                return this.reader.readFrom(this.type, this.genericType, this.annotations, MediaType.APPLICATION_JSON_TYPE,
+                                            this.httpHeaders, new ByteArrayInputStream(element));
+            }
+            catch (IOException e) {
+                throw Throwables.propagate(e);
+            }
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!this.closed) {
+                this.closed = true;
+                this.next = null;
+                this.entityStream.close();
+            }
+        }
+    }
+}
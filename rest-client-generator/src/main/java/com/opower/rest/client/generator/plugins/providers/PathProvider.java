@@ -0,0 +1,82 @@
+/**
+ *    Copyright 2014 Opower, Inc.
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ **/
+package com.opower.rest.client.generator.plugins.providers;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import javax.ws.rs.Consumes;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.ext.MessageBodyReader;
+import javax.ws.rs.ext.MessageBodyWriter;
+import javax.ws.rs.ext.Provider;
+
+/**
+ * The {@link java.nio.file.Path} counterpart of the {@link FileProvider}. Uploads are copied from a FileChannel and
+ * downloads are saved to a temporary file.
+ */
+@Provider
+@Produces("*/*")
+@Consumes("*/*")
+public class PathProvider implements MessageBodyReader<Path>, MessageBodyWriter<Path> {
+
+    private static final String PREFIX = "pfx";
+    private static final String SUFFIX = "sfx";
+
+    @Override
+    public boolean isReadable(Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType) {
+        return Path.class == type;
+    }
+
+    @Override
+    public Path readFrom(Class<Path> type, Type genericType, Annotation[] annotations, MediaType mediaType,
+                         MultivaluedMap<String, String> httpHeaders, InputStream entityStream) throws IOException {
+        Path downloaded = Files.createTempFile(PREFIX, SUFFIX);
+        Files.copy(entityStream, downloaded, StandardCopyOption.REPLACE_EXISTING);
+        return downloaded;
+    }
+
+    @Override
+    public boolean isWriteable(Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType) {
+        return Path.class.isAssignableFrom(type);
+    }
+
+    @Override
+    public long getSize(Path path, Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType) {
+        try {
+            return Files.size(path);
+        }
+        catch (IOException e) {
+            return -1;
+        }
+    }
+
+    @Override
+    public void writeTo(Path path, Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType,
+                        MultivaluedMap<String, Object> httpHeaders, OutputStream entityStream) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ProviderHelper.writeTo(channel, entityStream);
+        }
+    }
+}
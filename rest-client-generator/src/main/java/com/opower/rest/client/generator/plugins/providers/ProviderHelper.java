@@ -16,12 +16,19 @@ package com.opower.rest.client.generator.plugins.providers;
 
 import java.io.BufferedReader;
 import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
 import java.util.ArrayList;
 import java.util.List;
+import com.opower.rest.client.generator.util.BufferPool;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Variant;
 import javax.ws.rs.core.Variant.VariantListBuilder;
@@ -140,4 +147,100 @@ public final class ProviderHelper
          out.write(buf, 0, read);
       }
    }
+
+   /**
+    * Copy the whole file to the OutputStream with {@link FileChannel#transferTo}. The JDK copies straight to the
+    * target when it is a channel it can transfer to, and through a small direct buffer otherwise, so the file is never
+    * held in memory. The OutputStream is not closed.
+    *
+    * @param in the channel of the file
+    * @param out the stream to write the file to
+    * @throws EOFException if the file is truncated before it is fully written
+    * @throws IOException if the file can't be read or the stream can't be written
+    */
+   public static void writeTo(final FileChannel in, final OutputStream out) throws IOException
+   {
+      WritableByteChannel target = Channels.newChannel(out);
+      long size = in.size();
+      long position = 0;
+      while (position < size)
+      {
+         long transferred = in.transferTo(position, size - position, target);
+         if (transferred == 0 && position >= in.size())
+         {
+            throw new EOFException("File truncated to " + position + " bytes while writing " + size + " bytes");
+         }
+         position += transferred;
+      }
+   }
+
+   /**
+    * Write the remaining bytes of the buffer to the OutputStream without changing its position. Heap buffers are
+    * written straight from their backing array, direct buffers through a channel over the stream. The OutputStream is
+    * not closed.
+    *
+    * @param buffer the bytes to write
+    * @param out the stream to write them to
+    * @throws IOException if the stream can't be written
+    */
+   public static void writeTo(final ByteBuffer buffer, final OutputStream out) throws IOException
+   {
+      if (buffer.hasArray())
+      {
+         out.write(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+         return;
+      }
+      ByteBuffer source = buffer.duplicate();
+      WritableByteChannel target = Channels.newChannel(out);
+      while (source.hasRemaining())
+      {
+         target.write(source);
+      }
+   }
+
+   /**
+    * Copy the channel to the OutputStream until it is exhausted, through a direct buffer taken from the pool. File
+    * channels are transferred with {@link FileChannel#transferTo} instead. Neither the channel nor the OutputStream is
+    * closed.
+    *
+    * @param in the channel to read from
+    * @param out the stream to write to
+    * @param pool the pool of direct buffers
+    * @throws IOException if the channel can't be read or the stream can't be written
+    */
+   public static void writeTo(final ReadableByteChannel in, final OutputStream out, final BufferPool pool)
+           throws IOException
+   {
+      if (in instanceof FileChannel)
+      {
+         FileChannel file = (FileChannel) in;
+         WritableByteChannel target = Channels.newChannel(out);
+         long position = file.position();
+         long size = file.size();
+         while (position < size)
+         {
+            position += file.transferTo(position, size - position, target);
+         }
+         file.position(position);
+         return;
+      }
+      ByteBuffer buffer = pool.acquire();
+      try
+      {
+         WritableByteChannel target = Channels.newChannel(out);
+         while (in.read(buffer) != -1)
+         {
+            buffer.flip();
+            while (buffer.hasRemaining())
+            {
+               target.write(buffer);
+            }
+            buffer.clear();
+         }
+      }
+      finally
+      {
+         pool.release(buffer);
+      }
+   }
 }
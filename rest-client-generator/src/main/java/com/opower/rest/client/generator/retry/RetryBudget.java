@@ -0,0 +1,95 @@
+/**
+ *    Copyright 2014 Opower, Inc.
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ **/
+package com.opower.rest.client.generator.retry;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Token bucket that limits retries to a percentage of the requests a client makes. Every original request deposits a
+ * fraction of a token and every retry withdraws a whole one, so a client configured with 10% can never send more than
+ * one retry for every ten requests, plus whatever is left in the bucket. When a downstream service is down for good,
+ * this keeps retries from multiplying the load on it.
+ * <p/>
+ * The bucket starts out full so that a client that just started can still retry. All operations are lock free.
+ */
+public class RetryBudget {
+
+    public static final int DEFAULT_PERCENT_CAN_RETRY = 10;
+    public static final int DEFAULT_MAX_TOKENS = 10;
+
+    private static final long TOKEN = 100;
+
+    private final long deposit;
+    private final long capacity;
+    private final AtomicLong balance;
+
+    /**
+     * Creates a RetryBudget that allows 10% retries with a capacity of 10 tokens.
+     */
+    public RetryBudget() {
+        this(DEFAULT_PERCENT_CAN_RETRY, DEFAULT_MAX_TOKENS);
+    }
+
+    /**
+     * Creates a RetryBudget.
+     * @param percentCanRetry the percentage of requests that may be retried, between 0 and 1000
+     * @param maxTokens the maximum number of retries that can be saved up
+     */
+    public RetryBudget(int percentCanRetry, int maxTokens) {
+        checkArgument(percentCanRetry >= 0 && percentCanRetry <= 1000, "percentCanRetry must be between 0 and 1000");
+        checkArgument(maxTokens >= 0, "maxTokens must not be negative");
+        this.deposit = percentCanRetry * TOKEN / 100;
+        this.capacity = maxTokens * TOKEN;
+        this.balance = new AtomicLong(this.capacity);
+    }
+
+    /**
+     * Record an original (non retry) request.
+     */
+    public void deposit() {
+        while (true) {
+            long current = this.balance.get();
+            long updated = Math.min(this.capacity, current + this.deposit);
+            if (updated == current || this.balance.compareAndSet(current, updated)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Try to pay for a retry.
+     * @return true if the retry may proceed, false if the budget is exhausted
+     */
+    public boolean tryWithdraw() {
+        while (true) {
+            long current = this.balance.get();
+            if (current < TOKEN) {
+                return false;
+            }
+            if (this.balance.compareAndSet(current, current - TOKEN)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * @return the number of retries that could currently be made
+     */
+    public int availableRetries() {
+        return (int) (this.balance.get() / TOKEN);
+    }
+}
@@ -0,0 +1,205 @@
+/**
+ *    Copyright 2014 Opower, Inc.
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ **/
+package com.opower.rest.client.generator.retry;
+
+import com.google.common.base.Predicate;
+import com.google.common.base.Predicates;
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableSet;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.Set;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Describes if and how a failed request should be retried. Retries use exponential backoff with full jitter, and by
+ * default they are only attempted for idempotent http methods and for failures caused by an IOException (connection
+ * refused, connection reset and the like). Every retry must also be paid for by the {@link RetryBudget} of the client.
+ * <p/>
+ * Instances are immutable and can be shared between methods and clients.
+ */
+public final class RetryPolicy {
+
+    /**
+     * The http methods that are safe to repeat without changing the outcome on the server.
+     */
+    public static final Set<String> IDEMPOTENT_METHODS = ImmutableSet.of("GET", "HEAD", "OPTIONS", "PUT", "DELETE", "TRACE");
+
+    /**
+     * Retries any failure that has an IOException somewhere in its causal chain.
+     */
+    public static final Predicate<Throwable> IO_EXCEPTIONS = new Predicate<Throwable>() {
+        @Override
+        public boolean apply(Throwable throwable) {
+            for (Throwable cause : Throwables.getCausalChain(checkNotNull(throwable))) {
+                if (cause instanceof IOException) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    };
+
+    private static final int DEFAULT_MAX_RETRIES = 1;
+    private static final long DEFAULT_INITIAL_BACKOFF_MILLIS = 10;
+    private static final long DEFAULT_MAX_BACKOFF_MILLIS = 1000;
+
+    private final int maxRetries;
+    private final long initialBackoffMillis;
+    private final long maxBackoffMillis;
+    private final boolean retryNonIdempotent;
+    private final Predicate<Throwable> retryableException;
+    private final Predicate<Integer> retryableStatus;
+
+    private RetryPolicy(Builder builder) {
+        this.maxRetries = builder.maxRetries;
+        this.initialBackoffMillis = builder.initialBackoffMillis;
+        this.maxBackoffMillis = builder.maxBackoffMillis;
+        this.retryNonIdempotent = builder.retryNonIdempotent;
+        this.retryableException = builder.retryableException;
+        this.retryableStatus = builder.retryableStatus;
+    }
+
+    /**
+     * Creates a Builder initialized with a single retry, 10ms initial backoff and 1s maximum backoff.
+     * @return the builder
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public int getMaxRetries() {
+        return this.maxRetries;
+    }
+
+    /**
+     * Check whether this policy should be used for requests with the given http method.
+     * @param httpMethod the http method of the request
+     * @return true if failed requests with this http method may be retried
+     */
+    public boolean appliesTo(String httpMethod) {
+        return this.retryNonIdempotent || IDEMPOTENT_METHODS.contains(httpMethod);
+    }
+
+    /**
+     * Check whether the given failure is worth another attempt.
+     * @param failure the Exception thrown while executing the request, usually a RuntimeException wrapping the cause
+     * @return true if the request should be retried
+     */
+    public boolean isRetryable(Throwable failure) {
+        return this.retryableException.apply(failure);
+    }
+
+    /**
+     * Check whether a response with the given status is worth another attempt.
+     * @param status the http status of the response
+     * @return true if the request should be retried
+     */
+    public boolean isRetryable(int status) {
+        return this.retryableStatus.apply(status);
+    }
+
+    /**
+     * Computes how long to wait before the given retry. The ceiling doubles with each retry, starting from the initial
+     * backoff and never exceeding the maximum backoff, and the actual delay is chosen uniformly between zero and that
+     * ceiling so that clients that failed together don't retry together.
+     * @param retry the number of the retry about to happen, starting at 0
+     * @param random the source of jitter
+     * @return the delay in milliseconds
+     */
+    public long backoffMillis(int retry, Random random) {
+        long ceiling = this.initialBackoffMillis << Math.min(retry, Long.numberOfLeadingZeros(this.initialBackoffMillis) - 1);
+        ceiling = Math.min(ceiling, this.maxBackoffMillis);
+        return ceiling <= 0 ? 0 : (long) (random.nextDouble() * (ceiling + 1));
+    }
+
+    /**
+     * Builder for RetryPolicy instances.
+     */
+    public static final class Builder {
+        private int maxRetries = DEFAULT_MAX_RETRIES;
+        private long initialBackoffMillis = DEFAULT_INITIAL_BACKOFF_MILLIS;
+        private long maxBackoffMillis = DEFAULT_MAX_BACKOFF_MILLIS;
+        private boolean retryNonIdempotent;
+        private Predicate<Throwable> retryableException = IO_EXCEPTIONS;
+        private Predicate<Integer> retryableStatus = Predicates.alwaysFalse();
+
+        private Builder() {
+        }
+
+        /**
+         * The maximum number of retries for a single invocation, not counting the initial attempt.
+         * @param maxRetries the number of retries
+         * @return the builder
+         */
+        public Builder maxRetries(int maxRetries) {
+            checkArgument(maxRetries >= 0, "maxRetries must not be negative");
+            this.maxRetries = maxRetries;
+            return this;
+        }
+
+        /**
+         * The exponential backoff settings.
+         * @param initialBackoffMillis the backoff ceiling for the first retry
+         * @param maxBackoffMillis the upper bound for the backoff ceiling
+         * @return the builder
+         */
+        public Builder backoff(long initialBackoffMillis, long maxBackoffMillis) {
+            checkArgument(initialBackoffMillis >= 0 && maxBackoffMillis >= initialBackoffMillis,
+                          "backoff values must satisfy 0 <= initialBackoffMillis <= maxBackoffMillis");
+            this.initialBackoffMillis = initialBackoffMillis;
+            this.maxBackoffMillis = maxBackoffMillis;
+            return this;
+        }
+
+        /**
+         * Allow retries of POST and other non idempotent requests. Only do this if the server can safely handle
+         * seeing the same request more than once.
+         * @return the builder
+         */
+        public Builder retryNonIdempotent() {
+            this.retryNonIdempotent = true;
+            return this;
+        }
+
+        /**
+         * Specify which failures should be retried. Defaults to {@link RetryPolicy#IO_EXCEPTIONS}.
+         * @param retryableException the Predicate to use
+         * @return the builder
+         */
+        public Builder retryOn(Predicate<Throwable> retryableException) {
+            this.retryableException = checkNotNull(retryableException);
+            return this;
+        }
+
+        /**
+         * Specify which response codes should be retried, for instance 503 during a deploy. By default no response is
+         * retried.
+         * @param retryableStatus the Predicate to use
+         * @return the builder
+         */
+        public Builder retryOnStatus(Predicate<Integer> retryableStatus) {
+            this.retryableStatus = checkNotNull(retryableStatus);
+            return this;
+        }
+
+        public RetryPolicy build() {
+            return new RetryPolicy(this);
+        }
+    }
+}
@@ -123,6 +123,8 @@ public class UriBuilderImpl extends UriBuilder {
         } else {
             this.ssp = null;
             if (uri.getHost() != null) host = uri.getHost();
+            // registry based authorities, like the socket path of an http+unix uri, are kept as they are
+            else if (uri.getRawAuthority() != null) host = uri.getRawAuthority();
             if (uri.getPort() != -1) port = uri.getPort();
             if (uri.getUserInfo() != null) userInfo = uri.getRawUserInfo();
             if (uri.getPath() != null && !uri.getPath().equals("")) path = uri.getRawPath();
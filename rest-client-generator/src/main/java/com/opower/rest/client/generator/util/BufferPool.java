@@ -0,0 +1,100 @@
+/**
+ *    Copyright 2014 Opower, Inc.
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ **/
+package com.opower.rest.client.generator.util;
+
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Pool of direct {@link ByteBuffer}s of a fixed size. Direct buffers are expensive to allocate and their native memory
+ * is only freed once they are garbage collected, so the buffers used to move bodies between channels are kept for the
+ * next body, up to a maximum number of idle buffers.
+ */
+public final class BufferPool {
+
+    public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+    public static final int DEFAULT_MAX_IDLE = 64;
+
+    private static final BufferPool SHARED = new BufferPool(DEFAULT_BUFFER_SIZE, DEFAULT_MAX_IDLE);
+
+    private final int bufferSize;
+    private final int maxIdle;
+    private final Queue<ByteBuffer> buffers = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger idle = new AtomicInteger();
+
+    /**
+     * Creates a BufferPool.
+     * @param bufferSize the capacity of the buffers
+     * @param maxIdle the maximum number of idle buffers kept
+     */
+    public BufferPool(int bufferSize, int maxIdle) {
+        checkArgument(bufferSize > 0, "bufferSize must be positive");
+        checkArgument(maxIdle >= 0, "maxIdle must not be negative");
+        this.bufferSize = bufferSize;
+        this.maxIdle = maxIdle;
+    }
+
+    /**
+     * @return the pool shared by all clients
+     */
+    public static BufferPool shared() {
+        return SHARED;
+    }
+
+    /**
+     * Take a cleared buffer from the pool, or allocate one if there is none.
+     * @return the direct buffer
+     */
+    public ByteBuffer acquire() {
+        ByteBuffer buffer = this.buffers.poll();
+        if (buffer == null) {
+            return ByteBuffer.allocateDirect(this.bufferSize);
+        }
+        this.idle.decrementAndGet();
+        buffer.clear();
+        return buffer;
+    }
+
+    /**
+     * Return a buffer to the pool. Buffers that didn't come from a pool of this size are ignored, as are buffers
+     * released while the pool is full.
+     * @param buffer the buffer, which must not be used anymore by the caller
+     */
+    public void release(ByteBuffer buffer) {
+        if (!buffer.isDirect() || buffer.capacity() != this.bufferSize) {
+            return;
+        }
+        if (this.idle.incrementAndGet() > this.maxIdle) {
+            this.idle.decrementAndGet();
+            return;
+        }
+        this.buffers.offer(buffer);
+    }
+
+    public int getBufferSize() {
+        return this.bufferSize;
+    }
+
+    /**
+     * @return the number of buffers waiting in the pool
+     */
+    public int getIdleCount() {
+        return this.idle.get();
+    }
+}
@@ -0,0 +1,311 @@
+/**
+ *    Copyright 2014 Opower, Inc.
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ **/
+package com.opower.rest.client.generator.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Locale;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * Support for the gzip and deflate content codings. Responses are inflated while they are read, with inflaters from an
+ * {@link InflaterPool}, and request bodies are compressed with gzip.
+ */
+public final class ContentEncoding {
+
+    public static final String GZIP = "gzip";
+    public static final String DEFLATE = "deflate";
+
+    /**
+     * The value of the Accept-Encoding header sent by the executors.
+     */
+    public static final String ACCEPTED = GZIP + ", " + DEFLATE;
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private ContentEncoding() {
+    }
+
+    /**
+     * Wrap the body of a response so that it is decoded while it is read. Bodies with any other content coding are
+     * returned as they are.
+     * @param in the body of the response, may be null
+     * @param contentEncoding the value of the Content-Encoding header, may be null
+     * @return the decoded body
+     */
+    public static InputStream decode(InputStream in, String contentEncoding) {
+        return decode(in, contentEncoding, InflaterPool.shared());
+    }
+
+    /**
+     * Wrap the body of a response so that it is decoded while it is read, using inflaters from the specified pool.
+     * @param in the body of the response, may be null
+     * @param contentEncoding the value of the Content-Encoding header, may be null
+     * @param pool the pool to take the inflater from
+     * @return the decoded body
+     */
+    public static InputStream decode(InputStream in, String contentEncoding, InflaterPool pool) {
+        if (in == null || contentEncoding == null) {
+            return in;
+        }
+        String coding = contentEncoding.trim().toLowerCase(Locale.ENGLISH);
+        if (GZIP.equals(coding) || "x-gzip".equals(coding)) {
+            return new InflatingInputStream(in, true, pool);
+        }
+        if (DEFLATE.equals(coding)) {
+            return new InflatingInputStream(in, false, pool);
+        }
+        return in;
+    }
+
+    /**
+     * Compress a request body with gzip.
+     * @param body the body
+     * @return the compressed body
+     */
+    public static byte[] gzip(byte[] body) {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(Math.max(64, body.length / 4));
+        try (GZIPOutputStream out = new GZIPOutputStream(buffer, BUFFER_SIZE)) {
+            out.write(body);
+        }
+        catch (IOException e) {
+            throw new IllegalStateException("Compressing in memory can't fail", e);
+        }
+        return buffer.toByteArray();
+    }
+
+    /**
+     * Compress everything written to the returned stream with gzip. Closing it finishes the compressed data and closes
+     * the specified stream, finishing it leaves the specified stream open.
+     * @param out the stream to write the compressed data to
+     * @return the stream to write the body to
+     * @throws IOException if the gzip header can't be written
+     */
+    public static GZIPOutputStream gzip(OutputStream out) throws IOException {
+        return new GZIPOutputStream(out, BUFFER_SIZE);
+    }
+
+    /**
+     * Inflates gzip or deflate data. The header is only read on the first read so that empty bodies, like the ones of
+     * HEAD requests, don't fail. The inflater goes back to the pool at the end of the data or when the stream is closed.
+     */
+    private static final class InflatingInputStream extends InputStream {
+        private static final int GZIP_MAGIC = 0x8b1f;
+        private static final int FHCRC = 2;
+        private static final int FEXTRA = 4;
+        private static final int FNAME = 8;
+        private static final int FCOMMENT = 16;
+        private static final int TRAILER_SIZE = 8;
+
+        private final InputStream in;
+        private final boolean gzip;
+        private final InflaterPool pool;
+        private final byte[] buffer = new byte[BUFFER_SIZE];
+        private final CRC32 crc = new CRC32();
+        private Inflater inflater;
+        private boolean nowrap;
+        private int buffered;
+        private boolean started;
+        private boolean finished;
+        private boolean closed;
+
+        private InflatingInputStream(InputStream in, boolean gzip, InflaterPool pool) {
+            this.in = in;
+            this.gzip = gzip;
+            this.pool = pool;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] single = new byte[1];
+            int read = read(single, 0, 1);
+            return read == -1 ? -1 : single[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (this.closed) {
+                throw new IOException("Stream closed");
+            }
+            if (this.finished) {
+                return -1;
+            }
+            if (len == 0) {
+                return 0;
+            }
+            if (!this.started) {
+                this.started = true;
+                if (!start()) {
+                    finish();
+                    return -1;
+                }
+            }
+            while (true) {
+                int inflated;
+                try {
+                    inflated = this.inflater.inflate(b, off, len);
+                }
+                catch (DataFormatException e) {
+                    throw new ZipException(e.getMessage());
+                }
+                if (inflated > 0) {
+                    if (this.gzip) {
+                        this.crc.update(b, off, inflated);
+                    }
+                    return inflated;
+                }
+                if (this.inflater.finished()) {
+                    if (this.gzip) {
+                        checkTrailer();
+                    }
+                    finish();
+                    return -1;
+                }
+                if (this.inflater.needsDictionary()) {
+                    throw new ZipException("Preset dictionaries are not supported");
+                }
+                if (this.inflater.needsInput()) {
+                    this.buffered = this.in.read(this.buffer, 0, this.buffer.length);
+                    if (this.buffered == -1) {
+                        throw new EOFException("Unexpected end of compressed response");
+                    }
+                    this.inflater.setInput(this.buffer, 0, this.buffered);
+                }
+            }
+        }
+
+        /**
+         * Reads the gzip header, or detects whether deflate data is zlib wrapped as it should be or raw as some servers
+         * send it, and takes a matching inflater from the pool.
+         * @return false if the body is empty
+         */
+        private boolean start() throws IOException {
+            int first = this.in.read();
+            if (first == -1) {
+                return false;
+            }
+            int second = this.in.read();
+            if (this.gzip) {
+                if (second == -1 || (second << 8 | first) != GZIP_MAGIC) {
+                    throw new ZipException("Not in gzip format");
+                }
+                readGzipHeader();
+                this.nowrap = true;
+                this.inflater = this.pool.acquire(true);
+                return true;
+            }
+            this.nowrap = second == -1 || (first & 0x0f) != 8 || (first << 8 | second) % 31 != 0;
+            this.inflater = this.pool.acquire(this.nowrap);
+            this.buffer[0] = (byte) first;
+            this.buffered = 1;
+            if (second != -1) {
+                this.buffer[1] = (byte) second;
+                this.buffered = 2;
+            }
+            this.inflater.setInput(this.buffer, 0, this.buffered);
+            return true;
+        }
+
+        private void readGzipHeader() throws IOException {
+            if (readRequired() != 8) {
+                throw new ZipException("Unsupported gzip compression method");
+            }
+            int flags = readRequired();
+            // modification time, extra flags and operating system
+            skipRequired(6);
+            if ((flags & FEXTRA) != 0) {
+                skipRequired(readRequired() | readRequired() << 8);
+            }
+            if ((flags & FNAME) != 0) {
+                skipZeroTerminated();
+            }
+            if ((flags & FCOMMENT) != 0) {
+                skipZeroTerminated();
+            }
+            if ((flags & FHCRC) != 0) {
+                skipRequired(2);
+            }
+        }
+
+        /**
+         * Verifies the CRC and the size in the gzip trailer. Part of the trailer may already be in the buffer, after the
+         * end of the deflate data.
+         */
+        private void checkTrailer() throws IOException {
+            byte[] trailer = new byte[TRAILER_SIZE];
+            int remaining = Math.min(this.inflater.getRemaining(), TRAILER_SIZE);
+            System.arraycopy(this.buffer, this.buffered - this.inflater.getRemaining(), trailer, 0, remaining);
+            for (int i = remaining; i < TRAILER_SIZE; i++) {
+                trailer[i] = (byte) readRequired();
+            }
+            long crc = littleEndianInt(trailer, 0);
+            long size = littleEndianInt(trailer, 4);
+            if (crc != this.crc.getValue() || size != (this.inflater.getBytesWritten() & 0xffffffffL)) {
+                throw new ZipException("Corrupt gzip trailer");
+            }
+        }
+
+        private static long littleEndianInt(byte[] bytes, int offset) {
+            return (bytes[offset] & 0xffL)
+                   | (bytes[offset + 1] & 0xffL) << 8
+                   | (bytes[offset + 2] & 0xffL) << 16
+                   | (bytes[offset + 3] & 0xffL) << 24;
+        }
+
+        private int readRequired() throws IOException {
+            int b = this.in.read();
+            if (b == -1) {
+                throw new EOFException("Unexpected end of gzip header");
+            }
+            return b;
+        }
+
+        private void skipRequired(int count) throws IOException {
+            for (int i = 0; i < count; i++) {
+                readRequired();
+            }
+        }
+
+        private void skipZeroTerminated() throws IOException {
+            while (readRequired() != 0) {
+                // skip
+            }
+        }
+
+        private void finish() {
+            this.finished = true;
+            if (this.inflater != null) {
+                this.pool.release(this.inflater, this.nowrap);
+                this.inflater = null;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!this.closed) {
+                this.closed = true;
+                finish();
+                this.in.close();
+            }
+        }
+    }
+}
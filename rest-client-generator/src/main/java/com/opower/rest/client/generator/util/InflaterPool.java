@@ -0,0 +1,93 @@
+/**
+ *    Copyright 2014 Opower, Inc.
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ **/
+package com.opower.rest.client.generator.util;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.Inflater;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Pool of {@link Inflater} instances. Inflaters hold native memory that is only freed when they are ended or finalized,
+ * so creating one per compressed response puts pressure on both the heap and the finalizer. Released inflaters are
+ * reset and kept for the next response, up to a maximum number of idle inflaters per kind.
+ */
+public final class InflaterPool {
+
+    public static final int DEFAULT_MAX_IDLE = 64;
+
+    private static final InflaterPool SHARED = new InflaterPool(DEFAULT_MAX_IDLE);
+
+    private final int maxIdle;
+    private final Queue<Inflater> raw = new ConcurrentLinkedQueue<>();
+    private final Queue<Inflater> zlib = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger rawIdle = new AtomicInteger();
+    private final AtomicInteger zlibIdle = new AtomicInteger();
+
+    /**
+     * Creates an InflaterPool.
+     * @param maxIdle the maximum number of idle inflaters kept for each kind
+     */
+    public InflaterPool(int maxIdle) {
+        checkArgument(maxIdle >= 0, "maxIdle must not be negative");
+        this.maxIdle = maxIdle;
+    }
+
+    /**
+     * @return the pool shared by all clients
+     */
+    public static InflaterPool shared() {
+        return SHARED;
+    }
+
+    /**
+     * Take an inflater from the pool, or create one if there is none.
+     * @param nowrap true for raw deflate data as found in gzip, false for zlib wrapped data
+     * @return the inflater
+     */
+    public Inflater acquire(boolean nowrap) {
+        Inflater inflater = (nowrap ? this.raw : this.zlib).poll();
+        if (inflater == null) {
+            return new Inflater(nowrap);
+        }
+        (nowrap ? this.rawIdle : this.zlibIdle).decrementAndGet();
+        return inflater;
+    }
+
+    /**
+     * Return an inflater to the pool. It is ended instead if the pool is full.
+     * @param inflater the inflater, which must not be used anymore by the caller
+     * @param nowrap the kind the inflater was acquired for
+     */
+    public void release(Inflater inflater, boolean nowrap) {
+        AtomicInteger idle = nowrap ? this.rawIdle : this.zlibIdle;
+        if (idle.incrementAndGet() > this.maxIdle) {
+            idle.decrementAndGet();
+            inflater.end();
+            return;
+        }
+        inflater.reset();
+        (nowrap ? this.raw : this.zlib).offer(inflater);
+    }
+
+    /**
+     * @return the number of inflaters waiting in the pool
+     */
+    public int getIdleCount() {
+        return this.rawIdle.get() + this.zlibIdle.get();
+    }
+}
@@ -0,0 +1,263 @@
+/**
+ *    Copyright 2014 Opower, Inc.
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ **/
+package com.opower.rest.client.generator.async;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
+import com.opower.rest.client.generator.core.BaseClientResponse;
+import com.opower.rest.client.generator.core.BaseClientResponse.BaseClientResponseStreamFactory;
+import com.opower.rest.client.generator.core.Client;
+import com.opower.rest.client.generator.core.ClientExecutor;
+import com.opower.rest.client.generator.core.ClientRequest;
+import com.opower.rest.client.generator.core.ClientResponse;
+import com.opower.rest.client.generator.core.MethodInvoker;
+import com.opower.rest.client.generator.core.ResourceInterface;
+import com.opower.rest.client.generator.core.SimpleUriProvider;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import javax.ws.rs.GET;
+import javax.ws.rs.POST;
+import javax.ws.rs.Path;
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for the AsyncWriter.
+ */
+public class TestAsyncWriter {
+
+    /**
+     * Resource interface with a single write and a batch write.
+     */
+    public interface Events {
+        void record(String event);
+
+        void recordAll(List<String> events);
+    }
+
+    /**
+     * Resource used to test clients with an AsyncWriter.
+     */
+    @Path("events")
+    public interface EventResource {
+        @POST
+        void record(String event);
+
+        @GET
+        String name();
+    }
+
+    /**
+     * Records the http methods of the requests it executes, holding back POSTs until the latch is released.
+     */
+    private static final class RecordingExecutor implements ClientExecutor {
+        private final List<String> methods = new CopyOnWriteArrayList<>();
+        private volatile CountDownLatch latch = new CountDownLatch(0);
+
+        @Override
+        public void processFilters(ClientRequest request) {
+        }
+
+        @Override
+        public ClientResponse execute(ClientRequest request) throws Exception {
+            if ("POST".equals(request.getHttpMethod())) {
+                this.latch.await(5, TimeUnit.SECONDS);
+            }
+            this.methods.add(request.getHttpMethod());
+            final byte[] body = "events".getBytes(Charsets.UTF_8);
+            BaseClientResponseStreamFactory stream = new BaseClientResponseStreamFactory() {
+                @Override
+                public InputStream getInputStream() {
+                    return new ByteArrayInputStream(body);
+                }
+
+                @Override
+                public void performReleaseConnection() {
+                }
+            };
+            BaseClientResponse response = new BaseClientResponse(stream, this, request.getErrorStatusCriteria());
+            response.setStatus(200);
+            response.setProviders(request.getProviders());
+            return response;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    /**
+     * Records the calls it gets, optionally waiting for a latch first.
+     */
+    private static final class RecordingEvents implements Events {
+        private final List<String> single = new CopyOnWriteArrayList<>();
+        private final List<List<String>> batches = new CopyOnWriteArrayList<>();
+        private final CountDownLatch latch;
+
+        RecordingEvents(CountDownLatch latch) {
+            this.latch = latch;
+        }
+
+        @Override
+        public void record(String event) {
+            await();
+            this.single.add(event);
+        }
+
+        @Override
+        public void recordAll(List<String> events) {
+            await();
+            this.batches.add(ImmutableList.copyOf(events));
+        }
+
+        MethodInvoker recordInvoker() {
+            return new MethodInvoker() {
+                @Override
+                public Object invoke(Object[] args) {
+                    record((String) args[0]);
+                    return null;
+                }
+            };
+        }
+
+        MethodInvoker recordAllInvoker() {
+            return new MethodInvoker() {
+                @Override
+                @SuppressWarnings("unchecked")
+                public Object invoke(Object[] args) {
+                    recordAll((List<String>) args[0]);
+                    return null;
+                }
+            };
+        }
+
+        private void await() {
+            try {
+                this.latch.await(5, TimeUnit.SECONDS);
+            }
+            catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+    /**
+     * Calls are sent in the background and closing the writer flushes the queue.
+     */
+    @Test
+    public void queuedCallsAreSentOnClose() {
+        CountDownLatch latch = new CountDownLatch(1);
+        RecordingEvents target = new RecordingEvents(latch);
+        AsyncWriter writer = AsyncWriter.builder().build();
+        MethodInvoker record = writer.start(target.recordInvoker(), null);
+        record.invoke(new Object[]{"a"});
+        record.invoke(new Object[]{"b"});
+        assertTrue(target.single.isEmpty());
+        latch.countDown();
+        writer.close();
+        assertThat(target.single, is((List<String>) ImmutableList.of("a", "b")));
+        assertThat(writer.getSentCount(), is(2L));
+    }
+
+    /**
+     * Calls that don't fit in the queue are dropped with the DROP policy.
+     */
+    @Test
+    public void overflowingCallsAreDropped() {
+        CountDownLatch latch = new CountDownLatch(1);
+        RecordingEvents target = new RecordingEvents(latch);
+        AsyncWriter writer = AsyncWriter.builder().capacity(1).build();
+        MethodInvoker record = writer.start(target.recordInvoker(), null);
+        for (int i = 0; i < 10; i++) {
+            record.invoke(new Object[]{String.valueOf(i)});
+        }
+        latch.countDown();
+        writer.close();
+        assertThat(writer.getSentCount() + writer.getDroppedCount(), is(10L));
+        assertTrue(writer.getDroppedCount() >= 8);
+    }
+
+    /**
+     * Queued calls are sent together through the batch method.
+     */
+    @Test
+    public void queuedCallsAreBatched() {
+        CountDownLatch latch = new CountDownLatch(1);
+        RecordingEvents target = new RecordingEvents(latch);
+        AsyncWriter writer = AsyncWriter.builder().maxBatchSize(3).build();
+        MethodInvoker record = writer.start(target.recordInvoker(), target.recordAllInvoker());
+        for (int i = 0; i < 7; i++) {
+            record.invoke(new Object[]{String.valueOf(i)});
+        }
+        latch.countDown();
+        writer.close();
+        assertTrue(target.single.isEmpty());
+        int total = 0;
+        for (List<String> batch : target.batches) {
+            assertTrue(batch.size() <= 3);
+            total += batch.size();
+        }
+        assertThat(total, is(7));
+    }
+
+    /**
+     * Calls made after the writer has been closed fail.
+     */
+    @Test(expected = IllegalStateException.class)
+    public void callsAfterCloseFail() {
+        AsyncWriter writer = AsyncWriter.builder().build();
+        MethodInvoker record = writer.start(new RecordingEvents(new CountDownLatch(0)).recordInvoker(), null);
+        writer.close();
+        record.invoke(new Object[]{"late"});
+    }
+
+    /**
+     * A client queues the calls of its asynchronously written methods and sends them through their MethodInvoker,
+     * other methods are called right away.
+     */
+    @Test
+    public void clientQueuesAsyncWrites() throws Exception {
+        RecordingExecutor executor = new RecordingExecutor();
+        AsyncWriter writer = AsyncWriter.builder().build();
+        EventResource client = new Client.Builder<>(new ResourceInterface<>(EventResource.class),
+                                                    new SimpleUriProvider("http://events"))
+                .executor(executor)
+                .methodAsyncWrite(EventResource.class.getMethod("record", String.class), writer)
+                .build();
+        executor.latch = new CountDownLatch(1);
+        client.record("a");
+        assertThat(client.name(), is("events"));
+        assertThat(executor.methods.get(0), is("GET"));
+        executor.latch.countDown();
+        writer.close();
+        assertThat(executor.methods, is((List<String>) ImmutableList.of("GET", "POST")));
+        assertThat(writer.getSentCount(), is(1L));
+    }
+
+    /**
+     * Only void methods can be written asynchronously.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void nonVoidMethodsAreRejected() throws Exception {
+        AsyncWriter.validate(Object.class.getMethod("toString"), null);
+    }
+}
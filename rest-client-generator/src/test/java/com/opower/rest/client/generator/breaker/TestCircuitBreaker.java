@@ -0,0 +1,175 @@
+/**
+ *    Copyright 2014 Opower, Inc.
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ **/
+package com.opower.rest.client.generator.breaker;
+
+import com.google.common.base.Ticker;
+import java.util.concurrent.TimeUnit;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for the CircuitBreaker.
+ */
+public class TestCircuitBreaker {
+
+    private static final long WINDOW_MILLIS = 1000;
+    private static final int BUCKETS = 10;
+    private static final int MINIMUM_CALLS = 4;
+    private static final long OPEN_MILLIS = 500;
+    private static final int PROBES = 2;
+    private static final long FAST = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final long SLOW_MILLIS = 100;
+    private static final int ALL_SLOW = 100;
+
+    private FakeTicker ticker;
+    private CircuitBreaker breaker;
+
+    /**
+     * Creates a breaker that opens at 50% failures over at least 4 calls.
+     */
+    @Before
+    public void setUp() {
+        this.ticker = new FakeTicker();
+        this.breaker = CircuitBreaker.builder()
+                                     .window(WINDOW_MILLIS, BUCKETS, MINIMUM_CALLS)
+                                     .halfOpen(OPEN_MILLIS, PROBES)
+                                     .slowCallRateThreshold(ALL_SLOW, SLOW_MILLIS)
+                                     .ticker(this.ticker)
+                                     .build();
+    }
+
+    private void call(boolean failure) {
+        assertTrue(this.breaker.tryAcquire());
+        this.breaker.onResult(FAST, failure);
+    }
+
+    private void open() {
+        call(false);
+        call(true);
+        call(false);
+        call(true);
+        assertThat(this.breaker.getState(), is(CircuitBreaker.State.OPEN));
+    }
+
+    /**
+     * The breaker stays closed until the window holds the minimum number of calls.
+     */
+    @Test
+    public void needsMinimumCalls() {
+        call(true);
+        call(true);
+        call(true);
+        assertThat(this.breaker.getState(), is(CircuitBreaker.State.CLOSED));
+        call(true);
+        assertThat(this.breaker.getState(), is(CircuitBreaker.State.OPEN));
+        assertFalse(this.breaker.tryAcquire());
+    }
+
+    /**
+     * Failures that have left the window no longer count.
+     */
+    @Test
+    public void oldFailuresExpire() {
+        call(true);
+        call(true);
+        this.ticker.advance(WINDOW_MILLIS);
+        call(false);
+        call(false);
+        call(false);
+        call(true);
+        assertThat(this.breaker.getState(), is(CircuitBreaker.State.CLOSED));
+    }
+
+    /**
+     * Calls that all succeed but are slow still open the breaker.
+     */
+    @Test
+    public void slowCallsOpen() {
+        for (int i = 0; i < MINIMUM_CALLS; i++) {
+            assertTrue(this.breaker.tryAcquire());
+            this.breaker.onResult(TimeUnit.MILLISECONDS.toNanos(SLOW_MILLIS), false);
+        }
+        assertThat(this.breaker.getState(), is(CircuitBreaker.State.OPEN));
+    }
+
+    /**
+     * After the open duration only the probe calls are let through, and the breaker closes when they all succeed.
+     */
+    @Test
+    public void successfulProbesClose() {
+        open();
+        this.ticker.advance(OPEN_MILLIS);
+        assertTrue(this.breaker.tryAcquire());
+        assertThat(this.breaker.getState(), is(CircuitBreaker.State.HALF_OPEN));
+        assertTrue(this.breaker.tryAcquire());
+        assertFalse(this.breaker.tryAcquire());
+        this.breaker.onResult(FAST, false);
+        this.breaker.onResult(FAST, false);
+        assertThat(this.breaker.getState(), is(CircuitBreaker.State.CLOSED));
+        // the window starts out empty again
+        call(true);
+        assertThat(this.breaker.getState(), is(CircuitBreaker.State.CLOSED));
+    }
+
+    /**
+     * A failed probe opens the breaker again for another full open duration.
+     */
+    @Test
+    public void failedProbeReopens() {
+        open();
+        this.ticker.advance(OPEN_MILLIS);
+        assertTrue(this.breaker.tryAcquire());
+        this.breaker.onResult(FAST, true);
+        assertThat(this.breaker.getState(), is(CircuitBreaker.State.OPEN));
+        assertFalse(this.breaker.tryAcquire());
+        this.ticker.advance(OPEN_MILLIS);
+        assertTrue(this.breaker.tryAcquire());
+    }
+
+    /**
+     * A cancelled probe gives its permit back.
+     */
+    @Test
+    public void cancelReturnsProbe() {
+        open();
+        this.ticker.advance(OPEN_MILLIS);
+        assertTrue(this.breaker.tryAcquire());
+        assertTrue(this.breaker.tryAcquire());
+        this.breaker.cancel();
+        assertTrue(this.breaker.tryAcquire());
+        assertFalse(this.breaker.tryAcquire());
+    }
+
+    /**
+     * Ticker that only moves when told to.
+     */
+    private static final class FakeTicker extends Ticker {
+        private long nanos = TimeUnit.DAYS.toNanos(1);
+
+        void advance(long millis) {
+            this.nanos += TimeUnit.MILLISECONDS.toNanos(millis);
+        }
+
+        @Override
+        public long read() {
+            return this.nanos;
+        }
+    }
+}
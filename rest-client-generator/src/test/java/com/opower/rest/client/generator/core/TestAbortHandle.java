@@ -0,0 +1,72 @@
+/**
+ *    Copyright 2014 Opower, Inc.
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ **/
+package com.opower.rest.client.generator.core;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for the AbortHandle.
+ */
+public class TestAbortHandle {
+
+    private final AtomicInteger aborts = new AtomicInteger();
+    private final Runnable abortAction = new Runnable() {
+        @Override
+        public void run() {
+            TestAbortHandle.this.aborts.incrementAndGet();
+        }
+    };
+
+    /**
+     * The registered action runs once, no matter how often the handle is aborted.
+     */
+    @Test
+    public void abortRunsActionOnce() {
+        AbortHandle handle = new AbortHandle();
+        handle.onAbort(this.abortAction);
+        handle.abort();
+        handle.abort();
+        assertTrue(handle.isAborted());
+        assertThat(this.aborts.get(), is(1));
+    }
+
+    /**
+     * Exchanges registered after the handle has been aborted are aborted right away, which stops retries.
+     */
+    @Test
+    public void actionsRegisteredAfterAbortRunImmediately() {
+        AbortHandle handle = new AbortHandle();
+        handle.abort();
+        handle.onAbort(this.abortAction);
+        assertThat(this.aborts.get(), is(1));
+    }
+
+    /**
+     * Completed exchanges aren't affected by aborting.
+     */
+    @Test
+    public void clearedActionIsNotRun() {
+        AbortHandle handle = new AbortHandle();
+        handle.onAbort(this.abortAction);
+        handle.clear();
+        handle.abort();
+        assertThat(this.aborts.get(), is(0));
+    }
+}
@@ -1,9 +1,14 @@
 package com.opower.rest.client.generator.core;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.concurrent.atomic.AtomicBoolean;
 
+import com.google.common.base.Charsets;
 import com.google.common.base.Predicate;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
 import org.junit.Test;
 
 import static com.opower.rest.client.generator.core.Client.DEFAULT_ERROR_STATUS_CRITERIA;
@@ -116,4 +121,48 @@ public class TestBaseClientResponse {
 
         assertThat(response.resetStream(), is(true));
     }
+
+    /**
+     * The elements of a streamed response are read while iterating, and the connection is released at the end.
+     */
+    @Test
+    public void streamedEntityReleasesConnectionWhenExhausted() {
+        AtomicBoolean released = new AtomicBoolean();
+        BaseClientResponse response = streamingResponse("[1, 2, 3]", released);
+        CloseableIterator<String> elements = response.getEntityIterator(String.class, null);
+        assertThat(Lists.newArrayList(elements), is((Object) ImmutableList.of("1", "2", "3")));
+        assertThat(released.get(), is(true));
+    }
+
+    /**
+     * Closing the iterator before the end releases the connection too.
+     */
+    @Test
+    public void streamedEntityReleasesConnectionWhenClosed() throws IOException {
+        AtomicBoolean released = new AtomicBoolean();
+        BaseClientResponse response = streamingResponse("{\"id\":1}\n{\"id\":2}\n", released);
+        CloseableIterator<String> elements = response.getEntityIterator(String.class, null);
+        assertThat(elements.next(), is("{\"id\":1}"));
+        assertThat(released.get(), is(false));
+        elements.close();
+        assertThat(released.get(), is(true));
+    }
+
+    private static BaseClientResponse streamingResponse(String body, final AtomicBoolean released) {
+        final InputStream stream = new SelfExpandingBufferredInputStream(
+                new ByteArrayInputStream(body.getBytes(Charsets.UTF_8)));
+        BaseClientResponse response = new BaseClientResponse(new BaseClientResponse.BaseClientResponseStreamFactory() {
+            @Override
+            public InputStream getInputStream() throws IOException {
+                return stream;
+            }
+
+            @Override
+            public void performReleaseConnection() {
+                released.set(true);
+            }
+        }, DEFAULT_ERROR_STATUS_CRITERIA);
+        response.setProviders(new ClientProviders());
+        return response;
+    }
 }
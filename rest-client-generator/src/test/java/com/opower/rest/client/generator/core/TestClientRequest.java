@@ -1,13 +1,23 @@
 package com.opower.rest.client.generator.core;
 
 import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
 import com.opower.rest.client.generator.specimpl.MultivaluedMapImpl;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.lang.annotation.Annotation;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.util.Iterator;
+import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.MultivaluedMap;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 /**
  * Unit tests for {@link ClientRequest}
@@ -62,4 +72,28 @@ public class TestClientRequest {
         assertEquals("Matrix parameters don't match.", this.expectedValues, this.request.getMatrixParameters());
     }
 
+    /**
+     * Iterator bodies are streamed and never buffered, since that would defeat the purpose.
+     */
+    @Test
+    public void iteratorBodiesAreStreamedAndNotBuffered() throws IOException {
+        this.request.body(MediaType.APPLICATION_JSON_TYPE, ImmutableList.of("a").iterator(), Iterator.class,
+                          Iterator.class, new Annotation[0]);
+        this.request.bufferBody();
+        assertTrue(this.request.isBodyStreamed());
+        assertFalse(this.request.isBodyBuffered());
+    }
+
+    /**
+     * Channel bodies are streamed like Iterators instead of being copied into a byte array first.
+     */
+    @Test
+    public void channelBodiesAreStreamedAndNotBuffered() throws IOException {
+        ReadableByteChannel channel = Channels.newChannel(new ByteArrayInputStream(new byte[] {1, 2, 3}));
+        this.request.body(MediaType.APPLICATION_OCTET_STREAM_TYPE, channel, ReadableByteChannel.class,
+                          ReadableByteChannel.class, new Annotation[0]);
+        this.request.bufferBody();
+        assertTrue(this.request.isBodyStreamed());
+        assertFalse(this.request.isBodyBuffered());
+    }
 }
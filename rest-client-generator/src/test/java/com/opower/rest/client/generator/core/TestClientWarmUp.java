@@ -0,0 +1,125 @@
+/**
+ *    Copyright 2014 Opower, Inc.
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ **/
+package com.opower.rest.client.generator.core;
+
+import com.google.common.collect.ImmutableList;
+import org.junit.Test;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import javax.ws.rs.GET;
+import javax.ws.rs.POST;
+import javax.ws.rs.Path;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Tests for {@link ClientWarmUp}.
+ */
+public class TestClientWarmUp {
+
+    private static final URI FIRST = URI.create("http://first:8080");
+    private static final URI SECOND = URI.create("http://second:8080");
+
+    /**
+     * The reader of every return type and the writer of every body are looked up, and the UriProvider is asked for an
+     * endpoint once per connection.
+     */
+    @Test
+    public void providersAreResolvedAndConnectionsOpened() {
+        RotatingUriProvider uriProvider = new RotatingUriProvider();
+        WarmingExecutor executor = new WarmingExecutor();
+        new Client.Builder<>(new ResourceInterface<>(WarmResource.class), uriProvider)
+                .executor(executor)
+                .warmUp(3)
+                .build();
+        assertThat(executor.endpoints, is((List<URI>) ImmutableList.of(FIRST, SECOND, FIRST)));
+
+        ClientWarmUp warmUp = new ClientWarmUp(WarmResource.class, uriProvider, executor, new ClientProviders());
+        assertThat(warmUp.resolveProviders(), is(2));
+    }
+
+    /**
+     * Failing to open connections doesn't fail the build.
+     */
+    @Test
+    public void failuresAreNotThrown() {
+        WarmingExecutor executor = new WarmingExecutor();
+        executor.failure = new IllegalStateException("connection refused");
+        WarmResource client = new Client.Builder<>(new ResourceInterface<>(WarmResource.class),
+                                                        new RotatingUriProvider())
+                .executor(executor)
+                .warmUp(1)
+                .build();
+        assertThat(client != null, is(true));
+        assertThat(executor.endpoints.size(), is(1));
+    }
+
+    /**
+     * Resource used to test the warm up.
+     */
+    @Path("warm")
+    public interface WarmResource {
+        @GET
+        String get();
+
+        @POST
+        void post(String body);
+    }
+
+    /**
+     * Alternates between two endpoints.
+     */
+    private static class RotatingUriProvider implements UriProvider {
+        private int calls;
+
+        @Override
+        public URI getUri() {
+            return this.calls++ % 2 == 0 ? FIRST : SECOND;
+        }
+    }
+
+    /**
+     * Records the endpoints it was asked to connect to.
+     */
+    private static class WarmingExecutor implements ClientExecutor, ConnectionWarmer {
+        private final List<URI> endpoints = new ArrayList<>();
+        private RuntimeException failure;
+
+        @Override
+        public int warmConnections(List<URI> endpoints) {
+            this.endpoints.addAll(endpoints);
+            if (this.failure != null) {
+                throw this.failure;
+            }
+            return endpoints.size();
+        }
+
+        @Override
+        public void processFilters(ClientRequest request) {
+        }
+
+        @Override
+        public ClientResponse execute(ClientRequest request) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
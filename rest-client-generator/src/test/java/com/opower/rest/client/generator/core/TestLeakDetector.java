@@ -0,0 +1,94 @@
+/**
+ *    Copyright 2014 Opower, Inc.
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ **/
+package com.opower.rest.client.generator.core;
+
+import com.google.common.base.Predicates;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Tests for {@link LeakDetector}.
+ */
+public class TestLeakDetector {
+
+    private static final int MAX_GC_ATTEMPTS = 50;
+
+    /**
+     * A response that is garbage collected without being released gets its connection released by the reaper thread,
+     * and the leak is counted. Other tests may leak responses at the same time, so the count can grow by more than one.
+     */
+    @Test
+    public void leakedResponsesAreReleased() throws InterruptedException {
+        LeakDetector detector = LeakDetector.shared();
+        long leaks = detector.getLeakCount();
+        CountDownLatch released = new CountDownLatch(1);
+        createResponse(released);
+        assertThat(awaitWithGc(released), is(true));
+        assertThat(detector.getLeakCount(), is(greaterThan(leaks)));
+    }
+
+    /**
+     * Released responses are no longer tracked and are not counted as leaks.
+     */
+    @Test
+    public void releasedResponsesAreNotLeaks() throws InterruptedException {
+        LeakDetector detector = LeakDetector.shared();
+        final CountDownLatch cleaned = new CountDownLatch(1);
+        Object referent = new Object();
+        LeakDetector.Tracker tracker = detector.track(referent, new Runnable() {
+            @Override
+            public void run() {
+                cleaned.countDown();
+            }
+        }, "test object");
+        tracker.close();
+        referent = null;
+        assertThat(awaitWithGc(cleaned), is(false));
+    }
+
+    private static void createResponse(final CountDownLatch released) {
+        BaseClientResponse response = new BaseClientResponse(new BaseClientResponse.BaseClientResponseStreamFactory() {
+            @Override
+            public InputStream getInputStream() throws IOException {
+                return new ByteArrayInputStream(new byte[0]);
+            }
+
+            @Override
+            public void performReleaseConnection() {
+                released.countDown();
+            }
+        }, Predicates.<Integer>alwaysFalse());
+        response.setStatus(200);
+    }
+
+    private static boolean awaitWithGc(CountDownLatch latch) throws InterruptedException {
+        for (int i = 0; i < MAX_GC_ATTEMPTS; i++) {
+            System.gc();
+            if (latch.await(20, TimeUnit.MILLISECONDS)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
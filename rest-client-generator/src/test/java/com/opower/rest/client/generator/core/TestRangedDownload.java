@@ -0,0 +1,397 @@
+/**
+ *    Copyright 2014 Opower, Inc.
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ **/
+package com.opower.rest.client.generator.core;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.Files;
+import com.opower.rest.client.generator.util.CaseInsensitiveMap;
+import com.opower.rest.client.generator.util.HttpHeaderNames;
+import com.opower.rest.client.generator.util.HttpResponseCodes;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests for {@link RangedDownload}.
+ */
+public class TestRangedDownload {
+
+    private static final int RANGE_SIZE = 100;
+    private static final int PARALLELISM = 3;
+
+    private final RangedDownload rangedDownload = RangedDownload.builder()
+                                                                .rangeSize(RANGE_SIZE)
+                                                                .parallelism(PARALLELISM)
+                                                                .maxRangeRetries(1)
+                                                                .build();
+    private final List<File> files = new ArrayList<>();
+
+    @After
+    public void cleanUp() {
+        this.rangedDownload.close();
+        for (File file : this.files) {
+            file.delete();
+        }
+    }
+
+    /**
+     * The first byte, last byte and total length are read from the Content-Range header.
+     */
+    @Test
+    public void contentRangeIsParsed() {
+        long[] range = RangedDownload.parseContentRange("bytes 0-1023/734003200");
+        assertThat(range[0], is(0L));
+        assertThat(range[1], is(1023L));
+        assertThat(range[2], is(734003200L));
+    }
+
+    /**
+     * Without a known total length the response can't be split into ranges.
+     */
+    @Test
+    public void unknownTotalLengthIsNotARange() {
+        assertThat(RangedDownload.parseContentRange("bytes 0-1023/*"), is(nullValue()));
+        assertThat(RangedDownload.parseContentRange(null), is(nullValue()));
+    }
+
+    /**
+     * The remaining bytes are split into ranges of the configured size, the last one being shorter.
+     */
+    @Test
+    public void remainingBytesAreSplitIntoRanges() {
+        List<long[]> ranges = RangedDownload.split(100, 350, 100);
+        assertThat(ranges.size(), is(3));
+        assertThat(ranges.get(0)[0], is(100L));
+        assertThat(ranges.get(0)[1], is(199L));
+        assertThat(ranges.get(2)[0], is(300L));
+        assertThat(ranges.get(2)[1], is(349L));
+        assertThat(RangedDownload.split(100, 100, 100).isEmpty(), is(true));
+    }
+
+    /**
+     * A server that supports ranges gets a probe for the first range, then one request per remaining range, whose bytes
+     * are written at their offset. The probe's connection is released before the ranges start, so no more connections
+     * than the parallelism are used.
+     */
+    @Test
+    public void rangesAreWrittenAtTheirOffset() throws Exception {
+        RangeServer server = new RangeServer(content(1050));
+        File file = download(server);
+        assertThat(Files.toByteArray(file), is(server.content));
+        assertThat(server.requestedRanges().size(), is(11));
+        assertTrue(server.requestedRanges().contains("bytes=0-99"));
+        assertTrue(server.requestedRanges().contains("bytes=500-599"));
+        assertTrue(server.requestedRanges().contains("bytes=1000-1049"));
+        assertThat(server.rangeWhileProbeLeased, is(false));
+        assertTrue(server.maxLeased.get() <= PARALLELISM);
+        assertThat(server.leased.get(), is(0));
+    }
+
+    /**
+     * A range that fails midway is resumed from the last byte written.
+     */
+    @Test
+    public void failedRangesAreResumed() throws Exception {
+        RangeServer server = new RangeServer(content(1000));
+        server.failAt = 300;
+        File file = download(server);
+        assertThat(Files.toByteArray(file), is(server.content));
+        assertTrue(server.requestedRanges().contains("bytes=300-399"));
+        assertTrue(server.requestedRanges().contains("bytes=350-399"));
+        assertThat(server.leased.get(), is(0));
+    }
+
+    /**
+     * When a range fails for good, the exchanges of the other ranges are aborted instead of being left to finish.
+     */
+    @Test
+    public void otherRangesAreAbortedWhenOneFails() throws Exception {
+        RangeServer server = new RangeServer(content(1000));
+        server.hangAt = 200;
+        server.alwaysFailAt = 100;
+        try {
+            download(server);
+            fail("the download should fail");
+        }
+        catch (RuntimeException e) {
+            assertThat(server.hangAborted.await(1, TimeUnit.SECONDS), is(true));
+        }
+    }
+
+    /**
+     * A server that ignores the Range header answers the probe with the whole body, which is read as is.
+     */
+    @Test
+    public void wholeBodyIsReadWhenRangesAreNotSupported() throws Exception {
+        RangeServer server = new RangeServer(content(1000));
+        server.supportsRanges = false;
+        File file = download(server);
+        assertThat(Files.toByteArray(file), is(server.content));
+        assertThat(server.requestedRanges(), is((List<String>) ImmutableList.of("bytes=0-99")));
+    }
+
+    /**
+     * An empty resource has no range to satisfy, so it is requested again without a Range header.
+     */
+    @Test
+    public void emptyResourceIsRequestedWithoutRange() throws Exception {
+        RangeServer server = new RangeServer(new byte[0]);
+        File file = download(server);
+        assertThat(file.length(), is(0L));
+        assertThat(server.requestedRanges(), is(Collections.<String>singletonList("bytes=0-99")));
+        assertThat(server.requests.get(), is(2));
+        assertThat(server.leased.get(), is(0));
+    }
+
+    private File download(RangeServer server) throws NoSuchMethodException {
+        FileResource client = new Client.Builder<>(new ResourceInterface<>(FileResource.class),
+                                                   new SimpleUriProvider("http://files"))
+                .executor(server)
+                .methodRangedDownload(FileResource.class.getMethod("get", String.class), this.rangedDownload)
+                .build();
+        File file = client.get("big");
+        this.files.add(file);
+        return file;
+    }
+
+    private static byte[] content(int length) {
+        byte[] content = new byte[length];
+        for (int i = 0; i < length; i++) {
+            content[i] = (byte) (i * 31);
+        }
+        return content;
+    }
+
+    /**
+     * Resource used to test downloads.
+     */
+    @Path("files")
+    public interface FileResource {
+        @GET
+        @Path("{name}")
+        File get(@PathParam("name") String name);
+    }
+
+    /**
+     * Serves byte ranges of its content and keeps track of the connections it leased.
+     */
+    private static class RangeServer implements ClientExecutor {
+        private static final Pattern RANGE = Pattern.compile("bytes=(\\d+)-(\\d+)");
+
+        private final byte[] content;
+        private final List<String> ranges = new ArrayList<>();
+        private final AtomicInteger requests = new AtomicInteger();
+        private final AtomicInteger leased = new AtomicInteger();
+        private final AtomicInteger maxLeased = new AtomicInteger();
+        private final AtomicBoolean failed = new AtomicBoolean();
+        private volatile boolean probeLeased;
+        private volatile boolean rangeWhileProbeLeased;
+        private boolean supportsRanges = true;
+        private long failAt = -1;
+        private long alwaysFailAt = -1;
+        private long hangAt = -1;
+        private final CountDownLatch hangStarted = new CountDownLatch(1);
+        private final CountDownLatch hangAborted = new CountDownLatch(1);
+
+        private RangeServer(byte[] content) {
+            this.content = content;
+        }
+
+        private synchronized List<String> requestedRanges() {
+            return new ArrayList<>(this.ranges);
+        }
+
+        @Override
+        public void processFilters(ClientRequest request) {
+        }
+
+        @Override
+        public ClientResponse execute(ClientRequest request) {
+            if (this.requests.incrementAndGet() == 1) {
+                this.probeLeased = true;
+            }
+            else if (this.probeLeased) {
+                this.rangeWhileProbeLeased = true;
+            }
+            String range = request.getHeaders().getFirst(HttpHeaderNames.RANGE);
+            CaseInsensitiveMap<String> headers = new CaseInsensitiveMap<>();
+            if (range == null || !this.supportsRanges) {
+                if (range != null) {
+                    synchronized (this) {
+                        this.ranges.add(range);
+                    }
+                }
+                return respond(request, HttpResponseCodes.SC_OK, headers,
+                               new ByteArrayInputStream(this.content));
+            }
+            synchronized (this) {
+                this.ranges.add(range);
+            }
+            if (this.content.length == 0) {
+                return respond(request, HttpResponseCodes.SC_REQUESTED_RANGE_NOT_SATISFIABLE, headers,
+                               new ByteArrayInputStream(this.content));
+            }
+            Matcher matcher = RANGE.matcher(range);
+            assertTrue(matcher.matches());
+            int first = Integer.parseInt(matcher.group(1));
+            int last = Math.min(Integer.parseInt(matcher.group(2)), this.content.length - 1);
+            headers.putSingle(HttpHeaderNames.CONTENT_RANGE,
+                              String.format("bytes %d-%d/%d", first, last, this.content.length));
+            int length = last - first + 1;
+            if (first == this.hangAt) {
+                request.getAbortHandle().onAbort(new Runnable() {
+                    @Override
+                    public void run() {
+                        RangeServer.this.hangAborted.countDown();
+                    }
+                });
+                return respond(request, HttpResponseCodes.SC_PARTIAL_CONTENT, headers,
+                               new HangingInputStream(this.hangStarted, this.hangAborted));
+            }
+            if (first == this.alwaysFailAt) {
+                awaitUninterruptibly(this.hangStarted);
+                return respond(request, HttpResponseCodes.SC_PARTIAL_CONTENT, headers,
+                               new BrokenInputStream(this.content, first, length / 2));
+            }
+            if (first == this.failAt && this.failed.compareAndSet(false, true)) {
+                // half of the range arrives before the connection breaks
+                length /= 2;
+                return respond(request, HttpResponseCodes.SC_PARTIAL_CONTENT, headers,
+                               new BrokenInputStream(this.content, first, length));
+            }
+            return respond(request, HttpResponseCodes.SC_PARTIAL_CONTENT, headers,
+                           new ByteArrayInputStream(this.content, first, length));
+        }
+
+        private BaseClientResponse respond(ClientRequest request, int status, CaseInsensitiveMap<String> headers,
+                                           final InputStream body) {
+            // nothing else is requested until the probe has been answered
+            final boolean probe = this.requests.get() == 1;
+            int leasedNow = this.leased.incrementAndGet();
+            while (true) {
+                int max = this.maxLeased.get();
+                if (leasedNow <= max || this.maxLeased.compareAndSet(max, leasedNow)) {
+                    break;
+                }
+            }
+            BaseClientResponse.BaseClientResponseStreamFactory streamFactory =
+                    new BaseClientResponse.BaseClientResponseStreamFactory() {
+                        @Override
+                        public InputStream getInputStream() {
+                            return body;
+                        }
+
+                        @Override
+                        public void performReleaseConnection() {
+                            if (probe) {
+                                RangeServer.this.probeLeased = false;
+                            }
+                            RangeServer.this.leased.decrementAndGet();
+                        }
+                    };
+            BaseClientResponse response = new BaseClientResponse(streamFactory, this, request.getErrorStatusCriteria());
+            response.setStatus(status);
+            response.setHeaders(headers);
+            response.setProviders(request.getProviders());
+            return response;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    /**
+     * Blocks like a socket read until the exchange is aborted, ignoring interrupts.
+     */
+    private static class HangingInputStream extends InputStream {
+        private final CountDownLatch started;
+        private final CountDownLatch aborted;
+
+        HangingInputStream(CountDownLatch started, CountDownLatch aborted) {
+            this.started = started;
+            this.aborted = aborted;
+        }
+
+        @Override
+        public int read() throws IOException {
+            this.started.countDown();
+            awaitUninterruptibly(this.aborted);
+            throw new IOException("connection aborted");
+        }
+    }
+
+    private static void awaitUninterruptibly(CountDownLatch latch) {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (latch.getCount() > 0 && System.nanoTime() < deadline) {
+            try {
+                latch.await(10, TimeUnit.MILLISECONDS);
+            }
+            catch (InterruptedException e) {
+                // like a blocking socket read
+            }
+        }
+    }
+
+    /**
+     * Fails once the bytes it was given have been read.
+     */
+    private static class BrokenInputStream extends InputStream {
+        private final InputStream bytes;
+
+        BrokenInputStream(byte[] content, int offset, int length) {
+            this.bytes = new ByteArrayInputStream(content, offset, length);
+        }
+
+        @Override
+        public int read() throws IOException {
+            return check(this.bytes.read());
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            return check(this.bytes.read(buffer, offset, length));
+        }
+
+        private static int check(int read) throws IOException {
+            if (read == -1) {
+                throw new IOException("connection reset");
+            }
+            return read;
+        }
+    }
+}
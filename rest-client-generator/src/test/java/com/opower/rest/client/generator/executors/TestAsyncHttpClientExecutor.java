@@ -0,0 +1,190 @@
+/**
+ *    Copyright 2014 Opower, Inc.
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ **/
+package com.opower.rest.client.generator.executors;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.ByteStreams;
+import com.opower.rest.client.generator.core.Client;
+import com.opower.rest.client.generator.core.ResourceInterface;
+import com.opower.rest.client.generator.core.SimpleUriProvider;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.GZIPInputStream;
+import javax.ws.rs.Consumes;
+import javax.ws.rs.POST;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests for the {@link AsyncHttpClientExecutor}.
+ */
+public class TestAsyncHttpClientExecutor {
+
+    private static final long TIMEOUT_MILLIS = 10000;
+
+    private final Set<Integer> clientPorts = Collections.newSetFromMap(new ConcurrentHashMap<Integer, Boolean>());
+    private HttpServer server;
+    private AsyncHttpClientExecutor executor;
+
+    @Before
+    public void setUp() throws IOException {
+        this.server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        this.server.createContext("/upload", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                TestAsyncHttpClientExecutor.this.clientPorts.add(exchange.getRemoteAddress().getPort());
+                InputStream in = exchange.getRequestBody();
+                if ("gzip".equals(exchange.getRequestHeaders().getFirst("Content-Encoding"))) {
+                    in = new GZIPInputStream(in);
+                }
+                byte[] body;
+                try {
+                    body = ByteStreams.toByteArray(in);
+                }
+                catch (IOException e) {
+                    exchange.close();
+                    throw e;
+                }
+                exchange.getResponseHeaders().add("Content-Type", "text/plain");
+                exchange.sendResponseHeaders(200, body.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(body);
+                }
+            }
+        });
+        this.server.start();
+        this.executor = new AsyncHttpClientExecutor();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        this.executor.close();
+        this.server.stop(0);
+    }
+
+    /**
+     * Streamed bodies are written while AsyncHttpClient sends them, including on a pooled connection, where it starts
+     * sending from the calling thread.
+     */
+    @Test(timeout = TIMEOUT_MILLIS)
+    public void streamedBodiesAreSentOnPooledConnections() {
+        UploadResource client = client(false);
+        assertThat(client.lines(ImmutableList.of("a", "b").iterator()), is("a\nb\n"));
+        assertThat(client.lines(ImmutableList.of("c").iterator()), is("c\n"));
+        assertThat(client.bytes(channel("channel")), is("channel"));
+        assertThat(this.clientPorts.size(), is(1));
+    }
+
+    /**
+     * Compressed streamed bodies are written the same way.
+     */
+    @Test(timeout = TIMEOUT_MILLIS)
+    public void compressedStreamedBodiesAreSent() {
+        UploadResource client = client(true);
+        assertThat(client.lines(ImmutableList.of("a").iterator()), is("a\n"));
+        assertThat(client.bytes(channel("compressed")), is("compressed"));
+    }
+
+    /**
+     * A body that fails while it is written fails the request instead of being sent as if it were complete, and the
+     * executor keeps working.
+     */
+    @Test(timeout = TIMEOUT_MILLIS)
+    public void failedStreamedBodiesFailTheRequest() {
+        UploadResource client = client(false);
+        Iterator<String> failing = new Iterator<String>() {
+            private int count;
+
+            @Override
+            public boolean hasNext() {
+                if (this.count == 2) {
+                    throw new IllegalStateException("source failed");
+                }
+                return true;
+            }
+
+            @Override
+            public String next() {
+                return String.valueOf(this.count++);
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+        try {
+            client.lines(failing);
+            fail("the request should fail");
+        }
+        catch (RuntimeException expected) {
+            // the body wasn't sent
+        }
+        assertThat(client.lines(ImmutableList.of("d").iterator()), is("d\n"));
+    }
+
+    private UploadResource client(boolean compress) {
+        Client.Builder<UploadResource> builder = new Client.Builder<>(
+                new ResourceInterface<>(UploadResource.class),
+                new SimpleUriProvider("http://localhost:" + this.server.getAddress().getPort()));
+        if (compress) {
+            builder.requestCompression(0);
+        }
+        return builder.executor(this.executor).build();
+    }
+
+    private static ReadableByteChannel channel(String content) {
+        return Channels.newChannel(new ByteArrayInputStream(content.getBytes(Charsets.UTF_8)));
+    }
+
+    /**
+     * Resource used to test streamed uploads.
+     */
+    @Path("upload")
+    public interface UploadResource {
+        @POST
+        @Path("lines")
+        @Consumes("application/x-ndjson")
+        @Produces("text/plain")
+        String lines(Iterator<String> lines);
+
+        @POST
+        @Path("bytes")
+        @Consumes("application/octet-stream")
+        @Produces("text/plain")
+        String bytes(ReadableByteChannel body);
+    }
+}
@@ -0,0 +1,99 @@
+/**
+ *    Copyright 2014 Opower, Inc.
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ **/
+package com.opower.rest.client.generator.executors;
+
+import org.apache.http.HttpHost;
+import org.apache.http.conn.ManagedClientConnection;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.impl.conn.SchemeRegistryFactory;
+import org.junit.Test;
+
+import java.net.ServerSocket;
+import java.net.URI;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Tests for the connection pool of the {@link ApacheHttpClient4Executor}.
+ */
+public class TestPooledConnectionManager {
+
+    private static final HttpRoute ROUTE = new HttpRoute(new HttpHost("localhost", 8080, "http"));
+
+    /**
+     * The builder sizes the pool instead of using the library defaults.
+     */
+    @Test
+    public void builderSizesThePool() throws Exception {
+        ApacheHttpClient4Executor executor = ApacheHttpClient4Executor.builder()
+                .maxTotal(50)
+                .maxPerRoute(10)
+                .maxPerRoute(URI.create("http://localhost:8080/frobs"), 30)
+                .idleTimeout(30, TimeUnit.SECONDS)
+                .build();
+        try {
+            PooledConnectionManager manager = (PooledConnectionManager) executor.httpClient.getConnectionManager();
+            assertThat(manager.getMaxTotal(), is(50));
+            assertThat(manager.getDefaultMaxPerRoute(), is(10));
+            assertThat(manager.getMaxPerRoute(ROUTE), is(30));
+            assertThat(executor.getPoolMetrics().getMaxTotal(), is(50));
+        } finally {
+            executor.close();
+        }
+    }
+
+    /**
+     * Leased connections and the time spent waiting for them show up in the metrics.
+     */
+    @Test
+    public void leasesAreMeasured() throws Exception {
+        PooledConnectionManager manager = new PooledConnectionManager(SchemeRegistryFactory.createDefault(), -1,
+                                                                      TimeUnit.MILLISECONDS);
+        try {
+            ManagedClientConnection connection = manager.requestConnection(ROUTE, null).getConnection(1, TimeUnit.SECONDS);
+            ConnectionPoolMetrics metrics = manager.getMetrics();
+            assertThat(metrics.getLeased(), is(1));
+            assertThat(metrics.getPending(), is(0));
+            assertThat(metrics.getLeaseCount(), is(1L));
+            assertThat(metrics.getMaxLeaseWait(TimeUnit.NANOSECONDS) > 0, is(true));
+            manager.releaseConnection(connection, -1, TimeUnit.MILLISECONDS);
+            assertThat(manager.getMetrics().getLeased(), is(0));
+        } finally {
+            manager.shutdown();
+        }
+    }
+
+    /**
+     * Warming up opens the requested number of connections and leaves them available in the pool.
+     */
+    @Test
+    public void warmUpOpensConnections() throws Exception {
+        try (ServerSocket server = new ServerSocket(0)) {
+            URI endpoint = URI.create("http://localhost:" + server.getLocalPort());
+            ApacheHttpClient4Executor executor = ApacheHttpClient4Executor.builder().maxPerRoute(2).build();
+            try {
+                assertThat(executor.warmConnections(Collections.nCopies(3, endpoint)), is(2));
+                assertThat(executor.getPoolMetrics().getAvailable(), is(2));
+                assertThat(executor.getPoolMetrics().getLeased(), is(0));
+                assertThat(executor.warmConnections(Collections.singletonList(endpoint)), is(0));
+            } finally {
+                executor.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,153 @@
+/**
+ *    Copyright 2014 Opower, Inc.
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ **/
+package com.opower.rest.client.generator.extractors;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableList;
+import com.opower.rest.client.generator.annotations.ResponseSink;
+import com.opower.rest.client.generator.core.BaseClientResponse;
+import com.opower.rest.client.generator.core.Client;
+import com.opower.rest.client.generator.core.ClientErrorInterceptor;
+import com.opower.rest.client.generator.core.ClientRequest;
+import com.opower.rest.client.generator.marshallers.ClientMarshallerFactory;
+import com.opower.rest.client.generator.marshallers.Marshaller;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import javax.ws.rs.GET;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests for {@link ResponseSinkExtractor}.
+ */
+public class TestResponseSinkExtractor {
+
+    private static final byte[] CONTENT = Strings.repeat("0123456789abcdef", 10000).getBytes(Charsets.UTF_8);
+
+    /**
+     * Resource interface with sink methods.
+     */
+    public interface SinkResource {
+        @GET
+        long toStream(@ResponseSink OutputStream out);
+
+        @GET
+        void toChannel(@ResponseSink WritableByteChannel channel);
+
+        @GET
+        long toBuffer(@ResponseSink ByteBuffer buffer);
+
+        @GET
+        String wrongReturnType(@ResponseSink OutputStream out);
+    }
+
+    private boolean released;
+
+    /**
+     * The body is copied into the OutputStream, the number of bytes is returned and the connection is released.
+     */
+    @Test
+    public void copiesIntoOutputStream() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Object copied = extract(SinkResource.class.getMethod("toStream", OutputStream.class), out);
+        assertThat(copied, is((Object) (long) CONTENT.length));
+        assertThat(out.toByteArray(), is(CONTENT));
+        assertThat(this.released, is(true));
+    }
+
+    /**
+     * The body is copied into the WritableByteChannel.
+     */
+    @Test
+    public void copiesIntoChannel() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Method method = SinkResource.class.getMethod("toChannel", WritableByteChannel.class);
+        assertThat(extract(method, Channels.newChannel(out)), is((Object) null));
+        assertThat(out.toByteArray(), is(CONTENT));
+        assertThat(this.released, is(true));
+    }
+
+    /**
+     * The body is read into the remaining bytes of the ByteBuffer.
+     */
+    @Test
+    public void readsIntoByteBuffer() throws Exception {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(CONTENT.length + 10);
+        buffer.position(10);
+        Object copied = extract(SinkResource.class.getMethod("toBuffer", ByteBuffer.class), buffer);
+        assertThat(copied, is((Object) (long) CONTENT.length));
+        assertThat(buffer.position(), is(CONTENT.length + 10));
+        byte[] bytes = new byte[CONTENT.length];
+        ((ByteBuffer) buffer.flip().position(10)).get(bytes);
+        assertThat(bytes, is(CONTENT));
+        assertThat(this.released, is(true));
+    }
+
+    /**
+     * A body that doesn't fit in the ByteBuffer fails and still releases the connection.
+     */
+    @Test
+    public void failsWhenTheBodyDoesNotFitTheByteBuffer() throws Exception {
+        try {
+            extract(SinkResource.class.getMethod("toBuffer", ByteBuffer.class),
+                    ByteBuffer.allocate(CONTENT.length - 1));
+            fail("expected the body not to fit");
+        } catch (RuntimeException e) {
+            assertThat(this.released, is(true));
+        }
+    }
+
+    /**
+     * Sink methods can only return void or long.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void sinkMethodsMustReturnVoidOrLong() throws Exception {
+        new ResponseSinkExtractor(SinkResource.class.getMethod("wrongReturnType", OutputStream.class));
+    }
+
+    private Object extract(Method method, Object sink) {
+        ClientRequest request = new ClientRequest("http://dummy", null, null, method);
+        for (Marshaller marshaller : ClientMarshallerFactory.createMarshallers(SinkResource.class, method)) {
+            marshaller.build(request, sink);
+        }
+        BaseClientResponse response = new BaseClientResponse(new BaseClientResponse.BaseClientResponseStreamFactory() {
+            @Override
+            public InputStream getInputStream() throws IOException {
+                return new ByteArrayInputStream(CONTENT);
+            }
+
+            @Override
+            public void performReleaseConnection() {
+                TestResponseSinkExtractor.this.released = true;
+            }
+        }, Client.DEFAULT_ERROR_STATUS_CRITERIA);
+        response.setStatus(200);
+        EntityExtractor extractor = new DefaultEntityExtractorFactory().createExtractor(method);
+        return extractor.extractEntity(new ClientRequestContext(request, response,
+                new DefaultClientErrorHandler(ImmutableList.<ClientErrorInterceptor>of())));
+    }
+}
@@ -0,0 +1,111 @@
+/**
+ *    Copyright 2014 Opower, Inc.
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ **/
+package com.opower.rest.client.generator.limiter;
+
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for the ConcurrencyLimiter.
+ */
+public class TestConcurrencyLimiter {
+
+    private static final long RTT = 1000;
+    private static final int LIMIT = 4;
+    private static final int MAX_LIMIT = 8;
+
+    private ConcurrencyLimiter limiter() {
+        return ConcurrencyLimiter.builder().limits(LIMIT, 1, MAX_LIMIT).backoffRatio(0.5).build();
+    }
+
+    /**
+     * Callers beyond the limit are rejected until a permit is released.
+     */
+    @Test
+    public void rejectsBeyondLimit() {
+        ConcurrencyLimiter limiter = limiter();
+        for (int i = 0; i < LIMIT; i++) {
+            assertTrue(limiter.tryAcquire());
+        }
+        assertFalse(limiter.tryAcquire());
+        limiter.release(RTT, false);
+        assertTrue(limiter.tryAcquire());
+        assertThat(limiter.getInFlight(), is(LIMIT));
+    }
+
+    /**
+     * Overload signals halve the limit, but never below the minimum.
+     */
+    @Test
+    public void overloadDecreasesLimit() {
+        ConcurrencyLimiter limiter = limiter();
+        limiter.tryAcquire();
+        limiter.release(RTT, true);
+        assertThat(limiter.getLimit(), is(LIMIT / 2));
+        for (int i = 0; i < LIMIT; i++) {
+            limiter.tryAcquire();
+            limiter.release(RTT, true);
+        }
+        assertThat(limiter.getLimit(), is(1));
+    }
+
+    /**
+     * Requests much slower than the baseline count as overload.
+     */
+    @Test
+    public void latencyIncreaseDecreasesLimit() {
+        ConcurrencyLimiter limiter = limiter();
+        limiter.tryAcquire();
+        limiter.release(RTT, false);
+        limiter.tryAcquire();
+        limiter.release(RTT * 3, false);
+        assertThat(limiter.getLimit(), is(LIMIT / 2));
+    }
+
+    /**
+     * Healthy samples grow the limit while it is in use, up to the maximum.
+     */
+    @Test
+    public void healthyRequestsIncreaseLimit() {
+        ConcurrencyLimiter limiter = limiter();
+        for (int i = 0; i < MAX_LIMIT * 2; i++) {
+            while (limiter.tryAcquire()) {
+                // saturate the limit
+            }
+            limiter.release(RTT, false);
+            while (limiter.getInFlight() > 0) {
+                limiter.release(RTT, false);
+            }
+        }
+        assertThat(limiter.getLimit(), is(MAX_LIMIT));
+    }
+
+    /**
+     * A client that never uses much of its limit doesn't grow it.
+     */
+    @Test
+    public void idleClientKeepsLimit() {
+        ConcurrencyLimiter limiter = limiter();
+        for (int i = 0; i < MAX_LIMIT; i++) {
+            limiter.tryAcquire();
+            limiter.release(RTT, false);
+        }
+        assertThat(limiter.getLimit(), is(LIMIT));
+    }
+}
@@ -0,0 +1,156 @@
+/**
+ *    Copyright 2014 Opower, Inc.
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ **/
+package com.opower.rest.client.generator.plugins.providers;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Strings;
+import com.opower.rest.client.generator.specimpl.MultivaluedMapImpl;
+import com.opower.rest.client.generator.util.BufferPool;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.lang.annotation.Annotation;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedMap;
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests for the ByteBufferProvider and the ByteChannelProvider.
+ */
+public class TestByteBufferProvider {
+
+    private static final byte[] CONTENT = Strings.repeat("0123456789abcdef", 10000).getBytes(Charsets.UTF_8);
+
+    private final BufferPool pool = new BufferPool(4096, 4);
+
+    /**
+     * Responses without a Content-Length are gathered in pooled buffers, which are returned to the pool afterwards.
+     */
+    @Test
+    public void readsBodiesOfUnknownLengthThroughThePool() throws IOException {
+        ByteBuffer body = new ByteBufferProvider(this.pool).readFrom(ByteBuffer.class, ByteBuffer.class,
+                new Annotation[0], MediaType.APPLICATION_OCTET_STREAM_TYPE, new MultivaluedMapImpl<String, String>(),
+                new ByteArrayInputStream(CONTENT));
+        assertThat(body.isDirect(), is(true));
+        assertThat(toBytes(body), is(CONTENT));
+        assertThat(this.pool.getIdleCount(), is(4));
+    }
+
+    /**
+     * With a Content-Length the body is read into a buffer of exactly that size.
+     */
+    @Test
+    public void readsBodiesOfKnownLengthIntoASingleBuffer() throws IOException {
+        MultivaluedMap<String, String> headers = new MultivaluedMapImpl<>();
+        headers.putSingle("Content-Length", Integer.toString(CONTENT.length));
+        ByteBuffer body = new ByteBufferProvider(this.pool).readFrom(ByteBuffer.class, ByteBuffer.class,
+                new Annotation[0], MediaType.APPLICATION_OCTET_STREAM_TYPE, headers, new ByteArrayInputStream(CONTENT));
+        assertThat(body.capacity(), is(CONTENT.length));
+        assertThat(toBytes(body), is(CONTENT));
+        assertThat(this.pool.getIdleCount(), is(0));
+    }
+
+    /**
+     * Bodies that fit in a pooled buffer are read into one, whatever their Content-Length, and can be released.
+     */
+    @Test
+    public void readsSmallBodiesIntoAPooledBuffer() throws IOException {
+        MultivaluedMap<String, String> headers = new MultivaluedMapImpl<>();
+        headers.putSingle("Content-Length", "100");
+        ByteBufferProvider provider = new ByteBufferProvider(this.pool);
+        ByteBuffer known = provider.readFrom(ByteBuffer.class, ByteBuffer.class, new Annotation[0],
+                MediaType.APPLICATION_OCTET_STREAM_TYPE, headers, new ByteArrayInputStream(CONTENT, 0, 100));
+        ByteBuffer unknown = provider.readFrom(ByteBuffer.class, ByteBuffer.class, new Annotation[0],
+                MediaType.APPLICATION_OCTET_STREAM_TYPE, new MultivaluedMapImpl<String, String>(),
+                new ByteArrayInputStream(CONTENT, 0, 100));
+        assertThat(known.capacity(), is(this.pool.getBufferSize()));
+        assertThat(known.remaining(), is(100));
+        assertThat(unknown.capacity(), is(this.pool.getBufferSize()));
+        assertThat(unknown.remaining(), is(100));
+        this.pool.release(known);
+        this.pool.release(unknown);
+        assertThat(this.pool.getIdleCount(), is(2));
+    }
+
+    /**
+     * A body shorter than its Content-Length fails instead of being returned truncated.
+     */
+    @Test(expected = EOFException.class)
+    public void shortBodiesFail() throws IOException {
+        MultivaluedMap<String, String> headers = new MultivaluedMapImpl<>();
+        headers.putSingle("Content-Length", Integer.toString(CONTENT.length + 1));
+        new ByteBufferProvider(this.pool).readFrom(ByteBuffer.class, ByteBuffer.class, new Annotation[0],
+                MediaType.APPLICATION_OCTET_STREAM_TYPE, headers, new ByteArrayInputStream(CONTENT));
+    }
+
+    /**
+     * Bodies larger than a ByteBuffer can hold are rejected before anything is allocated.
+     */
+    @Test
+    public void rejectsLengthsBeyondTwoGigabytes() throws IOException {
+        MultivaluedMap<String, String> headers = new MultivaluedMapImpl<>();
+        headers.putSingle("Content-Length", Long.toString(Integer.MAX_VALUE + 1L));
+        try {
+            new ByteBufferProvider(this.pool).readFrom(ByteBuffer.class, ByteBuffer.class, new Annotation[0],
+                    MediaType.APPLICATION_OCTET_STREAM_TYPE, headers, new ByteArrayInputStream(CONTENT));
+            fail("expected an IOException");
+        } catch (IOException e) {
+            assertThat(e.getMessage().contains("2147483648"), is(true));
+        }
+    }
+
+    /**
+     * Direct buffers are written without moving their position, so the request can be sent again.
+     */
+    @Test
+    public void writesDirectBuffersWithoutConsumingThem() throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(CONTENT.length);
+        buffer.put(CONTENT).flip();
+        ByteBufferProvider provider = new ByteBufferProvider(this.pool);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertThat(provider.getSize(buffer, ByteBuffer.class, ByteBuffer.class, new Annotation[0],
+                                    MediaType.APPLICATION_OCTET_STREAM_TYPE), is((long) CONTENT.length));
+        provider.writeTo(buffer, ByteBuffer.class, ByteBuffer.class, new Annotation[0],
+                         MediaType.APPLICATION_OCTET_STREAM_TYPE, new MultivaluedMapImpl<String, Object>(), out);
+        assertThat(out.toByteArray(), is(CONTENT));
+        assertThat(buffer.remaining(), is(CONTENT.length));
+    }
+
+    /**
+     * Channels are copied through a pooled buffer that is released once they are exhausted.
+     */
+    @Test
+    public void writesChannelsThroughThePool() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new ByteChannelProvider(this.pool).writeTo(Channels.newChannel(new ByteArrayInputStream(CONTENT)), null, null,
+                new Annotation[0], MediaType.APPLICATION_OCTET_STREAM_TYPE, new MultivaluedMapImpl<String, Object>(),
+                out);
+        assertThat(out.toByteArray(), is(CONTENT));
+        assertThat(this.pool.getIdleCount(), is(1));
+    }
+
+    private static byte[] toBytes(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.duplicate().get(bytes);
+        return bytes;
+    }
+}
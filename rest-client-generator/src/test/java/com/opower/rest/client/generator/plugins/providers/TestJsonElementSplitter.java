@@ -0,0 +1,75 @@
+/**
+ *    Copyright 2014 Opower, Inc.
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ **/
+package com.opower.rest.client.generator.plugins.providers;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.List;
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Tests for the JsonElementSplitter.
+ */
+public class TestJsonElementSplitter {
+
+    /**
+     * Items of a JSON array are returned one by one, with nested structures and strings kept intact.
+     */
+    @Test
+    public void splitsArrays() throws IOException {
+        assertThat(split(" [ {\"a\": [1, 2], \"b\": \"x,]}\\\"\"}, 3 ,\"s\" ,[[]], true ] "),
+                   is((List<String>) ImmutableList.of("{\"a\": [1, 2], \"b\": \"x,]}\\\"\"}", "3", "\"s\"", "[[]]", "true")));
+    }
+
+    /**
+     * An empty array has no elements.
+     */
+    @Test
+    public void splitsEmptyArrays() throws IOException {
+        assertThat(split("[ ]").isEmpty(), is(true));
+    }
+
+    /**
+     * Newline delimited values are returned one by one, blank lines are skipped.
+     */
+    @Test
+    public void splitsNewlineDelimitedJson() throws IOException {
+        assertThat(split("{\"id\":1}\n\n{\"id\":2}\r\n42\n"),
+                   is((List<String>) ImmutableList.of("{\"id\":1}", "{\"id\":2}", "42")));
+    }
+
+    /**
+     * A truncated array is reported instead of silently ending the iteration.
+     */
+    @Test(expected = IOException.class)
+    public void truncatedArraysFail() throws IOException {
+        split("[{\"id\":1}, {\"id\"");
+    }
+
+    private static List<String> split(String body) throws IOException {
+        JsonElementSplitter splitter = new JsonElementSplitter(new ByteArrayInputStream(body.getBytes(Charsets.UTF_8)));
+        List<String> elements = Lists.newArrayList();
+        for (byte[] element = splitter.next(); element != null; element = splitter.next()) {
+            elements.add(new String(element, Charsets.UTF_8));
+        }
+        return elements;
+    }
+}
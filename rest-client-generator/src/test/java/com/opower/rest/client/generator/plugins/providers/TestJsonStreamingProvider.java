@@ -0,0 +1,72 @@
+/**
+ *    Copyright 2014 Opower, Inc.
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ **/
+package com.opower.rest.client.generator.plugins.providers;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
+import com.opower.rest.client.generator.core.ClientProviders;
+import com.opower.rest.client.generator.specimpl.MultivaluedMapImpl;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.annotation.Annotation;
+import javax.ws.rs.core.MediaType;
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Tests for writing streamed bodies with the JsonStreamingProvider.
+ */
+public class TestJsonStreamingProvider {
+
+    private static final MediaType NDJSON = MediaType.valueOf("application/x-ndjson");
+
+    /**
+     * Elements are written as a JSON array for application/json.
+     */
+    @Test
+    public void writesJsonArrays() throws IOException {
+        assertThat(write(MediaType.APPLICATION_JSON_TYPE, "{\"id\":1}", "{\"id\":2}"), is("[{\"id\":1},{\"id\":2}]"));
+        assertThat(write(MediaType.APPLICATION_JSON_TYPE), is("[]"));
+    }
+
+    /**
+     * Elements are written one per line for application/x-ndjson.
+     */
+    @Test
+    public void writesNewlineDelimitedJson() throws IOException {
+        assertThat(write(NDJSON, "{\"id\":1}", "{\"id\":2}"), is("{\"id\":1}\n{\"id\":2}\n"));
+    }
+
+    /**
+     * Only JSON media types are streamed.
+     */
+    @Test
+    public void onlyWritesJson() {
+        JsonStreamingProvider provider = new JsonStreamingProvider();
+        assertThat(provider.isWriteable(String.class, String.class, new Annotation[0], NDJSON), is(true));
+        assertThat(provider.isWriteable(String.class, String.class, new Annotation[0], MediaType.TEXT_PLAIN_TYPE),
+                   is(false));
+    }
+
+    private static String write(MediaType mediaType, String... elements) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new JsonStreamingProvider().writeElements(ImmutableList.copyOf(elements).iterator(), String.class, String.class,
+                                                  new Annotation[0], mediaType, new MultivaluedMapImpl<String, Object>(),
+                                                  out, new ClientProviders());
+        return new String(out.toByteArray(), Charsets.UTF_8);
+    }
+}
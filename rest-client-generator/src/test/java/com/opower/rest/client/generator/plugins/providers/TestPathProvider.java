@@ -0,0 +1,122 @@
+/**
+ *    Copyright 2014 Opower, Inc.
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ **/
+package com.opower.rest.client.generator.plugins.providers;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Strings;
+import com.opower.rest.client.generator.specimpl.MultivaluedMapImpl;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.annotation.Annotation;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import javax.ws.rs.core.MediaType;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Tests for copying files with the FileProvider and the PathProvider.
+ */
+public class TestPathProvider {
+
+    private static final byte[] CONTENT = Strings.repeat("0123456789abcdef", 10000).getBytes(Charsets.UTF_8);
+
+    private Path file;
+
+    @Before
+    public void setUp() throws IOException {
+        this.file = Files.createTempFile("upload", ".bin");
+        Files.write(this.file, CONTENT);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(this.file);
+    }
+
+    /**
+     * Paths are written from their FileChannel, with a known size.
+     */
+    @Test
+    public void writesPaths() throws IOException {
+        PathProvider provider = new PathProvider();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        provider.writeTo(this.file, Path.class, Path.class, new Annotation[0], MediaType.APPLICATION_OCTET_STREAM_TYPE,
+                         new MultivaluedMapImpl<String, Object>(), out);
+        assertThat(out.toByteArray(), is(CONTENT));
+        assertThat(provider.getSize(this.file, Path.class, Path.class, new Annotation[0],
+                                    MediaType.APPLICATION_OCTET_STREAM_TYPE), is((long) CONTENT.length));
+    }
+
+    /**
+     * Files are written from their FileChannel too.
+     */
+    @Test
+    public void writesFiles() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new FileProvider().writeTo(this.file.toFile(), File.class, File.class, new Annotation[0],
+                                   MediaType.APPLICATION_OCTET_STREAM_TYPE, new MultivaluedMapImpl<String, Object>(), out);
+        assertThat(out.toByteArray(), is(CONTENT));
+    }
+
+    /**
+     * A file truncated while it is being written fails the write instead of hanging.
+     */
+    @Test(expected = EOFException.class)
+    public void truncatedFilesFail() throws IOException {
+        try (FileChannel in = FileChannel.open(this.file, StandardOpenOption.READ)) {
+            ProviderHelper.writeTo(in, new OutputStream() {
+                @Override
+                public void write(int b) throws IOException {
+                    write(new byte[] {(byte) b}, 0, 1);
+                }
+
+                @Override
+                public void write(byte[] b, int off, int len) throws IOException {
+                    try (FileChannel out = FileChannel.open(TestPathProvider.this.file, StandardOpenOption.WRITE)) {
+                        out.truncate(len);
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Downloads are saved to a temporary file.
+     */
+    @Test
+    public void readsPaths() throws IOException {
+        Path downloaded = new PathProvider().readFrom(Path.class, Path.class, new Annotation[0],
+                                                      MediaType.APPLICATION_OCTET_STREAM_TYPE,
+                                                      new MultivaluedMapImpl<String, String>(),
+                                                      new ByteArrayInputStream(CONTENT));
+        try {
+            assertThat(Files.readAllBytes(downloaded), is(CONTENT));
+        }
+        finally {
+            Files.delete(downloaded);
+        }
+    }
+}
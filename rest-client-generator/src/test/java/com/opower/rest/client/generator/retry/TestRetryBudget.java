@@ -0,0 +1,83 @@
+/**
+ *    Copyright 2014 Opower, Inc.
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ **/
+package com.opower.rest.client.generator.retry;
+
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for the RetryBudget.
+ */
+public class TestRetryBudget {
+
+    private static final int TEN_PERCENT = 10;
+    private static final int MAX_TOKENS = 2;
+    private static final int TEN_REQUESTS = 10;
+
+    /**
+     * The budget starts full and stops allowing retries once it is drained.
+     */
+    @Test
+    public void startsFullAndDrains() {
+        RetryBudget budget = new RetryBudget(TEN_PERCENT, MAX_TOKENS);
+        assertThat(budget.availableRetries(), is(MAX_TOKENS));
+        assertTrue(budget.tryWithdraw());
+        assertTrue(budget.tryWithdraw());
+        assertFalse(budget.tryWithdraw());
+    }
+
+    /**
+     * Ten requests at 10% should pay for exactly one retry.
+     */
+    @Test
+    public void depositsArePercentageOfRequests() {
+        RetryBudget budget = new RetryBudget(TEN_PERCENT, MAX_TOKENS);
+        budget.tryWithdraw();
+        budget.tryWithdraw();
+        for (int i = 0; i < TEN_REQUESTS - 1; i++) {
+            budget.deposit();
+        }
+        assertFalse(budget.tryWithdraw());
+        budget.deposit();
+        assertTrue(budget.tryWithdraw());
+        assertFalse(budget.tryWithdraw());
+    }
+
+    /**
+     * Deposits never raise the balance above the capacity.
+     */
+    @Test
+    public void balanceIsCapped() {
+        RetryBudget budget = new RetryBudget(TEN_PERCENT, MAX_TOKENS);
+        for (int i = 0; i < TEN_REQUESTS * TEN_REQUESTS; i++) {
+            budget.deposit();
+        }
+        assertThat(budget.availableRetries(), is(MAX_TOKENS));
+    }
+
+    /**
+     * A budget of zero percent with no tokens never allows a retry.
+     */
+    @Test
+    public void emptyBudget() {
+        RetryBudget budget = new RetryBudget(0, 0);
+        budget.deposit();
+        assertFalse(budget.tryWithdraw());
+    }
+}
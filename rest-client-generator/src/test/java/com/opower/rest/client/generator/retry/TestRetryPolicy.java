@@ -0,0 +1,75 @@
+/**
+ *    Copyright 2014 Opower, Inc.
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ **/
+package com.opower.rest.client.generator.retry;
+
+import java.net.ConnectException;
+import java.util.Random;
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for the RetryPolicy.
+ */
+public class TestRetryPolicy {
+
+    private static final long INITIAL_BACKOFF = 10;
+    private static final long MAX_BACKOFF = 50;
+    private static final int ATTEMPTS = 1000;
+
+    /**
+     * By default only idempotent methods are retried.
+     */
+    @Test
+    public void onlyIdempotentMethodsByDefault() {
+        RetryPolicy policy = RetryPolicy.builder().build();
+        assertTrue(policy.appliesTo("GET"));
+        assertTrue(policy.appliesTo("PUT"));
+        assertTrue(policy.appliesTo("DELETE"));
+        assertFalse(policy.appliesTo("POST"));
+        assertTrue(RetryPolicy.builder().retryNonIdempotent().build().appliesTo("POST"));
+    }
+
+    /**
+     * IOExceptions are retried even when wrapped, other failures are not.
+     */
+    @Test
+    public void retriesIoExceptions() {
+        RetryPolicy policy = RetryPolicy.builder().build();
+        assertTrue(policy.isRetryable(new RuntimeException(new ConnectException("refused"))));
+        assertFalse(policy.isRetryable(new IllegalStateException()));
+        assertFalse(policy.isRetryable(503));
+    }
+
+    /**
+     * The backoff never exceeds the ceiling for the retry or the maximum backoff.
+     */
+    @Test
+    public void backoffIsBounded() {
+        RetryPolicy policy = RetryPolicy.builder().backoff(INITIAL_BACKOFF, MAX_BACKOFF).build();
+        Random random = new Random(0);
+        for (int i = 0; i < ATTEMPTS; i++) {
+            assertTrue(policy.backoffMillis(0, random) <= INITIAL_BACKOFF);
+            assertTrue(policy.backoffMillis(1, random) <= INITIAL_BACKOFF * 2);
+            assertTrue(policy.backoffMillis(Integer.MAX_VALUE, random) <= MAX_BACKOFF);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void negativeRetries() {
+        RetryPolicy.builder().maxRetries(-1);
+    }
+}
@@ -0,0 +1,95 @@
+/**
+ *    Copyright 2014 Opower, Inc.
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ **/
+package com.opower.rest.client.generator.util;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Strings;
+import com.google.common.io.ByteStreams;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.ZipException;
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Tests for ContentEncoding and the InflaterPool.
+ */
+public class TestContentEncoding {
+
+    private static final byte[] BODY = Strings.repeat("{\"id\":1,\"name\":\"frob\"},", 1000).getBytes(Charsets.UTF_8);
+
+    /**
+     * Gzip compressed bodies are inflated and the inflater goes back to the pool at the end of the data.
+     */
+    @Test
+    public void inflatesGzip() throws IOException {
+        InflaterPool pool = new InflaterPool(4);
+        byte[] compressed = ContentEncoding.gzip(BODY);
+        assertThat(compressed.length < BODY.length / 8, is(true));
+        assertThat(ByteStreams.toByteArray(ContentEncoding.decode(new ByteArrayInputStream(compressed), "gzip", pool)),
+                   is(BODY));
+        assertThat(pool.getIdleCount(), is(1));
+    }
+
+    /**
+     * Deflate bodies are inflated whether they are zlib wrapped, as the spec says, or raw.
+     */
+    @Test
+    public void inflatesZlibAndRawDeflate() throws IOException {
+        for (boolean nowrap : new boolean[]{false, true}) {
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+            try (DeflaterOutputStream out = new DeflaterOutputStream(compressed, new Deflater(6, nowrap))) {
+                out.write(BODY);
+            }
+            InputStream in = ContentEncoding.decode(new ByteArrayInputStream(compressed.toByteArray()), "deflate");
+            assertThat(ByteStreams.toByteArray(in), is(BODY));
+        }
+    }
+
+    /**
+     * Empty bodies, like the ones of HEAD requests, are not an error.
+     */
+    @Test
+    public void emptyBodiesAreEmpty() throws IOException {
+        assertThat(ContentEncoding.decode(new ByteArrayInputStream(new byte[0]), "gzip").read(), is(-1));
+    }
+
+    /**
+     * A body whose CRC doesn't match is reported.
+     */
+    @Test(expected = ZipException.class)
+    public void corruptGzipFails() throws IOException {
+        byte[] compressed = ContentEncoding.gzip(BODY);
+        compressed[compressed.length - 5]++;
+        ByteStreams.toByteArray(ContentEncoding.decode(new ByteArrayInputStream(compressed), "gzip"));
+    }
+
+    /**
+     * Other codings are passed through untouched.
+     */
+    @Test
+    public void identityIsPassedThrough() {
+        InputStream in = new ByteArrayInputStream(BODY);
+        assertThat(ContentEncoding.decode(in, "identity"), is(sameInstance(in)));
+        assertThat(ContentEncoding.decode(in, null), is(sameInstance(in)));
+    }
+}
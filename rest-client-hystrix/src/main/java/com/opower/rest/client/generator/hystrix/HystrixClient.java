@@ -14,24 +14,39 @@
  **/
 package com.opower.rest.client.generator.hystrix;
 
+import com.google.common.base.Function;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Maps;
+import com.netflix.hystrix.HystrixCollapser;
+import com.netflix.hystrix.HystrixCollapserKey;
+import com.netflix.hystrix.HystrixCollapserProperties;
 import com.netflix.hystrix.HystrixCommand;
 import com.netflix.hystrix.HystrixCommandGroupKey;
 import com.netflix.hystrix.HystrixCommandKey;
 import com.netflix.hystrix.HystrixCommandProperties;
+import com.netflix.hystrix.HystrixCommandProperties.ExecutionIsolationStrategy;
 import com.netflix.hystrix.HystrixThreadPoolKey;
 import com.netflix.hystrix.HystrixThreadPoolProperties;
 import com.opower.rest.client.ConfigurationCallback;
 import com.opower.rest.client.generator.core.Client;
+import com.opower.rest.client.generator.core.MethodInvoker;
+import com.opower.rest.client.generator.core.ProxyConfig;
 import com.opower.rest.client.generator.core.ResourceInterface;
 import com.opower.rest.client.generator.core.UriProvider;
 import com.opower.rest.client.generator.extractors.ClientErrorHandler;
+import com.opower.rest.client.generator.extractors.EntityExtractorFactory;
 import com.opower.rest.client.generator.hystrix.HystrixClientErrorHandler.BadRequestCriteria;
+import com.opower.rest.client.generator.limiter.ConcurrencyLimiter;
 import java.lang.reflect.Method;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
 import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicLong;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
@@ -42,6 +57,14 @@ import static com.google.common.base.Preconditions.checkNotNull;
  * @param <B> the type of the concrete builder
  */
 public abstract class HystrixClient<T, B extends HystrixClient<T, B>> extends Client<T, B> {
+    private static final Logger LOG = LoggerFactory.getLogger(HystrixClient.class);
+
+    // the Hystrix defaults for the thread pool core size and the command timeout
+    static final int DEFAULT_CORE_SIZE = 10;
+    static final int DEFAULT_TIMEOUT_MILLIS = 1000;
+    // Hystrix keeps one collapser per key for the whole JVM, so each built client gets keys of its own
+    private static final AtomicLong CLIENT_IDS = new AtomicLong();
+
     protected final HystrixCommandGroupKey groupKey;
 
     // You don't get a fallback by default. You have to provide one
@@ -55,6 +78,13 @@ public abstract class HystrixClient<T, B extends HystrixClient<T, B>> extends Cl
     protected Map<Method, HystrixCommandKey> commandKeyMap;
 
     Map<Method, BadRequestCriteria> badRequestCriteriaMap = ImmutableMap.of();
+    Set<Method> semaphoreIsolated = ImmutableSet.of();
+    // single item method -> batch method, and the optional Function that extracts the key from a batch result
+    Map<Method, Method> batchMethodMap = ImmutableMap.of();
+    Map<Method, Function<Object, ?>> resultKeyMap = ImmutableMap.of();
+    Map<Method, HystrixCollapserProperties.Setter> collapserPropertiesMap = ImmutableMap.of();
+    Map<Method, LastKnownGoodCache> lastKnownGoodMap = ImmutableMap.of();
+    ThreadPoolAutoSizer threadPoolAutoSizer;
     /**
      * Creates a HystrixClientBuilder with the default HystrixCommand.Setter based on the ResourceClass name.
      *
@@ -162,6 +192,72 @@ public abstract class HystrixClient<T, B extends HystrixClient<T, B>> extends Cl
         return (B) this;
     }
 
+    /**
+     * Run a particular method in the thread pool with the specified HystrixThreadPoolKey. Without one, all methods of
+     * the ResourceInterface share the pool named after the HystrixCommandGroupKey. Thread pools are shared by every
+     * command with the same HystrixThreadPoolKey in the JVM, including the commands of other clients.
+     *
+     * @param method     the method to run in the thread pool
+     * @param poolKey    the HystrixThreadPoolKey of the thread pool
+     * @return the HystrixClientBuilder
+     */
+    @SuppressWarnings("unchecked")
+    public B methodThreadPoolKey(Method method, HystrixThreadPoolKey poolKey) {
+        this.threadPoolKeysMap = updateWith(method, poolKey, this.threadPoolKeysMap);
+        return (B) this;
+    }
+
+    /**
+     * Group methods with a similar cost, for instance all cheap lookups or all expensive searches, into one named and
+     * bounded thread pool. Use the same HystrixThreadPoolKey in other clients to share the pool with them, which keeps the
+     * number of threads in a JVM that hosts many clients under control. See {@link #getTotalThreadCount()}.
+     *
+     * @param poolKey  the HystrixThreadPoolKey of the thread pool
+     * @param coreSize the number of threads in the pool
+     * @param methods  the methods to run in the pool
+     * @return the HystrixClientBuilder
+     */
+    @SuppressWarnings("unchecked")
+    public B threadPool(HystrixThreadPoolKey poolKey, final int coreSize, Method... methods) {
+        checkArgument(coreSize > 0, "coreSize must be positive");
+        for (Method method : methods) {
+            methodThreadPoolKey(method, poolKey);
+            this.threadPoolPropertiesMap.get(method).withCoreSize(coreSize);
+        }
+        return (B) this;
+    }
+
+    /**
+     * The thread pools the thread isolated methods of the client will run in, with the number of threads of each. When
+     * methods that share a pool are configured with different core sizes, the largest one is reported since Hystrix
+     * uses the configuration of whichever command happens to run first.
+     *
+     * @return the number of threads by HystrixThreadPoolKey name
+     */
+    public Map<String, Integer> getThreadPoolSizes() {
+        Map<String, Integer> sizes = new TreeMap<>();
+        for (Method method : this.commandKeyMap.keySet()) {
+            if (!this.semaphoreIsolated.contains(method)) {
+                Integer coreSize = this.threadPoolPropertiesMap.get(method).getCoreSize();
+                int size = coreSize == null ? DEFAULT_CORE_SIZE : coreSize;
+                String poolKey = threadPoolKeyFor(method).name();
+                sizes.put(poolKey, sizes.containsKey(poolKey) ? Math.max(size, sizes.get(poolKey)) : size);
+            }
+        }
+        return ImmutableMap.copyOf(sizes);
+    }
+
+    /**
+     * @return the total number of threads in the thread pools the client will use
+     */
+    public int getTotalThreadCount() {
+        int total = 0;
+        for (int size : getThreadPoolSizes().values()) {
+            total += size;
+        }
+        return total;
+    }
+
     /**
      * Specify a custom HystrixCommandKey for a particular method on the ResourceInterface.
      *
@@ -176,7 +272,8 @@ public abstract class HystrixClient<T, B extends HystrixClient<T, B>> extends Cl
     }
 
     /**
-     * Specify a specific fallback for a particular method on the ResourceClass.
+     * Specify a specific fallback for a particular method on the ResourceClass. For methods that return an Observable the
+     * fallback provides the value to emit, not an Observable.
      *
      * @param method   the method that this fallback is to be used for
      * @param fallback the fallback to use
@@ -189,6 +286,48 @@ public abstract class HystrixClient<T, B extends HystrixClient<T, B>> extends Cl
         return (B) this;
     }
 
+    /**
+     * Serve the last successful result for the same arguments when a call of any GET method on the ResourceClass fails.
+     * Each method gets its own {@link LastKnownGoodCache} created from the specified builder. Other methods, and GET
+     * methods whose results can't be served twice, are left alone, see {@link LastKnownGoodCache#canCache(Method)}. See
+     * {@link #methodLastKnownGoodFallback(Method, LastKnownGoodCache)}.
+     *
+     * @param cacheBuilder the builder for the caches
+     * @return the HystrixClientBuilder
+     */
+    @SuppressWarnings("unchecked")
+    public B lastKnownGoodFallback(LastKnownGoodCache.Builder cacheBuilder) {
+        checkNotNull(cacheBuilder);
+        for (Method method : this.resourceInterface.getInterface().getMethods()) {
+            if (LastKnownGoodCache.canCache(method)) {
+                methodLastKnownGoodFallback(method, cacheBuilder.build());
+            }
+        }
+        return (B) this;
+    }
+
+    /**
+     * Serve the last successful result for the same arguments when a call of a particular method fails, times out, is
+     * short circuited or is rejected. The fallback of the method, if any, is only used when there is no result young
+     * enough in the cache. Without a fallback the caller gets the original failure in that case. Hold on to the cache
+     * to monitor how often stale results are served. The method must be a GET whose results can be served more than
+     * once, see {@link LastKnownGoodCache#canCache(Method)}.
+     *
+     * @param method the method to cache the results of
+     * @param cache  the LastKnownGoodCache to use
+     * @return the HystrixClientBuilder
+     */
+    @SuppressWarnings("unchecked")
+    public B methodLastKnownGoodFallback(Method method, LastKnownGoodCache cache) {
+        checkArgument(LastKnownGoodCache.canCache(method),
+                      String.format("The results of %s can't be cached, only GET methods that don't return a stream, "
+                                    + "an iterator, a file, a channel, a buffer, a response or an Observable can",
+                                    method));
+        this.lastKnownGoodMap = updateWith(method, cache, this.lastKnownGoodMap);
+        this.commandPropertiesMap.get(method).withFallbackEnabled(true);
+        return (B) this;
+    }
+
     /**
      * Specify specific criteria for bad requests for a particular method on the ResourceClass.
      *
@@ -219,6 +358,116 @@ public abstract class HystrixClient<T, B extends HystrixClient<T, B>> extends Cl
         return (B) this;
     }
 
+    /**
+     * Let the specified {@link ThreadPoolAutoSizer} size the thread pools of all methods on the ResourceInterface from
+     * their observed load, instead of relying on the static core sizes. The sizes stay within the bounds of the sizer.
+     * Semaphore isolated methods don't use a thread pool and are ignored. The sizer has to be started separately, so that
+     * one sizer can serve many clients.
+     *
+     * @param threadPoolAutoSizer the ThreadPoolAutoSizer to register the methods with
+     * @return the HystrixClientBuilder
+     */
+    @SuppressWarnings("unchecked")
+    public B threadPoolAutoSizer(ThreadPoolAutoSizer threadPoolAutoSizer) {
+        this.threadPoolAutoSizer = checkNotNull(threadPoolAutoSizer);
+        return (B) this;
+    }
+
+    /**
+     * Run all methods on the ResourceInterface on the calling thread, guarded by a Hystrix semaphore instead of a
+     * Hystrix thread pool. See {@link #methodSemaphoreIsolation(Method)}.
+     *
+     * @return the HystrixClientBuilder
+     */
+    @SuppressWarnings("unchecked")
+    public B semaphoreIsolation() {
+        this.semaphoreIsolated = ImmutableSet.copyOf(this.resourceInterface.getInterface().getMethods());
+        return (B) this;
+    }
+
+    /**
+     * Run a particular method on the calling thread, guarded by a Hystrix semaphore instead of a Hystrix thread pool.
+     * This saves the thread handoff for cheap and well behaved endpoints. The semaphore allows as many concurrent
+     * requests as the core size of the thread pool configured for the method would have. Hystrix doesn't time out
+     * semaphore isolated commands, so the command timeout is applied as the read timeout of the request instead.
+     *
+     * @param method the method to run with semaphore isolation
+     * @return the HystrixClientBuilder
+     */
+    @SuppressWarnings("unchecked")
+    public B methodSemaphoreIsolation(Method method) {
+        this.semaphoreIsolated = ImmutableSet.<Method>builder().addAll(this.semaphoreIsolated).add(checkMethod(method)).build();
+        return (B) this;
+    }
+
+    /**
+     * Merge concurrent calls of a single item method, such as findFrob(id), into one call of a batch method, such as
+     * findFrobs(ids), that returns a Map of results by key. The single item method must take exactly one argument and
+     * the batch method a single List, Set or Collection of keys. Calls are collected for 10ms by default, which can be
+     * changed with {@link #methodCollapserProperties(Method, ConfigurationCallback)}. Keys for which the batch call
+     * returns no result get null. The batch method is a regular command with its own properties and fallback.
+     * <p/>
+     * A ConcurrencyLimiter of the single item method limits the collapsed calls waiting for a batch. The batch commands
+     * run by the collapser don't go through the ConcurrencyLimiter of the batch method, which only applies when the
+     * batch method is called directly; their load is already bounded by the collapsed calls.
+     * <p/>
+     * Hystrix keeps a single collapser per key for the whole JVM, so the collapser key is the command key of the method
+     * followed by a number unique to each built client. Clients built for the same interface never batch each other's
+     * calls, which means collapser properties can't be overridden per key name at runtime.
+     *
+     * @param method the single item method
+     * @param batchMethod the batch method that returns a Map
+     * @return the HystrixClientBuilder
+     */
+    public B methodCollapser(Method method, Method batchMethod) {
+        return collapse(method, batchMethod, null);
+    }
+
+    /**
+     * Like {@link #methodCollapser(Method, Method)} for a batch method that returns a Collection of results. The
+     * specified Function is used to find the key of each result.
+     *
+     * @param method the single item method
+     * @param batchMethod the batch method that returns a Collection
+     * @param resultKey the Function that extracts the key from a result
+     * @param <V> the type of the results
+     * @return the HystrixClientBuilder
+     */
+    @SuppressWarnings("unchecked")
+    public <V> B methodCollapser(Method method, Method batchMethod, Function<V, ?> resultKey) {
+        return collapse(method, batchMethod, (Function<Object, ?>) checkNotNull(resultKey));
+    }
+
+    /**
+     * Specify custom HystrixCollapserProperties for a collapsed method.
+     *
+     * @param method   the single item method passed to methodCollapser
+     * @param callback the ConfigurationCallback that applies your custom settings
+     * @return the HystrixClientBuilder
+     */
+    public B methodCollapserProperties(Method method, ConfigurationCallback<HystrixCollapserProperties.Setter> callback) {
+        return applyCallback(this.collapserPropertiesMap, checkMethod(method), callback);
+    }
+
+    @SuppressWarnings("unchecked")
+    private B collapse(Method method, Method batchMethod, Function<Object, ?> resultKey) {
+        checkArgument(!checkMethod(method).equals(checkMethod(batchMethod)), "A method can't be collapsed into itself");
+        ProxyCollapserFactory.validate(method, batchMethod, resultKey != null);
+        this.batchMethodMap = updateWith(method, batchMethod, this.batchMethodMap);
+        if (resultKey != null) {
+            this.resultKeyMap = updateWith(method, resultKey, this.resultKeyMap);
+        }
+        else {
+            Map<Method, Function<Object, ?>> updated = new HashMap<>(this.resultKeyMap);
+            updated.remove(method);
+            this.resultKeyMap = ImmutableMap.copyOf(updated);
+        }
+        if (!this.collapserPropertiesMap.containsKey(method)) {
+            this.collapserPropertiesMap = updateWith(method, HystrixCollapserProperties.Setter(), this.collapserPropertiesMap);
+        }
+        return (B) this;
+    }
+
     private <V> Map<Method, V> updateWith(Method key, V value, Map<Method, V> existing) {
         Map<Method, V> updated = new HashMap<>(existing);
         updated.put(checkMethod(key), checkNotNull(value));
@@ -230,12 +479,108 @@ public abstract class HystrixClient<T, B extends HystrixClient<T, B>> extends Cl
         return new HystrixClientErrorHandler(this.badRequestCriteriaMap, super.getClientErrorHandler());
     }
 
+    /**
+     * Methods of the resource interface may return an {@link rx.Observable} of their entity instead of the entity
+     * itself. Those methods don't block the calling thread, see {@link HystrixCommandInvocationHandler#observe}.
+     * @return an EntityExtractorFactory that supports Observable return types
+     */
+    @Override
+    protected EntityExtractorFactory getEntityExtractorFactory() {
+        return new ObservableEntityExtractorFactory();
+    }
+
     @Override
     public T build() {
-        return HystrixCommandInvocationHandler.proxy(this.resourceInterface.getInterface(),
-                                                     super.build(),
-                                                     ImmutableMap.copyOf(assembleHystrixCommandSetters()),
-                                                     ImmutableMap.copyOf(this.fallbackMap));
+        for (Method method : this.semaphoreIsolated) {
+            Integer coreSize = this.threadPoolPropertiesMap.get(method).getCoreSize();
+            this.commandPropertiesMap.get(method)
+                    .withExecutionIsolationStrategy(ExecutionIsolationStrategy.SEMAPHORE)
+                    .withExecutionIsolationSemaphoreMaxConcurrentRequests(coreSize == null ? DEFAULT_CORE_SIZE : coreSize);
+        }
+        LOG.info("Hystrix client for {} runs in thread pools {} with {} threads in total",
+                 this.resourceInterface.getInterface().getCanonicalName(), getThreadPoolSizes(), getTotalThreadCount());
+        if (this.threadPoolAutoSizer != null) {
+            for (Method method : this.commandKeyMap.keySet()) {
+                if (!this.semaphoreIsolated.contains(method)) {
+                    this.threadPoolAutoSizer.register(threadPoolKeyFor(method), this.commandKeyMap.get(method));
+                }
+            }
+        }
+        ProxyConfig config = createProxyConfig();
+        // the commands call the MethodInvokers directly, the inner proxy is only used for equals, hashCode and toString
+        Map<Method, MethodInvoker> invokers = createMethodInvokers(config);
+        Map<Method, ConcurrencyLimiter> concurrencyLimiters = getConcurrencyLimiters();
+        Map<Method, ProxyCommandFactory> factories = new HashMap<>();
+        for (Map.Entry<Method, HystrixCommand.Setter> entry : assembleHystrixCommandSetters().entrySet()) {
+            Method method = entry.getKey();
+            factories.put(method, new ProxyCommandFactory(method,
+                                                          this.commandKeyMap.get(method),
+                                                          entry.getValue(),
+                                                          this.commandPropertiesMap.get(method),
+                                                          invokers.get(method),
+                                                          this.fallbackMap.get(method),
+                                                          concurrencyLimiters.get(method),
+                                                          this.lastKnownGoodMap.get(method)));
+        }
+        long clientId = CLIENT_IDS.incrementAndGet();
+        for (Map.Entry<Method, Method> entry : this.batchMethodMap.entrySet()) {
+            Method method = entry.getKey();
+            String collapserKey = this.commandKeyMap.get(method).name() + "-" + clientId;
+            HystrixCollapser.Setter setter = HystrixCollapser.Setter
+                    .withCollapserKey(HystrixCollapserKey.Factory.asKey(collapserKey))
+                    .andScope(HystrixCollapser.Scope.GLOBAL)
+                    .andCollapserPropertiesDefaults(this.collapserPropertiesMap.get(method));
+            ProxyCollapserFactory collapser = new ProxyCollapserFactory(setter, factories.get(entry.getValue()),
+                                                                        entry.getValue(), this.resultKeyMap.get(method));
+            factories.put(method, factories.get(method).collapsedWith(collapser));
+        }
+        // queued asynchronous writes are sent through the Hystrix commands like any other call
+        Map<Method, MethodInvoker> commandInvokers = new HashMap<>();
+        for (Map.Entry<Method, ProxyCommandFactory> entry : factories.entrySet()) {
+            commandInvokers.put(entry.getKey(), HystrixCommandInvocationHandler.commandInvoker(entry.getKey(),
+                                                                                               entry.getValue()));
+        }
+        Map<Method, MethodInvoker> asyncInvokers = startAsyncWriters(commandInvokers);
+        return withWarmUp(HystrixCommandInvocationHandler.proxy(this.resourceInterface.getInterface(),
+                                                                createProxy(invokers, config),
+                                                                ImmutableMap.copyOf(factories),
+                                                                ImmutableMap.copyOf(asyncInvokers)));
+    }
+
+    /**
+     * The concurrency limits are enforced before the HystrixCommand is created so that excess requests don't take up
+     * space in the Hystrix thread pool queue.
+     * @return an empty map
+     */
+    @Override
+    protected Map<Method, ConcurrencyLimiter> getInvokerConcurrencyLimiters() {
+        return ImmutableMap.of();
+    }
+
+    /**
+     * Semaphore isolated methods use their command timeout as read timeout, unless a read timeout has been set for
+     * them explicitly.
+     * @return the read timeouts for all methods
+     */
+    @Override
+    protected Map<Method, Integer> getReadTimeouts() {
+        Map<Method, Integer> readTimeouts = new HashMap<>(super.getReadTimeouts());
+        for (Method method : this.semaphoreIsolated) {
+            if (!readTimeouts.containsKey(method)) {
+                Integer timeout = this.commandPropertiesMap.get(method).getExecutionIsolationThreadTimeoutInMilliseconds();
+                readTimeouts.put(method, timeout == null ? DEFAULT_TIMEOUT_MILLIS : timeout);
+            }
+        }
+        return ImmutableMap.copyOf(readTimeouts);
+    }
+
+    /**
+     * Hystrix runs commands without a HystrixThreadPoolKey in the pool named after their group.
+     */
+    private HystrixThreadPoolKey threadPoolKeyFor(Method method) {
+        return this.threadPoolKeysMap.containsKey(method)
+               ? this.threadPoolKeysMap.get(method)
+               : HystrixThreadPoolKey.Factory.asKey(this.groupKey.name());
     }
 
     private Map<Method, HystrixCommand.Setter> assembleHystrixCommandSetters() {
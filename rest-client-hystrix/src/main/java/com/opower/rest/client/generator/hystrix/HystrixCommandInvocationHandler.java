@@ -14,17 +14,28 @@
  **/
 package com.opower.rest.client.generator.hystrix;
 
+import com.google.common.base.Optional;
+import com.google.common.base.Throwables;
+import com.netflix.hystrix.HystrixCollapser;
 import com.netflix.hystrix.HystrixCommand;
 import com.netflix.hystrix.exception.HystrixBadRequestException;
 import com.netflix.hystrix.exception.HystrixRuntimeException;
+import com.opower.rest.client.generator.core.MethodInvoker;
+import com.opower.rest.client.generator.limiter.ConcurrencyLimitExceededException;
+import com.opower.rest.client.generator.limiter.ConcurrencyLimiter;
 import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Proxy;
 import java.util.Map;
-import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import rx.Observable;
+import rx.functions.Action0;
+import rx.functions.Func0;
+import rx.functions.Func1;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 
@@ -36,53 +47,203 @@ import static com.google.common.base.Preconditions.checkNotNull;
 final class HystrixCommandInvocationHandler<T> implements InvocationHandler {
 
     private static final Logger LOG = LoggerFactory.getLogger(HystrixCommandInvocationHandler.class);
+    private static final Func1<Throwable, Observable<Object>> UNWRAP_ERRORS = new Func1<Throwable, Observable<Object>>() {
+        @Override
+        public Observable<Object> call(Throwable error) {
+            if (error instanceof HystrixBadRequestException && error.getCause() != null) {
+                return Observable.error(error.getCause());
+            }
+            else if (error instanceof HystrixRuntimeException) {
+                return Observable.error(unwrap((HystrixRuntimeException) error));
+            }
+            return Observable.error(error);
+        }
+    };
     private final T target;
-    private final Map<Method, HystrixCommand.Setter> commandSetters;
-    private final Map<Method, Callable<?>> fallbacks;
+    private final Map<Method, ProxyCommandFactory> commandFactories;
+    private final Map<Method, MethodInvoker> asyncInvokers;
 
-    private HystrixCommandInvocationHandler(T target,
-                                            final Map<Method, HystrixCommand.Setter> commandSetters,
-                                            final Map<Method, Callable<?>> fallbacks) {
+    private HystrixCommandInvocationHandler(T target, Map<Method, ProxyCommandFactory> commandFactories,
+                                            Map<Method, MethodInvoker> asyncInvokers) {
         this.target = checkNotNull(target);
-        this.commandSetters = checkNotNull(commandSetters);
-        this.fallbacks = checkNotNull(fallbacks);
+        this.commandFactories = checkNotNull(commandFactories);
+        this.asyncInvokers = checkNotNull(asyncInvokers);
     }
 
     /**
-     * All methods will be wrapped in a HystrixCommand set up according to the provided Map of HystrixCommand.Setter.
+     * All methods that have a ProxyCommandFactory will be wrapped in a HystrixCommand created by that factory, all other
+     * methods are invoked on the provided resource instance directly. Methods with an asynchronous MethodInvoker are
+     * queued by it instead.
      *
      * @param resourceInterface the interface that has methods annotated for JAX-RS resource purposes
      * @param toProxy           the actual resource instance to proxy
-     * @param commandSetters    should you desire to have different configuration for the HystrixCommands per method,
-     *                          you can pass that mapping here directly.
-     * @param fallbacks         The fallbacks to use
+     * @param commandFactories  the ProxyCommandFactory to use for each method
+     * @param asyncInvokers     the MethodInvoker that queues the calls of each asynchronously written method
      * @param <T>               the type of the resource interface
      * @return a archmage that wraps calls to the underlying resource instance with metrics tracking logic
      */
     @SuppressWarnings("unchecked")
     static <T> T proxy(Class<T> resourceInterface,
                        T toProxy,
-                       Map<Method, HystrixCommand.Setter> commandSetters,
-                       Map<Method, Callable<?>> fallbacks) {
+                       Map<Method, ProxyCommandFactory> commandFactories,
+                       Map<Method, MethodInvoker> asyncInvokers) {
         LOG.info("Creating Hystrix based client");
         return (T) Proxy.newProxyInstance(
                 toProxy.getClass().getClassLoader(),
                 new Class<?>[]{resourceInterface},
-                new HystrixCommandInvocationHandler<>(toProxy, commandSetters, fallbacks));
+                new HystrixCommandInvocationHandler<>(toProxy, commandFactories, asyncInvokers));
+    }
+
+    /**
+     * Creates a MethodInvoker that calls the method through its HystrixCommand, just like a call on the client does.
+     * Checked exceptions are wrapped in a RuntimeException.
+     *
+     * @param method the method of the resource interface
+     * @param factory the ProxyCommandFactory for the method
+     * @return the MethodInvoker
+     */
+    static MethodInvoker commandInvoker(final Method method, final ProxyCommandFactory factory) {
+        checkNotNull(factory);
+        return new MethodInvoker() {
+            @Override
+            public Object invoke(Object[] args) {
+                try {
+                    return call(method, factory, args);
+                }
+                catch (Throwable throwable) {
+                    throw Throwables.propagate(throwable);
+                }
+            }
+        };
     }
 
     @Override
     public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
-        if (this.commandSetters.containsKey(method)) {
-            @SuppressWarnings("unchecked")
-            ProxyCommand command = new ProxyCommand(this.commandSetters.get(method), method, args,
-                                                    (Callable<Object>) this.fallbacks.get(method), this.target);
-            return execute(command);
-        } 
-        else {
+        MethodInvoker asyncInvoker = this.asyncInvokers.get(method);
+        if (asyncInvoker != null) {
+            return asyncInvoker.invoke(args);
+        }
+        ProxyCommandFactory factory = this.commandFactories.get(method);
+        if (factory == null) {
             return method.invoke(this.target, args);
         }
+        return call(method, factory, args);
+    }
+
+    /**
+     * Calls the method through a HystrixCommand, or through its collapser if it is collapsed, within its
+     * ConcurrencyLimiter.
+     */
+    private static Object call(Method method, ProxyCommandFactory factory, Object[] args) throws Throwable {
+        if (factory.getCollapserFactory() != null) {
+            return collapse(method, factory, args);
+        }
+        if (factory.isObservable()) {
+            return observe(method, factory, args);
+        }
+        ConcurrencyLimiter limiter = factory.getConcurrencyLimiter();
+        if (limiter != null && !limiter.tryAcquire()) {
+            return rejected(method, factory, limiter, args);
+        }
+        long start = System.nanoTime();
+        ProxyCommand command = null;
+        try {
+            command = factory.create(args);
+            return execute(command);
+        }
+        finally {
+            if (command != null) {
+                command.abortIfTimedOut();
+            }
+            if (limiter != null) {
+                // failures of the request itself aren't a sign of overload, only failures caused by hystrix are
+                boolean overloaded = command == null || command.isResponseTimedOut() || command.isResponseRejected()
+                                     || command.isResponseShortCircuited();
+                limiter.release(System.nanoTime() - start, overloaded);
+            }
+        }
+    }
+
+    /**
+     * Creates the Observable returned by methods of the resource interface that return one. Nothing happens until it is
+     * subscribed to, and every subscription executes a new HystrixCommand, so the circuit breaker, timeout and fallback
+     * apply to each of them just like they do for blocking calls. With thread isolation the subscriber's thread never
+     * blocks, the result is emitted on the Hystrix thread. Visible for testing
+     *
+     * @param method the method of the resource interface
+     * @param factory the ProxyCommandFactory for the method
+     * @param args the arguments of the call
+     * @return the Observable that emits the result of the call
+     */
+    static Observable<Object> observe(final Method method, final ProxyCommandFactory factory, final Object[] args) {
+        return Observable.defer(new Func0<Observable<Object>>() {
+            @Override
+            public Observable<Object> call() {
+                final ConcurrencyLimiter limiter = factory.getConcurrencyLimiter();
+                if (limiter != null && !limiter.tryAcquire()) {
+                    try {
+                        return Observable.just(rejected(method, factory, limiter, args));
+                    }
+                    catch (Exception ex) {
+                        return Observable.error(ex);
+                    }
+                }
+                final long start = System.nanoTime();
+                final ProxyCommand command = factory.create(args);
+                final AtomicBoolean released = new AtomicBoolean();
+                Action0 release = new Action0() {
+                    @Override
+                    public void call() {
+                        if (limiter != null && released.compareAndSet(false, true)) {
+                            boolean overloaded = command.isResponseTimedOut() || command.isResponseRejected()
+                                                 || command.isResponseShortCircuited();
+                            limiter.release(System.nanoTime() - start, overloaded);
+                        }
+                    }
+                };
+                Action0 abort = new Action0() {
+                    @Override
+                    public void call() {
+                        // the subscriber is no longer interested, so there is no point in waiting for the server
+                        command.abort();
+                    }
+                };
+                Action0 abortIfTimedOut = new Action0() {
+                    @Override
+                    public void call() {
+                        command.abortIfTimedOut();
+                    }
+                };
+                // subscribers that unsubscribe early never see the terminal event
+                return toObservable(command).finallyDo(abortIfTimedOut).finallyDo(release)
+                                            .doOnUnsubscribe(abort).doOnUnsubscribe(release);
+            }
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Observable<Object> toObservable(ProxyCommand command) {
+        return ((Observable<Object>) command.toObservable()).onErrorResumeNext(UNWRAP_ERRORS);
+    }
 
+    /**
+     * Requests rejected by the ConcurrencyLimiter never reach Hystrix, but they are still served by the last known good
+     * result or the fallback if the method has one, just like requests rejected by the Hystrix thread pool.
+     */
+    private static Object rejected(Method method, ProxyCommandFactory factory, ConcurrencyLimiter limiter, Object[] args)
+            throws Exception {
+        if (factory.getLastKnownGood() != null) {
+            Optional<Object> result = factory.getLastKnownGood().get(args);
+            if (result.isPresent()) {
+                return result.get();
+            }
+        }
+        if (factory.getFallback() != null) {
+            return factory.getFallback().call();
+        }
+        else {
+            throw new ConcurrencyLimitExceededException(method.toString(), limiter.getLimit());
+        }
     }
 
     /**
@@ -101,16 +262,80 @@ final class HystrixCommandInvocationHandler<T> implements InvocationHandler {
             throw ex.getCause();
         } 
         catch (HystrixRuntimeException ex) {
-            // fallback failures should always just throw the HystrixRuntimeException
-            if (ex.getFallbackException() != null) {
-                throw ex;
+            throw unwrap(ex);
+        }
+    }
+
+    private static Throwable unwrap(HystrixRuntimeException ex) {
+        // fallback failures should always just throw the HystrixRuntimeException, unless there just wasn't a fallback
+        if (ex.getFallbackException() != null && !(ex.getFallbackException() instanceof ProxyCommand.NoFallbackException)) {
+            return ex;
+        }
+        switch (ex.getFailureType()) {
+            case COMMAND_EXCEPTION:
+                return throwCause(ex);
+            default:
+                return ex;
+        }
+    }
+
+    /**
+     * Executes a collapsed call within the ConcurrencyLimiter of the single item method, which bounds the number of
+     * callers waiting for a batch just like it bounds regular calls. Only timeouts, rejections and short circuits of
+     * the batch command that reach the caller count as overload, since the collapser doesn't expose the batch command
+     * itself. Visible for testing
+     *
+     * @param method the single item method of the resource interface
+     * @param factory the ProxyCommandFactory for the method, collapsed with a ProxyCollapserFactory
+     * @param args the arguments of the call
+     * @return the result for this call
+     * @throws Throwable for convenience
+     */
+    static Object collapse(Method method, ProxyCommandFactory factory, Object[] args) throws Throwable {
+        ConcurrencyLimiter limiter = factory.getConcurrencyLimiter();
+        if (limiter != null && !limiter.tryAcquire()) {
+            return rejected(method, factory, limiter, args);
+        }
+        long start = System.nanoTime();
+        boolean overloaded = false;
+        try {
+            return executeCollapsed(factory.getCollapserFactory().create(args[0]));
+        }
+        catch (HystrixRuntimeException ex) {
+            overloaded = ex.getFailureType() != HystrixRuntimeException.FailureType.COMMAND_EXCEPTION;
+            throw ex;
+        }
+        finally {
+            if (limiter != null) {
+                limiter.release(System.nanoTime() - start, overloaded);
+            }
+        }
+    }
+
+    /**
+     * Executes a collapsed call. Failures of the batch command are reported like failures of a regular command.
+     *
+     * @param collapser the HystrixCollapser to execute
+     * @return the result for this call
+     * @throws Throwable for convenience
+     */
+    static Object executeCollapsed(HystrixCollapser<?, ?, ?> collapser) throws Throwable {
+        try {
+            return collapser.execute();
+        }
+        catch (HystrixRuntimeException ex) {
+            throw unwrap(ex);
+        }
+        catch (RuntimeException ex) {
+            // the collapser wraps everything that isn't a HystrixRuntimeException, including the ExecutionException
+            Throwable cause = ex.getCause() instanceof ExecutionException ? ex.getCause().getCause() : ex;
+            if (cause instanceof HystrixBadRequestException) {
+                throw cause.getCause();
             }
-            switch (ex.getFailureType()) {
-                case COMMAND_EXCEPTION:
-                    throw throwCause(ex);
-                default:
-                    throw ex;
+            else if (cause instanceof HystrixRuntimeException) {
+                throw unwrap((HystrixRuntimeException) cause);
             }
+            throw cause;
         }
     }
 
@@ -0,0 +1,206 @@
+/**
+ *    Copyright 2014 Opower, Inc.
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ **/
+package com.opower.rest.client.generator.hystrix;
+
+import com.google.common.base.Optional;
+import com.google.common.base.Ticker;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.Weigher;
+import com.google.common.collect.ImmutableList;
+import com.opower.rest.client.generator.core.ClientResponse;
+import com.opower.rest.client.generator.extractors.ResponseSinkExtractor;
+import com.opower.rest.client.generator.util.IsHttpMethod;
+import java.io.File;
+import java.io.InputStream;
+import java.io.Reader;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channel;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.ws.rs.HttpMethod;
+import javax.ws.rs.core.Response;
+import rx.Observable;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Remembers the last successful result of a resource method for each combination of arguments, so that it can be served
+ * as the fallback when the command fails, times out, is short circuited or is rejected. Results older than the maximum
+ * age are never served, and the cache is bounded either by number of entries or by a custom weight.
+ * <p/>
+ * The arguments of the method are the cache key, so they must implement equals and hashCode. Null results aren't cached.
+ * <p/>
+ * Only the results of GET methods are cached, since serving a stale result for a POST, PUT or DELETE would hide that
+ * the write never happened. Results that can only be consumed once, like streams, iterators, files, channels, buffers,
+ * responses and Observables, aren't cached either. See {@link #canCache(Method)}.
+ */
+public final class LastKnownGoodCache {
+
+    private final Cache<List<Object>, Object> cache;
+    private final AtomicLong staleServes = new AtomicLong();
+
+    private LastKnownGoodCache(Builder builder) {
+        CacheBuilder<Object, Object> cacheBuilder = CacheBuilder.newBuilder()
+                .expireAfterWrite(builder.maxAgeMillis, TimeUnit.MILLISECONDS)
+                .ticker(builder.ticker);
+        if (builder.weigher == null) {
+            this.cache = cacheBuilder.maximumSize(builder.maximumSize).build();
+        }
+        else {
+            this.cache = cacheBuilder.maximumWeight(builder.maximumWeight).weigher(builder.weigher).build();
+        }
+    }
+
+    /**
+     * Creates a Builder initialized with a maximum of 1000 entries and a maximum age of 5 minutes.
+     * @return the builder
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Remember the result of a successful call.
+     * @param args the arguments of the call
+     * @param result the result of the call
+     */
+    public void put(Object[] args, Object result) {
+        if (result != null) {
+            this.cache.put(key(args), result);
+        }
+    }
+
+    /**
+     * Look up the last known good result for a failed call. Every result that is found counts as a stale serve.
+     * @param args the arguments of the call
+     * @return the last known good result, if it isn't older than the maximum age
+     */
+    public Optional<Object> get(Object[] args) {
+        Object result = this.cache.getIfPresent(key(args));
+        if (result != null) {
+            this.staleServes.incrementAndGet();
+        }
+        return Optional.fromNullable(result);
+    }
+
+    /**
+     * @return the number of times a cached result has been served instead of a fresh one
+     */
+    public long getStaleServeCount() {
+        return this.staleServes.get();
+    }
+
+    /**
+     * @return the number of results currently cached
+     */
+    public long size() {
+        return this.cache.size();
+    }
+
+    /**
+     * Check whether the results of a method can be served again: the method must be a GET and its result must not be
+     * consumed by reading it.
+     * @param method the method of the resource interface
+     * @return true if the results of the method can be cached
+     */
+    public static boolean canCache(Method method) {
+        Set<String> httpMethods = IsHttpMethod.getHttpMethods(method);
+        if (httpMethods == null || !httpMethods.contains(HttpMethod.GET)
+            || ResponseSinkExtractor.hasResponseSink(method)) {
+            return false;
+        }
+        Class<?> type = method.getReturnType();
+        return !(InputStream.class.isAssignableFrom(type) || Reader.class.isAssignableFrom(type)
+                 || Iterator.class.isAssignableFrom(type) || Iterable.class.equals(type)
+                 || File.class.isAssignableFrom(type) || Path.class.isAssignableFrom(type)
+                 || Channel.class.isAssignableFrom(type) || ByteBuffer.class.isAssignableFrom(type)
+                 || ClientResponse.class.isAssignableFrom(type) || Response.class.isAssignableFrom(type)
+                 || Observable.class.isAssignableFrom(type));
+    }
+
+    private static List<Object> key(Object[] args) {
+        return args == null ? ImmutableList.of() : Arrays.asList(args.clone());
+    }
+
+    /**
+     * Builder for LastKnownGoodCache instances.
+     */
+    public static final class Builder {
+        private static final long DEFAULT_MAXIMUM_SIZE = 1000;
+        private static final long DEFAULT_MAX_AGE_MILLIS = TimeUnit.MINUTES.toMillis(5);
+
+        private long maximumSize = DEFAULT_MAXIMUM_SIZE;
+        private long maximumWeight;
+        private Weigher<? super List<Object>, ? super Object> weigher;
+        private long maxAgeMillis = DEFAULT_MAX_AGE_MILLIS;
+        private Ticker ticker = Ticker.systemTicker();
+
+        private Builder() {
+        }
+
+        /**
+         * Bound the cache by number of entries.
+         * @param maximumSize the maximum number of results to keep
+         * @return the builder
+         */
+        public Builder maximumSize(long maximumSize) {
+            checkArgument(maximumSize >= 0, "maximumSize must not be negative");
+            this.maximumSize = maximumSize;
+            this.weigher = null;
+            return this;
+        }
+
+        /**
+         * Bound the cache by the total weight of its entries, for instance an estimate of their size in bytes.
+         * @param maximumWeight the maximum total weight of the results to keep
+         * @param weigher computes the weight of a result, gets the arguments of the call as a List
+         * @return the builder
+         */
+        public Builder maximumWeight(long maximumWeight, Weigher<? super List<Object>, ? super Object> weigher) {
+            checkArgument(maximumWeight >= 0, "maximumWeight must not be negative");
+            this.maximumWeight = maximumWeight;
+            this.weigher = checkNotNull(weigher);
+            return this;
+        }
+
+        /**
+         * The maximum age of a result that can still be served.
+         * @param maxAgeMillis the maximum age in milliseconds
+         * @return the builder
+         */
+        public Builder maxAge(long maxAgeMillis) {
+            checkArgument(maxAgeMillis > 0, "maxAgeMillis must be positive");
+            this.maxAgeMillis = maxAgeMillis;
+            return this;
+        }
+
+        public Builder ticker(Ticker ticker) {
+            this.ticker = checkNotNull(ticker);
+            return this;
+        }
+
+        public LastKnownGoodCache build() {
+            return new LastKnownGoodCache(this);
+        }
+    }
+}
@@ -0,0 +1,58 @@
+/**
+ *    Copyright 2014 Opower, Inc.
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ **/
+package com.opower.rest.client.generator.hystrix;
+
+import com.opower.rest.client.generator.extractors.BodyEntityExtractor;
+import com.opower.rest.client.generator.extractors.DefaultEntityExtractorFactory;
+import com.opower.rest.client.generator.extractors.EntityExtractor;
+import com.opower.rest.client.generator.util.Types;
+import java.lang.reflect.Method;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import rx.Observable;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * EntityExtractorFactory that supports methods returning an {@link Observable}. The entity of those methods is read as the
+ * type argument of the Observable, the HystrixCommandInvocationHandler takes care of wrapping it.
+ */
+final class ObservableEntityExtractorFactory extends DefaultEntityExtractorFactory {
+
+    @Override
+    public EntityExtractor createExtractor(Method method) {
+        checkNotNull(method);
+        if (!isObservable(method)) {
+            return super.createExtractor(method);
+        }
+        checkArgument(method.getGenericReturnType() instanceof ParameterizedType,
+                      String.format("%s must declare the type emitted by the Observable", method));
+        Type entityType = ((ParameterizedType) method.getGenericReturnType()).getActualTypeArguments()[0];
+        Class<?> rawType = Types.getRawType(entityType);
+        if (isVoidReturnType(rawType)) {
+            return createVoidExtractor(method, true);
+        }
+        return new BodyEntityExtractor(method, rawType, entityType);
+    }
+
+    /**
+     * @param method the method of the resource interface
+     * @return true if the method returns an Observable
+     */
+    static boolean isObservable(Method method) {
+        return Observable.class.equals(method.getReturnType());
+    }
+}
@@ -0,0 +1,145 @@
+/**
+ *    Copyright 2014 Opower, Inc.
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ **/
+package com.opower.rest.client.generator.hystrix;
+
+import com.google.common.base.Function;
+import com.netflix.hystrix.HystrixCollapser;
+import com.netflix.hystrix.HystrixCommand;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Creates the HystrixCollapsers that merge concurrent calls of a single item method into one call of a batch method.
+ * The single item method must take exactly one argument, the key. The batch method must take a single List, Set or
+ * Collection of keys, and return either a Map from key to result or a Collection of results together with a Function
+ * that extracts the key from a result. Keys for which the batch call returns no result get null.
+ */
+final class ProxyCollapserFactory {
+
+    private final HystrixCollapser.Setter setter;
+    private final ProxyCommandFactory batchFactory;
+    private final boolean batchTakesSet;
+    private final Function<Object, ?> resultKey;
+
+    /**
+     * Creates a ProxyCollapserFactory.
+     * @param setter the HystrixCollapser.Setter to use
+     * @param batchFactory the ProxyCommandFactory of the batch method
+     * @param batchMethod the batch method
+     * @param resultKey the Function that extracts the key from a result, or null if the batch method returns a Map
+     */
+    ProxyCollapserFactory(HystrixCollapser.Setter setter, ProxyCommandFactory batchFactory, Method batchMethod,
+                          Function<Object, ?> resultKey) {
+        this.setter = checkNotNull(setter);
+        this.batchFactory = checkNotNull(batchFactory);
+        this.resultKey = resultKey;
+        this.batchTakesSet = batchMethod.getParameterTypes()[0].isAssignableFrom(Set.class)
+                             && !batchMethod.getParameterTypes()[0].isAssignableFrom(List.class);
+    }
+
+    /**
+     * Check that the two methods can be collapsed.
+     * @param single the single item method
+     * @param batch the batch method
+     * @param hasResultKey whether a Function to extract the key from a result has been provided
+     */
+    static void validate(Method single, Method batch, boolean hasResultKey) {
+        checkArgument(single.getParameterTypes().length == 1,
+                      String.format("%s must take exactly one argument to be collapsed", single));
+        checkArgument(!ObservableEntityExtractorFactory.isObservable(single),
+                      String.format("%s returns an Observable and can't be collapsed", single));
+        checkArgument(batch.getParameterTypes().length == 1
+                      && (batch.getParameterTypes()[0].isAssignableFrom(List.class)
+                          || batch.getParameterTypes()[0].isAssignableFrom(Set.class)),
+                      String.format("%s must take a single List, Set or Collection of keys", batch));
+        if (hasResultKey) {
+            checkArgument(Collection.class.isAssignableFrom(batch.getReturnType()),
+                          String.format("%s must return a Collection of results", batch));
+        }
+        else {
+            checkArgument(Map.class.isAssignableFrom(batch.getReturnType()),
+                          String.format("%s must return a Map of results by key, or you must provide a "
+                                        + "Function that extracts the key from a result", batch));
+        }
+    }
+
+    ProxyCollapser create(Object key) {
+        return new ProxyCollapser(key);
+    }
+
+    /**
+     * The HystrixCollapser for a single call.
+     */
+    final class ProxyCollapser extends HystrixCollapser<Object, Object, Object> {
+        private final Object key;
+
+        private ProxyCollapser(Object key) {
+            super(ProxyCollapserFactory.this.setter);
+            this.key = key;
+        }
+
+        @Override
+        public Object getRequestArgument() {
+            return this.key;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        protected HystrixCommand<Object> createCommand(Collection<CollapsedRequest<Object, Object>> requests) {
+            // the same key may be requested more than once in a batch
+            Set<Object> keys = new LinkedHashSet<>();
+            for (CollapsedRequest<Object, Object> request : requests) {
+                keys.add(request.getArgument());
+            }
+            Object argument = ProxyCollapserFactory.this.batchTakesSet ? keys : new ArrayList<>(keys);
+            return ProxyCollapserFactory.this.batchFactory.create(new Object[]{argument});
+        }
+
+        @Override
+        protected void mapResponseToRequests(Object batchResponse, Collection<CollapsedRequest<Object, Object>> requests) {
+            Map<?, ?> results = byKey(batchResponse);
+            for (CollapsedRequest<Object, Object> request : requests) {
+                request.setResponse(results.get(request.getArgument()));
+            }
+        }
+
+        private Map<?, ?> byKey(Object batchResponse) {
+            Function<Object, ?> resultKey = ProxyCollapserFactory.this.resultKey;
+            if (batchResponse == null) {
+                return new HashMap<>();
+            }
+            else if (resultKey == null) {
+                return (Map<?, ?>) batchResponse;
+            }
+            Map<Object, Object> results = new HashMap<>();
+            for (Object result : (Collection<?>) batchResponse) {
+                if (result != null) {
+                    results.put(resultKey.apply(result), result);
+                }
+            }
+            return results;
+        }
+    }
+}
@@ -17,13 +17,12 @@ package com.opower.rest.client.generator.hystrix;
 import com.google.common.base.Optional;
 import com.google.common.base.Throwables;
 import com.netflix.hystrix.HystrixCommand;
+import com.opower.rest.client.generator.core.AbortHandle;
+import com.opower.rest.client.generator.core.ClientInvoker;
+import com.opower.rest.client.generator.core.MethodInvoker;
 
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
 import java.util.concurrent.Callable;
 
-import static com.google.common.base.Preconditions.checkArgument;
-
 /**
  * 
  * Generic HystrixCommand used by the HystrixClientBuilder to wrap ResourceInterface method invocations.
@@ -32,49 +31,79 @@ import static com.google.common.base.Preconditions.checkArgument;
  */
 final class ProxyCommand extends HystrixCommand {
 
-    private final Method toinvoke;
+    private final MethodInvoker invoker;
     private final Object[] args;
-    private final Optional<Callable<Object>> fallback;
-    private final Object target;
+    private final Callable<Object> fallback;
+    private final LastKnownGoodCache lastKnownGood;
+    private final AbortHandle abortHandle = new AbortHandle();
 
     /**
-     * Creates a Proxy command with the specified settings.
+     * Creates a Proxy command with the specified settings. The settings are validated once per method by the
+     * {@link ProxyCommandFactory}, so no checks are done here.
      * @param setter the HystrixCommand.Setter to use
-     * @param toinvoke the Method to be invoked
+     * @param invoker the MethodInvoker that makes the http call
      * @param args the arguments for the method to be invoked
-     * @param fallback the fallback Hystrix will use
-     * @param target this ProxyCommand will invoke the provided method on this target object
+     * @param fallback the fallback Hystrix will use, may be null
+     * @param lastKnownGood the cache of successful results to fall back to before the fallback, may be null
      */
-    ProxyCommand(Setter setter, Method toinvoke, Object[] args, Callable<Object> fallback, Object target) {
+    ProxyCommand(Setter setter, MethodInvoker invoker, Object[] args, Callable<Object> fallback,
+                 LastKnownGoodCache lastKnownGood) {
         super(setter);
-        this.toinvoke = toinvoke;
+        this.invoker = invoker;
         this.args = args;
-        this.target = target;
-        this.fallback = Optional.fromNullable(fallback);
-        checkArgument(toinvoke.getDeclaringClass().isInstance(target),
-                      "The method to invoke must be present on the target object");
-        checkArgument(!getProperties().fallbackEnabled().get() || this.fallback.isPresent(),
-                      String.format("You didn't provide a fallback for %s.%s. You must either provide a "
-                                    + "fallback or disable fallbacks "
-                                    + "in the HystrixCommandProperties for this method.",
-                                    toinvoke.getDeclaringClass().getCanonicalName(), toinvoke.getName()));
+        this.fallback = fallback;
+        this.lastKnownGood = lastKnownGood;
     }
 
     @Override
     protected Object run() throws Exception {
         try {
-            return this.toinvoke.invoke(this.target, this.args);
-        } 
-        catch (InvocationTargetException ex) {
-            throw Throwables.propagate(ex.getTargetException());
+            Object result = this.invoker instanceof ClientInvoker
+                            ? ((ClientInvoker) this.invoker).invoke(this.args, this.abortHandle)
+                            : this.invoker.invoke(this.args);
+            if (this.lastKnownGood != null) {
+                this.lastKnownGood.put(this.args, result);
+            }
+            return result;
+        }
+        finally {
+            this.abortHandle.clear();
+        }
+    }
+
+    /**
+     * Aborts the http exchange if it is still in flight. Interrupting the Hystrix thread doesn't unblock a socket read,
+     * so without this the thread and the pooled connection stay busy until the server answers.
+     */
+    void abort() {
+        this.abortHandle.abort();
+    }
+
+    /**
+     * Aborts the http exchange if the command timed out while it was still in flight.
+     */
+    void abortIfTimedOut() {
+        if (isResponseTimedOut()) {
+            abort();
         }
     }
 
     @Override
     protected Object getFallback() {
-        if (this.fallback.isPresent()) {
+        // the timeout is only reliably visible on the thread that runs the fallback, so abort from here as well
+        abortIfTimedOut();
+        if (this.lastKnownGood != null) {
+            Optional<Object> result = this.lastKnownGood.get(this.args);
+            if (result.isPresent()) {
+                return result.get();
+            }
+            else if (this.fallback == null) {
+                throw new NoFallbackException();
+            }
+        }
+        if (this.fallback != null) {
             try {
-                return this.fallback.get().call();
+                return this.fallback.call();
             } 
             catch (Exception e) {
                 throw Throwables.propagate(e);
@@ -84,4 +113,16 @@ final class ProxyCommand extends HystrixCommand {
             return super.getFallback();
         }
     }
+
+    /**
+     * Thrown when there is neither a last known good result nor a fallback, the caller gets the original failure as if
+     * fallbacks were disabled.
+     */
+    static final class NoFallbackException extends UnsupportedOperationException {
+        private static final long serialVersionUID = 1L;
+
+        NoFallbackException() {
+            super("No last known good result available");
+        }
+    }
 }
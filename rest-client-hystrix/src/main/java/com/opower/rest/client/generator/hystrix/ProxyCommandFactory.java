@@ -0,0 +1,125 @@
+/**
+ *    Copyright 2014 Opower, Inc.
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ **/
+package com.opower.rest.client.generator.hystrix;
+
+import com.netflix.hystrix.HystrixCommand;
+import com.netflix.hystrix.HystrixCommandKey;
+import com.netflix.hystrix.HystrixCommandProperties;
+import com.netflix.hystrix.strategy.properties.HystrixPropertiesFactory;
+import com.opower.rest.client.generator.core.MethodInvoker;
+import com.opower.rest.client.generator.limiter.ConcurrencyLimiter;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.Callable;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Creates the ProxyCommands for a single method of the ResourceInterface. Everything that doesn't depend on the
+ * arguments of a call is resolved and validated once when the client is built.
+ */
+final class ProxyCommandFactory {
+
+    private final HystrixCommand.Setter setter;
+    private final MethodInvoker invoker;
+    private final Callable<Object> fallback;
+    private final ConcurrencyLimiter concurrencyLimiter;
+    private final LastKnownGoodCache lastKnownGood;
+    private final ProxyCollapserFactory collapserFactory;
+    private final boolean observable;
+
+    /**
+     * Creates a ProxyCommandFactory.
+     * @param method the method of the ResourceInterface
+     * @param commandKey the HystrixCommandKey of the commands
+     * @param setter the HystrixCommand.Setter to use for the commands
+     * @param commandProperties the HystrixCommandProperties.Setter the setter was created with
+     * @param invoker the MethodInvoker that makes the http call
+     * @param fallback the fallback to use, may be null
+     * @param concurrencyLimiter the ConcurrencyLimiter to enforce before creating a command, may be null
+     * @param lastKnownGood the LastKnownGoodCache to serve failed calls from, may be null
+     */
+    @SuppressWarnings("unchecked")
+    ProxyCommandFactory(Method method,
+                        HystrixCommandKey commandKey,
+                        HystrixCommand.Setter setter,
+                        HystrixCommandProperties.Setter commandProperties,
+                        MethodInvoker invoker,
+                        Callable<?> fallback,
+                        ConcurrencyLimiter concurrencyLimiter,
+                        LastKnownGoodCache lastKnownGood) {
+        this.setter = checkNotNull(setter);
+        this.invoker = checkNotNull(invoker);
+        this.fallback = (Callable<Object>) fallback;
+        this.concurrencyLimiter = concurrencyLimiter;
+        this.lastKnownGood = lastKnownGood;
+        this.collapserFactory = null;
+        this.observable = ObservableEntityExtractorFactory.isObservable(method);
+        HystrixCommandProperties properties = HystrixPropertiesFactory.getCommandProperties(commandKey,
+                                                                                               commandProperties);
+        checkArgument(!properties.fallbackEnabled().get() || this.fallback != null || this.lastKnownGood != null,
+                      String.format("You didn't provide a fallback for %s.%s. You must either provide a "
+                                    + "fallback or disable fallbacks "
+                                    + "in the HystrixCommandProperties for this method.",
+                                    method.getDeclaringClass().getCanonicalName(), method.getName()));
+    }
+
+    private ProxyCommandFactory(ProxyCommandFactory factory, ProxyCollapserFactory collapserFactory) {
+        this.setter = factory.setter;
+        this.invoker = factory.invoker;
+        this.fallback = factory.fallback;
+        this.concurrencyLimiter = factory.concurrencyLimiter;
+        this.lastKnownGood = factory.lastKnownGood;
+        this.collapserFactory = checkNotNull(collapserFactory);
+        this.observable = factory.observable;
+    }
+
+    /**
+     * Creates a copy of this factory whose calls are collapsed with the specified ProxyCollapserFactory.
+     * @param collapser the ProxyCollapserFactory to use
+     * @return the new ProxyCommandFactory
+     */
+    ProxyCommandFactory collapsedWith(ProxyCollapserFactory collapser) {
+        return new ProxyCommandFactory(this, collapser);
+    }
+
+    ProxyCommand create(Object[] args) {
+        return new ProxyCommand(this.setter, this.invoker, args, this.fallback, this.lastKnownGood);
+    }
+
+    Callable<Object> getFallback() {
+        return this.fallback;
+    }
+
+    ConcurrencyLimiter getConcurrencyLimiter() {
+        return this.concurrencyLimiter;
+    }
+
+    LastKnownGoodCache getLastKnownGood() {
+        return this.lastKnownGood;
+    }
+
+    ProxyCollapserFactory getCollapserFactory() {
+        return this.collapserFactory;
+    }
+
+    /**
+     * @return true if the method returns an Observable instead of blocking until the command completes
+     */
+    boolean isObservable() {
+        return this.observable;
+    }
+}
@@ -0,0 +1,275 @@
+/**
+ *    Copyright 2014 Opower, Inc.
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ **/
+package com.opower.rest.client.generator.hystrix;
+
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.SetMultimap;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.netflix.config.ConfigurationManager;
+import com.netflix.hystrix.HystrixCommandKey;
+import com.netflix.hystrix.HystrixCommandMetrics;
+import com.netflix.hystrix.HystrixThreadPoolKey;
+import com.netflix.hystrix.HystrixThreadPoolMetrics;
+import java.io.Closeable;
+import java.lang.reflect.Field;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * Periodically resizes Hystrix thread pools to fit the load of the commands that use them. By Little's law the number of
+ * requests in flight is the request rate times the latency, so every interval the sizer adds up, for each command of a
+ * pool, its rolling request rate times a high percentile of its execution time, multiplies the sum by a headroom factor
+ * and sets the coreSize of the pool within the configured bounds. The size is applied through the dynamic
+ * hystrix.threadpool.[poolKey].coreSize property, which Hystrix picks up on the next command it queues.
+ * <p/>
+ * Hystrix applies a new coreSize by setting the core size of the live executor before its maximum size, which the JDK
+ * rejects when the pool grows past its current maximum. Before publishing a larger size the sizer therefore raises the
+ * maximum size of the live executor itself. If it can't reach the executor, the pool only grows up to its current
+ * maximum.
+ * <p/>
+ * One sizer can be shared by many clients, see {@link HystrixClient#threadPoolAutoSizer(ThreadPoolAutoSizer)}.
+ */
+public final class ThreadPoolAutoSizer implements Closeable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ThreadPoolAutoSizer.class);
+    private static final double MILLIS_PER_SECOND = 1000.0;
+
+    private final int minSize;
+    private final int maxSize;
+    private final double headroom;
+    private final double percentile;
+    private final long intervalMillis;
+    private final SetMultimap<String, HystrixCommandKey> commandsByPool = HashMultimap.create();
+    private final Map<String, Integer> sizes = new HashMap<>();
+    private ScheduledExecutorService scheduler;
+
+    private ThreadPoolAutoSizer(Builder builder) {
+        this.minSize = builder.minSize;
+        this.maxSize = builder.maxSize;
+        this.headroom = builder.headroom;
+        this.percentile = builder.percentile;
+        this.intervalMillis = builder.intervalMillis;
+    }
+
+    /**
+     * Creates a Builder initialized with pool sizes between 2 and 50 threads, 50% headroom over the 99th percentile of
+     * the execution time and an interval of 10 seconds.
+     * @return the builder
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Size the specified thread pool for the load of the specified command, in addition to the commands already
+     * registered for it.
+     * @param poolKey the thread pool the command runs in
+     * @param commandKey the command
+     */
+    public synchronized void register(HystrixThreadPoolKey poolKey, HystrixCommandKey commandKey) {
+        this.commandsByPool.put(poolKey.name(), checkNotNull(commandKey));
+    }
+
+    /**
+     * Start resizing the registered pools periodically on a daemon thread.
+     */
+    public synchronized void start() {
+        checkState(this.scheduler == null, "The sizer has already been started");
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactoryBuilder().setDaemon(true).setNameFormat("hystrix-pool-autosizer-%d").build());
+        this.scheduler.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    resize();
+                }
+                catch (RuntimeException e) {
+                    LOG.warn("Could not resize the Hystrix thread pools", e);
+                }
+            }
+        }, this.intervalMillis, this.intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Resize all registered pools right away.
+     */
+    public synchronized void resize() {
+        for (String poolKey : this.commandsByPool.keySet()) {
+            double concurrency = 0;
+            for (HystrixCommandKey commandKey : this.commandsByPool.get(poolKey)) {
+                HystrixCommandMetrics metrics = HystrixCommandMetrics.getInstance(commandKey);
+                // commands that haven't been executed yet don't have metrics
+                if (metrics != null) {
+                    double windowSeconds = metrics.getProperties().metricsRollingStatisticalWindowInMilliseconds().get()
+                                           / MILLIS_PER_SECOND;
+                    double requestsPerSecond = metrics.getHealthCounts().getTotalRequests() / windowSeconds;
+                    concurrency += requestsPerSecond * metrics.getExecutionTimePercentile(this.percentile)
+                                   / MILLIS_PER_SECOND;
+                }
+            }
+            int size = grow(poolKey, coreSizeFor(concurrency));
+            Integer previous = this.sizes.put(poolKey, size);
+            if (previous == null || previous != size) {
+                LOG.info("Resizing Hystrix thread pool {} to {} threads for {} concurrent requests",
+                         poolKey, size, String.format("%.1f", concurrency));
+                ConfigurationManager.getConfigInstance().setProperty(propertyName(poolKey), size);
+            }
+        }
+    }
+
+    /**
+     * @return the core size last applied to each pool
+     */
+    public synchronized Map<String, Integer> getSizes() {
+        return ImmutableMap.copyOf(this.sizes);
+    }
+
+    /**
+     * Stop resizing. The pools keep their current size.
+     */
+    @Override
+    public synchronized void close() {
+        if (this.scheduler != null) {
+            this.scheduler.shutdownNow();
+        }
+    }
+
+    /**
+     * Raises the maximum size of the live executor of the pool so that Hystrix can set its core size to the specified
+     * size.
+     * @param poolKey the pool to grow
+     * @param size the new core size
+     * @return the size the pool can be given
+     */
+    private static int grow(String poolKey, int size) {
+        HystrixThreadPoolMetrics metrics =
+                HystrixThreadPoolMetrics.getInstance(HystrixThreadPoolKey.Factory.asKey(poolKey));
+        // a pool that hasn't been created yet starts out with the size of the property
+        if (metrics == null || size <= metrics.getCurrentMaximumPoolSize().intValue()) {
+            return size;
+        }
+        ThreadPoolExecutor executor = executorOf(metrics);
+        if (executor == null) {
+            return metrics.getCurrentMaximumPoolSize().intValue();
+        }
+        executor.setMaximumPoolSize(size);
+        return size;
+    }
+
+    /**
+     * Hystrix doesn't expose the executor of a pool, but its metrics hold on to it.
+     */
+    private static ThreadPoolExecutor executorOf(HystrixThreadPoolMetrics metrics) {
+        try {
+            Field field = HystrixThreadPoolMetrics.class.getDeclaredField("threadPool");
+            field.setAccessible(true);
+            return (ThreadPoolExecutor) field.get(metrics);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            LOG.warn("Could not reach the executor of Hystrix thread pool {}, it won't grow past its current maximum",
+                     metrics.getThreadPoolKey().name(), e);
+            return null;
+        }
+    }
+
+    int coreSizeFor(double concurrency) {
+        int size = (int) Math.ceil(concurrency * this.headroom);
+        return Math.max(this.minSize, Math.min(this.maxSize, size));
+    }
+
+    static String propertyName(String poolKey) {
+        return "hystrix.threadpool." + poolKey + ".coreSize";
+    }
+
+    /**
+     * Builder for ThreadPoolAutoSizer instances.
+     */
+    public static final class Builder {
+        private static final int DEFAULT_MIN_SIZE = 2;
+        private static final int DEFAULT_MAX_SIZE = 50;
+        private static final double DEFAULT_HEADROOM = 1.5;
+        private static final double DEFAULT_PERCENTILE = 99;
+        private static final long DEFAULT_INTERVAL_MILLIS = 10000;
+
+        private int minSize = DEFAULT_MIN_SIZE;
+        private int maxSize = DEFAULT_MAX_SIZE;
+        private double headroom = DEFAULT_HEADROOM;
+        private double percentile = DEFAULT_PERCENTILE;
+        private long intervalMillis = DEFAULT_INTERVAL_MILLIS;
+
+        private Builder() {
+        }
+
+        /**
+         * The bounds for the size of every pool.
+         * @param minSize the smallest size, used for idle pools
+         * @param maxSize the largest size
+         * @return the builder
+         */
+        public Builder bounds(int minSize, int maxSize) {
+            checkArgument(minSize > 0 && maxSize >= minSize, "bounds must satisfy 0 < minSize <= maxSize");
+            this.minSize = minSize;
+            this.maxSize = maxSize;
+            return this;
+        }
+
+        /**
+         * The factor applied to the estimated concurrency to absorb bursts.
+         * @param headroom the factor, at least 1
+         * @return the builder
+         */
+        public Builder headroom(double headroom) {
+            checkArgument(headroom >= 1, "headroom must be at least 1");
+            this.headroom = headroom;
+            return this;
+        }
+
+        /**
+         * The percentile of the execution time used as the latency of a command.
+         * @param percentile the percentile, between 0 and 100
+         * @return the builder
+         */
+        public Builder latencyPercentile(double percentile) {
+            checkArgument(percentile > 0 && percentile <= 100, "percentile must be between 0 and 100");
+            this.percentile = percentile;
+            return this;
+        }
+
+        /**
+         * How often the pools are resized once the sizer has been started.
+         * @param intervalMillis the interval in milliseconds
+         * @return the builder
+         */
+        public Builder interval(long intervalMillis) {
+            checkArgument(intervalMillis > 0, "intervalMillis must be positive");
+            this.intervalMillis = intervalMillis;
+            return this;
+        }
+
+        public ThreadPoolAutoSizer build() {
+            return new ThreadPoolAutoSizer(this);
+        }
+    }
+}
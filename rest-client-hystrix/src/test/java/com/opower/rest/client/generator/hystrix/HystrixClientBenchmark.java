@@ -0,0 +1,155 @@
+/**
+ *    Copyright 2014 Opower, Inc.
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ **/
+package com.opower.rest.client.generator.hystrix;
+
+import com.netflix.hystrix.HystrixCommandGroupKey;
+import com.netflix.hystrix.HystrixCommandKey;
+import com.opower.rest.client.generator.core.BaseClientResponse;
+import com.opower.rest.client.generator.core.Client;
+import com.opower.rest.client.generator.core.ClientExecutor;
+import com.opower.rest.client.generator.core.ClientRequest;
+import com.opower.rest.client.generator.core.ClientResponse;
+import com.opower.rest.client.generator.core.ResourceInterface;
+import com.opower.rest.client.generator.core.SimpleUriProvider;
+import com.opower.rest.client.generator.core.UriProvider;
+import com.opower.rest.client.generator.util.CaseInsensitiveMap;
+import com.opower.rest.client.generator.util.HttpResponseCodes;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * JMH benchmark for the per call overhead of HystrixClient proxies. The executor answers every request from memory so
+ * that only the work done by the client itself is measured. Run it with the main method from the test classpath.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HystrixClientBenchmark {
+
+    private static final UriProvider URI_PROVIDER = new SimpleUriProvider("http://localhost");
+    private static final HystrixCommandGroupKey GROUP_KEY = HystrixCommandGroupKey.Factory.asKey("benchmark");
+    private static final byte[] BODY = "pong".getBytes(StandardCharsets.UTF_8);
+
+    private PingResource plain;
+    private PingResource threadIsolated;
+    private PingResource semaphoreIsolated;
+
+    /**
+     * Builds a plain client and two Hystrix clients for the same resource.
+     */
+    @Setup
+    public void setUp() {
+        System.setProperty("javax.ws.rs.ext.RuntimeDelegate", "com.opower.rest.client.generator.core.BasicRuntimeDelegate");
+        ResourceInterface<PingResource> resource = new ResourceInterface<>(PingResource.class);
+        this.plain = new Client.Builder<>(resource, URI_PROVIDER).executor(new InMemoryExecutor()).build();
+        this.threadIsolated = new HystrixClient.Builder<PingResource>(resource, URI_PROVIDER, GROUP_KEY)
+                .executor(new InMemoryExecutor()).build();
+        // the semaphore isolated client needs its own HystrixCommandKey, otherwise it shares the properties of the other
+        this.semaphoreIsolated = new HystrixClient.Builder<PingResource>(resource, URI_PROVIDER, GROUP_KEY)
+                .methodCommandKey(PingResource.class.getMethods()[0], HystrixCommandKey.Factory.asKey("semaphorePing"))
+                .semaphoreIsolation().executor(new InMemoryExecutor()).build();
+    }
+
+    @Benchmark
+    public String plainClient() {
+        return this.plain.ping();
+    }
+
+    @Benchmark
+    public String hystrixThreadIsolation() {
+        return this.threadIsolated.ping();
+    }
+
+    @Benchmark
+    public String hystrixSemaphoreIsolation() {
+        return this.semaphoreIsolated.ping();
+    }
+
+    /**
+     * Runs the benchmark.
+     * @param args ignored
+     * @throws RunnerException if the benchmark fails
+     */
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(HystrixClientBenchmark.class.getSimpleName()).build()).run();
+    }
+
+    /**
+     * The resource used by the benchmark.
+     */
+    @Path("/ping")
+    public interface PingResource {
+        @GET
+        @Produces(MediaType.TEXT_PLAIN)
+        String ping();
+    }
+
+    /**
+     * ClientExecutor that doesn't do any I/O, it answers every request with "pong".
+     */
+    static final class InMemoryExecutor implements ClientExecutor {
+
+        @Override
+        public void processFilters(ClientRequest request) {
+        }
+
+        @Override
+        public ClientResponse execute(ClientRequest request) throws Exception {
+            BaseClientResponse response = new BaseClientResponse(new BaseClientResponse.BaseClientResponseStreamFactory() {
+                @Override
+                public InputStream getInputStream() {
+                    return new ByteArrayInputStream(BODY);
+                }
+
+                @Override
+                public void performReleaseConnection() {
+                }
+            }, this, request.getErrorStatusCriteria());
+            CaseInsensitiveMap<String> headers = new CaseInsensitiveMap<>();
+            headers.add(HttpHeaders.CONTENT_TYPE, MediaType.TEXT_PLAIN);
+            response.setStatus(HttpResponseCodes.SC_OK);
+            response.setHeaders(headers);
+            response.setProviders(request.getProviders());
+            return response;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
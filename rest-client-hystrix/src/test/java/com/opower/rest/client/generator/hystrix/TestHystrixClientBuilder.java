@@ -1,12 +1,18 @@
 package com.opower.rest.client.generator.hystrix;
 
 import com.google.auto.value.AutoValue;
+import com.google.common.collect.ImmutableMap;
 import com.netflix.hystrix.HystrixCommandGroupKey;
 import com.netflix.hystrix.HystrixCommandKey;
+import com.netflix.hystrix.HystrixCommandProperties;
+import com.netflix.hystrix.HystrixThreadPoolKey;
+import com.netflix.hystrix.HystrixThreadPoolProperties;
+import com.opower.rest.client.ConfigurationCallback;
 import com.opower.rest.client.generator.core.BaseClientResponse;
 import com.opower.rest.client.generator.core.ResourceInterface;
 import com.opower.rest.client.generator.core.SimpleUriProvider;
 import com.opower.rest.client.generator.core.UriProvider;
+import com.opower.rest.client.generator.executors.ApacheHttpClient4Executor;
 import com.opower.rest.client.generator.hystrix.HystrixClientErrorHandler.BadRequestCriteria;
 import com.opower.rest.test.resource.FrobResource;
 import java.lang.reflect.Method;
@@ -28,6 +34,8 @@ public class TestHystrixClientBuilder {
 
     private static final String TEST_KEY_1 = "test-key-1";
     private static final String TEST_KEY_2 = "test-key-2";
+    private static final int CORE_SIZE = 4;
+    private static final int TIMEOUT = 250;
     private static final UriProvider URI_PROVIDER = new SimpleUriProvider("http://localhost");
     static final HystrixCommandGroupKey GROUP_KEY = HystrixCommandGroupKey.Factory.asKey("test");
     private static final ResourceInterface<FrobResource> RESOURCE_INTERFACE = new ResourceInterface<>(FrobResource.class);
@@ -138,6 +146,71 @@ public class TestHystrixClientBuilder {
         assertThat(this.builder.fallbackMap.get(FROB_METHOD), is((Callable) fallback2));
     }
 
+    /**
+     * Semaphore isolation sizes the semaphore from the thread pool core size and turns the command timeout into a read
+     * timeout.
+     */
+    @Test
+    public void methodSemaphoreIsolation() {
+        this.builder.methodThreadPoolProperties(FROB_METHOD, new ConfigurationCallback<HystrixThreadPoolProperties.Setter>() {
+            @Override
+            public void configure(HystrixThreadPoolProperties.Setter setter) {
+                setter.withCoreSize(CORE_SIZE);
+            }
+        }).methodProperties(FROB_METHOD, new ConfigurationCallback<HystrixCommandProperties.Setter>() {
+            @Override
+            public void configure(HystrixCommandProperties.Setter setter) {
+                setter.withExecutionIsolationThreadTimeoutInMilliseconds(TIMEOUT);
+            }
+        }).methodSemaphoreIsolation(FROB_METHOD).executor(new ApacheHttpClient4Executor()).build();
+
+        HystrixCommandProperties.Setter properties = this.builder.commandPropertiesMap.get(FROB_METHOD);
+        assertThat(properties.getExecutionIsolationStrategy(),
+                   is(HystrixCommandProperties.ExecutionIsolationStrategy.SEMAPHORE));
+        assertThat(properties.getExecutionIsolationSemaphoreMaxConcurrentRequests(), is(CORE_SIZE));
+        assertThat(this.builder.getReadTimeouts().get(FROB_METHOD), is(TIMEOUT));
+        assertThat(this.builder.getReadTimeouts().size(), is(1));
+    }
+
+    /**
+     * Without thread pool or timeout settings the Hystrix defaults are used.
+     */
+    @Test
+    public void semaphoreIsolationDefaults() {
+        this.builder.semaphoreIsolation().executor(new ApacheHttpClient4Executor()).build();
+        for (Method method : FrobResource.class.getMethods()) {
+            assertThat(this.builder.commandPropertiesMap.get(method).getExecutionIsolationSemaphoreMaxConcurrentRequests(),
+                       is(HystrixClient.DEFAULT_CORE_SIZE));
+            assertThat(this.builder.getReadTimeouts().get(method), is(HystrixClient.DEFAULT_TIMEOUT_MILLIS));
+        }
+    }
+
+    /**
+     * By default all methods share the thread pool of the group.
+     */
+    @Test
+    public void defaultThreadPoolIsSharedByGroup() {
+        assertThat(this.builder.getThreadPoolSizes(),
+                   is((Map<String, Integer>) ImmutableMap.of(GROUP_KEY.name(), HystrixClient.DEFAULT_CORE_SIZE)));
+        assertThat(this.builder.getTotalThreadCount(), is(HystrixClient.DEFAULT_CORE_SIZE));
+    }
+
+    /**
+     * Methods grouped into a named pool run there with the pool's size, semaphore isolated methods don't use a pool.
+     */
+    @Test
+    public void namedThreadPools() {
+        Method[] methods = FrobResource.class.getMethods();
+        HystrixThreadPoolKey cheap = HystrixThreadPoolKey.Factory.asKey(TEST_KEY_1);
+        this.builder.threadPool(cheap, CORE_SIZE, methods[0], methods[1]).methodSemaphoreIsolation(methods[2]);
+        assertThat(this.builder.threadPoolKeysMap.get(methods[0]), is(cheap));
+        assertThat(this.builder.threadPoolPropertiesMap.get(methods[1]).getCoreSize(), is(CORE_SIZE));
+        assertThat(this.builder.getThreadPoolSizes(),
+                   is((Map<String, Integer>) ImmutableMap.of(TEST_KEY_1, CORE_SIZE,
+                                                             GROUP_KEY.name(), HystrixClient.DEFAULT_CORE_SIZE)));
+        assertThat(this.builder.getTotalThreadCount(), is(CORE_SIZE + HystrixClient.DEFAULT_CORE_SIZE));
+    }
+
     @AutoValue
     abstract static class SimpleFallback implements Callable<Object> {
         static SimpleFallback create(String name) {
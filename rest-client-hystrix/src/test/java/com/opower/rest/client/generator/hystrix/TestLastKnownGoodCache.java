@@ -0,0 +1,217 @@
+/**
+ *    Copyright 2014 Opower, Inc.
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ **/
+package com.opower.rest.client.generator.hystrix;
+
+import com.google.common.base.Optional;
+import com.google.common.base.Ticker;
+import com.google.common.cache.Weigher;
+import com.netflix.hystrix.HystrixCommand;
+import com.netflix.hystrix.HystrixCommandKey;
+import com.netflix.hystrix.HystrixCommandProperties;
+import com.google.common.collect.ImmutableSet;
+import com.opower.rest.client.generator.core.MethodInvoker;
+import com.opower.rest.client.generator.core.ResourceInterface;
+import com.opower.rest.client.generator.core.SimpleUriProvider;
+import com.opower.rest.client.generator.hystrix.TestProxyCollapser.BatchResource;
+import java.io.InputStream;
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import javax.ws.rs.GET;
+import javax.ws.rs.POST;
+import javax.ws.rs.Path;
+import org.junit.Test;
+import rx.Observable;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Tests for the LastKnownGoodCache and the commands that fall back to it.
+ */
+public class TestLastKnownGoodCache {
+
+    private static final long MAX_AGE_MILLIS = 1000;
+    private static final Object[] ARGS = {"1"};
+    private static final String VALUE = "value";
+
+    private final FakeTicker ticker = new FakeTicker();
+    private final AtomicBoolean failing = new AtomicBoolean();
+
+    /**
+     * Cached results are served until they reach the maximum age, and every serve is counted.
+     */
+    @Test
+    public void resultsExpireAfterMaxAge() {
+        LastKnownGoodCache cache = LastKnownGoodCache.builder().maxAge(MAX_AGE_MILLIS).ticker(this.ticker).build();
+        cache.put(ARGS, VALUE);
+        assertThat(cache.get(new Object[]{"1"}), is(Optional.<Object>of(VALUE)));
+        assertThat(cache.getStaleServeCount(), is(1L));
+        this.ticker.advance(MAX_AGE_MILLIS);
+        assertFalse(cache.get(ARGS).isPresent());
+        assertThat(cache.getStaleServeCount(), is(1L));
+    }
+
+    /**
+     * The total weight of the cached results never exceeds the maximum weight.
+     */
+    @Test
+    public void weightIsBounded() {
+        LastKnownGoodCache cache = LastKnownGoodCache.builder()
+                .maximumWeight(VALUE.length(), new Weigher<List<Object>, Object>() {
+                    @Override
+                    public int weigh(List<Object> args, Object result) {
+                        return result.toString().length();
+                    }
+                }).build();
+        cache.put(new Object[]{"1"}, VALUE);
+        cache.put(new Object[]{"2"}, VALUE);
+        assertThat(cache.size(), is(1L));
+    }
+
+    /**
+     * Null results aren't cached.
+     */
+    @Test
+    public void nullIsNotCached() {
+        LastKnownGoodCache cache = LastKnownGoodCache.builder().build();
+        cache.put(ARGS, null);
+        assertThat(cache.size(), is(0L));
+    }
+
+    /**
+     * A failed command serves the last result of a successful command with the same arguments.
+     * @throws Throwable for convenience
+     */
+    @Test
+    public void failedCommandServesLastKnownGood() throws Throwable {
+        LastKnownGoodCache cache = LastKnownGoodCache.builder().build();
+        ProxyCommandFactory factory = factory("served", cache);
+        assertThat(HystrixCommandInvocationHandler.execute(factory.create(ARGS)), is((Object) VALUE));
+        this.failing.set(true);
+        assertThat(HystrixCommandInvocationHandler.execute(factory.create(ARGS)), is((Object) VALUE));
+        assertThat(cache.getStaleServeCount(), is(1L));
+    }
+
+    /**
+     * Without a cached result or a fallback the caller gets the original failure.
+     * @throws Throwable for convenience
+     */
+    @Test(expected = IllegalStateException.class)
+    public void missThrowsOriginalFailure() throws Throwable {
+        this.failing.set(true);
+        HystrixCommandInvocationHandler.execute(factory("miss", LastKnownGoodCache.builder().build()).create(ARGS));
+    }
+
+    /**
+     * Only GET methods whose results can be served more than once can be cached.
+     * @throws Exception for convenience
+     */
+    @Test
+    public void onlyReplayableGetResultsCanBeCached() throws Exception {
+        assertTrue(LastKnownGoodCache.canCache(CacheResource.class.getMethod("find")));
+        assertTrue(LastKnownGoodCache.canCache(CacheResource.class.getMethod("list")));
+        assertFalse(LastKnownGoodCache.canCache(CacheResource.class.getMethod("create", String.class)));
+        assertFalse(LastKnownGoodCache.canCache(CacheResource.class.getMethod("stream")));
+        assertFalse(LastKnownGoodCache.canCache(CacheResource.class.getMethod("observe")));
+    }
+
+    /**
+     * Configuring a cache for a method whose results can't be served twice fails.
+     * @throws Exception for convenience
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void cacheForPostIsRejected() throws Exception {
+        builder().methodLastKnownGoodFallback(CacheResource.class.getMethod("create", String.class),
+                                              LastKnownGoodCache.builder().build());
+    }
+
+    /**
+     * The client wide cache only applies to the methods that can be cached.
+     * @throws Exception for convenience
+     */
+    @Test
+    public void clientWideCacheOnlyAppliesToCacheableMethods() throws Exception {
+        HystrixClient.Builder<CacheResource> builder = builder().lastKnownGoodFallback(LastKnownGoodCache.builder());
+        assertThat(builder.lastKnownGoodMap.keySet(), is((Set<Method>) ImmutableSet.of(
+                CacheResource.class.getMethod("find"), CacheResource.class.getMethod("list"))));
+    }
+
+    private static HystrixClient.Builder<CacheResource> builder() {
+        return new HystrixClient.Builder<>(new ResourceInterface<>(CacheResource.class),
+                                           new SimpleUriProvider("http://localhost"),
+                                           TestHystrixClientBuilder.GROUP_KEY);
+    }
+
+    private ProxyCommandFactory factory(String name, LastKnownGoodCache cache) throws NoSuchMethodException {
+        Method find = BatchResource.class.getMethod("find", String.class);
+        HystrixCommandKey commandKey = HystrixCommandKey.Factory.asKey("last-known-good-test-" + name);
+        HystrixCommandProperties.Setter properties = HystrixCommandProperties.Setter().withFallbackEnabled(true);
+        HystrixCommand.Setter setter = HystrixCommand.Setter
+                .withGroupKey(TestHystrixClientBuilder.GROUP_KEY)
+                .andCommandKey(commandKey)
+                .andCommandPropertiesDefaults(properties);
+        return new ProxyCommandFactory(find, commandKey, setter, properties, new MethodInvoker() {
+            @Override
+            public Object invoke(Object[] args) {
+                if (TestLastKnownGoodCache.this.failing.get()) {
+                    throw new IllegalStateException("failed");
+                }
+                return VALUE;
+            }
+        }, null, null, cache);
+    }
+
+    /**
+     * Resource with methods that can and can't be cached.
+     */
+    @Path("cache")
+    public interface CacheResource {
+        @GET
+        String find();
+
+        @GET
+        List<String> list();
+
+        @POST
+        String create(String value);
+
+        @GET
+        InputStream stream();
+
+        @GET
+        Observable<String> observe();
+    }
+
+    /**
+     * Ticker that only moves when told to.
+     */
+    private static final class FakeTicker extends Ticker {
+        private long nanos;
+
+        @Override
+        public long read() {
+            return this.nanos;
+        }
+
+        void advance(long millis) {
+            this.nanos += TimeUnit.MILLISECONDS.toNanos(millis);
+        }
+    }
+}
@@ -0,0 +1,175 @@
+/**
+ *    Copyright 2014 Opower, Inc.
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ **/
+package com.opower.rest.client.generator.hystrix;
+
+import com.netflix.hystrix.HystrixCommand;
+import com.netflix.hystrix.HystrixCommandKey;
+import com.netflix.hystrix.HystrixCommandProperties;
+import com.opower.rest.client.generator.core.MethodInvoker;
+import com.opower.rest.client.generator.core.ResourceInterface;
+import com.opower.rest.client.generator.core.SimpleUriProvider;
+import com.opower.rest.client.generator.limiter.ConcurrencyLimitExceededException;
+import com.opower.rest.client.generator.limiter.ConcurrencyLimiter;
+import java.lang.reflect.Method;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.MediaType;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import rx.Observable;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Tests for resource methods that return an Observable.
+ */
+public class TestObservableCommands {
+
+    private static final Method FIND;
+    private static final String VALUE = "value";
+    private static final String FALLBACK = "fallback";
+    private static final String FAILURE = "failure";
+
+    static {
+        try {
+            FIND = ObservableResource.class.getMethod("find", String.class);
+        } 
+        catch (NoSuchMethodException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private final AtomicInteger calls = new AtomicInteger();
+
+    /**
+     * Initializes the system property to ensure the RuntimeDelegate gets properly loaded.
+     */
+    @BeforeClass
+    public static void init() {
+        System.setProperty("javax.ws.rs.ext.RuntimeDelegate",
+                           "com.opower.rest.client.generator.core.BasicRuntimeDelegate");
+    }
+
+    /**
+     * The client reads the entity as the type emitted by the Observable.
+     */
+    @Test
+    public void clientEmitsEntity() {
+        ResourceInterface<ObservableResource> resource = new ResourceInterface<>(ObservableResource.class);
+        ObservableResource client = new HystrixClient.Builder<ObservableResource>(resource,
+                                                                                  new SimpleUriProvider("http://localhost"),
+                                                                                  TestHystrixClientBuilder.GROUP_KEY)
+                .methodCommandKey(FIND, HystrixCommandKey.Factory.asKey("observable-test-client"))
+                .executor(new HystrixClientBenchmark.InMemoryExecutor())
+                .build();
+        assertThat(client.find("1").toBlocking().single(), is("pong"));
+    }
+
+    /**
+     * Nothing is executed until the Observable is subscribed to, and each subscription executes a new command.
+     */
+    @Test
+    public void eachSubscriptionExecutesCommand() {
+        Observable<Object> observable = HystrixCommandInvocationHandler.observe(FIND, factory("lazy", null, null),
+                                                                               new Object[]{"1"});
+        assertThat(this.calls.get(), is(0));
+        assertThat(observable.toBlocking().single(), is((Object) VALUE));
+        assertThat(observable.toBlocking().single(), is((Object) VALUE));
+        assertThat(this.calls.get(), is(2));
+    }
+
+    /**
+     * Failed commands emit the value of the fallback.
+     */
+    @Test
+    public void fallbackIsEmitted() {
+        Callable<String> fallback = new Callable<String>() {
+            @Override
+            public String call() {
+                return FALLBACK;
+            }
+        };
+        Observable<Object> observable = HystrixCommandInvocationHandler.observe(FIND, factory("fallback", fallback, null),
+                                                                               new Object[]{FAILURE});
+        assertThat(observable.toBlocking().single(), is((Object) FALLBACK));
+    }
+
+    /**
+     * Without a fallback the Observable fails with the exception thrown by the request.
+     */
+    @Test(expected = IllegalStateException.class)
+    public void requestExceptionIsEmitted() {
+        HystrixCommandInvocationHandler.observe(FIND, factory("failure", null, null), new Object[]{FAILURE})
+                .toBlocking().single();
+    }
+
+    /**
+     * Calls beyond the concurrency limit fail without executing a command.
+     */
+    @Test(expected = ConcurrencyLimitExceededException.class)
+    public void concurrencyLimitIsEnforced() {
+        ConcurrencyLimiter limiter = ConcurrencyLimiter.builder().limits(1, 1, 1).build();
+        limiter.tryAcquire();
+        try {
+            HystrixCommandInvocationHandler.observe(FIND, factory("limited", null, limiter), new Object[]{"1"})
+                    .toBlocking().single();
+        }
+        finally {
+            assertThat(this.calls.get(), is(0));
+        }
+    }
+
+    private ProxyCommandFactory factory(String name, Callable<?> fallback, ConcurrencyLimiter limiter) {
+        HystrixCommandKey commandKey = HystrixCommandKey.Factory.asKey("observable-test-" + name);
+        HystrixCommandProperties.Setter properties = HystrixCommandProperties.Setter()
+                .withFallbackEnabled(fallback != null);
+        HystrixCommand.Setter setter = HystrixCommand.Setter
+                .withGroupKey(TestHystrixClientBuilder.GROUP_KEY)
+                .andCommandKey(commandKey)
+                .andCommandPropertiesDefaults(properties);
+        return new ProxyCommandFactory(FIND, commandKey, setter, properties, new CountingInvoker(), fallback,
+                                       limiter, null);
+    }
+
+    /**
+     * Returns VALUE for every call, except for calls with FAILURE as argument.
+     */
+    private final class CountingInvoker implements MethodInvoker {
+        @Override
+        public Object invoke(Object[] args) {
+            TestObservableCommands.this.calls.incrementAndGet();
+            if (FAILURE.equals(args[0])) {
+                throw new IllegalStateException(FAILURE);
+            }
+            return VALUE;
+        }
+    }
+
+    /**
+     * Resource with a method that returns an Observable.
+     */
+    @Path("/observable")
+    public interface ObservableResource {
+        @GET
+        @Path("{id}")
+        @Produces(MediaType.TEXT_PLAIN)
+        Observable<String> find(@PathParam("id") String id);
+    }
+}
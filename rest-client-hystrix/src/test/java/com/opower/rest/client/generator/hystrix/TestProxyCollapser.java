@@ -0,0 +1,328 @@
+/**
+ *    Copyright 2014 Opower, Inc.
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ **/
+package com.opower.rest.client.generator.hystrix;
+
+import com.google.common.base.Function;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.netflix.hystrix.HystrixCollapser;
+import com.netflix.hystrix.HystrixCollapserKey;
+import com.netflix.hystrix.HystrixCollapserProperties;
+import com.netflix.hystrix.HystrixCommand;
+import com.netflix.hystrix.HystrixCommandGroupKey;
+import com.netflix.hystrix.HystrixCommandKey;
+import com.netflix.hystrix.HystrixCommandProperties;
+import com.opower.rest.client.generator.core.ClientExecutor;
+import com.opower.rest.client.generator.core.ClientRequest;
+import com.opower.rest.client.generator.core.ClientResponse;
+import com.opower.rest.client.generator.core.MethodInvoker;
+import com.opower.rest.client.generator.core.ResourceInterface;
+import com.opower.rest.client.generator.core.SimpleUriProvider;
+import com.opower.rest.client.generator.limiter.ConcurrencyLimitExceededException;
+import com.opower.rest.client.generator.limiter.ConcurrencyLimiter;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
+import javax.ws.rs.QueryParam;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests for collapsing calls with the ProxyCollapserFactory.
+ */
+public class TestProxyCollapser {
+
+    private static final int CALLS = 10;
+    private static final int TIMER_DELAY = 100;
+    private static final String MISSING = "missing";
+    private static final Method FIND;
+    private static final Method FIND_ALL;
+    private static final Method FIND_LIST;
+
+    static {
+        try {
+            FIND = BatchResource.class.getMethod("find", String.class);
+            FIND_ALL = BatchResource.class.getMethod("findAll", List.class);
+            FIND_LIST = BatchResource.class.getMethod("findList", Set.class);
+        } 
+        catch (NoSuchMethodException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private final AtomicInteger batches = new AtomicInteger();
+
+    /**
+     * Initializes the system property to ensure the RuntimeDelegate gets properly loaded.
+     */
+    @BeforeClass
+    public static void init() {
+        System.setProperty("javax.ws.rs.ext.RuntimeDelegate",
+                           "com.opower.rest.client.generator.core.BasicRuntimeDelegate");
+    }
+
+    /**
+     * Concurrent calls are merged into fewer batch calls and each call gets the result for its own key.
+     * @throws Exception for convenience
+     */
+    @Test
+    public void concurrentCallsAreBatched() throws Exception {
+        final ProxyCollapserFactory collapser = new ProxyCollapserFactory(collapserSetter("map"), batchFactory("map"),
+                                                                          FIND_ALL, null);
+        List<Future<Object>> results = callConcurrently(collapser);
+        for (int i = 0; i < CALLS; i++) {
+            assertThat(results.get(i).get(), is((Object) ("value-" + i)));
+        }
+        assertTrue(this.batches.get() < CALLS);
+    }
+
+    /**
+     * Results of batch methods that return a Collection are matched to the calls with the result key Function, and keys
+     * without a result get null.
+     * @throws Throwable for convenience
+     */
+    @Test
+    public void collectionResultsAreMatchedByKey() throws Throwable {
+        Function<String, String> resultKey = new Function<String, String>() {
+            @Override
+            public String apply(String value) {
+                return value.substring("value-".length());
+            }
+        };
+        @SuppressWarnings("unchecked")
+        ProxyCollapserFactory collapser = new ProxyCollapserFactory(collapserSetter("list"), batchFactory("list"),
+                                                                    FIND_LIST, (Function) resultKey);
+        assertThat(HystrixCommandInvocationHandler.executeCollapsed(collapser.create("7")), is((Object) "value-7"));
+        assertThat(HystrixCommandInvocationHandler.executeCollapsed(collapser.create(MISSING)), is(nullValue()));
+    }
+
+    /**
+     * Collapsed calls go through the ConcurrencyLimiter of the single item method, and are rejected beyond its limit.
+     * @throws Throwable for convenience
+     */
+    @Test
+    public void collapsedCallsAreLimited() throws Throwable {
+        ConcurrencyLimiter limiter = ConcurrencyLimiter.builder().limits(1, 1, 1).build();
+        HystrixCommandKey commandKey = HystrixCommandKey.Factory.asKey("collapser-test-limited");
+        HystrixCommandProperties.Setter properties = HystrixCommandProperties.Setter().withFallbackEnabled(false);
+        HystrixCommand.Setter setter = HystrixCommand.Setter
+                .withGroupKey(HystrixCommandGroupKey.Factory.asKey("collapser-test"))
+                .andCommandKey(commandKey)
+                .andCommandPropertiesDefaults(properties);
+        ProxyCollapserFactory collapser = new ProxyCollapserFactory(collapserSetter("limited"), batchFactory("map"),
+                                                                    FIND_ALL, null);
+        ProxyCommandFactory factory = new ProxyCommandFactory(FIND, commandKey, setter, properties,
+                                                              new BatchInvoker("map"), null, limiter, null)
+                .collapsedWith(collapser);
+        assertThat(HystrixCommandInvocationHandler.collapse(FIND, factory, new Object[]{"1"}), is((Object) "value-1"));
+        assertThat(limiter.getInFlight(), is(0));
+
+        assertTrue(limiter.tryAcquire());
+        try {
+            HystrixCommandInvocationHandler.collapse(FIND, factory, new Object[]{"2"});
+            fail("expected the call to be rejected");
+        }
+        catch (ConcurrencyLimitExceededException expected) {
+            assertThat(limiter.getInFlight(), is(1));
+        }
+    }
+
+    /**
+     * Clients built for the same interface don't share collapsers, each one sends its batches to its own endpoint.
+     */
+    @Test
+    public void clientsHaveTheirOwnCollapsers() {
+        FailingExecutor first = new FailingExecutor();
+        FailingExecutor second = new FailingExecutor();
+        find(collapsingClient("http://first", first));
+        find(collapsingClient("http://second", second));
+        assertThat(first.uris, is((List<String>) ImmutableList.of("http://first?id=1")));
+        assertThat(second.uris, is((List<String>) ImmutableList.of("http://second?id=1")));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void batchMethodMustReturnMapWithoutResultKey() {
+        builder().methodCollapser(FIND, FIND_LIST);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void batchMethodMustTakeKeys() {
+        builder().methodCollapser(FIND_ALL, FIND);
+    }
+
+    @Test
+    public void validCollapser() {
+        HystrixClient.Builder<BatchResource> builder = builder().methodCollapser(FIND, FIND_ALL);
+        assertThat(builder.batchMethodMap.get(FIND), is(FIND_ALL));
+        assertTrue(builder.collapserPropertiesMap.containsKey(FIND));
+    }
+
+    private HystrixClient.Builder<BatchResource> builder() {
+        return builder("http://localhost");
+    }
+
+    private HystrixClient.Builder<BatchResource> builder(String uri) {
+        return new HystrixClient.Builder<>(new ResourceInterface<>(BatchResource.class),
+                                           new SimpleUriProvider(uri),
+                                           TestHystrixClientBuilder.GROUP_KEY);
+    }
+
+    private BatchResource collapsingClient(String uri, ClientExecutor executor) {
+        return builder(uri).methodCollapser(FIND, FIND_ALL).executor(executor).build();
+    }
+
+    private static void find(BatchResource client) {
+        try {
+            client.find("1");
+            fail("expected the batch call to fail");
+        }
+        catch (RuntimeException expected) {
+            // the executor fails every request
+        }
+    }
+
+    private List<Future<Object>> callConcurrently(final ProxyCollapserFactory collapser) throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(CALLS);
+        final CountDownLatch start = new CountDownLatch(1);
+        List<Future<Object>> results = new ArrayList<>();
+        try {
+            for (int i = 0; i < CALLS; i++) {
+                final String key = String.valueOf(i);
+                results.add(executor.submit(new Callable<Object>() {
+                    @Override
+                    public Object call() throws Exception {
+                        start.await();
+                        try {
+                            return HystrixCommandInvocationHandler.executeCollapsed(collapser.create(key));
+                        } 
+                        catch (Throwable throwable) {
+                            throw new IllegalStateException(throwable);
+                        }
+                    }
+                }));
+            }
+            start.countDown();
+            for (Future<Object> result : results) {
+                result.get();
+            }
+        } 
+        catch (ExecutionException e) {
+            throw new IllegalStateException(e);
+        } 
+        finally {
+            executor.shutdown();
+        }
+        return results;
+    }
+
+    private HystrixCollapser.Setter collapserSetter(String name) {
+        return HystrixCollapser.Setter.withCollapserKey(HystrixCollapserKey.Factory.asKey("collapser-test-" + name))
+                                      .andScope(HystrixCollapser.Scope.GLOBAL)
+                                      .andCollapserPropertiesDefaults(HystrixCollapserProperties.Setter()
+                                                                              .withTimerDelayInMilliseconds(TIMER_DELAY));
+    }
+
+    private ProxyCommandFactory batchFactory(String name) {
+        HystrixCommandKey commandKey = HystrixCommandKey.Factory.asKey("collapser-test-batch-" + name);
+        HystrixCommandProperties.Setter properties = HystrixCommandProperties.Setter().withFallbackEnabled(false);
+        HystrixCommand.Setter setter = HystrixCommand.Setter
+                .withGroupKey(HystrixCommandGroupKey.Factory.asKey("collapser-test"))
+                .andCommandKey(commandKey)
+                .andCommandPropertiesDefaults(properties);
+        return new ProxyCommandFactory(FIND_ALL, commandKey, setter, properties, new BatchInvoker(name), null, null, null);
+    }
+
+    /**
+     * Answers batch calls for all keys except MISSING with "value-" + key.
+     */
+    private final class BatchInvoker implements MethodInvoker {
+        private final String name;
+
+        private BatchInvoker(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public Object invoke(Object[] args) {
+            TestProxyCollapser.this.batches.incrementAndGet();
+            ImmutableMap.Builder<Object, Object> map = ImmutableMap.builder();
+            List<Object> list = new ArrayList<>();
+            for (Object key : (Collection<?>) args[0]) {
+                if (!MISSING.equals(key)) {
+                    map.put(key, "value-" + key);
+                    list.add("value-" + key);
+                }
+            }
+            return "map".equals(this.name) ? map.build() : list;
+        }
+    }
+
+    /**
+     * Records the uri of each request and fails it.
+     */
+    private static final class FailingExecutor implements ClientExecutor {
+        private final List<String> uris = new CopyOnWriteArrayList<>();
+
+        @Override
+        public void processFilters(ClientRequest request) {
+        }
+
+        @Override
+        public ClientResponse execute(ClientRequest request) throws Exception {
+            this.uris.add(request.getUri());
+            throw new IOException("unavailable");
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    /**
+     * Resource with single item and batch methods.
+     */
+    public interface BatchResource {
+        @GET
+        @Path("{id}")
+        String find(@PathParam("id") String id);
+
+        @GET
+        Map<String, String> findAll(@QueryParam("id") List<String> ids);
+
+        @GET
+        List<String> findList(@QueryParam("id") Set<String> ids);
+    }
+}
@@ -0,0 +1,128 @@
+/**
+ *    Copyright 2014 Opower, Inc.
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ **/
+package com.opower.rest.client.generator.hystrix;
+
+import com.netflix.hystrix.HystrixCommandKey;
+import com.netflix.hystrix.HystrixCommandProperties;
+import com.opower.rest.client.ConfigurationCallback;
+import com.opower.rest.client.generator.core.ClientExecutor;
+import com.opower.rest.client.generator.core.ClientRequest;
+import com.opower.rest.client.generator.core.ClientResponse;
+import com.opower.rest.client.generator.core.ResourceInterface;
+import com.opower.rest.client.generator.core.SimpleUriProvider;
+import com.opower.rest.client.generator.hystrix.HystrixClientBenchmark.PingResource;
+import com.opower.rest.client.generator.hystrix.TestObservableCommands.ObservableResource;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests that the http exchange of a command is aborted when the command times out.
+ */
+public class TestProxyCommandAbort {
+
+    private static final int TIMEOUT_MILLIS = 50;
+    private static final long WAIT_SECONDS = 5;
+    private static final String FALLBACK = "fallback";
+
+    private final HangingExecutor executor = new HangingExecutor();
+
+    /**
+     * Initializes the system property to ensure the RuntimeDelegate gets properly loaded.
+     */
+    @BeforeClass
+    public static void init() {
+        System.setProperty("javax.ws.rs.ext.RuntimeDelegate",
+                           "com.opower.rest.client.generator.core.BasicRuntimeDelegate");
+    }
+
+    /**
+     * The request is aborted as soon as the blocking call times out, the worker thread doesn't wait for the server.
+     * @throws Exception for convenience
+     */
+    @Test
+    public void timeoutAbortsRequest() throws Exception {
+        Method ping = PingResource.class.getMethod("ping");
+        PingResource client = builder(PingResource.class, ping, "abort-test-blocking").build();
+        assertThat(client.ping(), is(FALLBACK));
+        assertTrue(this.executor.aborted.await(WAIT_SECONDS, TimeUnit.SECONDS));
+    }
+
+    /**
+     * Observables abort the request when the command times out too.
+     * @throws Exception for convenience
+     */
+    @Test
+    public void observableTimeoutAbortsRequest() throws Exception {
+        Method find = ObservableResource.class.getMethod("find", String.class);
+        ObservableResource client = builder(ObservableResource.class, find, "abort-test-observable").build();
+        assertThat(client.find("1").toBlocking().single(), is(FALLBACK));
+        assertTrue(this.executor.aborted.await(WAIT_SECONDS, TimeUnit.SECONDS));
+    }
+
+    private <T> HystrixClient.Builder<T> builder(Class<T> resource, Method method, String commandKey) {
+        return new HystrixClient.Builder<T>(new ResourceInterface<>(resource), new SimpleUriProvider("http://localhost"),
+                                            TestHystrixClientBuilder.GROUP_KEY)
+                .methodCommandKey(method, HystrixCommandKey.Factory.asKey(commandKey))
+                .methodProperties(method, new ConfigurationCallback<HystrixCommandProperties.Setter>() {
+                    @Override
+                    public void configure(HystrixCommandProperties.Setter setter) {
+                        setter.withExecutionIsolationThreadTimeoutInMilliseconds(TIMEOUT_MILLIS);
+                    }
+                })
+                .methodFallback(method, new Callable<String>() {
+                    @Override
+                    public String call() {
+                        return FALLBACK;
+                    }
+                })
+                .executor(this.executor);
+    }
+
+    /**
+     * ClientExecutor that never gets a response, like a server that hangs. It only returns once the request is aborted.
+     */
+    private static final class HangingExecutor implements ClientExecutor {
+        private final CountDownLatch aborted = new CountDownLatch(1);
+
+        @Override
+        public void processFilters(ClientRequest request) {
+        }
+
+        @Override
+        public ClientResponse execute(ClientRequest request) throws Exception {
+            request.getAbortHandle().onAbort(new Runnable() {
+                @Override
+                public void run() {
+                    HangingExecutor.this.aborted.countDown();
+                }
+            });
+            this.aborted.await();
+            throw new IOException("Request aborted");
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
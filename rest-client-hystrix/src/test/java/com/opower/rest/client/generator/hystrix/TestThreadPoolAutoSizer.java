@@ -0,0 +1,123 @@
+/**
+ *    Copyright 2014 Opower, Inc.
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ **/
+package com.opower.rest.client.generator.hystrix;
+
+import com.netflix.config.ConfigurationManager;
+import com.netflix.hystrix.HystrixCommand;
+import com.netflix.hystrix.HystrixCommandKey;
+import com.netflix.hystrix.HystrixCommandProperties;
+import com.netflix.hystrix.HystrixThreadPoolKey;
+import com.netflix.hystrix.HystrixThreadPoolMetrics;
+import com.opower.rest.client.generator.core.MethodInvoker;
+import com.opower.rest.client.generator.hystrix.TestProxyCollapser.BatchResource;
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Tests for the ThreadPoolAutoSizer.
+ */
+public class TestThreadPoolAutoSizer {
+
+    private static final int MIN_SIZE = 3;
+    private static final int MAX_SIZE = 20;
+    private static final double HEADROOM = 2;
+    private static final int CALLS = 5;
+    private static final int DEFAULT_HYSTRIX_SIZE = 10;
+    private static final int GROWN_SIZE = 15;
+
+    private final ThreadPoolAutoSizer sizer = ThreadPoolAutoSizer.builder()
+                                                                 .bounds(MIN_SIZE, MAX_SIZE)
+                                                                 .headroom(HEADROOM)
+                                                                 .build();
+
+    /**
+     * The estimated concurrency is multiplied by the headroom and rounded up.
+     */
+    @Test
+    public void sizeIncludesHeadroom() {
+        assertThat(this.sizer.coreSizeFor(4.2), is(9));
+    }
+
+    /**
+     * Sizes never leave the bounds.
+     */
+    @Test
+    public void sizeIsBounded() {
+        assertThat(this.sizer.coreSizeFor(0), is(MIN_SIZE));
+        assertThat(this.sizer.coreSizeFor(MAX_SIZE), is(MAX_SIZE));
+    }
+
+    /**
+     * Resizing sets the dynamic coreSize property of every registered pool, lightly used pools get the minimum size.
+     * @throws Throwable for convenience
+     */
+    @Test
+    public void resizeSetsCoreSizeProperty() throws Throwable {
+        HystrixThreadPoolKey poolKey = HystrixThreadPoolKey.Factory.asKey("autosizer-test-pool");
+        HystrixCommandKey commandKey = HystrixCommandKey.Factory.asKey("autosizer-test");
+        ProxyCommandFactory factory = commandFactory(poolKey, commandKey);
+        for (int i = 0; i < CALLS; i++) {
+            HystrixCommandInvocationHandler.execute(factory.create(new Object[]{i}));
+        }
+        this.sizer.register(poolKey, commandKey);
+        this.sizer.resize();
+        assertThat(this.sizer.getSizes().get(poolKey.name()), is(MIN_SIZE));
+        assertThat(ConfigurationManager.getConfigInstance().getInt(ThreadPoolAutoSizer.propertyName(poolKey.name())),
+                   is(MIN_SIZE));
+    }
+
+    /**
+     * A pool can grow past the maximum size of its live executor and keeps running commands.
+     * @throws Throwable for convenience
+     */
+    @Test
+    public void resizeGrowsLivePool() throws Throwable {
+        HystrixThreadPoolKey poolKey = HystrixThreadPoolKey.Factory.asKey("autosizer-grow-test-pool");
+        HystrixCommandKey commandKey = HystrixCommandKey.Factory.asKey("autosizer-grow-test");
+        ProxyCommandFactory factory = commandFactory(poolKey, commandKey);
+        HystrixCommandInvocationHandler.execute(factory.create(new Object[]{0}));
+        assertThat(HystrixThreadPoolMetrics.getInstance(poolKey).getCurrentMaximumPoolSize().intValue(),
+                   is(DEFAULT_HYSTRIX_SIZE));
+
+        ThreadPoolAutoSizer growingSizer = ThreadPoolAutoSizer.builder().bounds(GROWN_SIZE, MAX_SIZE).build();
+        growingSizer.register(poolKey, commandKey);
+        growingSizer.resize();
+        assertThat(growingSizer.getSizes().get(poolKey.name()), is(GROWN_SIZE));
+
+        assertThat(HystrixCommandInvocationHandler.execute(factory.create(new Object[]{1})), is((Object) 1));
+        assertThat(HystrixThreadPoolMetrics.getInstance(poolKey).getCurrentCorePoolSize().intValue(), is(GROWN_SIZE));
+        assertThat(HystrixThreadPoolMetrics.getInstance(poolKey).getCurrentMaximumPoolSize().intValue(),
+                   is(GROWN_SIZE));
+    }
+
+    private static ProxyCommandFactory commandFactory(HystrixThreadPoolKey poolKey, HystrixCommandKey commandKey)
+            throws NoSuchMethodException {
+        HystrixCommandProperties.Setter properties = HystrixCommandProperties.Setter().withFallbackEnabled(false);
+        HystrixCommand.Setter setter = HystrixCommand.Setter
+                .withGroupKey(TestHystrixClientBuilder.GROUP_KEY)
+                .andCommandKey(commandKey)
+                .andThreadPoolKey(poolKey)
+                .andCommandPropertiesDefaults(properties);
+        return new ProxyCommandFactory(BatchResource.class.getMethod("find", String.class),
+                                       commandKey, setter, properties, new MethodInvoker() {
+                    @Override
+                    public Object invoke(Object[] args) {
+                        return args[0];
+                    }
+                }, null, null, null);
+    }
+}
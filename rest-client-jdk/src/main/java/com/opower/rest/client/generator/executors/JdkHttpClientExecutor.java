@@ -0,0 +1,392 @@
+/**
+ *    Copyright 2014 Opower, Inc.
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ **/
+package com.opower.rest.client.generator.executors;
+
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.io.Closeables;
+import com.opower.rest.client.generator.core.BaseClientResponse;
+import com.opower.rest.client.generator.core.ClientRequest;
+import com.opower.rest.client.generator.core.ClientRequestFilter;
+import com.opower.rest.client.generator.core.ClientResponse;
+import com.opower.rest.client.generator.core.SelfExpandingBufferredInputStream;
+import com.opower.rest.client.generator.util.CaseInsensitiveMap;
+import com.opower.rest.client.generator.util.ContentEncoding;
+import com.opower.rest.client.generator.util.HttpHeaderNames;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Flow;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedMap;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * ClientExecutor implementation that uses the java.net.http HttpClient of the JDK. The default HttpClient negotiates
+ * HTTP/2, with ALPN over TLS and with an upgrade from HTTP/1.1 over plain connections, so that concurrent calls to the
+ * same server are multiplexed over a single connection instead of each taking one from a pool. Bodies are streamed in
+ * both directions, and {@link #executeAsync(ClientRequest)} sends a request without blocking a thread on the response.
+ * <p/>
+ * The HttpClient decides whether redirects are followed, for all requests alike. The read timeout of a request limits
+ * how long to wait for the response headers.
+ */
+public class JdkHttpClientExecutor extends AbstractClientExecutor {
+
+    private static final int STREAMED_BODY_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Headers the HttpClient sets by itself and refuses to take from the caller.
+     */
+    private static final Set<String> RESTRICTED_HEADERS = ImmutableSet.of("connection", "content-length", "expect",
+                                                                          "host", "upgrade");
+
+    private final HttpClient httpClient;
+
+    /**
+     * Create an instance using an HttpClient that prefers HTTP/2 and never follows redirects.
+     */
+    public JdkHttpClientExecutor() {
+        this(ImmutableList.<ClientRequestFilter>of());
+    }
+
+    /**
+     * Create an instance using an HttpClient that prefers HTTP/2 and never follows redirects.
+     * @param requestFilters the filters to apply to every request
+     */
+    public JdkHttpClientExecutor(List<ClientRequestFilter> requestFilters) {
+        this(HttpClient.newBuilder().version(HttpClient.Version.HTTP_2).build(), requestFilters);
+    }
+
+    /**
+     * Create an instance using the specified HttpClient.
+     * @param httpClient the HttpClient to use
+     */
+    public JdkHttpClientExecutor(HttpClient httpClient) {
+        this(httpClient, ImmutableList.<ClientRequestFilter>of());
+    }
+
+    public JdkHttpClientExecutor(HttpClient httpClient, List<ClientRequestFilter> requestFilters) {
+        super(requestFilters);
+        this.httpClient = checkNotNull(httpClient);
+    }
+
+    @Override
+    public ClientResponse execute(ClientRequest request) throws Exception {
+        try {
+            return executeAsync(request).get();
+        } catch (ExecutionException e) {
+            Throwables.propagateIfInstanceOf(e.getCause(), Exception.class);
+            throw Throwables.propagate(e.getCause());
+        }
+    }
+
+    /**
+     * Sends the request without waiting for the response. The future completes once the response headers have arrived;
+     * the body is read from the connection as the response is consumed. Iterator and channel bodies are the exception:
+     * they are written by the calling thread before this method returns.
+     * @param request the request to send
+     * @return the future response
+     * @throws Exception if the request could not be built or its body could not be written
+     */
+    public CompletableFuture<ClientResponse> executeAsync(final ClientRequest request) throws Exception {
+        HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create(request.getUri()));
+        if (request.getReadTimeout() > 0) {
+            builder.timeout(Duration.ofMillis(request.getReadTimeout()));
+        }
+        if (request.getBody() != null && !request.getFormParameters().isEmpty()) {
+            throw new RuntimeException("You cannot send both form parameters and an entity body");
+        }
+
+        commitHeaders(request, builder);
+
+        StreamedBody streamedBody = null;
+        HttpRequest.BodyPublisher publisher = HttpRequest.BodyPublishers.noBody();
+
+        if (!request.getFormParameters().isEmpty()) {
+            builder.setHeader(HttpHeaderNames.CONTENT_TYPE, MediaType.APPLICATION_FORM_URLENCODED);
+            publisher = HttpRequest.BodyPublishers.ofString(encodeForm(request.getFormParameters()));
+        } else if (request.getBody() != null) {
+            if (request.getHttpMethod().equals("GET")) {
+                throw new RuntimeException("A GET request cannot have a body.");
+            }
+            builder.setHeader(HttpHeaderNames.CONTENT_TYPE, request.getBodyContentType().toString());
+
+            boolean compress;
+            File file = request.getBodyFile();
+            ByteBuffer buffer = request.getBodyBuffer();
+            if (file != null && !request.shouldCompressBody(file.length())) {
+                compress = false;
+                publisher = HttpRequest.BodyPublishers.ofFile(file.toPath());
+            } else if (buffer != null && !request.shouldCompressBody(buffer.remaining())) {
+                compress = false;
+                publisher = new ByteBufferPublisher(buffer);
+            } else if (request.isBodyStreamed() || file != null) {
+                compress = request.shouldCompressBody(-1);
+                // the HttpClient pulls the body from the pipe while this thread fills it
+                final StreamedBody pipe = new StreamedBody(STREAMED_BODY_BUFFER_SIZE);
+                streamedBody = pipe;
+                publisher = HttpRequest.BodyPublishers.ofInputStream(() -> pipe);
+            } else {
+                ByteArrayOutputStream baos = new ByteArrayOutputStream();
+                request.writeRequestBody(request.getHeadersAsObjects(), baos);
+                byte[] body = baos.toByteArray();
+                compress = request.shouldCompressBody(body.length);
+                publisher = HttpRequest.BodyPublishers.ofByteArray(compress ? ContentEncoding.gzip(body) : body);
+            }
+            if (compress) {
+                builder.setHeader(HttpHeaderNames.CONTENT_ENCODING, ContentEncoding.GZIP);
+            }
+        }
+        builder.method(request.getHttpMethod(), publisher);
+
+        OutputStream bodyWriter = null;
+        if (streamedBody != null) {
+            bodyWriter = new PipedOutputStream(streamedBody);
+            if (request.shouldCompressBody(-1)) {
+                bodyWriter = ContentEncoding.gzip(bodyWriter);
+            }
+        }
+        final CompletableFuture<HttpResponse<InputStream>> future =
+                this.httpClient.sendAsync(builder.build(), HttpResponse.BodyHandlers.ofInputStream());
+        request.getAbortHandle().onAbort(() -> future.cancel(true));
+        if (bodyWriter != null) {
+            writeStreamedBody(request, future, streamedBody, bodyWriter);
+        }
+        return future.thenApply(rawResponse -> createResponse(request, rawResponse));
+    }
+
+    private ClientResponse createResponse(ClientRequest request, HttpResponse<InputStream> rawResponse) {
+        final SimpleBaseClientResponseStreamFactory streamFactory = new SimpleBaseClientResponseStreamFactory(rawResponse);
+        // closing the body stream resets an HTTP/2 stream or closes an HTTP/1.1 connection that is still being read
+        request.getAbortHandle().onAbort(streamFactory::performReleaseConnection);
+
+        BaseClientResponse response = new BaseClientResponse(streamFactory, this, request.getErrorStatusCriteria());
+        response.setStatus(rawResponse.statusCode());
+        response.setHeaders(extractHeaders(rawResponse));
+        response.setProviders(request.getProviders());
+        return response;
+    }
+
+    public void commitHeaders(ClientRequest request, HttpRequest.Builder builder) {
+        MultivaluedMap<String, String> headers = request.getHeaders();
+        for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+            if (RESTRICTED_HEADERS.contains(header.getKey().toLowerCase(Locale.ENGLISH))) {
+                continue;
+            }
+            for (String value : header.getValue()) {
+                builder.header(header.getKey(), value);
+            }
+        }
+        if (!headers.containsKey(HttpHeaderNames.ACCEPT_ENCODING)) {
+            builder.header(HttpHeaderNames.ACCEPT_ENCODING, ContentEncoding.ACCEPTED);
+        }
+    }
+
+    /**
+     * Extracts the headers from the given HttpResponse.
+     * @param response the HttpResponse to get the headers from
+     * @return A map of the headers found on the HttpResponse
+     */
+    public static CaseInsensitiveMap<String> extractHeaders(HttpResponse<?> response) {
+        CaseInsensitiveMap<String> headers = new CaseInsensitiveMap<String>();
+        for (Map.Entry<String, List<String>> header : response.headers().map().entrySet()) {
+            for (String value : header.getValue()) {
+                headers.add(header.getKey(), value);
+            }
+        }
+        return headers;
+    }
+
+    private static String encodeForm(MultivaluedMap<String, String> formParameters)
+            throws UnsupportedEncodingException {
+        StringBuilder form = new StringBuilder();
+        for (Map.Entry<String, List<String>> formParam : formParameters.entrySet()) {
+            for (String value : formParam.getValue()) {
+                if (form.length() > 0) {
+                    form.append('&');
+                }
+                form.append(URLEncoder.encode(formParam.getKey(), "UTF-8"))
+                    .append('=')
+                    .append(URLEncoder.encode(value, "UTF-8"));
+            }
+        }
+        return form.toString();
+    }
+
+    /**
+     * Writes the streamed body into the pipe the HttpClient reads it from. If the request completes before the whole
+     * body has been written, the pipe is closed so that the writer doesn't wait for a reader that is gone. If writing
+     * fails, the pipe fails too before it is closed.
+     */
+    private static void writeStreamedBody(ClientRequest request, CompletableFuture<?> future,
+                                          final StreamedBody pipe, OutputStream bodyWriter) throws IOException {
+        future.whenComplete((response, failure) -> {
+            try {
+                Closeables.close(pipe, true);
+            } catch (IOException impossible) {
+                throw new AssertionError(impossible);
+            }
+        });
+        try {
+            request.writeRequestBody(request.getHeadersAsObjects(), bodyWriter);
+        } catch (IOException e) {
+            pipe.fail(e);
+            if (!future.isDone()) {
+                throw e;
+            }
+        } catch (RuntimeException e) {
+            pipe.fail(e);
+            throw e;
+        } finally {
+            Closeables.close(bodyWriter, true);
+        }
+    }
+
+    /**
+     * The pipe a streamed body is read from. A body that fails while it is written ends with an IOException instead of
+     * the end of the stream, so that the HttpClient fails the request rather than sending a truncated body as complete.
+     */
+    private static final class StreamedBody extends PipedInputStream {
+        private volatile Throwable failure;
+
+        private StreamedBody(int pipeSize) {
+            super(pipeSize);
+        }
+
+        private void fail(Throwable cause) {
+            this.failure = cause;
+        }
+
+        @Override
+        public synchronized int read() throws IOException {
+            return checkEnd(super.read());
+        }
+
+        @Override
+        public synchronized int read(byte[] b, int off, int len) throws IOException {
+            return checkEnd(super.read(b, off, len));
+        }
+
+        private int checkEnd(int read) throws IOException {
+            if (read == -1 && this.failure != null) {
+                throw new IOException("The request body could not be written", this.failure);
+            }
+            return read;
+        }
+    }
+
+    /**
+     * Publishes the remaining bytes of a ByteBuffer with a known Content-Length. Each subscription reads from its own
+     * duplicate, so the request can be sent again, and a direct buffer is handed to the HttpClient without copying it
+     * into a byte array first.
+     */
+    private static final class ByteBufferPublisher implements HttpRequest.BodyPublisher {
+        private final ByteBuffer buffer;
+
+        private ByteBufferPublisher(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public long contentLength() {
+            return this.buffer.remaining();
+        }
+
+        @Override
+        public void subscribe(final Flow.Subscriber<? super ByteBuffer> subscriber) {
+            final ByteBuffer source = this.buffer.asReadOnlyBuffer();
+            subscriber.onSubscribe(new Flow.Subscription() {
+                private boolean done;
+
+                @Override
+                public void request(long n) {
+                    if (this.done) {
+                        return;
+                    }
+                    this.done = true;
+                    if (n <= 0) {
+                        subscriber.onError(new IllegalArgumentException("non-positive request: " + n));
+                        return;
+                    }
+                    subscriber.onNext(source);
+                    subscriber.onComplete();
+                }
+
+                @Override
+                public void cancel() {
+                    this.done = true;
+                }
+            });
+        }
+    }
+
+    @Override
+    public void close() throws Exception {
+
+    }
+
+    private static class SimpleBaseClientResponseStreamFactory
+            implements BaseClientResponse.BaseClientResponseStreamFactory {
+        private final HttpResponse<InputStream> res;
+        private InputStream stream;
+
+        private SimpleBaseClientResponseStreamFactory(HttpResponse<InputStream> res) {
+            this.res = res;
+        }
+
+        public synchronized InputStream getInputStream() throws IOException {
+            if (this.stream == null) {
+                InputStream rawStream = this.res.body();
+                if (rawStream == null) {
+                    return null;
+                }
+                rawStream = ContentEncoding.decode(rawStream,
+                                                   this.res.headers().firstValue(HttpHeaderNames.CONTENT_ENCODING)
+                                                           .orElse(null));
+                this.stream = new SelfExpandingBufferredInputStream(rawStream);
+            }
+            return this.stream;
+        }
+
+        public synchronized void performReleaseConnection() {
+            try {
+                Closeables.close(this.stream != null ? this.stream : this.res.body(), true);
+            } catch (IOException ex) {
+                Throwables.propagate(ex);
+            }
+        }
+    }
+}
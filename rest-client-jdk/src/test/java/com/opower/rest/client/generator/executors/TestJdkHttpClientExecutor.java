@@ -0,0 +1,331 @@
+/**
+ *    Copyright 2014 Opower, Inc.
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ **/
+package com.opower.rest.client.generator.executors;
+
+import com.google.common.base.Throwables;
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.ByteStreams;
+import com.opower.rest.client.generator.core.Client;
+import com.opower.rest.client.generator.core.ClientRequest;
+import com.opower.rest.client.generator.core.ClientRequestFilter;
+import com.opower.rest.client.generator.core.ResourceInterface;
+import com.opower.rest.client.generator.core.SimpleUriProvider;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.http.HttpClient;
+import java.net.http.HttpTimeoutException;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+import javax.ws.rs.Consumes;
+import javax.ws.rs.GET;
+import javax.ws.rs.POST;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests for the {@link JdkHttpClientExecutor}, against a server that records what it receives and can hang.
+ */
+public class TestJdkHttpClientExecutor {
+
+    private static final long TIMEOUT_MILLIS = 10000;
+    private static final int LINES = 5000;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final List<String> uploads = new CopyOnWriteArrayList<>();
+    private final List<String> upgrades = new CopyOnWriteArrayList<>();
+    private final CountDownLatch slowReceived = new CountDownLatch(1);
+    private final CountDownLatch slowReleased = new CountDownLatch(1);
+    private final BlockingQueue<ClientRequest> sent = new LinkedBlockingQueue<>();
+    private ExecutorService serverThreads;
+    private HttpServer server;
+    private JdkHttpClientExecutor executor;
+
+    @Before
+    public void setUp() throws Exception {
+        this.serverThreads = Executors.newCachedThreadPool();
+        this.server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        this.server.setExecutor(this.serverThreads);
+        this.server.createContext("/test/upload", exchange -> {
+            InputStream in = exchange.getRequestBody();
+            if ("gzip".equals(exchange.getRequestHeaders().getFirst("Content-Encoding"))) {
+                in = new GZIPInputStream(in);
+            }
+            byte[] body;
+            try {
+                body = ByteStreams.toByteArray(in);
+            } catch (IOException e) {
+                exchange.close();
+                throw e;
+            }
+            this.uploads.add(new String(body, StandardCharsets.UTF_8));
+            respond(exchange, body);
+        });
+        this.server.createContext("/test/upgrade", exchange -> {
+            String upgrade = exchange.getRequestHeaders().getFirst("Upgrade");
+            this.upgrades.add(String.valueOf(upgrade));
+            respond(exchange, exchange.getProtocol().getBytes(StandardCharsets.UTF_8));
+        });
+        this.server.createContext("/test/slow", exchange -> {
+            this.slowReceived.countDown();
+            try {
+                this.slowReleased.await(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            respond(exchange, new byte[0]);
+        });
+        this.server.start();
+        this.executor = new JdkHttpClientExecutor(ImmutableList.<ClientRequestFilter>of(this.sent::add));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        this.slowReleased.countDown();
+        this.executor.close();
+        this.server.stop(0);
+        this.serverThreads.shutdownNow();
+    }
+
+    /**
+     * Iterator bodies are written through the pipe the HttpClient reads from, compressed or not.
+     */
+    @Test(timeout = TIMEOUT_MILLIS)
+    public void iteratorBodiesAreStreamed() {
+        assertThat(client(false).lines(lines(LINES)), is(expectedLines(LINES)));
+        assertThat(client(true).lines(lines(LINES)), is(expectedLines(LINES)));
+    }
+
+    /**
+     * File bodies are published straight from the file when they aren't compressed, and streamed through the pipe
+     * when they are. Channel bodies are streamed.
+     */
+    @Test(timeout = TIMEOUT_MILLIS)
+    public void fileAndChannelBodiesAreSent() throws Exception {
+        File file = this.folder.newFile();
+        Files.write(file.toPath(), expectedLines(LINES).getBytes(StandardCharsets.UTF_8));
+        assertThat(client(false).file(file), is(expectedLines(LINES)));
+        assertThat(client(true).file(file), is(expectedLines(LINES)));
+        ReadableByteChannel channel = Channels.newChannel(
+                new ByteArrayInputStream("channel".getBytes(StandardCharsets.UTF_8)));
+        assertThat(client(false).channel(channel), is("channel"));
+    }
+
+    /**
+     * A body that fails while it is written fails the request instead of reaching the server as if it were complete.
+     */
+    @Test(timeout = TIMEOUT_MILLIS)
+    public void failedStreamedBodiesAreNotSent() {
+        Iterator<String> failing = new AbstractIterator<String>() {
+            private int count;
+
+            @Override
+            protected String computeNext() {
+                if (this.count == LINES) {
+                    throw new IllegalStateException("source failed");
+                }
+                return "line " + this.count++;
+            }
+        };
+        try {
+            client(false).lines(failing);
+            fail("the request should fail");
+        } catch (RuntimeException expected) {
+            // the body wasn't sent
+        }
+        assertThat(client(false).lines(lines(1)), is(expectedLines(1)));
+        assertThat(this.uploads, is((List<String>) ImmutableList.of(expectedLines(1))));
+    }
+
+    /**
+     * The default HttpClient asks to upgrade plain connections to HTTP/2 and carries on with HTTP/1.1 when the server
+     * doesn't, while an HttpClient limited to HTTP/1.1 doesn't ask.
+     */
+    @Test(timeout = TIMEOUT_MILLIS)
+    public void http2IsNegotiatedWithAnUpgrade() throws Exception {
+        assertThat(client(false).upgrade(), is("HTTP/1.1"));
+        JdkHttpClientExecutor http11 = new JdkHttpClientExecutor(
+                HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build());
+        try {
+            assertThat(client(http11, false).upgrade(), is("HTTP/1.1"));
+        } finally {
+            http11.close();
+        }
+        assertThat(this.upgrades, is((List<String>) ImmutableList.of("h2c", "null")));
+    }
+
+    /**
+     * Headers the HttpClient sets by itself are left out instead of failing the request.
+     */
+    @Test(timeout = TIMEOUT_MILLIS)
+    public void restrictedHeadersAreLeftOut() throws Exception {
+        JdkHttpClientExecutor restricted = new JdkHttpClientExecutor(ImmutableList.<ClientRequestFilter>of(
+                request -> request.header("Connection", "close").header("Upgrade", "websocket")));
+        try {
+            assertThat(client(restricted, false).upgrade(), is("HTTP/1.1"));
+        } finally {
+            restricted.close();
+        }
+        assertThat(this.upgrades, is((List<String>) ImmutableList.of("h2c")));
+    }
+
+    /**
+     * A request whose response headers don't arrive within the read timeout fails with an HttpTimeoutException.
+     */
+    @Test(timeout = TIMEOUT_MILLIS)
+    public void readTimeoutsFailTheRequest() throws Exception {
+        TestResource client = new Client.Builder<>(new ResourceInterface<>(TestResource.class),
+                                                   new SimpleUriProvider(uri()))
+                .methodReadTimeout(TestResource.class.getMethod("slow"), 200)
+                .executor(this.executor)
+                .build();
+        try {
+            client.slow();
+            fail("the request should time out");
+        } catch (RuntimeException e) {
+            assertThat(Throwables.getRootCause(e), instanceOf(HttpTimeoutException.class));
+        }
+    }
+
+    /**
+     * Aborting a request that is waiting for its response fails it right away.
+     */
+    @Test(timeout = TIMEOUT_MILLIS)
+    public void abortedRequestsFail() throws Exception {
+        ExecutorService callers = Executors.newSingleThreadExecutor();
+        try {
+            TestResource client = client(false);
+            Future<String> slow = callers.submit(client::slow);
+            this.slowReceived.await();
+            this.sent.take().getAbortHandle().abort();
+            try {
+                slow.get();
+                fail("the request should be aborted");
+            } catch (ExecutionException expected) {
+                // aborted
+            }
+        } finally {
+            callers.shutdownNow();
+        }
+    }
+
+    private String uri() {
+        return "http://localhost:" + this.server.getAddress().getPort();
+    }
+
+    private TestResource client(boolean compress) {
+        return client(this.executor, compress);
+    }
+
+    private TestResource client(JdkHttpClientExecutor executor, boolean compress) {
+        Client.Builder<TestResource> builder = new Client.Builder<>(new ResourceInterface<>(TestResource.class),
+                                                                    new SimpleUriProvider(uri()));
+        if (compress) {
+            builder.requestCompression(0);
+        }
+        return builder.executor(executor).build();
+    }
+
+    private static void respond(HttpExchange exchange, byte[] body) throws IOException {
+        exchange.getResponseHeaders().add("Content-Type", "text/plain");
+        exchange.sendResponseHeaders(200, body.length == 0 ? -1 : body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private static Iterator<String> lines(int count) {
+        ImmutableList.Builder<String> lines = ImmutableList.builder();
+        for (int i = 0; i < count; i++) {
+            lines.add("line " + i);
+        }
+        return lines.build().iterator();
+    }
+
+    private static String expectedLines(int count) {
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            expected.append("line ").append(i).append('\n');
+        }
+        return expected.toString();
+    }
+
+    /**
+     * Resource used to test the executor.
+     */
+    @Path("test")
+    public interface TestResource {
+        @POST
+        @Path("upload")
+        @Consumes("application/x-ndjson")
+        @Produces("text/plain")
+        String lines(Iterator<String> lines);
+
+        @POST
+        @Path("upload")
+        @Consumes("application/octet-stream")
+        @Produces("text/plain")
+        String file(File file);
+
+        @POST
+        @Path("upload")
+        @Consumes("application/octet-stream")
+        @Produces("text/plain")
+        String channel(ReadableByteChannel channel);
+
+        @GET
+        @Path("upgrade")
+        @Produces("text/plain")
+        String upgrade();
+
+        @GET
+        @Path("slow")
+        @Produces("text/plain")
+        String slow();
+    }
+}
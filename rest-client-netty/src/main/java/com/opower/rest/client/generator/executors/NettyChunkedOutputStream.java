@@ -0,0 +1,116 @@
+/**
+ *    Copyright 2014 Opower, Inc.
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ **/
+package com.opower.rest.client.generator.executors;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.handler.codec.http.DefaultHttpContent;
+import io.netty.handler.codec.http.LastHttpContent;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * OutputStream that sends what is written to it as chunks of a request with chunked transfer-encoding. Each chunk is
+ * written into a pooled ByteBuf that the channel releases once it has been sent. When the channel can't keep up the
+ * writer waits for the last chunk to be sent before filling the next one.
+ */
+final class NettyChunkedOutputStream extends OutputStream {
+
+    static final int CHUNK_SIZE = 8 * 1024;
+
+    private final Channel channel;
+    private final ByteBufAllocator allocator;
+    private ByteBuf chunk;
+    private boolean closed;
+
+    NettyChunkedOutputStream(Channel channel, ByteBufAllocator allocator) {
+        this.channel = channel;
+        this.allocator = allocator;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        chunk().writeByte(b);
+        if (!this.chunk.isWritable()) {
+            sendChunk();
+        }
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+            ByteBuf target = chunk();
+            int count = Math.min(len, target.writableBytes());
+            target.writeBytes(b, off, count);
+            off += count;
+            len -= count;
+            if (!target.isWritable()) {
+                sendChunk();
+            }
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        sendChunk();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (this.closed) {
+            return;
+        }
+        try {
+            sendChunk();
+            this.channel.writeAndFlush(LastHttpContent.EMPTY_LAST_CONTENT);
+        } finally {
+            this.closed = true;
+            if (this.chunk != null) {
+                this.chunk.release();
+                this.chunk = null;
+            }
+        }
+    }
+
+    private ByteBuf chunk() throws IOException {
+        if (this.closed) {
+            throw new IOException("Stream closed");
+        }
+        if (this.chunk == null) {
+            this.chunk = this.allocator.buffer(CHUNK_SIZE, CHUNK_SIZE);
+        }
+        return this.chunk;
+    }
+
+    private void sendChunk() throws IOException {
+        if (this.chunk == null || !this.chunk.isReadable()) {
+            return;
+        }
+        if (!this.channel.isActive()) {
+            throw new IOException("The connection was closed while the request was being sent");
+        }
+        ChannelFuture sent = this.channel.writeAndFlush(new DefaultHttpContent(this.chunk));
+        this.chunk = null;
+        if (!this.channel.isWritable()) {
+            sent.awaitUninterruptibly();
+            if (!sent.isSuccess()) {
+                throw new IOException("The request could not be sent", sent.cause());
+            }
+        }
+    }
+}
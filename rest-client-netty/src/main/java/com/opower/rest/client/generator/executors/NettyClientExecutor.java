@@ -0,0 +1,613 @@
+/**
+ *    Copyright 2014 Opower, Inc.
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ **/
+package com.opower.rest.client.generator.executors;
+
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import com.opower.rest.client.generator.core.ClientRequest;
+import com.opower.rest.client.generator.core.ClientRequestFilter;
+import com.opower.rest.client.generator.core.ClientResponse;
+import com.opower.rest.client.generator.util.ContentEncoding;
+import com.opower.rest.client.generator.util.HttpHeaderNames;
+import io.netty.bootstrap.Bootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.ByteBufOutputStream;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.DefaultFileRegion;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollDomainSocketChannel;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollSocketChannel;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.pool.AbstractChannelPoolMap;
+import io.netty.channel.pool.ChannelHealthChecker;
+import io.netty.channel.pool.ChannelPool;
+import io.netty.channel.pool.ChannelPoolHandler;
+import io.netty.channel.pool.FixedChannelPool;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.channel.unix.DomainSocketAddress;
+import io.netty.handler.codec.http.DefaultHttpRequest;
+import io.netty.handler.codec.http.DefaultLastHttpContent;
+import io.netty.handler.codec.http.HttpChunkedInput;
+import io.netty.handler.codec.http.HttpClientCodec;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpRequest;
+import io.netty.handler.codec.http.HttpUtil;
+import io.netty.handler.codec.http.HttpVersion;
+import io.netty.handler.codec.http.LastHttpContent;
+import io.netty.handler.ssl.SslContext;
+import io.netty.handler.ssl.SslContextBuilder;
+import io.netty.handler.ssl.SslHandler;
+import io.netty.handler.stream.ChunkedNioFile;
+import io.netty.handler.stream.ChunkedWriteHandler;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.FutureListener;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import javax.net.ssl.SSLException;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedMap;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * ClientExecutor implementation that uses Netty. Requests are sent over keep-alive connections from a fixed size pool
+ * per host, using the native epoll transport when it is available and NIO otherwise. Request bodies are serialized
+ * into pooled ByteBufs and response content is read straight from the pooled ByteBufs it arrives in, asking the socket
+ * for more only as fast as the response is consumed. {@link #executeAsync(ClientRequest)} completes on the event loop
+ * as soon as the response headers have arrived.
+ * <p/>
+ * Requests can also be sent over a Unix domain socket, for instance to a sidecar proxy, which bypasses the TCP stack
+ * and can't run out of ephemeral ports. Either map the endpoint to a socket file with
+ * {@link Builder#unixDomainSocket(URI, String)}, or use a base uri with the http+unix scheme and the url encoded path
+ * of the socket file as its authority, like {@code http+unix://%2Fvar%2Frun%2Fsidecar.sock/frobs}. Unix domain sockets
+ * require the native epoll transport.
+ * <p/>
+ * Redirects are never followed. The read timeout of a request limits how long to wait for the response headers and
+ * then for each chunk of the content.
+ */
+public class NettyClientExecutor extends AbstractClientExecutor {
+
+    /**
+     * The scheme of uris whose authority is the url encoded path of a Unix domain socket.
+     */
+    public static final String UNIX_SCHEME = "http+unix";
+
+    private static final Object STREAMED = new Object();
+
+    private final EventLoopGroup group;
+    private final ByteBufAllocator allocator;
+    private final SslContext sslContext;
+    private final Map<URI, DomainSocketAddress> domainSockets;
+    private final AbstractChannelPoolMap<URI, FixedChannelPool> pools;
+
+    /**
+     * Create an instance with the default settings of the {@link Builder}.
+     */
+    public NettyClientExecutor() {
+        this(ImmutableList.<ClientRequestFilter>of());
+    }
+
+    /**
+     * Create an instance with the default settings of the {@link Builder}.
+     * @param requestFilters the filters to apply to every request
+     */
+    public NettyClientExecutor(List<ClientRequestFilter> requestFilters) {
+        this(builder().requestFilters(requestFilters));
+    }
+
+    private NettyClientExecutor(final Builder builder) {
+        super(builder.requestFilters);
+        boolean epoll = builder.nativeTransport && Epoll.isAvailable();
+        DefaultThreadFactory threadFactory = new DefaultThreadFactory("rest-client-netty", true);
+        this.group = epoll
+                ? new EpollEventLoopGroup(builder.eventLoopThreads, threadFactory)
+                : new NioEventLoopGroup(builder.eventLoopThreads, threadFactory);
+        this.allocator = builder.allocator;
+        this.sslContext = builder.sslContext != null ? builder.sslContext : defaultSslContext();
+        final Bootstrap bootstrap = new Bootstrap()
+                .group(this.group)
+                .channel(epoll ? EpollSocketChannel.class : NioSocketChannel.class)
+                .option(ChannelOption.ALLOCATOR, this.allocator)
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, builder.connectTimeoutMillis)
+                .option(ChannelOption.TCP_NODELAY, true);
+        // the same event loops serve both kinds of channels, but domain sockets have no TCP options
+        final Bootstrap domainBootstrap = !epoll ? null : new Bootstrap()
+                .group(this.group)
+                .channel(EpollDomainSocketChannel.class)
+                .option(ChannelOption.ALLOCATOR, this.allocator)
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, builder.connectTimeoutMillis);
+        checkState(domainBootstrap != null || builder.domainSockets.isEmpty(),
+                   "Unix domain sockets require the native epoll transport");
+        this.domainSockets = new HashMap<>(builder.domainSockets);
+        this.pools = new AbstractChannelPoolMap<URI, FixedChannelPool>() {
+            @Override
+            protected FixedChannelPool newPool(URI endpoint) {
+                SocketAddress address = remoteAddress(endpoint);
+                boolean domainSocket = address instanceof DomainSocketAddress;
+                checkState(!domainSocket || domainBootstrap != null,
+                           "Unix domain sockets require the native epoll transport");
+                Bootstrap template = domainSocket ? domainBootstrap : bootstrap;
+                return new FixedChannelPool(template.clone().remoteAddress(address),
+                                            new PoolHandler(endpoint), ChannelHealthChecker.ACTIVE,
+                                            FixedChannelPool.AcquireTimeoutAction.FAIL, builder.acquireTimeoutMillis,
+                                            builder.maxConnectionsPerHost, builder.maxPendingAcquires);
+            }
+        };
+    }
+
+    /**
+     * Creates a Builder for an executor with 20 connections per host.
+     * @return the builder
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * The address to connect to for the host and port of the specified endpoint. The host is resolved every time a
+     * connection is opened so that DNS changes are picked up.
+     * @param endpoint the scheme, host and port of the requests
+     * @return the address
+     */
+    private SocketAddress remoteAddress(URI endpoint) {
+        if (UNIX_SCHEME.equals(endpoint.getScheme())) {
+            return new DomainSocketAddress(endpoint.getAuthority());
+        }
+        if (this.domainSockets.containsKey(endpoint)) {
+            return this.domainSockets.get(endpoint);
+        }
+        return InetSocketAddress.createUnresolved(endpoint.getHost(), endpoint.getPort());
+    }
+
+    @Override
+    public ClientResponse execute(ClientRequest request) throws Exception {
+        try {
+            return executeAsync(request).get();
+        } catch (ExecutionException e) {
+            Throwables.propagateIfInstanceOf(e.getCause(), Exception.class);
+            throw Throwables.propagate(e.getCause());
+        }
+    }
+
+    /**
+     * Sends the request without waiting for the response. The body is serialized by the calling thread and written by
+     * the event loop once a connection is available, and the future completes on the event loop once the response
+     * headers have arrived. Iterator and channel bodies are the exception: the calling thread waits for a connection
+     * and writes them before this method returns.
+     * @param request the request to send
+     * @return the future response
+     * @throws Exception if the request could not be built or its body could not be written
+     */
+    public ListenableFuture<ClientResponse> executeAsync(final ClientRequest request) throws Exception {
+        URI uri = URI.create(request.getUri());
+        final URI endpoint = endpoint(uri);
+        final HttpRequest head = createHead(request, uri);
+        final Object content = createContent(request, head);
+        final SettableFuture<ClientResponse> result = SettableFuture.create();
+        final ChannelPool pool = this.pools.get(endpoint);
+        final Future<Channel> acquired = pool.acquire();
+        request.getAbortHandle().onAbort(new Runnable() {
+            @Override
+            public void run() {
+                acquired.cancel(false);
+                result.setException(new IOException("The request was aborted"));
+            }
+        });
+
+        if (content == STREAMED) {
+            Channel channel = acquired.syncUninterruptibly().getNow();
+            send(channel, pool, request, head, result);
+            OutputStream body = new NettyChunkedOutputStream(channel, this.allocator);
+            try {
+                if (request.shouldCompressBody(-1)) {
+                    body = ContentEncoding.gzip(body);
+                }
+                request.writeRequestBody(request.getHeadersAsObjects(), body);
+                body.close();
+            } catch (IOException e) {
+                channel.close();
+                if (!result.isDone()) {
+                    throw e;
+                }
+            }
+            return result;
+        }
+
+        acquired.addListener(new FutureListener<Channel>() {
+            @Override
+            public void operationComplete(Future<Channel> future) {
+                if (!future.isSuccess()) {
+                    release(content);
+                    result.setException(future.cause());
+                    return;
+                }
+                Channel channel = future.getNow();
+                if (result.isDone()) {
+                    // aborted while waiting for the connection
+                    release(content);
+                    pool.release(channel);
+                    return;
+                }
+                send(channel, pool, request, head, result);
+                if (content instanceof ByteBuf) {
+                    channel.writeAndFlush(new DefaultLastHttpContent((ByteBuf) content));
+                } else if (content instanceof File) {
+                    File file = (File) content;
+                    if (channel.pipeline().get(SslHandler.class) == null) {
+                        // zero-copy transferTo, which isn't possible when the connection encrypts what it sends
+                        channel.write(new DefaultFileRegion(file, 0, file.length()));
+                        channel.writeAndFlush(LastHttpContent.EMPTY_LAST_CONTENT);
+                    } else {
+                        try {
+                            channel.writeAndFlush(new HttpChunkedInput(new ChunkedNioFile(file)));
+                        } catch (IOException e) {
+                            channel.close();
+                            result.setException(e);
+                        }
+                    }
+                } else {
+                    channel.writeAndFlush(LastHttpContent.EMPTY_LAST_CONTENT);
+                }
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Sends the request head on the acquired channel and installs the handler that receives the response.
+     */
+    private void send(final Channel channel, ChannelPool pool, ClientRequest request, HttpRequest head,
+                      SettableFuture<ClientResponse> result) {
+        channel.pipeline().addLast(NettyResponseHandler.NAME,
+                                   new NettyResponseHandler(this, pool, channel, request, result));
+        request.getAbortHandle().onAbort(new Runnable() {
+            @Override
+            public void run() {
+                channel.close();
+            }
+        });
+        channel.write(head);
+        channel.read();
+    }
+
+    private HttpRequest createHead(ClientRequest request, URI uri) {
+        String path = uri.getRawPath() == null || uri.getRawPath().isEmpty() ? "/" : uri.getRawPath();
+        if (uri.getRawQuery() != null) {
+            path += "?" + uri.getRawQuery();
+        }
+        HttpRequest head = new DefaultHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.valueOf(request.getHttpMethod()),
+                                                  path);
+        String host = UNIX_SCHEME.equalsIgnoreCase(uri.getScheme()) ? "localhost"
+                : uri.getPort() == -1 ? uri.getHost() : uri.getHost() + ":" + uri.getPort();
+        head.headers().set(HttpHeaderNames.HOST, host);
+        MultivaluedMap<String, String> headers = request.getHeaders();
+        for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+            head.headers().add(header.getKey(), header.getValue());
+        }
+        if (!headers.containsKey(HttpHeaderNames.ACCEPT_ENCODING)) {
+            head.headers().set(HttpHeaderNames.ACCEPT_ENCODING, ContentEncoding.ACCEPTED);
+        }
+        return head;
+    }
+
+    /**
+     * Prepares the body of the request and sets the headers that describe it.
+     * @return a ByteBuf with the whole body, a File to send as it is, or STREAMED if the body is written after the
+     * head with chunked transfer-encoding
+     */
+    private Object createContent(ClientRequest request, HttpRequest head) throws IOException {
+        if (request.getBody() != null && !request.getFormParameters().isEmpty()) {
+            throw new RuntimeException("You cannot send both form parameters and an entity body");
+        }
+        if (!request.getFormParameters().isEmpty()) {
+            ByteBuf form = ByteBufUtil.writeUtf8(this.allocator, encodeForm(request.getFormParameters()));
+            head.headers().set(HttpHeaderNames.CONTENT_TYPE, MediaType.APPLICATION_FORM_URLENCODED);
+            HttpUtil.setContentLength(head, form.readableBytes());
+            return form;
+        }
+        if (request.getBody() == null) {
+            if (!HttpMethod.GET.equals(head.method()) && !HttpMethod.HEAD.equals(head.method())) {
+                HttpUtil.setContentLength(head, 0);
+            }
+            return null;
+        }
+        if (HttpMethod.GET.equals(head.method())) {
+            throw new RuntimeException("A GET request cannot have a body.");
+        }
+        head.headers().set(HttpHeaderNames.CONTENT_TYPE, request.getBodyContentType().toString());
+
+        File file = request.getBodyFile();
+        ByteBuffer buffer = request.getBodyBuffer();
+        if (file != null && !request.shouldCompressBody(file.length())) {
+            HttpUtil.setContentLength(head, file.length());
+            return file;
+        }
+        if (buffer != null && !request.shouldCompressBody(buffer.remaining())) {
+            HttpUtil.setContentLength(head, buffer.remaining());
+            return Unpooled.wrappedBuffer(buffer);
+        }
+        if (request.isBodyStreamed() || file != null) {
+            HttpUtil.setTransferEncodingChunked(head, true);
+            if (request.shouldCompressBody(-1)) {
+                head.headers().set(HttpHeaderNames.CONTENT_ENCODING, ContentEncoding.GZIP);
+            }
+            return STREAMED;
+        }
+
+        ByteBuf body = this.allocator.buffer();
+        try {
+            try (OutputStream out = new ByteBufOutputStream(body)) {
+                request.writeRequestBody(request.getHeadersAsObjects(), out);
+            }
+            if (request.shouldCompressBody(body.readableBytes())) {
+                ByteBuf compressed = this.allocator.buffer();
+                try (OutputStream out = ContentEncoding.gzip(new ByteBufOutputStream(compressed))) {
+                    body.readBytes(out, body.readableBytes());
+                } catch (IOException | RuntimeException e) {
+                    compressed.release();
+                    throw e;
+                }
+                body.release();
+                body = compressed;
+                head.headers().set(HttpHeaderNames.CONTENT_ENCODING, ContentEncoding.GZIP);
+            }
+        } catch (IOException | RuntimeException e) {
+            body.release();
+            throw e;
+        }
+        HttpUtil.setContentLength(head, body.readableBytes());
+        return body;
+    }
+
+    private static SslContext defaultSslContext() {
+        try {
+            return SslContextBuilder.forClient().build();
+        } catch (SSLException e) {
+            throw Throwables.propagate(e);
+        }
+    }
+
+    private static void release(Object content) {
+        if (content instanceof ByteBuf) {
+            ((ByteBuf) content).release();
+        }
+    }
+
+    private static URI endpoint(URI uri) {
+        if (UNIX_SCHEME.equalsIgnoreCase(uri.getScheme())) {
+            return URI.create(UNIX_SCHEME + "://" + uri.getRawAuthority());
+        }
+        boolean secure = "https".equalsIgnoreCase(uri.getScheme());
+        int port = uri.getPort() != -1 ? uri.getPort() : secure ? 443 : 80;
+        return URI.create(uri.getScheme().toLowerCase() + "://" + uri.getHost() + ":" + port);
+    }
+
+    private static String encodeForm(MultivaluedMap<String, String> formParameters)
+            throws UnsupportedEncodingException {
+        StringBuilder form = new StringBuilder();
+        for (Map.Entry<String, List<String>> formParam : formParameters.entrySet()) {
+            for (String value : formParam.getValue()) {
+                if (form.length() > 0) {
+                    form.append('&');
+                }
+                form.append(URLEncoder.encode(formParam.getKey(), "UTF-8"))
+                    .append('=')
+                    .append(URLEncoder.encode(value, "UTF-8"));
+            }
+        }
+        return form.toString();
+    }
+
+    @Override
+    public void close() {
+        this.pools.close();
+        this.group.shutdownGracefully(0, 1, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Sets up the pipeline of new connections and turns reading from the socket over to the response handler while a
+     * connection is leased. Idle connections read on their own so that they notice when the server closes them.
+     */
+    private final class PoolHandler implements ChannelPoolHandler {
+        private final URI endpoint;
+
+        private PoolHandler(URI endpoint) {
+            this.endpoint = endpoint;
+        }
+
+        @Override
+        public void channelCreated(Channel channel) {
+            if ("https".equals(this.endpoint.getScheme())) {
+                channel.pipeline().addLast(NettyClientExecutor.this.sslContext.newHandler(
+                        channel.alloc(), this.endpoint.getHost(), this.endpoint.getPort()));
+            }
+            channel.pipeline().addLast(new HttpClientCodec(), new ChunkedWriteHandler());
+            channel.config().setAutoRead(false);
+        }
+
+        @Override
+        public void channelAcquired(Channel channel) {
+            channel.config().setAutoRead(false);
+        }
+
+        @Override
+        public void channelReleased(Channel channel) {
+            channel.config().setAutoRead(true);
+        }
+    }
+
+    /**
+     * Builder for NettyClientExecutor instances.
+     */
+    public static final class Builder {
+        private static final int DEFAULT_MAX_CONNECTIONS_PER_HOST = 20;
+        private static final int DEFAULT_CONNECT_TIMEOUT_MILLIS = 5000;
+
+        private int maxConnectionsPerHost = DEFAULT_MAX_CONNECTIONS_PER_HOST;
+        private int maxPendingAcquires = Integer.MAX_VALUE;
+        private long acquireTimeoutMillis = TimeUnit.SECONDS.toMillis(1);
+        private int connectTimeoutMillis = DEFAULT_CONNECT_TIMEOUT_MILLIS;
+        private int eventLoopThreads;
+        private boolean nativeTransport = true;
+        private ByteBufAllocator allocator = PooledByteBufAllocator.DEFAULT;
+        private SslContext sslContext;
+        private List<ClientRequestFilter> requestFilters = ImmutableList.of();
+        private final Map<URI, DomainSocketAddress> domainSockets = new HashMap<>();
+
+        private Builder() {
+        }
+
+        /**
+         * The maximum number of connections to a single host and port.
+         * @param maxConnectionsPerHost the number of connections
+         * @return the builder
+         */
+        public Builder maxConnectionsPerHost(int maxConnectionsPerHost) {
+            checkArgument(maxConnectionsPerHost > 0, "maxConnectionsPerHost must be positive");
+            this.maxConnectionsPerHost = maxConnectionsPerHost;
+            return this;
+        }
+
+        /**
+         * The maximum number of requests waiting for a connection to a single host and port, after which requests fail
+         * right away. Unlimited by default.
+         * @param maxPendingAcquires the number of requests
+         * @return the builder
+         */
+        public Builder maxPendingAcquires(int maxPendingAcquires) {
+            checkArgument(maxPendingAcquires > 0, "maxPendingAcquires must be positive");
+            this.maxPendingAcquires = maxPendingAcquires;
+            return this;
+        }
+
+        /**
+         * How long a request may wait for a connection when all of them are in use. Defaults to 1 second.
+         * @param acquireTimeout the maximum wait
+         * @param unit the unit of acquireTimeout
+         * @return the builder
+         */
+        public Builder acquireTimeout(long acquireTimeout, TimeUnit unit) {
+            checkArgument(acquireTimeout > 0, "acquireTimeout must be positive");
+            this.acquireTimeoutMillis = unit.toMillis(acquireTimeout);
+            return this;
+        }
+
+        /**
+         * How long to wait for a new connection to be established. Defaults to 5 seconds.
+         * @param connectTimeout the maximum wait
+         * @param unit the unit of connectTimeout
+         * @return the builder
+         */
+        public Builder connectTimeout(long connectTimeout, TimeUnit unit) {
+            checkArgument(connectTimeout > 0 && unit.toMillis(connectTimeout) <= Integer.MAX_VALUE,
+                          "connectTimeout must be positive and fit in an int of milliseconds");
+            this.connectTimeoutMillis = (int) unit.toMillis(connectTimeout);
+            return this;
+        }
+
+        /**
+         * The number of event loop threads. Defaults to twice the number of processors.
+         * @param eventLoopThreads the number of threads
+         * @return the builder
+         */
+        public Builder eventLoopThreads(int eventLoopThreads) {
+            checkArgument(eventLoopThreads > 0, "eventLoopThreads must be positive");
+            this.eventLoopThreads = eventLoopThreads;
+            return this;
+        }
+
+        /**
+         * Whether to use the native epoll transport when it is available, which is the default.
+         * @param nativeTransport false to always use NIO
+         * @return the builder
+         */
+        public Builder nativeTransport(boolean nativeTransport) {
+            this.nativeTransport = nativeTransport;
+            return this;
+        }
+
+        /**
+         * The allocator for request bodies and response content. Defaults to the shared PooledByteBufAllocator.
+         * @param allocator the allocator to use
+         * @return the builder
+         */
+        public Builder allocator(ByteBufAllocator allocator) {
+            this.allocator = checkNotNull(allocator);
+            return this;
+        }
+
+        /**
+         * The SslContext for https connections. Defaults to a client context that trusts the default trust store of
+         * the JVM.
+         * @param sslContext the context to use
+         * @return the builder
+         */
+        public Builder sslContext(SslContext sslContext) {
+            checkArgument(checkNotNull(sslContext).isClient(), "sslContext must be a client context");
+            this.sslContext = sslContext;
+            return this;
+        }
+
+        /**
+         * Send the requests for the host and port of the specified endpoint over a Unix domain socket instead of TCP.
+         * The Host header still names the endpoint. Requires the native epoll transport.
+         * @param endpoint the uri of the endpoint, only its scheme, host and port matter
+         * @param socketPath the path of the socket file
+         * @return the builder
+         */
+        public Builder unixDomainSocket(URI endpoint, String socketPath) {
+            this.domainSockets.put(endpoint(checkNotNull(endpoint)), new DomainSocketAddress(checkNotNull(socketPath)));
+            return this;
+        }
+
+        /**
+         * @param requestFilters the filters to apply to every request
+         * @return the builder
+         */
+        public Builder requestFilters(List<ClientRequestFilter> requestFilters) {
+            this.requestFilters = ImmutableList.copyOf(requestFilters);
+            return this;
+        }
+
+        public NettyClientExecutor build() {
+            return new NettyClientExecutor(this);
+        }
+    }
+}
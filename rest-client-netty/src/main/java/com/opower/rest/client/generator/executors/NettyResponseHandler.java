@@ -0,0 +1,229 @@
+/**
+ *    Copyright 2014 Opower, Inc.
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ **/
+package com.opower.rest.client.generator.executors;
+
+import com.google.common.base.Throwables;
+import com.google.common.util.concurrent.SettableFuture;
+import com.opower.rest.client.generator.core.BaseClientResponse;
+import com.opower.rest.client.generator.core.ClientRequest;
+import com.opower.rest.client.generator.core.ClientResponse;
+import com.opower.rest.client.generator.core.SelfExpandingBufferredInputStream;
+import com.opower.rest.client.generator.util.CaseInsensitiveMap;
+import com.opower.rest.client.generator.util.ContentEncoding;
+import com.opower.rest.client.generator.util.HttpHeaderNames;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelDuplexHandler;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
+import io.netty.channel.pool.ChannelPool;
+import io.netty.handler.codec.http.HttpChunkedInput;
+import io.netty.handler.codec.http.HttpContent;
+import io.netty.handler.codec.http.HttpResponse;
+import io.netty.handler.codec.http.HttpUtil;
+import io.netty.handler.codec.http.LastHttpContent;
+import io.netty.util.ReferenceCountUtil;
+import io.netty.util.concurrent.ScheduledFuture;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.SocketTimeoutException;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Receives the response to a single request on a pooled channel. The ClientResponse is completed as soon as the headers
+ * have arrived and the content is handed to a {@link NettyResponseStream}. Once the last content has been received the
+ * handler removes itself and the channel goes back to the pool, or is closed if it can't be reused. A server can answer
+ * before it has read the whole request, so the channel is only reused once the end of the request has been written too.
+ */
+final class NettyResponseHandler extends ChannelDuplexHandler {
+
+    static final String NAME = "response";
+
+    private final NettyClientExecutor executor;
+    private final ChannelPool pool;
+    private final Channel channel;
+    private final ClientRequest request;
+    private final SettableFuture<ClientResponse> result;
+    private final AtomicBoolean finished = new AtomicBoolean();
+    private ScheduledFuture<?> responseTimeout;
+    private NettyResponseStream body;
+    private boolean keepAlive;
+    private boolean requestWritten;
+
+    NettyResponseHandler(NettyClientExecutor executor, ChannelPool pool, Channel channel, ClientRequest request,
+                         SettableFuture<ClientResponse> result) {
+        this.executor = executor;
+        this.pool = pool;
+        this.channel = channel;
+        this.request = request;
+        this.result = result;
+    }
+
+    @Override
+    public void handlerAdded(ChannelHandlerContext ctx) {
+        if (this.request.getReadTimeout() > 0) {
+            this.responseTimeout = ctx.executor().schedule(new Runnable() {
+                @Override
+                public void run() {
+                    failure(new SocketTimeoutException("Read timed out"));
+                }
+            }, this.request.getReadTimeout(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @Override
+    public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) {
+        if (msg instanceof LastHttpContent || msg instanceof HttpChunkedInput) {
+            promise = promise.unvoid();
+            promise.addListener(new ChannelFutureListener() {
+                @Override
+                public void operationComplete(ChannelFuture future) {
+                    NettyResponseHandler.this.requestWritten = future.isSuccess();
+                }
+            });
+        }
+        ctx.write(msg, promise);
+    }
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) {
+        if (this.finished.get()) {
+            ReferenceCountUtil.release(msg);
+            return;
+        }
+        if (msg instanceof HttpResponse) {
+            if (this.responseTimeout != null) {
+                this.responseTimeout.cancel(false);
+            }
+            HttpResponse response = (HttpResponse) msg;
+            this.keepAlive = HttpUtil.isKeepAlive(response);
+            this.body = new NettyResponseStream(this, this.channel, this.request.getReadTimeout());
+            this.result.set(createResponse(response));
+        }
+        if (msg instanceof HttpContent) {
+            ByteBuf content = ((HttpContent) msg).content();
+            if (content.isReadable() && this.body != null) {
+                this.body.offer(content);
+            } else {
+                content.release();
+            }
+            if (msg instanceof LastHttpContent && this.body != null) {
+                this.body.end();
+                finish(this.keepAlive);
+                return;
+            }
+        }
+        if (this.body != null) {
+            this.body.readMore();
+        } else {
+            ctx.read();
+        }
+    }
+
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) {
+        failure(new IOException("The connection was closed before the response was complete"));
+        ctx.fireChannelInactive();
+    }
+
+    @Override
+    public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+        failure(cause);
+    }
+
+    /**
+     * Gives up on the rest of the response, closing the connection if it is still being received.
+     */
+    void abandon() {
+        if (!this.finished.get()) {
+            this.channel.close();
+        }
+    }
+
+    private void failure(Throwable cause) {
+        if (this.finished.get()) {
+            return;
+        }
+        if (!this.result.setException(cause) && this.body != null) {
+            this.body.fail(cause);
+        }
+        finish(false);
+    }
+
+    private void finish(boolean reuse) {
+        if (!this.finished.compareAndSet(false, true)) {
+            return;
+        }
+        if (this.responseTimeout != null) {
+            this.responseTimeout.cancel(false);
+        }
+        this.channel.pipeline().remove(this);
+        if (!reuse || !this.requestWritten) {
+            // after an early response the rest of the request would go out on a channel serving another one
+            this.channel.close();
+        }
+        this.pool.release(this.channel);
+    }
+
+    private ClientResponse createResponse(HttpResponse response) {
+        CaseInsensitiveMap<String> headers = new CaseInsensitiveMap<String>();
+        for (Map.Entry<String, String> header : response.headers()) {
+            headers.add(header.getKey(), header.getValue());
+        }
+        BaseClientResponse clientResponse = new BaseClientResponse(
+                new NettyResponseStreamFactory(this.body, response.headers().get(HttpHeaderNames.CONTENT_ENCODING)),
+                this.executor, this.request.getErrorStatusCriteria());
+        clientResponse.setStatus(response.status().code());
+        clientResponse.setHeaders(headers);
+        clientResponse.setProviders(this.request.getProviders());
+        return clientResponse;
+    }
+
+    private static class NettyResponseStreamFactory implements BaseClientResponse.BaseClientResponseStreamFactory {
+        private final NettyResponseStream body;
+        private final String contentEncoding;
+        private InputStream stream;
+
+        private NettyResponseStreamFactory(NettyResponseStream body, String contentEncoding) {
+            this.body = body;
+            this.contentEncoding = contentEncoding;
+        }
+
+        public synchronized InputStream getInputStream() {
+            if (this.stream == null) {
+                this.stream = new SelfExpandingBufferredInputStream(ContentEncoding.decode(this.body,
+                                                                                           this.contentEncoding));
+            }
+            return this.stream;
+        }
+
+        public synchronized void performReleaseConnection() {
+            try {
+                if (this.stream != null) {
+                    this.stream.close();
+                }
+            } catch (IOException ex) {
+                Throwables.propagate(ex);
+            } finally {
+                this.body.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,195 @@
+/**
+ *    Copyright 2014 Opower, Inc.
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ **/
+package com.opower.rest.client.generator.executors;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.Channel;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * InputStream over the content of a response as it arrives on the event loop. The pooled ByteBufs are read in place and
+ * released as soon as they are consumed. The channel has auto read turned off: once the reader has caught up the next
+ * read is requested, so that a slow reader holds back the server instead of filling up memory.
+ */
+final class NettyResponseStream extends InputStream {
+
+    /**
+     * The number of chunks that may be queued before the event loop stops reading from the socket.
+     */
+    static final int MAX_QUEUED_CHUNKS = 16;
+
+    private static final Object END = new Object();
+
+    private final BlockingQueue<Object> chunks = new LinkedBlockingQueue<>();
+    private final AtomicBoolean paused = new AtomicBoolean();
+    private final NettyResponseHandler handler;
+    private final Channel channel;
+    private final int readTimeout;
+    private ByteBuf current;
+    private boolean ended;
+    private volatile boolean closed;
+
+    NettyResponseStream(NettyResponseHandler handler, Channel channel, int readTimeout) {
+        this.handler = handler;
+        this.channel = channel;
+        this.readTimeout = readTimeout;
+    }
+
+    /**
+     * Queues a chunk of content. Called on the event loop, which hands over its reference to the chunk.
+     * @param chunk the content
+     */
+    void offer(ByteBuf chunk) {
+        this.chunks.add(chunk);
+        if (this.closed) {
+            drain();
+        }
+    }
+
+    /**
+     * Marks the end of the content. Called on the event loop.
+     */
+    void end() {
+        this.chunks.add(END);
+    }
+
+    /**
+     * Makes the reader fail once it has read the content queued so far. Called on the event loop.
+     * @param cause the reason the content is incomplete
+     */
+    void fail(Throwable cause) {
+        this.chunks.add(cause);
+    }
+
+    /**
+     * Asks for more content unless enough is queued already. Called on the event loop after every message.
+     */
+    void readMore() {
+        if (this.chunks.size() < MAX_QUEUED_CHUNKS) {
+            this.channel.read();
+            return;
+        }
+        this.paused.set(true);
+        // the reader may have drained the queue before it could see the flag
+        if (this.chunks.size() < MAX_QUEUED_CHUNKS && this.paused.compareAndSet(true, false)) {
+            this.channel.read();
+        }
+    }
+
+    @Override
+    public int read() throws IOException {
+        ByteBuf chunk = current();
+        return chunk == null ? -1 : chunk.readUnsignedByte();
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        ByteBuf chunk = current();
+        if (chunk == null) {
+            return -1;
+        }
+        int count = Math.min(len, chunk.readableBytes());
+        chunk.readBytes(b, off, count);
+        return count;
+    }
+
+    @Override
+    public int available() {
+        ByteBuf chunk = this.current;
+        return chunk == null || this.closed ? 0 : chunk.readableBytes();
+    }
+
+    /**
+     * Releases the queued content. If the whole response hasn't arrived yet the connection can't be reused and is
+     * closed.
+     */
+    @Override
+    public void close() {
+        if (this.closed) {
+            return;
+        }
+        this.closed = true;
+        if (this.current != null) {
+            this.current.release();
+            this.current = null;
+        }
+        drain();
+        this.handler.abandon();
+    }
+
+    private ByteBuf current() throws IOException {
+        if (this.closed) {
+            throw new IOException("Stream closed");
+        }
+        while (this.current == null || !this.current.isReadable()) {
+            if (this.current != null) {
+                this.current.release();
+                this.current = null;
+            }
+            if (this.ended) {
+                return null;
+            }
+            Object next = take();
+            if (this.paused.compareAndSet(true, false)) {
+                this.channel.read();
+            }
+            if (next == END) {
+                this.ended = true;
+            } else if (next instanceof Throwable) {
+                this.ended = true;
+                throw new IOException("The response could not be read completely", (Throwable) next);
+            } else {
+                this.current = (ByteBuf) next;
+            }
+        }
+        return this.current;
+    }
+
+    private Object take() throws IOException {
+        try {
+            if (this.readTimeout <= 0) {
+                return this.chunks.take();
+            }
+            Object next = this.chunks.poll(this.readTimeout, TimeUnit.MILLISECONDS);
+            if (next == null) {
+                this.handler.abandon();
+                throw new SocketTimeoutException("Read timed out");
+            }
+            return next;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for the response", e);
+        }
+    }
+
+    private void drain() {
+        Object next;
+        while ((next = this.chunks.poll()) != null) {
+            if (next instanceof ByteBuf) {
+                ((ByteBuf) next).release();
+            }
+        }
+    }
+}
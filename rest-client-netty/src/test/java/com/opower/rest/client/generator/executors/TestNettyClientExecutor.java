@@ -0,0 +1,443 @@
+/**
+ *    Copyright 2014 Opower, Inc.
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ **/
+package com.opower.rest.client.generator.executors;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Throwables;
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.Files;
+import com.opower.rest.client.generator.core.Client;
+import com.opower.rest.client.generator.core.ClientRequest;
+import com.opower.rest.client.generator.core.ClientRequestFilter;
+import com.opower.rest.client.generator.core.ResourceInterface;
+import com.opower.rest.client.generator.core.SimpleUriProvider;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.handler.codec.http.DefaultFullHttpResponse;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpContent;
+import io.netty.handler.codec.http.HttpContentDecompressor;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpObject;
+import io.netty.handler.codec.http.HttpRequest;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpServerCodec;
+import io.netty.handler.codec.http.HttpUtil;
+import io.netty.handler.codec.http.HttpVersion;
+import io.netty.handler.codec.http.LastHttpContent;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.ws.rs.Consumes;
+import javax.ws.rs.GET;
+import javax.ws.rs.POST;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests for the {@link NettyClientExecutor}, against a server that can answer early, hang or send large responses.
+ */
+public class TestNettyClientExecutor {
+
+    private static final long TIMEOUT_MILLIS = 10000;
+    private static final int LARGE_BODY_SIZE = 1024 * 1024;
+    private static final int LINES = 5000;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final AtomicInteger connections = new AtomicInteger();
+    private final CountDownLatch rejected = new CountDownLatch(1);
+    private final CountDownLatch slowReceived = new CountDownLatch(1);
+    private final CountDownLatch slowClosed = new CountDownLatch(1);
+    private final BlockingQueue<ClientRequest> sent = new LinkedBlockingQueue<>();
+    private EventLoopGroup serverGroup;
+    private Channel server;
+    private String uri;
+    private NettyClientExecutor executor;
+
+    @Before
+    public void setUp() throws Exception {
+        this.serverGroup = new NioEventLoopGroup(1);
+        this.server = new ServerBootstrap()
+                .group(this.serverGroup)
+                .channel(NioServerSocketChannel.class)
+                .childHandler(new ChannelInitializer<Channel>() {
+                    @Override
+                    protected void initChannel(Channel channel) {
+                        channel.pipeline().addLast(new HttpServerCodec(), new HttpContentDecompressor(),
+                                                   new TestHandler());
+                    }
+                })
+                .bind(new InetSocketAddress("localhost", 0))
+                .sync()
+                .channel();
+        this.uri = "http://localhost:" + ((InetSocketAddress) this.server.localAddress()).getPort();
+        this.executor = executorBuilder().build();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        this.executor.close();
+        this.server.close().sync();
+        this.serverGroup.shutdownGracefully(0, 1, TimeUnit.SECONDS).sync();
+    }
+
+    /**
+     * Iterator bodies are written in chunks by the calling thread, compressed or not.
+     */
+    @Test(timeout = TIMEOUT_MILLIS)
+    public void streamedBodiesAreSentInChunks() {
+        assertThat(client(this.executor, false).lines(lines(LINES)), is(expectedLines(LINES)));
+        assertThat(client(this.executor, true).lines(lines(LINES)), is(expectedLines(LINES)));
+    }
+
+    /**
+     * File bodies are sent from the file, with a Content-Length when they aren't compressed and as chunks when they
+     * are.
+     */
+    @Test(timeout = TIMEOUT_MILLIS)
+    public void fileBodiesAreSent() throws Exception {
+        File file = this.folder.newFile();
+        Files.write(expectedLines(LINES), file, Charsets.UTF_8);
+        assertThat(client(this.executor, false).file(file), is(expectedLines(LINES)));
+        assertThat(client(this.executor, true).file(file), is(expectedLines(LINES)));
+    }
+
+    /**
+     * A response that arrives while a streamed body is still being written doesn't put the connection back in the pool,
+     * since the rest of the body would then be sent in the middle of the next request.
+     */
+    @Test(timeout = TIMEOUT_MILLIS)
+    public void earlyResponsesCloseConnectionsStillSendingTheRequest() {
+        TestResource client = client(this.executor, false);
+        Iterator<String> lines = new AbstractIterator<String>() {
+            private int count;
+
+            @Override
+            protected String computeNext() {
+                if (this.count == LINES / 2) {
+                    // the first chunks have been sent by now
+                    awaitRejection();
+                }
+                return this.count < LINES ? "line " + this.count++ : endOfData();
+            }
+        };
+        try {
+            client.early(lines);
+            fail("the upload should be rejected");
+        } catch (RuntimeException expected) {
+            // 413
+        }
+        assertThat(client.lines(lines(1)), is(expectedLines(1)));
+        assertThat(this.connections.get(), is(2));
+    }
+
+    /**
+     * Responses larger than the queued chunks are read completely, and the connections go back to the pool after
+     * each of them.
+     */
+    @Test(timeout = TIMEOUT_MILLIS)
+    public void largeResponsesAreReadAndConnectionsReused() {
+        for (int i = 0; i < 5; i++) {
+            assertThat(client(this.executor, false).large().length(), is(LARGE_BODY_SIZE));
+        }
+        assertThat(this.connections.get(), is(1));
+    }
+
+    /**
+     * A request whose response doesn't arrive within the read timeout fails with a SocketTimeoutException and its
+     * connection is closed.
+     */
+    @Test(timeout = TIMEOUT_MILLIS)
+    public void readTimeoutsFailTheRequest() throws Exception {
+        TestResource client = new Client.Builder<>(new ResourceInterface<>(TestResource.class),
+                                                   new SimpleUriProvider(this.uri))
+                .methodReadTimeout(TestResource.class.getMethod("slow"), 200)
+                .executor(this.executor)
+                .build();
+        try {
+            client.slow();
+            fail("the request should time out");
+        } catch (RuntimeException e) {
+            assertThat(Throwables.getRootCause(e), instanceOf(SocketTimeoutException.class));
+        }
+        assertThat(this.slowClosed.await(1, TimeUnit.SECONDS), is(true));
+    }
+
+    /**
+     * Aborting a request that is waiting for its response fails it and closes its connection.
+     */
+    @Test(timeout = TIMEOUT_MILLIS)
+    public void abortedRequestsCloseTheConnection() throws Exception {
+        ExecutorService callers = Executors.newSingleThreadExecutor();
+        try {
+            Future<String> slow = callSlow(callers, client(this.executor, false));
+            this.slowReceived.await();
+            this.sent.take().getAbortHandle().abort();
+            try {
+                slow.get();
+                fail("the request should be aborted");
+            } catch (ExecutionException expected) {
+                // aborted
+            }
+            assertThat(this.slowClosed.await(1, TimeUnit.SECONDS), is(true));
+        } finally {
+            callers.shutdownNow();
+        }
+    }
+
+    /**
+     * When every connection to a host is in use, requests fail once they have waited for the acquire timeout, and the
+     * pool recovers once a connection is given back.
+     */
+    @Test(timeout = TIMEOUT_MILLIS)
+    public void exhaustedPoolsFailAfterTheAcquireTimeout() throws Exception {
+        NettyClientExecutor single = executorBuilder()
+                .maxConnectionsPerHost(1)
+                .acquireTimeout(100, TimeUnit.MILLISECONDS)
+                .build();
+        ExecutorService callers = Executors.newSingleThreadExecutor();
+        try {
+            TestResource client = client(single, false);
+            callSlow(callers, client);
+            this.slowReceived.await();
+            try {
+                client.large();
+                fail("no connection should be available");
+            } catch (RuntimeException e) {
+                assertThat(Throwables.getRootCause(e), instanceOf(TimeoutException.class));
+            }
+            this.sent.take().getAbortHandle().abort();
+            assertThat(client.lines(lines(1)), is(expectedLines(1)));
+        } finally {
+            callers.shutdownNow();
+            single.close();
+        }
+    }
+
+    /**
+     * Streamed bodies are sent the same way over the native epoll transport and over NIO.
+     */
+    @Test(timeout = TIMEOUT_MILLIS)
+    public void bothTransportsSendStreamedBodies() {
+        for (boolean nativeTransport : Arrays.asList(true, false)) {
+            NettyClientExecutor transport = executorBuilder().nativeTransport(nativeTransport).build();
+            try {
+                assertThat(client(transport, false).lines(lines(LINES)), is(expectedLines(LINES)));
+            } finally {
+                transport.close();
+            }
+        }
+    }
+
+    /**
+     * Unix domain sockets need the native transport, so an executor that uses NIO can't be built with one.
+     */
+    @Test(expected = IllegalStateException.class)
+    public void nioTransportRejectsDomainSockets() {
+        NettyClientExecutor.builder()
+                .nativeTransport(false)
+                .unixDomainSocket(URI.create("http://sidecar:8080"), "/tmp/sidecar.sock")
+                .build();
+    }
+
+    private NettyClientExecutor.Builder executorBuilder() {
+        List<ClientRequestFilter> filters = Collections.<ClientRequestFilter>singletonList(new ClientRequestFilter() {
+            @Override
+            public void filter(ClientRequest request) {
+                TestNettyClientExecutor.this.sent.add(request);
+            }
+        });
+        return NettyClientExecutor.builder().maxConnectionsPerHost(2).requestFilters(filters);
+    }
+
+    private TestResource client(NettyClientExecutor executor, boolean compress) {
+        Client.Builder<TestResource> builder = new Client.Builder<>(new ResourceInterface<>(TestResource.class),
+                                                                    new SimpleUriProvider(this.uri));
+        if (compress) {
+            builder.requestCompression(0);
+        }
+        return builder.executor(executor).build();
+    }
+
+    private static Future<String> callSlow(ExecutorService callers, final TestResource client) {
+        return callers.submit(new Callable<String>() {
+            @Override
+            public String call() {
+                return client.slow();
+            }
+        });
+    }
+
+    private static Iterator<String> lines(int count) {
+        ImmutableList.Builder<String> lines = ImmutableList.builder();
+        for (int i = 0; i < count; i++) {
+            lines.add("line " + i);
+        }
+        return lines.build().iterator();
+    }
+
+    private static String expectedLines(int count) {
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            expected.append("line ").append(i).append('\n');
+        }
+        return expected.toString();
+    }
+
+    private void awaitRejection() {
+        try {
+            this.rejected.await();
+            // gives the client time to receive the response
+            Thread.sleep(200);
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Echoes uploads, rejects /early uploads as soon as their head arrives, never answers /slow and answers /large
+     * with a megabyte.
+     */
+    private final class TestHandler extends SimpleChannelInboundHandler<HttpObject> {
+        private String path;
+        private ByteBuf body;
+
+        @Override
+        public void channelActive(ChannelHandlerContext ctx) {
+            TestNettyClientExecutor.this.connections.incrementAndGet();
+        }
+
+        @Override
+        public void channelInactive(ChannelHandlerContext ctx) {
+            if ("/slow".equals(this.path)) {
+                TestNettyClientExecutor.this.slowClosed.countDown();
+            }
+            release();
+        }
+
+        @Override
+        protected void channelRead0(ChannelHandlerContext ctx, HttpObject msg) {
+            if (msg instanceof HttpRequest) {
+                String uri = ((HttpRequest) msg).uri();
+                this.path = uri.substring(uri.lastIndexOf('/'));
+                this.body = Unpooled.buffer();
+                if ("/early".equals(this.path)) {
+                    respond(ctx, HttpResponseStatus.REQUEST_ENTITY_TOO_LARGE, Unpooled.EMPTY_BUFFER);
+                    TestNettyClientExecutor.this.rejected.countDown();
+                } else if ("/slow".equals(this.path)) {
+                    TestNettyClientExecutor.this.slowReceived.countDown();
+                }
+            }
+            if (msg instanceof HttpContent) {
+                this.body.writeBytes(((HttpContent) msg).content());
+            }
+            if (msg instanceof LastHttpContent) {
+                if ("/upload".equals(this.path)) {
+                    respond(ctx, HttpResponseStatus.OK, this.body.retain());
+                } else if ("/large".equals(this.path)) {
+                    byte[] large = new byte[LARGE_BODY_SIZE];
+                    Arrays.fill(large, (byte) 'x');
+                    respond(ctx, HttpResponseStatus.OK, Unpooled.wrappedBuffer(large));
+                }
+                release();
+            }
+        }
+
+        private void respond(ChannelHandlerContext ctx, HttpResponseStatus status, ByteBuf content) {
+            FullHttpResponse response = new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, status, content);
+            response.headers().set(HttpHeaderNames.CONTENT_TYPE, "text/plain");
+            HttpUtil.setContentLength(response, content.readableBytes());
+            ctx.writeAndFlush(response);
+        }
+
+        private void release() {
+            if (this.body != null) {
+                this.body.release();
+                this.body = null;
+            }
+        }
+    }
+
+    /**
+     * Resource used to test the executor.
+     */
+    @Path("test")
+    public interface TestResource {
+        @POST
+        @Path("upload")
+        @Consumes("application/x-ndjson")
+        @Produces("text/plain")
+        String lines(Iterator<String> lines);
+
+        @POST
+        @Path("upload")
+        @Consumes("application/octet-stream")
+        @Produces("text/plain")
+        String file(File file);
+
+        @POST
+        @Path("early")
+        @Consumes("application/x-ndjson")
+        void early(Iterator<String> lines);
+
+        @GET
+        @Path("slow")
+        @Produces("text/plain")
+        String slow();
+
+        @GET
+        @Path("large")
+        @Produces("text/plain")
+        String large();
+    }
+}
@@ -0,0 +1,159 @@
+/**
+ *    Copyright 2014 Opower, Inc.
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ **/
+package com.opower.rest.client.generator.executors;
+
+import com.opower.rest.client.generator.core.Client;
+import com.opower.rest.client.generator.core.ResourceInterface;
+import com.opower.rest.client.generator.core.SimpleUriProvider;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollServerDomainSocketChannel;
+import io.netty.channel.unix.DomainSocketAddress;
+import io.netty.handler.codec.http.DefaultFullHttpResponse;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpObjectAggregator;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpServerCodec;
+import io.netty.handler.codec.http.HttpUtil;
+import io.netty.handler.codec.http.HttpVersion;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.net.URI;
+import java.net.URLEncoder;
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Tests sending requests over a Unix domain socket with the {@link NettyClientExecutor}.
+ */
+public class TestNettyUnixDomainSocket {
+
+    private File socket;
+    private EventLoopGroup serverGroup;
+    private Channel server;
+
+    @Before
+    public void setUp() throws Exception {
+        assumeTrue(Epoll.isAvailable());
+        this.socket = File.createTempFile("sidecar", ".sock");
+        this.socket.delete();
+        this.serverGroup = new EpollEventLoopGroup(1);
+        this.server = new ServerBootstrap()
+                .group(this.serverGroup)
+                .channel(EpollServerDomainSocketChannel.class)
+                .childHandler(new ChannelInitializer<Channel>() {
+                    @Override
+                    protected void initChannel(Channel channel) {
+                        channel.pipeline().addLast(new HttpServerCodec(), new HttpObjectAggregator(1024),
+                                                   new WhoAmIHandler());
+                    }
+                })
+                .bind(new DomainSocketAddress(this.socket))
+                .sync()
+                .channel();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (this.server != null) {
+            this.server.close().sync();
+            this.serverGroup.shutdownGracefully().sync();
+        }
+        if (this.socket != null) {
+            this.socket.delete();
+        }
+    }
+
+    /**
+     * Requests for an endpoint that is mapped to a socket file go over the socket, with the Host header of the
+     * endpoint.
+     */
+    @Test
+    public void mappedEndpointUsesTheSocket() {
+        URI sidecar = URI.create("http://sidecar:8080");
+        NettyClientExecutor executor = NettyClientExecutor.builder()
+                .unixDomainSocket(sidecar, this.socket.getAbsolutePath())
+                .build();
+        try {
+            assertThat(client(executor, sidecar.toString()).whoAmI(), is("/who sidecar:8080"));
+            assertThat(client(executor, sidecar.toString()).whoAmI(), is("/who sidecar:8080"));
+        } finally {
+            executor.close();
+        }
+    }
+
+    /**
+     * A base uri with the http+unix scheme names the socket file in its authority.
+     */
+    @Test
+    public void unixSchemeUsesTheSocket() throws Exception {
+        NettyClientExecutor executor = new NettyClientExecutor();
+        try {
+            String uri = NettyClientExecutor.UNIX_SCHEME + "://"
+                    + URLEncoder.encode(this.socket.getAbsolutePath(), "UTF-8") + "/base";
+            assertThat(client(executor, uri).whoAmI(), is("/base/who localhost"));
+        } finally {
+            executor.close();
+        }
+    }
+
+    private static WhoAmIResource client(NettyClientExecutor executor, String uri) {
+        return new Client.Builder<>(new ResourceInterface<>(WhoAmIResource.class), new SimpleUriProvider(uri))
+                .executor(executor)
+                .build();
+    }
+
+    /**
+     * Resource used to test the socket.
+     */
+    @Path("who")
+    public interface WhoAmIResource {
+        @GET
+        @Produces("text/plain")
+        String whoAmI();
+    }
+
+    /**
+     * Answers with the path and Host header of the request.
+     */
+    private static class WhoAmIHandler extends SimpleChannelInboundHandler<FullHttpRequest> {
+        @Override
+        protected void channelRead0(ChannelHandlerContext ctx, FullHttpRequest request) {
+            String body = request.uri() + " " + request.headers().get(HttpHeaderNames.HOST);
+            FullHttpResponse response = new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK,
+                                                                    ByteBufUtil.writeUtf8(ctx.alloc(), body));
+            response.headers().set(HttpHeaderNames.CONTENT_TYPE, "text/plain");
+            HttpUtil.setContentLength(response, response.content().readableBytes());
+            ctx.writeAndFlush(response);
+        }
+    }
+}